@@ -24,6 +24,9 @@ public class AllTests {
 		suite.addTestSuite(ConfigurationPluginTest.class);
 		suite.addTestSuite(ConfigurationListenerTest.class);
 		suite.addTestSuite(ConfigurationEventAdapterTest.class);
+		suite.addTestSuite(ConfigurationStoreTest.class);
+		suite.addTestSuite(ConfigurationBatchTest.class);
+		suite.addTestSuite(ParallelTaskQueueTest.class);
 		return suite;
 	}
 
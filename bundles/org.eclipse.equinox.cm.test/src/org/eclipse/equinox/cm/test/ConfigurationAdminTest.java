@@ -195,6 +195,22 @@ public class ConfigurationAdminTest extends TestCase {
 		}
 	}
 
+	public void testListConfigurationWithChangedLocation() throws Exception {
+		Configuration config = cm.createFactoryConfiguration("test", "location1");
+		config.update();
+		try {
+			String filterString = "(&(" + ConfigurationAdmin.SERVICE_FACTORYPID + "=test)" + "(" + ConfigurationAdmin.SERVICE_BUNDLELOCATION + "=location2)" + ")";
+			assertNull(cm.listConfigurations(filterString));
+			config.setBundleLocation("location2");
+			Configuration[] configs = cm.listConfigurations(filterString);
+			assertTrue(configs != null && configs.length == 1);
+			assertNull(cm.listConfigurations("(" + ConfigurationAdmin.SERVICE_BUNDLELOCATION + "=location1)"));
+		} finally {
+			config.delete();
+		}
+		assertNull(cm.listConfigurations("(" + ConfigurationAdmin.SERVICE_FACTORYPID + "=test)"));
+	}
+
 	public void testListConfigurationNull() throws Exception {
 		Configuration config = cm.createFactoryConfiguration("test", null);
 		config.update();
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.cm.test;
+
+import java.util.*;
+import junit.framework.TestCase;
+import org.eclipse.equinox.cm.BatchConfigurationAdmin;
+import org.eclipse.equinox.cm.ConfigurationBatch;
+import org.osgi.framework.*;
+import org.osgi.service.cm.*;
+
+public class ConfigurationBatchTest extends TestCase {
+
+	private BatchConfigurationAdmin cm;
+	private ServiceReference reference;
+	final List events = new ArrayList();
+
+	public ConfigurationBatchTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		Activator.getBundle("org.eclipse.equinox.cm").start();
+		reference = Activator.getBundleContext().getServiceReference(ConfigurationAdmin.class.getName());
+		cm = (BatchConfigurationAdmin) Activator.getBundleContext().getService(reference);
+	}
+
+	protected void tearDown() throws Exception {
+		Activator.getBundleContext().ungetService(reference);
+		Activator.getBundle("org.eclipse.equinox.cm").stop();
+	}
+
+	private Dictionary createProperties(int value) {
+		Dictionary props = new Hashtable();
+		props.put("testkey", new Integer(value));
+		return props;
+	}
+
+	public void testBatch() throws Exception {
+		Configuration toDelete = cm.getConfiguration("test.delete");
+		toDelete.update(createProperties(0));
+
+		SynchronousConfigurationListener listener = new SynchronousConfigurationListener() {
+			public void configurationEvent(ConfigurationEvent event) {
+				synchronized (events) {
+					events.add(event);
+				}
+			}
+		};
+		ServiceRegistration reg = Activator.getBundleContext().registerService(SynchronousConfigurationListener.class.getName(), listener, null);
+		try {
+			ConfigurationBatch batch = cm.createBatch();
+			for (int i = 0; i < 10; i++)
+				batch.update("test" + i, createProperties(i));
+			batch.createFactoryConfiguration("test.factory", createProperties(10));
+			batch.delete("test.delete");
+			batch.delete("test.missing");
+			// nothing happens before the commit
+			assertNull(cm.listConfigurations("(testkey=*)"));
+
+			Configuration[] configs = batch.commit();
+			assertEquals(11, configs.length);
+			for (int i = 0; i < 10; i++) {
+				assertEquals("test" + i, configs[i].getPid());
+				assertEquals(new Integer(i), configs[i].getProperties().get("testkey"));
+			}
+			assertEquals("test.factory", configs[10].getFactoryPid());
+			assertNull(cm.listConfigurations("(" + Constants.SERVICE_PID + "=test.delete)"));
+			synchronized (events) {
+				assertEquals(12, events.size());
+				assertEquals(ConfigurationEvent.CM_DELETED, ((ConfigurationEvent) events.get(11)).getType());
+			}
+
+			// the changes are persistent
+			tearDown();
+			setUp();
+			Configuration[] stored = cm.listConfigurations("(testkey=*)");
+			assertNotNull(stored);
+			assertEquals(11, stored.length);
+		} finally {
+			reg.unregister();
+			Configuration[] configs = cm.listConfigurations("(testkey=*)");
+			for (int i = 0; configs != null && i < configs.length; i++)
+				configs[i].delete();
+		}
+	}
+
+	public void testCommitDuringRegistration() throws Exception {
+		final ManagedService ms = new ManagedService() {
+			public void updated(Dictionary properties) throws ConfigurationException {
+				// nothing to do
+			}
+		};
+		final Throwable[] failure = new Throwable[1];
+		// locks the configurations of the batch while committing it
+		Thread commitThread = new Thread("commit") {
+			public void run() {
+				try {
+					for (int i = 0; i < 200; i++) {
+						ConfigurationBatch batch = cm.createBatch();
+						batch.update("test.commit1", createProperties(i));
+						batch.update("test.commit2", createProperties(i));
+						batch.commit();
+					}
+				} catch (Throwable t) {
+					failure[0] = t;
+				}
+			}
+		};
+		// locks the configurations while holding the store's lock
+		Thread registerThread = new Thread("registerService") {
+			public void run() {
+				try {
+					Dictionary dict = new Hashtable();
+					dict.put(Constants.SERVICE_PID, new String[] {"test.commit1", "test.commit2"});
+					for (int i = 0; i < 200; i++)
+						Activator.getBundleContext().registerService(ManagedService.class.getName(), ms, dict).unregister();
+				} catch (Throwable t) {
+					failure[0] = t;
+				}
+			}
+		};
+		commitThread.setDaemon(true);
+		registerThread.setDaemon(true);
+		commitThread.start();
+		registerThread.start();
+		commitThread.join(30000);
+		registerThread.join(30000);
+		assertFalse("deadlock in commit", commitThread.isAlive());
+		assertFalse("deadlock in registerService", registerThread.isAlive());
+		if (failure[0] != null)
+			fail(failure[0].toString());
+		cm.getConfiguration("test.commit1").delete();
+		cm.getConfiguration("test.commit2").delete();
+	}
+
+	public void testSamePidTwice() throws Exception {
+		ConfigurationBatch batch = cm.createBatch();
+		batch.update("test", createProperties(0));
+		try {
+			batch.delete("test");
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+		fail();
+	}
+
+	public void testInvalidProperties() throws Exception {
+		ConfigurationBatch batch = cm.createBatch();
+		Dictionary props = new Hashtable();
+		props.put("testkey", new Object());
+		try {
+			batch.update("test", props);
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+		fail();
+	}
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.cm.test;
+
+import java.util.*;
+import junit.framework.TestCase;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationAdmin;
+
+public class ConfigurationStoreTest extends TestCase {
+
+	private static final String PROP_STORE_FORMAT = "equinox.cm.store.format";
+
+	private ConfigurationAdmin cm;
+	private ServiceReference reference;
+
+	public ConfigurationStoreTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		startConfigurationAdmin();
+	}
+
+	protected void tearDown() throws Exception {
+		stopConfigurationAdmin();
+		System.getProperties().remove(PROP_STORE_FORMAT);
+	}
+
+	private void startConfigurationAdmin() throws Exception {
+		Activator.getBundle("org.eclipse.equinox.cm").start();
+		reference = Activator.getBundleContext().getServiceReference(ConfigurationAdmin.class.getName());
+		cm = (ConfigurationAdmin) Activator.getBundleContext().getService(reference);
+	}
+
+	private void stopConfigurationAdmin() throws Exception {
+		Activator.getBundleContext().ungetService(reference);
+		Bundle bundle = Activator.getBundle("org.eclipse.equinox.cm");
+		bundle.stop();
+	}
+
+	private void restartConfigurationAdmin(String format) throws Exception {
+		stopConfigurationAdmin();
+		if (format == null)
+			System.getProperties().remove(PROP_STORE_FORMAT);
+		else
+			System.setProperty(PROP_STORE_FORMAT, format);
+		startConfigurationAdmin();
+	}
+
+	private Dictionary createProperties() {
+		Dictionary props = new Hashtable();
+		props.put("string", "value é");
+		props.put("int", new Integer(42));
+		props.put("longs", new long[] {1, 2, 3});
+		props.put("strings", new String[] {"a", "b"});
+		Vector vector = new Vector();
+		vector.add("x");
+		vector.add(Boolean.TRUE);
+		props.put("vector", vector);
+		return props;
+	}
+
+	private void assertProperties(Configuration config) {
+		Dictionary props = config.getProperties();
+		assertNotNull(props);
+		assertEquals("value é", props.get("string"));
+		assertEquals(new Integer(42), props.get("int"));
+		assertTrue(Arrays.equals(new long[] {1, 2, 3}, (long[]) props.get("longs")));
+		assertTrue(Arrays.equals(new String[] {"a", "b"}, (String[]) props.get("strings")));
+		Vector vector = new Vector();
+		vector.add("x");
+		vector.add(Boolean.TRUE);
+		assertEquals(vector, props.get("vector"));
+	}
+
+	public void testLogStore() throws Exception {
+		restartConfigurationAdmin("log");
+		Configuration config = cm.getConfiguration("test");
+		config.update(createProperties());
+		Configuration factoryConfig = cm.createFactoryConfiguration("factory");
+		factoryConfig.update(createProperties());
+		String factoryPid = factoryConfig.getPid();
+		Configuration deletedConfig = cm.getConfiguration("deleted");
+		deletedConfig.update(createProperties());
+		deletedConfig.delete();
+		try {
+			restartConfigurationAdmin("log");
+			assertProperties(cm.getConfiguration("test"));
+			Configuration[] factoryConfigs = cm.listConfigurations("(service.factoryPid=factory)");
+			assertNotNull(factoryConfigs);
+			assertEquals(1, factoryConfigs.length);
+			assertEquals(factoryPid, factoryConfigs[0].getPid());
+			assertProperties(factoryConfigs[0]);
+			assertNull(cm.listConfigurations("(service.pid=deleted)"));
+		} finally {
+			cm.getConfiguration("test").delete();
+			cm.getConfiguration(factoryPid).delete();
+		}
+	}
+
+	public void testMigration() throws Exception {
+		Configuration config = cm.getConfiguration("test");
+		config.update(createProperties());
+		try {
+			// from the configuration files to the log
+			restartConfigurationAdmin("log");
+			assertProperties(cm.getConfiguration("test"));
+			Dictionary props = createProperties();
+			props.put("updated", Boolean.TRUE);
+			cm.getConfiguration("test").update(props);
+
+			// and back again
+			restartConfigurationAdmin(null);
+			config = cm.getConfiguration("test");
+			assertProperties(config);
+			assertEquals(Boolean.TRUE, config.getProperties().get("updated"));
+		} finally {
+			cm.getConfiguration("test").delete();
+		}
+	}
+}
@@ -241,4 +241,110 @@ public class ManagedServiceTest extends TestCase {
 		}
 		reg.unregister();
 	}
+
+	public void testParallelDelivery() throws Exception {
+		// restart with parallel delivery enabled
+		tearDown();
+		System.setProperty("equinox.cm.update.threads", "2");
+		final Object slowLock = new Object();
+		final boolean[] released = new boolean[1];
+		ServiceRegistration slowReg = null;
+		ServiceRegistration fastReg = null;
+		try {
+			setUp();
+			ManagedService slow = new ManagedService() {
+				public void updated(Dictionary properties) throws ConfigurationException {
+					synchronized (slowLock) {
+						long end = System.currentTimeMillis() + 10000;
+						while (!released[0] && System.currentTimeMillis() < end) {
+							try {
+								slowLock.wait(100);
+							} catch (InterruptedException e) {
+								return;
+							}
+						}
+					}
+				}
+			};
+			ManagedService fast = new ManagedService() {
+				public void updated(Dictionary properties) throws ConfigurationException {
+					synchronized (lock) {
+						locked = false;
+						lock.notify();
+					}
+				}
+			};
+
+			Dictionary dict = new Properties();
+			dict.put(Constants.SERVICE_PID, "slow");
+			slowReg = Activator.getBundleContext().registerService(ManagedService.class.getName(), slow, dict);
+			dict.put(Constants.SERVICE_PID, "fast");
+			synchronized (lock) {
+				locked = true;
+				fastReg = Activator.getBundleContext().registerService(ManagedService.class.getName(), fast, dict);
+				lock.wait(5000);
+				if (locked)
+					fail("should have updated while the slow service is blocked");
+			}
+		} finally {
+			synchronized (slowLock) {
+				released[0] = true;
+				slowLock.notifyAll();
+			}
+			if (slowReg != null)
+				slowReg.unregister();
+			if (fastReg != null)
+				fastReg.unregister();
+			System.getProperties().remove("equinox.cm.update.threads");
+		}
+	}
+
+	public void testSetBundleLocationDuringRegistration() throws Exception {
+		final Configuration config = cm.getConfiguration("test3");
+		Properties props = new Properties();
+		props.put("testkey", "testvalue");
+		config.update(props);
+
+		final ManagedService ms = new ManagedService() {
+			public void updated(Dictionary properties) throws ConfigurationException {
+				// nothing to do
+			}
+		};
+		final Throwable[] failure = new Throwable[1];
+		// changes the location while holding the configuration's lock
+		Thread locationThread = new Thread("setBundleLocation") {
+			public void run() {
+				try {
+					for (int i = 0; i < 500; i++)
+						config.setBundleLocation(i % 2 == 0 ? null : "?test");
+				} catch (Throwable t) {
+					failure[0] = t;
+				}
+			}
+		};
+		// locks the configuration while holding the store's lock
+		Thread registerThread = new Thread("registerService") {
+			public void run() {
+				try {
+					Dictionary dict = new Properties();
+					dict.put(Constants.SERVICE_PID, "test3");
+					for (int i = 0; i < 500; i++)
+						Activator.getBundleContext().registerService(ManagedService.class.getName(), ms, dict).unregister();
+				} catch (Throwable t) {
+					failure[0] = t;
+				}
+			}
+		};
+		locationThread.setDaemon(true);
+		registerThread.setDaemon(true);
+		locationThread.start();
+		registerThread.start();
+		locationThread.join(30000);
+		registerThread.join(30000);
+		assertFalse("deadlock in setBundleLocation", locationThread.isAlive());
+		assertFalse("deadlock in registerService", registerThread.isAlive());
+		if (failure[0] != null)
+			fail(failure[0].toString());
+		config.delete();
+	}
 }
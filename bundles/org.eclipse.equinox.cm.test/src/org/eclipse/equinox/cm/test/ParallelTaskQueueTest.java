@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.cm.test;
+
+import junit.framework.TestCase;
+import org.eclipse.equinox.internal.cm.ParallelTaskQueue;
+import org.eclipse.equinox.internal.cm.ParallelTaskQueue.TargetStatistics;
+
+public class ParallelTaskQueueTest extends TestCase {
+
+	private ParallelTaskQueue queue;
+
+	public ParallelTaskQueueTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		// a single thread runs the tasks in the order they are put, even for different targets
+		queue = new ParallelTaskQueue("ParallelTaskQueueTest", 1);
+	}
+
+	/*
+	 * Blocks the thread running it until it is opened.
+	 */
+	private static class Gate implements Runnable {
+		private boolean entered = false;
+		private boolean open = false;
+
+		public synchronized void run() {
+			entered = true;
+			notifyAll();
+			while (!open) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+
+		synchronized void awaitEntered() throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 5000;
+			while (!entered) {
+				long wait = deadline - System.currentTimeMillis();
+				if (wait <= 0)
+					fail("Task not started");
+				wait(wait);
+			}
+		}
+
+		synchronized void open() {
+			open = true;
+			notifyAll();
+		}
+	}
+
+	/*
+	 * Counts the tasks it has run.
+	 */
+	private static class Counter implements Runnable {
+		private int count = 0;
+
+		public synchronized void run() {
+			count++;
+			notifyAll();
+		}
+
+		synchronized void await(int expected) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 5000;
+			while (count < expected) {
+				long wait = deadline - System.currentTimeMillis();
+				if (wait <= 0)
+					fail("Only " + count + " tasks run");
+				wait(wait);
+			}
+		}
+	}
+
+	private TargetStatistics getStatistics(Object key) {
+		TargetStatistics[] statistics = queue.getTargetStatistics();
+		for (int i = 0; i < statistics.length; i++)
+			if (statistics[i].getTarget() == key)
+				return statistics[i];
+		return null;
+	}
+
+	// statistics are recorded after a task has run, so wait for them
+	private TargetStatistics awaitStatistics(Object key, long count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (true) {
+			TargetStatistics statistics = getStatistics(key);
+			if (statistics != null && statistics.getCount() >= count)
+				return statistics;
+			if (System.currentTimeMillis() > deadline)
+				fail("No statistics for " + key);
+			Thread.sleep(10);
+		}
+	}
+
+	public void testStatisticsRecorded() throws Exception {
+		Object key = new Object();
+		Counter counter = new Counter();
+		queue.put(key, counter);
+		queue.put(key, counter);
+		counter.await(2);
+		assertEquals(2, awaitStatistics(key, 2).getCount());
+	}
+
+	public void testRemoveDiscardsStatistics() throws Exception {
+		Object key = new Object();
+		Counter counter = new Counter();
+		queue.put(key, counter);
+		counter.await(1);
+		awaitStatistics(key, 1);
+		queue.remove(key);
+		assertNull(getStatistics(key));
+	}
+
+	public void testTasksQueuedBeforeRemoveKeepNoStatistics() throws Exception {
+		Object key = new Object();
+		Object other = new Object();
+		Gate gate = new Gate();
+		Counter counter = new Counter();
+		queue.put(key, gate);
+		gate.awaitEntered();
+		queue.put(key, counter);
+		queue.put(key, counter);
+		queue.remove(key);
+		gate.open();
+		counter.await(2);
+		// the task of another target runs once the removed target's tasks are done
+		queue.put(other, counter);
+		counter.await(3);
+		awaitStatistics(other, 1);
+		queue.remove(other);
+		assertNull("Statistics recreated for a removed target", getStatistics(key));
+		assertEquals(0, queue.getTargetStatistics().length);
+	}
+
+	public void testTasksPutAfterRemoveKeepStatistics() throws Exception {
+		Object key = new Object();
+		Gate gate = new Gate();
+		Counter counter = new Counter();
+		queue.put(key, gate);
+		gate.awaitEntered();
+		queue.remove(key);
+		queue.put(key, counter);
+		gate.open();
+		counter.await(1);
+		assertNotNull(awaitStatistics(key, 1));
+	}
+}
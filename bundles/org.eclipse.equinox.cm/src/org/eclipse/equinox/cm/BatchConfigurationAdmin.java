@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.cm;
+
+import org.osgi.service.cm.ConfigurationAdmin;
+
+/**
+ * A <code>ConfigurationAdmin</code> which can change many configurations at once. The
+ * Equinox Configuration Admin service object implements this interface.
+ * <pre>
+ * if (configAdmin instanceof BatchConfigurationAdmin) {
+ *     ConfigurationBatch batch = ((BatchConfigurationAdmin) configAdmin).createBatch();
+ *     batch.update("my.pid", properties);
+ *     batch.delete("old.pid");
+ *     batch.commit();
+ * }
+ * </pre>
+ * @ThreadSafe
+ * @since 1.2
+ */
+public interface BatchConfigurationAdmin extends ConfigurationAdmin {
+
+	/**
+	 * Creates a new, empty batch. The configurations in the batch are accessed with the
+	 * permissions and bundle location of the bundle which got this service, like the
+	 * configurations returned by {@link #getConfiguration(String)} and
+	 * {@link #createFactoryConfiguration(String)}.
+	 * @return a new batch
+	 */
+	ConfigurationBatch createBatch();
+}
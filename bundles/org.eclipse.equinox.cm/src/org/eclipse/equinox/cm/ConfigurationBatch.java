@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.cm;
+
+import java.io.IOException;
+import java.util.Dictionary;
+import org.osgi.service.cm.Configuration;
+
+/**
+ * A set of configuration changes which are applied together. Changes are staged with
+ * {@link #update(String, Dictionary)}, {@link #createFactoryConfiguration(String, Dictionary)}
+ * and {@link #delete(String)}, and have no effect until {@link #commit()} is called.
+ * <p>
+ * Committing a batch has the same result as making the changes one at a time with
+ * the <code>Configuration</code> API, but the changes are persisted together and the
+ * resulting <code>ConfigurationEvent</code>s and <code>ManagedService</code> and
+ * <code>ManagedServiceFactory</code> callbacks are only dispatched once all changes have
+ * been persisted.
+ * </p>
+ * @NotThreadSafe
+ * @see BatchConfigurationAdmin#createBatch()
+ * @since 1.2
+ */
+public interface ConfigurationBatch {
+
+	/**
+	 * Stages an update of the properties of the configuration with the given pid. The
+	 * configuration is created if it does not exist.
+	 * @param pid the persistent identity of the configuration
+	 * @param properties the new properties of the configuration
+	 * @throws IllegalArgumentException if the pid is <code>null</code> or already part of
+	 * this batch, or if the properties are not valid configuration properties
+	 * @see Configuration#update(Dictionary)
+	 */
+	void update(String pid, Dictionary<String, ?> properties);
+
+	/**
+	 * Stages the creation of a new factory configuration with the given properties.
+	 * @param factoryPid the persistent identity of the factory
+	 * @param properties the properties of the new configuration
+	 * @throws IllegalArgumentException if the factory pid is <code>null</code> or if the
+	 * properties are not valid configuration properties
+	 * @see Configuration#update(Dictionary)
+	 */
+	void createFactoryConfiguration(String factoryPid, Dictionary<String, ?> properties);
+
+	/**
+	 * Stages the deletion of the configuration with the given pid. Nothing is deleted if
+	 * the configuration does not exist when the batch is committed.
+	 * @param pid the persistent identity of the configuration
+	 * @throws IllegalArgumentException if the pid is <code>null</code> or already part of
+	 * this batch
+	 * @see Configuration#delete()
+	 */
+	void delete(String pid);
+
+	/**
+	 * Applies the staged changes. The batch is empty afterwards and can be reused.
+	 * @return the updated and created configurations, in the order in which they were staged
+	 * @throws IOException if the changes could not be persisted, in which case no change has
+	 * been applied
+	 * @throws IllegalStateException if a configuration in the batch has been deleted
+	 * concurrently, in which case no change has been applied
+	 * @throws SecurityException if the caller does not have permission to configure one of
+	 * the configurations, in which case no change has been applied
+	 */
+	Configuration[] commit() throws IOException;
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2013 Cognos Incorporated, IBM Corporation and others.
+ * Copyright (c) 2005, 2016 Cognos Incorporated, IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -111,6 +111,10 @@ public class ConfigurationAdminFactory implements ServiceFactory<ConfigurationAd
 		eventDispatcher.dispatchEvent(type, factoryPid, pid);
 	}
 
+	void dispatchEvents(int[] types, String[] factoryPids, String[] pids) {
+		eventDispatcher.dispatchEvents(types, factoryPids, pids);
+	}
+
 	void notifyConfigurationUpdated(ConfigurationImpl config, boolean isFactory) {
 		if (isFactory)
 			managedServiceFactoryTracker.notifyUpdated(config);
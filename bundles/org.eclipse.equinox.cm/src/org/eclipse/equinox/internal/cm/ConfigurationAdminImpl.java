@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2013 Cognos Incorporated, IBM Corporation and others..
+ * Copyright (c) 2005, 2016 Cognos Incorporated, IBM Corporation and others..
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,14 +15,15 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
 import java.util.List;
+import org.eclipse.equinox.cm.BatchConfigurationAdmin;
+import org.eclipse.equinox.cm.ConfigurationBatch;
 import org.osgi.framework.*;
 import org.osgi.service.cm.Configuration;
-import org.osgi.service.cm.ConfigurationAdmin;
 
 /**
  * ConfigurationAdminImpl provides the ConfigurationAdmin service implementation 
  */
-class ConfigurationAdminImpl implements ConfigurationAdmin {
+class ConfigurationAdminImpl implements BatchConfigurationAdmin {
 
 	private final ConfigurationAdminFactory configurationAdminFactory;
 	private final String bundleLocation;
@@ -51,7 +52,11 @@ class ConfigurationAdminImpl implements ConfigurationAdmin {
 		return internalGetConfiguration(pid, location, false, false);
 	}
 
-	private Configuration internalGetConfiguration(String pid, String location, boolean factory, boolean bind) {
+	public ConfigurationBatch createBatch() {
+		return new ConfigurationBatchImpl(configurationAdminFactory, configurationStore, bundleLocation);
+	}
+
+	ConfigurationImpl internalGetConfiguration(String pid, String location, boolean factory, boolean bind) {
 		checkPID(pid);
 		this.configurationAdminFactory.checkConfigurePermission(location, bundleLocation);
 
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.cm;
+
+import java.io.IOException;
+import java.util.*;
+import org.eclipse.equinox.cm.ConfigurationBatch;
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationEvent;
+
+/**
+ * ConfigurationBatchImpl stages configuration changes and applies them together. On commit the
+ * store's lock is taken and all configurations in the batch are locked in pid order, in the
+ * same order as the ManagedService trackers take these locks. All configurations are checked,
+ * the changes are persisted with
+ * {@link ConfigurationStore#saveConfigurations(String[], Dictionary[], Object[], String[], Object[])}
+ * and only once that succeeded are they applied in memory and the targets and listeners
+ * notified. Configurations created for the batch cannot be seen while the store's lock is
+ * held, and are forgotten again if the batch fails.
+ */
+class ConfigurationBatchImpl implements ConfigurationBatch {
+
+	private static final int UPDATE = 0;
+	private static final int CREATE = 1;
+	private static final int DELETE = 2;
+
+	private final ConfigurationAdminFactory configurationAdminFactory;
+	private final ConfigurationStore configurationStore;
+	private final String bundleLocation;
+
+	private final List<Change> changes = new ArrayList<Change>();
+	private final Set<String> stagedPids = new HashSet<String>();
+
+	public ConfigurationBatchImpl(ConfigurationAdminFactory configurationAdminFactory, ConfigurationStore configurationStore, String bundleLocation) {
+		this.configurationAdminFactory = configurationAdminFactory;
+		this.configurationStore = configurationStore;
+		this.bundleLocation = bundleLocation;
+	}
+
+	public void update(String pid, Dictionary<String, ?> properties) {
+		stagePid(pid);
+		changes.add(new Change(UPDATE, pid, ConfigurationImpl.createDictionary(properties)));
+	}
+
+	public void createFactoryConfiguration(String factoryPid, Dictionary<String, ?> properties) {
+		if (factoryPid == null)
+			throw new IllegalArgumentException("PID cannot be null"); //$NON-NLS-1$
+		changes.add(new Change(CREATE, factoryPid, ConfigurationImpl.createDictionary(properties)));
+	}
+
+	public void delete(String pid) {
+		stagePid(pid);
+		changes.add(new Change(DELETE, pid, null));
+	}
+
+	private void stagePid(String pid) {
+		if (pid == null)
+			throw new IllegalArgumentException("PID cannot be null"); //$NON-NLS-1$
+		if (!stagedPids.add(pid))
+			throw new IllegalArgumentException(pid + " is already part of the batch"); //$NON-NLS-1$
+	}
+
+	public Configuration[] commit() throws IOException {
+		Change[] staged = changes.toArray(new Change[changes.size()]);
+		changes.clear();
+		stagedPids.clear();
+
+		ConfigurationImpl[] configs = new ConfigurationImpl[staged.length];
+		List<ConfigurationImpl> updated = new ArrayList<ConfigurationImpl>();
+		List<Integer> eventTypes = new ArrayList<Integer>();
+		List<ConfigurationImpl> eventConfigs = new ArrayList<ConfigurationImpl>();
+		synchronized (configurationStore) {
+			List<ConfigurationImpl> created = new ArrayList<ConfigurationImpl>();
+			for (int i = 0; i < staged.length; i++) {
+				if (staged[i].type != CREATE)
+					configs[i] = configurationStore.findConfiguration(staged[i].pid);
+				if (configs[i] == null && staged[i].type != DELETE) {
+					if (staged[i].type == CREATE)
+						configs[i] = configurationStore.createFactoryConfiguration(staged[i].pid, bundleLocation, true);
+					else
+						configs[i] = configurationStore.getConfiguration(staged[i].pid, bundleLocation, true);
+					created.add(configs[i]);
+				}
+			}
+			List<ConfigurationImpl> toLock = new ArrayList<ConfigurationImpl>(staged.length);
+			for (int i = 0; i < staged.length; i++) {
+				if (configs[i] != null)
+					toLock.add(configs[i]);
+			}
+			ConfigurationImpl[] locked = toLock.toArray(new ConfigurationImpl[toLock.size()]);
+			Arrays.sort(locked, ConfigurationImpl.LOCK_ORDER);
+
+			int lockCount = 0;
+			boolean committed = false;
+			try {
+				for (; lockCount < locked.length; lockCount++)
+					locked[lockCount].lock();
+
+				// check all configurations before persisting anything
+				String[] bindLocations = new String[staged.length];
+				for (int i = 0; i < staged.length; i++) {
+					if (configs[i] == null)
+						continue;
+					if (staged[i].type == DELETE) {
+						if (configs[i].isDeleted()) {
+							configs[i] = null; // already deleted
+							continue;
+						}
+						configurationAdminFactory.checkConfigurePermission(configs[i].getLocation(), bundleLocation);
+					} else {
+						configs[i].checkUpdatable();
+						String location = configs[i].getLocation();
+						if (location != null)
+							configurationAdminFactory.checkConfigurePermission(location, bundleLocation);
+						else
+							bindLocations[i] = bundleLocation;
+					}
+				}
+
+				List<String> updatedPids = new ArrayList<String>();
+				List<Dictionary<String, Object>> updatedProperties = new ArrayList<Dictionary<String, Object>>();
+				List<Object> updatedTokens = new ArrayList<Object>();
+				List<String> deletedPids = new ArrayList<String>();
+				List<Object> deleteTokens = new ArrayList<Object>();
+				for (int i = 0; i < staged.length; i++) {
+					if (configs[i] == null)
+						continue;
+					if (staged[i].type == DELETE) {
+						deletedPids.add(configs[i].getPid(false));
+						deleteTokens.add(configs[i].getStorageToken());
+					} else {
+						updatedPids.add(configs[i].getPid(false));
+						updatedProperties.add(configs[i].getUpdatedProperties(staged[i].properties, bindLocations[i]));
+						updatedTokens.add(configs[i].getStorageToken());
+					}
+				}
+				@SuppressWarnings("unchecked")
+				Dictionary<String, Object>[] properties = updatedProperties.toArray(new Dictionary[updatedProperties.size()]);
+				Object[] newTokens = configurationStore.saveConfigurations(updatedPids.toArray(new String[updatedPids.size()]), properties, updatedTokens.toArray(), deletedPids.toArray(new String[deletedPids.size()]), deleteTokens.toArray());
+				committed = true;
+
+				// persisted, apply the changes in memory
+				for (int i = 0; i < staged.length; i++) {
+					if (configs[i] == null)
+						continue;
+					if (staged[i].type == DELETE) {
+						configs[i].applyDelete();
+						configurationStore.forgetConfiguration(configs[i].getPid(false));
+						continue;
+					}
+					if (bindLocations[i] != null) {
+						configs[i].applyBind(bindLocations[i]);
+						eventTypes.add(Integer.valueOf(ConfigurationEvent.CM_LOCATION_CHANGED));
+						eventConfigs.add(configs[i]);
+					}
+					configs[i].applyUpdate(staged[i].properties);
+					configs[i].setStorageToken(newTokens[updated.size()]);
+					updated.add(configs[i]);
+				}
+
+				for (int i = 0; i < staged.length; i++) {
+					if (configs[i] == null)
+						continue;
+					if (staged[i].type == DELETE) {
+						configs[i].notifyDeleted();
+						eventTypes.add(Integer.valueOf(ConfigurationEvent.CM_DELETED));
+					} else {
+						configs[i].notifyUpdated();
+						eventTypes.add(Integer.valueOf(ConfigurationEvent.CM_UPDATED));
+					}
+					eventConfigs.add(configs[i]);
+				}
+			} finally {
+				if (!committed) {
+					for (ConfigurationImpl config : created)
+						configurationStore.forgetConfiguration(config.getPid(false));
+				}
+				while (lockCount > 0)
+					locked[--lockCount].unlock();
+			}
+		}
+
+		// the listeners are called without holding any lock
+		int eventCount = eventTypes.size();
+		int[] types = new int[eventCount];
+		String[] factoryPids = new String[eventCount];
+		String[] pids = new String[eventCount];
+		for (int i = 0; i < eventCount; i++) {
+			types[i] = eventTypes.get(i).intValue();
+			factoryPids[i] = eventConfigs.get(i).getFactoryPid(false);
+			pids[i] = eventConfigs.get(i).getPid(false);
+		}
+		configurationAdminFactory.dispatchEvents(types, factoryPids, pids);
+		return updated.toArray(new ConfigurationImpl[updated.size()]);
+	}
+
+	private static class Change {
+		final int type;
+		final String pid;
+		final ConfigurationDictionary properties;
+
+		Change(int type, String pid, ConfigurationDictionary properties) {
+			this.type = type;
+			this.pid = pid;
+			this.properties = properties;
+		}
+	}
+}
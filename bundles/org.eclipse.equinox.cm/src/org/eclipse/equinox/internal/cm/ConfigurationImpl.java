@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2015 Cognos Incorporated, IBM Corporation and others.
+ * Copyright (c) 2005, 2016 Cognos Incorporated, IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,8 +16,7 @@ import java.io.IOException;
 import java.lang.reflect.Array;
 import java.util.*;
 import java.util.concurrent.locks.ReentrantLock;
-import org.osgi.framework.Bundle;
-import org.osgi.framework.Constants;
+import org.osgi.framework.*;
 import org.osgi.service.cm.*;
 
 /**
@@ -30,6 +29,15 @@ class ConfigurationImpl implements Configuration {
 	final static String PROPERTIES_NULL = "org.eclipse.equinox.cm.properties.null"; //$NON-NLS-1$
 	final static String CHANGE_COUNT = "org.eclipse.equinox.cm.change.count"; //$NON-NLS-1$
 
+	/**
+	 * The order in which several configurations have to be locked.
+	 */
+	static final Comparator<ConfigurationImpl> LOCK_ORDER = new Comparator<ConfigurationImpl>() {
+		public int compare(ConfigurationImpl config1, ConfigurationImpl config2) {
+			return config1.pid.compareTo(config2.pid);
+		}
+	};
+
 	private final ConfigurationAdminFactory configurationAdminFactory;
 	private final ConfigurationStore configurationStore;
 	/** @GuardedBy this*/
@@ -93,6 +101,7 @@ class ConfigurationImpl implements Configuration {
 			if (bundleLocation == null) {
 				bundleLocation = callerLocation;
 				bound = true;
+				configurationStore.locationChanged(this, bundleLocation);
 				try {
 					save();
 				} catch (IOException e) {
@@ -123,6 +132,7 @@ class ConfigurationImpl implements Configuration {
 			if (bound && callerLocation.equals(bundleLocation)) {
 				bundleLocation = null;
 				bound = false;
+				configurationStore.locationChanged(this, null);
 				try {
 					save();
 				} catch (IOException e) {
@@ -181,10 +191,11 @@ class ConfigurationImpl implements Configuration {
 	}
 
 	String getFactoryPid(boolean checkDeleted) {
+		if (!checkDeleted)
+			return factoryPid; // final, no need to lock
 		try {
 			lock();
-			if (checkDeleted)
-				checkDeleted();
+			checkDeleted();
 			return factoryPid;
 		} finally {
 			unlock();
@@ -196,10 +207,11 @@ class ConfigurationImpl implements Configuration {
 	}
 
 	String getPid(boolean checkDeleted) {
+		if (!checkDeleted)
+			return pid; // final, no need to lock
 		try {
 			lock();
-			if (checkDeleted)
-				checkDeleted();
+			checkDeleted();
 			return pid;
 		} finally {
 			unlock();
@@ -244,6 +256,21 @@ class ConfigurationImpl implements Configuration {
 		}
 	}
 
+	/*
+	 * Matches the filter against the properties returned by getAllProperties(false) without
+	 * copying them.
+	 */
+	boolean matches(Filter filter) {
+		try {
+			lock();
+			if (deleted || dictionary == null)
+				return false;
+			return filter.match(new FilterDictionary(dictionary, pid, factoryPid, bundleLocation));
+		} finally {
+			unlock();
+		}
+	}
+
 	private static void fileAutoProperties(Dictionary<String, Object> dictionary, ConfigurationImpl config, boolean includeLoc, boolean includeStorageKey) {
 		dictionary.put(Constants.SERVICE_PID, config.getPid(false));
 		String factoryPid = config.getFactoryPid(false);
@@ -276,6 +303,7 @@ class ConfigurationImpl implements Configuration {
 			String oldLocation = this.bundleLocation;
 			this.bundleLocation = bundleLocation;
 			this.bound = false;
+			configurationStore.locationChanged(this, bundleLocation);
 			try {
 				save();
 			} catch (IOException e) {
@@ -322,7 +350,87 @@ class ConfigurationImpl implements Configuration {
 		storageToken = configurationStore.saveConfiguration(pid, this, this.storageToken);
 	}
 
+	/*
+	 * The following methods apply the changes of a ConfigurationBatchImpl, which persists and
+	 * notifies separately. The caller must hold the lock.
+	 */
+
+	void checkUpdatable() {
+		checkLocked();
+		checkDeleted();
+	}
+
+	/*
+	 * Returns the properties to persist once the given dictionary is applied with applyUpdate,
+	 * and the configuration is bound to bindLocation with applyBind unless it is null.
+	 */
+	Dictionary<String, Object> getUpdatedProperties(ConfigurationDictionary newDictionary, String bindLocation) {
+		checkLocked();
+		checkDeleted();
+		Dictionary<String, Object> properties = newDictionary.copy();
+		fileAutoProperties(properties, this, true, false);
+		properties.put(CHANGE_COUNT, Long.valueOf(changeCount + 1));
+		if (bindLocation != null) {
+			properties.put(ConfigurationAdmin.SERVICE_BUNDLELOCATION, bindLocation);
+			properties.put(LOCATION_BOUND, Boolean.TRUE);
+		} else if (bound) {
+			properties.put(LOCATION_BOUND, Boolean.TRUE);
+		}
+		return properties;
+	}
+
+	void applyBind(String location) {
+		checkLocked();
+		checkDeleted();
+		bundleLocation = location;
+		bound = true;
+		configurationStore.locationChanged(this, location);
+	}
+
+	void applyUpdate(ConfigurationDictionary newDictionary) {
+		checkLocked();
+		checkDeleted();
+		dictionary = newDictionary;
+		changeCount++;
+	}
+
+	Object applyDelete() {
+		checkLocked();
+		checkDeleted();
+		deleted = true;
+		Object deleteToken = storageToken;
+		storageToken = null;
+		return deleteToken;
+	}
+
+	Object getStorageToken() {
+		checkLocked();
+		return storageToken;
+	}
+
+	void setStorageToken(Object storageToken) {
+		checkLocked();
+		this.storageToken = storageToken;
+	}
+
+	void notifyUpdated() {
+		checkLocked();
+		configurationAdminFactory.notifyConfigurationUpdated(this, factoryPid != null);
+	}
+
+	void notifyDeleted() {
+		checkLocked();
+		configurationAdminFactory.notifyConfigurationDeleted(this, factoryPid != null);
+	}
+
 	private void updateDictionary(Dictionary<String, ?> properties) {
+		dictionary = createDictionary(properties);
+	}
+
+	/*
+	 * Copies the given properties into a new dictionary, leaving out the automatic properties.
+	 */
+	static ConfigurationDictionary createDictionary(Dictionary<String, ?> properties) {
 		ConfigurationDictionary newDictionary = new ConfigurationDictionary();
 		Enumeration<String> keys = properties.keys();
 		while (keys.hasMoreElements()) {
@@ -344,8 +452,7 @@ class ConfigurationImpl implements Configuration {
 		newDictionary.remove(Constants.SERVICE_PID);
 		newDictionary.remove(ConfigurationAdmin.SERVICE_FACTORYPID);
 		newDictionary.remove(ConfigurationAdmin.SERVICE_BUNDLELOCATION);
-
-		dictionary = newDictionary;
+		return newDictionary;
 	}
 
 	public boolean equals(Object obj) {
@@ -374,4 +481,84 @@ class ConfigurationImpl implements Configuration {
 			unlock();
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * A read-only view of a configuration dictionary with the automatic properties added,
+	 * used for filter matching. The view must not be used after the configuration is unlocked.
+	 */
+	private static class FilterDictionary extends Dictionary<String, Object> {
+		private final ConfigurationDictionary dictionary;
+		private final String[] autoKeys;
+		private final String[] autoValues;
+
+		FilterDictionary(ConfigurationDictionary dictionary, String pid, String factoryPid, String location) {
+			this.dictionary = dictionary;
+			int size = 1 + (factoryPid == null ? 0 : 1) + (location == null ? 0 : 1);
+			autoKeys = new String[size];
+			autoValues = new String[size];
+			autoKeys[0] = Constants.SERVICE_PID;
+			autoValues[0] = pid;
+			int i = 1;
+			if (factoryPid != null) {
+				autoKeys[i] = ConfigurationAdmin.SERVICE_FACTORYPID;
+				autoValues[i++] = factoryPid;
+			}
+			if (location != null) {
+				autoKeys[i] = ConfigurationAdmin.SERVICE_BUNDLELOCATION;
+				autoValues[i] = location;
+			}
+		}
+
+		public Object get(Object key) {
+			for (int i = 0; i < autoKeys.length; i++) {
+				if (autoKeys[i].equalsIgnoreCase((String) key))
+					return autoValues[i];
+			}
+			return dictionary.get(key);
+		}
+
+		public Enumeration<String> keys() {
+			final Enumeration<String> keys = dictionary.keys();
+			return new Enumeration<String>() {
+				private int index = 0;
+
+				public boolean hasMoreElements() {
+					return index < autoKeys.length || keys.hasMoreElements();
+				}
+
+				public String nextElement() {
+					return index < autoKeys.length ? autoKeys[index++] : keys.nextElement();
+				}
+			};
+		}
+
+		public Enumeration<Object> elements() {
+			final Enumeration<String> keys = keys();
+			return new Enumeration<Object>() {
+				public boolean hasMoreElements() {
+					return keys.hasMoreElements();
+				}
+
+				public Object nextElement() {
+					return get(keys.nextElement());
+				}
+			};
+		}
+
+		public int size() {
+			return autoKeys.length + dictionary.size();
+		}
+
+		public boolean isEmpty() {
+			return false;
+		}
+
+		public Object put(String key, Object value) {
+			throw new UnsupportedOperationException();
+		}
+
+		public Object remove(Object key) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,615 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.cm;
+
+import java.io.*;
+import java.lang.reflect.Array;
+import java.util.*;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+import org.osgi.service.log.LogService;
+
+/**
+ * ConfigurationLog persists all configurations in a single append-only file. Every update
+ * appends a record holding the complete properties of one configuration in a compact typed
+ * encoding, every delete appends a record holding only the pid. The last record of a pid wins.
+ * <p>
+ * Each record is checksummed. A torn or corrupted tail, as left behind by a crash during an
+ * append, is cut off when the log is loaded. Once the records which have been superseded make
+ * up more than half of the file, the live records are copied to a new file which then replaces
+ * the log.
+ */
+class ConfigurationLog {
+
+	static final String LOG_FILE = "configurations.log"; //$NON-NLS-1$
+	private static final String COMPACT_EXT = ".compact"; //$NON-NLS-1$
+
+	private static final int MAGIC = 0x45434d4c; // ECML
+	private static final byte VERSION = 1;
+	private static final int HEADER_LENGTH = 5;
+
+	private static final byte OP_UPDATE = 1;
+	private static final byte OP_DELETE = 2;
+	// op, payload length and checksum
+	private static final int RECORD_OVERHEAD = 9;
+
+	private static final long COMPACT_MIN_LENGTH = 64 * 1024;
+
+	private static final byte TYPE_NULL = 0;
+	private static final byte TYPE_STRING = 1;
+	private static final byte TYPE_INTEGER = 2;
+	private static final byte TYPE_LONG = 3;
+	private static final byte TYPE_FLOAT = 4;
+	private static final byte TYPE_DOUBLE = 5;
+	private static final byte TYPE_BYTE = 6;
+	private static final byte TYPE_SHORT = 7;
+	private static final byte TYPE_CHARACTER = 8;
+	private static final byte TYPE_BOOLEAN = 9;
+	private static final byte TYPE_ARRAY = 10;
+	private static final byte TYPE_PRIMITIVE_ARRAY = 11;
+	private static final byte TYPE_COLLECTION = 12;
+
+	private static final Class<?>[] WRAPPER_TYPES = {null, String.class, Integer.class, Long.class, Float.class, Double.class, Byte.class, Short.class, Character.class, Boolean.class};
+	private static final Class<?>[] PRIMITIVE_TYPES = {null, null, int.class, long.class, float.class, double.class, byte.class, short.class, char.class, boolean.class};
+
+	private final ConfigurationAdminFactory configurationAdminFactory;
+	private final File file;
+	/**
+	 * The offset and length of the record holding the current properties of each pid.
+	 */
+	private final Map<String, long[]> records = new HashMap<String, long[]>();
+	private long length;
+	private long liveLength;
+
+	ConfigurationLog(ConfigurationAdminFactory configurationAdminFactory, File file) {
+		this.configurationAdminFactory = configurationAdminFactory;
+		this.file = file;
+	}
+
+	static boolean exists(File store) {
+		return new File(store, LOG_FILE).exists() || new File(store, LOG_FILE + COMPACT_EXT).exists();
+	}
+
+	/**
+	 * Reads the log, recovering from an interrupted append or compaction, and returns the
+	 * properties of all configurations it holds by pid.
+	 */
+	synchronized Map<String, Dictionary<String, Object>> load() throws IOException {
+		File compacted = new File(file.getPath() + COMPACT_EXT);
+		if (compacted.exists()) {
+			// a compaction is only complete once it has replaced the log
+			if (file.exists())
+				compacted.delete();
+			else if (!compacted.renameTo(file))
+				throw new IOException("Could not restore " + compacted); //$NON-NLS-1$
+		}
+
+		records.clear();
+		length = HEADER_LENGTH;
+		liveLength = HEADER_LENGTH;
+		Map<String, Dictionary<String, Object>> result = new LinkedHashMap<String, Dictionary<String, Object>>();
+		if (!file.exists() || file.length() < HEADER_LENGTH) {
+			writeHeader(file);
+			return result;
+		}
+
+		long fileLength = file.length();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readByte() != VERSION)
+				throw new IOException("Unsupported configuration log format: " + file); //$NON-NLS-1$
+			CRC32 crc = new CRC32();
+			while (true) {
+				int op = in.read();
+				if (op == -1)
+					break;
+				long remaining = fileLength - length - RECORD_OVERHEAD;
+				if ((op != OP_UPDATE && op != OP_DELETE) || remaining < 0)
+					break;
+				int payloadLength = in.readInt();
+				if (payloadLength < 0 || payloadLength > remaining)
+					break;
+				byte[] payload = new byte[payloadLength];
+				in.readFully(payload);
+				crc.reset();
+				crc.update(op);
+				crc.update(payload);
+				if (in.readInt() != (int) crc.getValue())
+					break;
+				long recordLength = payloadLength + RECORD_OVERHEAD;
+				replay(op, payload, length, recordLength, result);
+				length += recordLength;
+			}
+		} catch (EOFException e) {
+			// a torn record, the log ends with the previous one
+		} finally {
+			in.close();
+		}
+
+		if (length < fileLength) {
+			configurationAdminFactory.log(LogService.LOG_WARNING, "{Configuration Admin} discarding " + (fileLength - length) + " bytes of incomplete updates at the end of " + file); //$NON-NLS-1$ //$NON-NLS-2$
+			RandomAccessFile raf = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+			try {
+				raf.setLength(length);
+			} finally {
+				raf.close();
+			}
+		}
+		compactIfNeeded();
+		return result;
+	}
+
+	private void replay(int op, byte[] payload, long offset, long recordLength, Map<String, Dictionary<String, Object>> result) {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		String pid = null;
+		try {
+			pid = readString(in);
+			if (op == OP_DELETE) {
+				result.remove(pid);
+				removeRecord(pid);
+				return;
+			}
+			result.put(pid, readDictionary(in));
+			putRecord(pid, offset, recordLength);
+		} catch (IOException e) {
+			String message = e.getMessage();
+			configurationAdminFactory.log(LogService.LOG_ERROR, "{Configuration Admin - pid = " + pid + "} could not be restored." + ((message == null) ? "" : " " + message)); //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		}
+	}
+
+	synchronized boolean contains(String pid) {
+		return records.containsKey(pid);
+	}
+
+	synchronized void update(String pid, Dictionary<String, Object> properties) throws IOException {
+		byte[] payload = encode(pid, properties);
+		long offset = append(new byte[] {OP_UPDATE}, new byte[][] {payload})[0];
+		putRecord(pid, offset, payload.length + RECORD_OVERHEAD);
+		compactIfNeeded();
+	}
+
+	synchronized void delete(String pid) throws IOException {
+		if (!records.containsKey(pid))
+			return;
+		append(new byte[] {OP_DELETE}, new byte[][] {encode(pid, null)});
+		removeRecord(pid);
+		compactIfNeeded();
+	}
+
+	/**
+	 * Appends the given updates and deletes with a single sync.
+	 */
+	synchronized void update(Map<String, Dictionary<String, Object>> updates, Collection<String> deletes) throws IOException {
+		List<String> pids = new ArrayList<String>(updates.size() + deletes.size());
+		for (Iterator<Map.Entry<String, Dictionary<String, Object>>> it = updates.entrySet().iterator(); it.hasNext();)
+			pids.add(it.next().getKey());
+		for (Iterator<String> it = deletes.iterator(); it.hasNext();) {
+			String pid = it.next();
+			if (records.containsKey(pid) && !updates.containsKey(pid))
+				pids.add(pid);
+		}
+		if (pids.isEmpty())
+			return;
+		byte[] ops = new byte[pids.size()];
+		byte[][] payloads = new byte[pids.size()][];
+		for (int i = 0; i < ops.length; i++) {
+			String pid = pids.get(i);
+			Dictionary<String, Object> properties = i < updates.size() ? updates.get(pid) : null;
+			ops[i] = properties != null ? OP_UPDATE : OP_DELETE;
+			payloads[i] = encode(pid, properties);
+		}
+		long[] offsets = append(ops, payloads);
+		for (int i = 0; i < ops.length; i++) {
+			if (ops[i] == OP_UPDATE)
+				putRecord(pids.get(i), offsets[i], payloads[i].length + RECORD_OVERHEAD);
+			else
+				removeRecord(pids.get(i));
+		}
+		compactIfNeeded();
+	}
+
+	/*
+	 * Returns the payload of an update record, or of a delete record if properties is null.
+	 */
+	private static byte[] encode(String pid, Dictionary<String, Object> properties) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		writeString(out, pid);
+		if (properties != null)
+			writeDictionary(out, properties);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Deletes the log, used once its configurations have been migrated to another store.
+	 */
+	synchronized void deleteFiles() {
+		records.clear();
+		new File(file.getPath() + COMPACT_EXT).delete();
+		file.delete();
+	}
+
+	private void putRecord(String pid, long offset, long recordLength) {
+		long[] previous = records.put(pid, new long[] {offset, recordLength});
+		liveLength += recordLength;
+		if (previous != null)
+			liveLength -= previous[1];
+	}
+
+	private void removeRecord(String pid) {
+		long[] previous = records.remove(pid);
+		if (previous != null)
+			liveLength -= previous[1];
+	}
+
+	/*
+	 * Appends a record for each op and payload and syncs once. Returns the offsets of the records.
+	 */
+	private long[] append(byte[] ops, byte[][] payloads) throws IOException {
+		long start = length;
+		long[] offsets = new long[ops.length];
+		long offset = start;
+		FileOutputStream fos = new FileOutputStream(file, true);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+			CRC32 crc = new CRC32();
+			for (int i = 0; i < ops.length; i++) {
+				crc.reset();
+				crc.update(ops[i]);
+				crc.update(payloads[i]);
+				out.writeByte(ops[i]);
+				out.writeInt(payloads[i].length);
+				out.write(payloads[i]);
+				out.writeInt((int) crc.getValue());
+				offsets[i] = offset;
+				offset += payloads[i].length + RECORD_OVERHEAD;
+			}
+			out.flush();
+			fos.getFD().sync();
+		} catch (IOException e) {
+			fos.close();
+			// don't leave partial records behind, later appends would be lost with them
+			truncate(start);
+			throw e;
+		}
+		fos.close();
+		length = offset;
+		return offsets;
+	}
+
+	private void truncate(long newLength) {
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+			try {
+				raf.setLength(newLength);
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			// the torn record is discarded when the log is loaded
+		}
+	}
+
+	private void compactIfNeeded() {
+		if (length < COMPACT_MIN_LENGTH || length < 2 * liveLength)
+			return;
+		try {
+			compact();
+		} catch (IOException e) {
+			configurationAdminFactory.log(LogService.LOG_WARNING, "{Configuration Admin} could not compact " + file, e); //$NON-NLS-1$
+		}
+	}
+
+	private void compact() throws IOException {
+		File compacted = new File(file.getPath() + COMPACT_EXT);
+		Map<String, long[]> newRecords = new HashMap<String, long[]>();
+		long newLength = HEADER_LENGTH;
+		RandomAccessFile in = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+		FileOutputStream fos = new FileOutputStream(compacted);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			byte[] buffer = new byte[1024];
+			for (Entry<String, long[]> entry : records.entrySet()) {
+				long[] record = entry.getValue();
+				int recordLength = (int) record[1];
+				if (buffer.length < recordLength)
+					buffer = new byte[recordLength];
+				in.seek(record[0]);
+				in.readFully(buffer, 0, recordLength);
+				out.write(buffer, 0, recordLength);
+				newRecords.put(entry.getKey(), new long[] {newLength, recordLength});
+				newLength += recordLength;
+			}
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			fos.close();
+			in.close();
+		}
+		if (!compacted.renameTo(file)) {
+			// some platforms cannot rename over an existing file, load() completes an interrupted swap
+			if (!file.delete() || !compacted.renameTo(file)) {
+				throw new IOException("Could not replace " + file); //$NON-NLS-1$
+			}
+		}
+		records.clear();
+		records.putAll(newRecords);
+		length = newLength;
+		liveLength = newLength;
+	}
+
+	private static void writeHeader(File file) throws IOException {
+		FileOutputStream fos = new FileOutputStream(file);
+		try {
+			DataOutputStream out = new DataOutputStream(fos);
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			fos.close();
+		}
+	}
+
+	static void writeDictionary(DataOutputStream out, Dictionary<String, Object> properties) throws IOException {
+		out.writeInt(properties.size());
+		for (Enumeration<String> keys = properties.keys(); keys.hasMoreElements();) {
+			String key = keys.nextElement();
+			writeString(out, key);
+			writeValue(out, properties.get(key));
+		}
+	}
+
+	static ConfigurationDictionary readDictionary(DataInputStream in) throws IOException {
+		ConfigurationDictionary result = new ConfigurationDictionary();
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			String key = readString(in);
+			// the values have been validated when they were set
+			result.configurationProperties.put(key, readValue(in));
+		}
+		return result;
+	}
+
+	private static void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(TYPE_NULL);
+			return;
+		}
+		Class<?> clazz = value.getClass();
+		if (clazz.isArray()) {
+			Class<?> componentType = clazz.getComponentType();
+			int arrayLength = Array.getLength(value);
+			if (componentType.isPrimitive()) {
+				byte type = getType(componentType, PRIMITIVE_TYPES);
+				out.writeByte(TYPE_PRIMITIVE_ARRAY);
+				out.writeByte(type);
+				out.writeInt(arrayLength);
+				for (int i = 0; i < arrayLength; i++)
+					writeSimple(out, type, Array.get(value, i));
+			} else {
+				out.writeByte(TYPE_ARRAY);
+				out.writeByte(getType(componentType, WRAPPER_TYPES));
+				out.writeInt(arrayLength);
+				for (int i = 0; i < arrayLength; i++)
+					writeValue(out, Array.get(value, i));
+			}
+			return;
+		}
+		if (value instanceof Collection) {
+			Collection<?> collection = (Collection<?>) value;
+			out.writeByte(TYPE_COLLECTION);
+			writeString(out, clazz.getName());
+			out.writeInt(collection.size());
+			for (Object element : collection)
+				writeValue(out, element);
+			return;
+		}
+		byte type = getType(clazz, WRAPPER_TYPES);
+		out.writeByte(type);
+		writeSimple(out, type, value);
+	}
+
+	private static Object readValue(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+			case TYPE_NULL :
+				return null;
+			case TYPE_ARRAY : {
+				Class<?> componentType = getClass(in.readByte(), WRAPPER_TYPES);
+				int arrayLength = readLength(in);
+				Object result = Array.newInstance(componentType, arrayLength);
+				for (int i = 0; i < arrayLength; i++)
+					Array.set(result, i, readValue(in));
+				return result;
+			}
+			case TYPE_PRIMITIVE_ARRAY : {
+				byte componentType = in.readByte();
+				int arrayLength = readLength(in);
+				Object result = Array.newInstance(getClass(componentType, PRIMITIVE_TYPES), arrayLength);
+				for (int i = 0; i < arrayLength; i++)
+					Array.set(result, i, readSimple(in, componentType));
+				return result;
+			}
+			case TYPE_COLLECTION : {
+				Collection<Object> result = createCollection(readString(in));
+				int size = readLength(in);
+				for (int i = 0; i < size; i++)
+					result.add(readValue(in));
+				return result;
+			}
+			default :
+				return readSimple(in, type);
+		}
+	}
+
+	private static void writeSimple(DataOutputStream out, byte type, Object value) throws IOException {
+		switch (type) {
+			case TYPE_STRING :
+				writeString(out, (String) value);
+				break;
+			case TYPE_INTEGER :
+				out.writeInt(((Integer) value).intValue());
+				break;
+			case TYPE_LONG :
+				out.writeLong(((Long) value).longValue());
+				break;
+			case TYPE_FLOAT :
+				out.writeFloat(((Float) value).floatValue());
+				break;
+			case TYPE_DOUBLE :
+				out.writeDouble(((Double) value).doubleValue());
+				break;
+			case TYPE_BYTE :
+				out.writeByte(((Byte) value).byteValue());
+				break;
+			case TYPE_SHORT :
+				out.writeShort(((Short) value).shortValue());
+				break;
+			case TYPE_CHARACTER :
+				out.writeChar(((Character) value).charValue());
+				break;
+			case TYPE_BOOLEAN :
+				out.writeBoolean(((Boolean) value).booleanValue());
+				break;
+			default :
+				throw new IOException("Unsupported type " + type); //$NON-NLS-1$
+		}
+	}
+
+	private static Object readSimple(DataInputStream in, byte type) throws IOException {
+		switch (type) {
+			case TYPE_STRING :
+				return readString(in);
+			case TYPE_INTEGER :
+				return Integer.valueOf(in.readInt());
+			case TYPE_LONG :
+				return Long.valueOf(in.readLong());
+			case TYPE_FLOAT :
+				return Float.valueOf(in.readFloat());
+			case TYPE_DOUBLE :
+				return Double.valueOf(in.readDouble());
+			case TYPE_BYTE :
+				return Byte.valueOf(in.readByte());
+			case TYPE_SHORT :
+				return Short.valueOf(in.readShort());
+			case TYPE_CHARACTER :
+				return Character.valueOf(in.readChar());
+			case TYPE_BOOLEAN :
+				return Boolean.valueOf(in.readBoolean());
+			default :
+				throw new IOException("Unsupported type " + type); //$NON-NLS-1$
+		}
+	}
+
+	private static byte getType(Class<?> clazz, Class<?>[] types) throws IOException {
+		for (byte i = 1; i < types.length; i++) {
+			if (types[i] == clazz)
+				return i;
+		}
+		throw new IOException("Unsupported type " + clazz.getName()); //$NON-NLS-1$
+	}
+
+	private static Class<?> getClass(byte type, Class<?>[] types) throws IOException {
+		if (type <= 0 || type >= types.length || types[type] == null)
+			throw new IOException("Unsupported type " + type); //$NON-NLS-1$
+		return types[type];
+	}
+
+	/*
+	 * Collections are restored with their original class if it can be instantiated,
+	 * otherwise as an ArrayList.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Collection<Object> createCollection(String className) {
+		try {
+			Class<?> clazz = Class.forName(className);
+			if (Collection.class.isAssignableFrom(clazz))
+				return (Collection<Object>) clazz.newInstance();
+		} catch (Exception e) {
+			// fall through
+		} catch (LinkageError e) {
+			// fall through
+		}
+		return new ArrayList<Object>();
+	}
+
+	private static int readLength(DataInputStream in) throws IOException {
+		int result = in.readInt();
+		// every element takes at least one byte
+		if (result < 0 || result > in.available())
+			throw new IOException("Invalid length " + result); //$NON-NLS-1$
+		return result;
+	}
+
+	/*
+	 * Strings are written in modified UTF-8 like DataOutput#writeUTF, but with an int
+	 * length so that they are not limited to 64K.
+	 */
+	static void writeString(DataOutputStream out, String string) throws IOException {
+		int stringLength = string.length();
+		int utfLength = 0;
+		for (int i = 0; i < stringLength; i++) {
+			char c = string.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F)
+				utfLength++;
+			else if (c <= 0x07FF)
+				utfLength += 2;
+			else
+				utfLength += 3;
+		}
+		out.writeInt(utfLength);
+		if (utfLength == stringLength) {
+			out.writeBytes(string);
+			return;
+		}
+		for (int i = 0; i < stringLength; i++) {
+			char c = string.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F) {
+				out.write(c);
+			} else if (c <= 0x07FF) {
+				out.write(0xC0 | ((c >> 6) & 0x1F));
+				out.write(0x80 | (c & 0x3F));
+			} else {
+				out.write(0xE0 | ((c >> 12) & 0x0F));
+				out.write(0x80 | ((c >> 6) & 0x3F));
+				out.write(0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		int utfLength = readLength(in);
+		byte[] bytes = new byte[utfLength];
+		in.readFully(bytes);
+		char[] chars = new char[utfLength];
+		int count = 0;
+		for (int i = 0; i < utfLength;) {
+			int b = bytes[i] & 0xFF;
+			if (b < 0x80) {
+				chars[count++] = (char) b;
+				i++;
+			} else if ((b & 0xE0) == 0xC0 && i + 1 < utfLength) {
+				chars[count++] = (char) (((b & 0x1F) << 6) | (bytes[i + 1] & 0x3F));
+				i += 2;
+			} else if ((b & 0xF0) == 0xE0 && i + 2 < utfLength) {
+				chars[count++] = (char) (((b & 0x0F) << 12) | ((bytes[i + 1] & 0x3F) << 6) | (bytes[i + 2] & 0x3F));
+				i += 3;
+			} else {
+				throw new IOException("Malformed string"); //$NON-NLS-1$
+			}
+		}
+		return new String(chars, 0, count);
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2015 Cognos Incorporated, IBM Corporation and others.
+ * Copyright (c) 2005, 2016 Cognos Incorporated, IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -20,84 +20,200 @@ import org.osgi.service.cm.ConfigurationAdmin;
 import org.osgi.service.log.LogService;
 
 /**
- * ConfigurationStore manages all active configurations along with persistence. The current
- * implementation uses a filestore and serialization of the configuration dictionaries to files
- * identified by their pid. Persistence details are in the constructor, saveConfiguration, and
- * deleteConfiguration and can be factored out separately if required.
+ * ConfigurationStore manages all active configurations along with persistence. By default
+ * the configuration dictionaries are serialized to files identified by their pid. If the
+ * {@value #PROP_STORE_FORMAT} property is set to {@value #STORE_FORMAT_LOG} all configurations
+ * are kept in a single {@link ConfigurationLog} instead. Configurations persisted in the other
+ * format are migrated on startup. Persistence details are in the constructor, saveConfiguration,
+ * and deleteConfiguration and can be factored out separately if required.
  */
 class ConfigurationStore {
 
+	static final String PROP_STORE_FORMAT = "equinox.cm.store.format"; //$NON-NLS-1$
+	static final String STORE_FORMAT_LOG = "log"; //$NON-NLS-1$
+
 	private final ConfigurationAdminFactory configurationAdminFactory;
 	private static final String STORE_DIR = "store"; //$NON-NLS-1$
 	private static final String DATA_PRE = "data"; //$NON-NLS-1$
 	private static final String CFG_EXT = ".cfg"; //$NON-NLS-1$
 	private final Map<String, ConfigurationImpl> configurations = new HashMap<String, ConfigurationImpl>();
+	// secondary indexes used to answer lookups without visiting every configuration
+	private final Map<String, Set<ConfigurationImpl>> factoryPidIndex = new HashMap<String, Set<ConfigurationImpl>>();
+	// the location index has its own lock, since configurations update it while holding their
+	// own lock and the store's lock is taken before configuration locks elsewhere
+	private final Object locationLock = new Object();
+	private final Map<String, Set<ConfigurationImpl>> locationIndex = new HashMap<String, Set<ConfigurationImpl>>();
+	// the location each stored configuration is indexed under, possibly null
+	private final Map<ConfigurationImpl, String> indexedLocations = new IdentityHashMap<ConfigurationImpl, String>();
 	private int createdPidCount = 0;
 	private final File store;
+	private final ConfigurationLog log;
 
 	public ConfigurationStore(ConfigurationAdminFactory configurationAdminFactory, BundleContext context) {
 		this.configurationAdminFactory = configurationAdminFactory;
 		store = context.getDataFile(STORE_DIR);
-		if (store == null)
+		if (store == null) {
+			log = null;
 			return; // no persistent store
+		}
 
 		store.mkdir();
+		if (STORE_FORMAT_LOG.equals(context.getProperty(PROP_STORE_FORMAT))) {
+			log = openLog(context);
+			if (log != null)
+				return;
+			// fall back to the configuration files
+		} else {
+			log = null;
+		}
+
 		File[] configurationFiles = store.listFiles();
 		for (int i = 0; i < configurationFiles.length; ++i) {
 			String configurationFileName = configurationFiles[i].getName();
 			if (!configurationFileName.endsWith(CFG_EXT))
 				continue;
+			Dictionary<String, Object> dictionary = readConfigurationFile(configurationFiles[i]);
+			if (dictionary != null)
+				restoreConfiguration(context, dictionary, configurationFiles[i]);
+		}
 
-			InputStream ris = null;
-			ObjectInputStream ois = null;
-			boolean deleteFile = false;
-			try {
-				ris = new ReliableFileInputStream(configurationFiles[i]);
-				ois = new ObjectInputStream(ris);
-				@SuppressWarnings("unchecked")
-				Dictionary<String, Object> dictionary = (Dictionary<String, Object>) ois.readObject();
-				// before adding, make sure the bundle exists if the location is set
-				String location = (String) dictionary.get(ConfigurationAdmin.SERVICE_BUNDLELOCATION);
-				if (location != null && context.getBundle(location) == null) {
-					Boolean boundProp = (Boolean) dictionary.remove(ConfigurationImpl.LOCATION_BOUND);
-					if (boundProp != null && boundProp.booleanValue()) {
-						dictionary.remove(ConfigurationAdmin.SERVICE_BUNDLELOCATION);
-					}
+		if (ConfigurationLog.exists(store))
+			migrateFromLog(context);
+	}
+
+	/*
+	 * Reads the configuration log and migrates any configuration files into it.
+	 * Returns null if the log cannot be used.
+	 */
+	private ConfigurationLog openLog(BundleContext context) {
+		ConfigurationLog configurationLog = new ConfigurationLog(configurationAdminFactory, new File(store, ConfigurationLog.LOG_FILE));
+		Map<String, Dictionary<String, Object>> dictionaries;
+		try {
+			dictionaries = configurationLog.load();
+		} catch (IOException e) {
+			configurationAdminFactory.log(LogService.LOG_ERROR, "{Configuration Admin} could not read the configuration log, using the configuration files instead.", e); //$NON-NLS-1$
+			return null;
+		}
+		for (Iterator<Dictionary<String, Object>> it = dictionaries.values().iterator(); it.hasNext();) {
+			Dictionary<String, Object> dictionary = it.next();
+			restoreConfiguration(context, dictionary, dictionary.get(Constants.SERVICE_PID));
+		}
+
+		File[] configurationFiles = store.listFiles();
+		for (int i = 0; i < configurationFiles.length; ++i) {
+			String configurationFileName = configurationFiles[i].getName();
+			if (!configurationFileName.endsWith(CFG_EXT))
+				continue;
+			Dictionary<String, Object> dictionary = readConfigurationFile(configurationFiles[i]);
+			if (dictionary == null)
+				continue;
+			String pid = (String) dictionary.get(Constants.SERVICE_PID);
+			// the file may be left over from an interrupted migration
+			if (!configurationLog.contains(pid)) {
+				try {
+					configurationLog.update(pid, dictionary);
+				} catch (IOException e) {
+					configurationAdminFactory.log(LogService.LOG_ERROR, "{Configuration Admin - pid = " + pid + "} could not be migrated.", e); //$NON-NLS-1$ //$NON-NLS-2$
+					continue;
 				}
-				ConfigurationImpl config = new ConfigurationImpl(configurationAdminFactory, this, dictionary, configurationFiles[i]);
-				configurations.put(config.getPid(), config);
+				restoreConfiguration(context, dictionary, pid);
+			}
+			deleteConfigurationFile(configurationFiles[i]);
+		}
+		return configurationLog;
+	}
+
+	/*
+	 * Writes the configurations held by a configuration log to configuration files and
+	 * deletes the log.
+	 */
+	private void migrateFromLog(BundleContext context) {
+		ConfigurationLog configurationLog = new ConfigurationLog(configurationAdminFactory, new File(store, ConfigurationLog.LOG_FILE));
+		Map<String, Dictionary<String, Object>> dictionaries;
+		try {
+			dictionaries = configurationLog.load();
+		} catch (IOException e) {
+			configurationAdminFactory.log(LogService.LOG_ERROR, "{Configuration Admin} could not read the configuration log.", e); //$NON-NLS-1$
+			return;
+		}
+		boolean migrated = true;
+		for (Iterator<Dictionary<String, Object>> it = dictionaries.values().iterator(); it.hasNext();) {
+			Dictionary<String, Object> dictionary = it.next();
+			String pid = (String) dictionary.get(Constants.SERVICE_PID);
+			// a configuration file is only left over from an interrupted migration
+			if (configurations.containsKey(pid))
+				continue;
+			try {
+				File configFile = File.createTempFile(DATA_PRE, CFG_EXT, store);
+				writeConfigurationFile(configFile, dictionary);
+				restoreConfiguration(context, dictionary, configFile);
 			} catch (IOException e) {
-				String message = e.getMessage();
-				String pid = configurationFileName.substring(0, configurationFileName.length() - 4);
-				String errorMessage = "{Configuration Admin - pid = " + pid + "} could not be restored." + ((message == null) ? "" : " " + message); //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
-				configurationAdminFactory.log(LogService.LOG_ERROR, errorMessage);
-				deleteFile = true;
-			} catch (ClassNotFoundException e) {
-				configurationAdminFactory.log(LogService.LOG_ERROR, e.getMessage());
-			} finally {
-				if (ois != null) {
-					try {
-						ois.close();
-					} catch (IOException e) {
-						// ignore 
-					}
+				configurationAdminFactory.log(LogService.LOG_ERROR, "{Configuration Admin - pid = " + pid + "} could not be migrated.", e); //$NON-NLS-1$ //$NON-NLS-2$
+				migrated = false;
+			}
+		}
+		if (migrated)
+			configurationLog.deleteFiles();
+	}
+
+	private Dictionary<String, Object> readConfigurationFile(File configurationFile) {
+		InputStream ris = null;
+		ObjectInputStream ois = null;
+		boolean deleteFile = false;
+		try {
+			ris = new ReliableFileInputStream(configurationFile);
+			ois = new ObjectInputStream(ris);
+			@SuppressWarnings("unchecked")
+			Dictionary<String, Object> dictionary = (Dictionary<String, Object>) ois.readObject();
+			return dictionary;
+		} catch (IOException e) {
+			String message = e.getMessage();
+			String configurationFileName = configurationFile.getName();
+			String pid = configurationFileName.substring(0, configurationFileName.length() - 4);
+			String errorMessage = "{Configuration Admin - pid = " + pid + "} could not be restored." + ((message == null) ? "" : " " + message); //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			configurationAdminFactory.log(LogService.LOG_ERROR, errorMessage);
+			deleteFile = true;
+		} catch (ClassNotFoundException e) {
+			configurationAdminFactory.log(LogService.LOG_ERROR, e.getMessage());
+		} finally {
+			if (ois != null) {
+				try {
+					ois.close();
+				} catch (IOException e) {
+					// ignore 
 				}
-				if (ris != null) {
-					try {
-						ris.close();
-					} catch (IOException e) {
-						// ignore 
-					}
+			}
+			if (ris != null) {
+				try {
+					ris.close();
+				} catch (IOException e) {
+					// ignore 
 				}
 			}
 			if (deleteFile) {
-				ReliableFile.delete(configurationFiles[i]);
-				configurationFiles[i].delete();
+				ReliableFile.delete(configurationFile);
+				configurationFile.delete();
+			}
+		}
+		return null;
+	}
+
+	private void restoreConfiguration(BundleContext context, Dictionary<String, Object> dictionary, Object token) {
+		// before adding, make sure the bundle exists if the location is set
+		String location = (String) dictionary.get(ConfigurationAdmin.SERVICE_BUNDLELOCATION);
+		if (location != null && context.getBundle(location) == null) {
+			Boolean boundProp = (Boolean) dictionary.remove(ConfigurationImpl.LOCATION_BOUND);
+			if (boundProp != null && boundProp.booleanValue()) {
+				dictionary.remove(ConfigurationAdmin.SERVICE_BUNDLELOCATION);
 			}
 		}
+		ConfigurationImpl config = new ConfigurationImpl(configurationAdminFactory, this, dictionary, token);
+		synchronized (this) {
+			addConfiguration(config, (String) dictionary.get(ConfigurationAdmin.SERVICE_BUNDLELOCATION));
+		}
 	}
 
-	public Object saveConfiguration(String pid, ConfigurationImpl config, final Object token) throws IOException {
+	public Object saveConfiguration(final String pid, ConfigurationImpl config, final Object token) throws IOException {
 		if (store == null)
 			return null; // no persistent store
 
@@ -106,6 +222,18 @@ class ConfigurationStore {
 		if (configProperties == null) {
 			return null;
 		}
+		if (log != null) {
+			try {
+				return AccessController.doPrivileged(new PrivilegedExceptionAction<String>() {
+					public String run() throws Exception {
+						log.update(pid, configProperties);
+						return pid;
+					}
+				});
+			} catch (PrivilegedActionException e) {
+				throw (IOException) e.getException();
+			}
+		}
 		try {
 			final File storeCopy = store;
 			return AccessController.doPrivileged(new PrivilegedExceptionAction<File>() {
@@ -146,18 +274,100 @@ class ConfigurationStore {
 		}
 	}
 
-	public synchronized void removeConfiguration(String pid, final Object token) {
-		configurations.remove(pid);
+	/*
+	 * Persists the changes of a batch without changing anything in memory, and returns the new
+	 * storage tokens of the updated configurations. With a configuration log all changes are
+	 * appended with a single sync, and a failed append is truncated again. Otherwise every
+	 * updated configuration is written to a new file, and the files it replaces and the files
+	 * of the deleted configurations are only deleted once all writes have succeeded. Either way
+	 * nothing has been persisted if an IOException is thrown.
+	 */
+	Object[] saveConfigurations(final String[] pids, final Dictionary<String, Object>[] properties, final Object[] tokens, final String[] deletedPids, final Object[] deleteTokens) throws IOException {
+		if (store == null)
+			return new Object[pids.length]; // no persistent store
+		try {
+			return AccessController.doPrivileged(new PrivilegedExceptionAction<Object[]>() {
+				public Object[] run() throws Exception {
+					if (log != null)
+						return appendConfigurations(pids, properties, deletedPids, deleteTokens);
+					return writeConfigurations(properties, tokens, deleteTokens);
+				}
+			});
+		} catch (PrivilegedActionException e) {
+			throw (IOException) e.getException();
+		}
+	}
+
+	private Object[] appendConfigurations(String[] pids, Dictionary<String, Object>[] properties, String[] deletedPids, Object[] deleteTokens) throws IOException {
+		Map<String, Dictionary<String, Object>> updates = new LinkedHashMap<String, Dictionary<String, Object>>();
+		for (int i = 0; i < pids.length; i++)
+			updates.put(pids[i], properties[i]);
+		List<String> deletes = new ArrayList<String>();
+		for (int i = 0; i < deletedPids.length; i++) {
+			if (deleteTokens[i] != null)
+				deletes.add(deletedPids[i]);
+		}
+		log.update(updates, deletes);
+		return pids.clone();
+	}
+
+	private Object[] writeConfigurations(Dictionary<String, Object>[] properties, Object[] tokens, Object[] deleteTokens) throws IOException {
+		File[] files = new File[properties.length];
+		try {
+			for (int i = 0; i < properties.length; i++) {
+				files[i] = File.createTempFile(DATA_PRE, CFG_EXT, store);
+				writeConfigurationFile(files[i], properties[i]);
+			}
+		} catch (IOException e) {
+			for (int i = 0; i < files.length && files[i] != null; i++)
+				deleteConfigurationFile(files[i]);
+			throw e;
+		}
+		// a crash from here on may leave both the old and the new file of a configuration behind
+		for (int i = 0; i < tokens.length; i++) {
+			if (tokens[i] != null)
+				deleteConfigurationFile((File) tokens[i]);
+		}
+		for (int i = 0; i < deleteTokens.length; i++) {
+			if (deleteTokens[i] != null)
+				deleteConfigurationFile((File) deleteTokens[i]);
+		}
+		return files;
+	}
+
+	public synchronized void removeConfiguration(final String pid, final Object token) {
+		forgetConfiguration(pid);
 		if (store == null || token == null)
 			return; // no persistent store
 		AccessController.doPrivileged(new PrivilegedAction<Object>() {
 			public Object run() {
-				deleteConfigurationFile((File) token);
+				if (log != null)
+					deleteLogRecord(pid);
+				else
+					deleteConfigurationFile((File) token);
 				return null;
 			}
 		});
 	}
 
+	synchronized void forgetConfiguration(String pid) {
+		ConfigurationImpl config = configurations.remove(pid);
+		if (config != null) {
+			removeFromIndex(factoryPidIndex, config.getFactoryPid(false), config);
+			synchronized (locationLock) {
+				removeFromIndex(locationIndex, indexedLocations.remove(config), config);
+			}
+		}
+	}
+
+	void deleteLogRecord(String pid) {
+		try {
+			log.delete(pid);
+		} catch (IOException e) {
+			configurationAdminFactory.log(LogService.LOG_ERROR, "{Configuration Admin - pid = " + pid + "} could not be deleted.", e); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
 	void deleteConfigurationFile(File configFile) {
 		ReliableFile.delete(configFile);
 		configFile.delete();
@@ -167,7 +377,7 @@ class ConfigurationStore {
 		ConfigurationImpl config = configurations.get(pid);
 		if (config == null) {
 			config = new ConfigurationImpl(configurationAdminFactory, this, null, pid, location, bind);
-			configurations.put(pid, config);
+			addConfiguration(config, location);
 		}
 		return config;
 	}
@@ -175,34 +385,80 @@ class ConfigurationStore {
 	public synchronized ConfigurationImpl createFactoryConfiguration(String factoryPid, String location, boolean bind) {
 		String pid = factoryPid + "-" + new Date().getTime() + "-" + createdPidCount++; //$NON-NLS-1$ //$NON-NLS-2$
 		ConfigurationImpl config = new ConfigurationImpl(configurationAdminFactory, this, factoryPid, pid, location, bind);
-		configurations.put(pid, config);
+		addConfiguration(config, location);
 		return config;
 	}
 
+	/*
+	 * Must be called while holding this store's lock. The location is passed in rather than
+	 * read from the configuration so that the configuration's lock is never acquired while
+	 * holding the store's lock.
+	 */
+	private void addConfiguration(ConfigurationImpl config, String location) {
+		configurations.put(config.getPid(false), config);
+		addToIndex(factoryPidIndex, config.getFactoryPid(false), config);
+		synchronized (locationLock) {
+			indexedLocations.put(config, location);
+			addToIndex(locationIndex, location, config);
+		}
+	}
+
+	/*
+	 * Called by a configuration after its bundle location has changed, while holding the
+	 * configuration's lock. Only takes the location lock, never this store's lock, which
+	 * the trackers hold while locking configurations.
+	 */
+	void locationChanged(ConfigurationImpl config, String location) {
+		synchronized (locationLock) {
+			if (!indexedLocations.containsKey(config))
+				return; // already removed
+			removeFromIndex(locationIndex, indexedLocations.put(config, location), config);
+			addToIndex(locationIndex, location, config);
+		}
+	}
+
+	private static void addToIndex(Map<String, Set<ConfigurationImpl>> index, String key, ConfigurationImpl config) {
+		if (key == null)
+			return;
+		Set<ConfigurationImpl> configs = index.get(key);
+		if (configs == null) {
+			configs = new HashSet<ConfigurationImpl>(4);
+			index.put(key, configs);
+		}
+		configs.add(config);
+	}
+
+	private static void removeFromIndex(Map<String, Set<ConfigurationImpl>> index, String key, ConfigurationImpl config) {
+		if (key == null)
+			return;
+		Set<ConfigurationImpl> configs = index.get(key);
+		if (configs != null && configs.remove(config) && configs.isEmpty())
+			index.remove(key);
+	}
+
 	public synchronized ConfigurationImpl findConfiguration(String pid) {
 		return configurations.get(pid);
 	}
 
 	public synchronized ConfigurationImpl[] getFactoryConfigurations(String factoryPid) {
-		List<ConfigurationImpl> resultList = new ArrayList<ConfigurationImpl>();
-		for (Iterator<ConfigurationImpl> it = configurations.values().iterator(); it.hasNext();) {
-			ConfigurationImpl config = it.next();
-			String otherFactoryPid = config.getFactoryPid();
-			if (otherFactoryPid != null && otherFactoryPid.equals(factoryPid))
-				resultList.add(config);
-		}
-		return resultList.toArray(new ConfigurationImpl[resultList.size()]);
+		Set<ConfigurationImpl> configs = factoryPidIndex.get(factoryPid);
+		if (configs == null)
+			return new ConfigurationImpl[0];
+		ConfigurationImpl[] result = configs.toArray(new ConfigurationImpl[configs.size()]);
+		// callers lock all of them
+		Arrays.sort(result, ConfigurationImpl.LOCK_ORDER);
+		return result;
 	}
 
 	public ConfigurationImpl[] listConfigurations(Filter filter) {
-		List<ConfigurationImpl> resultList = new ArrayList<ConfigurationImpl>();
+		List<ConfigurationImpl> resultList;
 		synchronized (this) {
-			resultList.addAll(configurations.values());
+			Collection<ConfigurationImpl> candidates = getCandidates(filter.toString());
+			resultList = new ArrayList<ConfigurationImpl>(candidates == null ? configurations.values() : candidates);
 		}
 		for (Iterator<ConfigurationImpl> it = resultList.iterator(); it.hasNext();) {
 			ConfigurationImpl config = it.next();
-			Dictionary<String, Object> properties = config.getAllProperties(false);
-			if (properties == null || !filter.match(properties)) {
+			if (!config.matches(filter)) {
 				it.remove();
 			}
 		}
@@ -210,6 +466,83 @@ class ConfigurationStore {
 		return size == 0 ? null : (ConfigurationImpl[]) resultList.toArray(new ConfigurationImpl[size]);
 	}
 
+	/*
+	 * Returns the configurations which can match the given filter according to the indexes, or
+	 * null if the filter cannot be answered from the indexes. This is the case unless the filter
+	 * is an equality test on an indexed key, or a conjunction which contains at least one such test.
+	 * The candidates still have to be matched against the filter. Must be called while holding
+	 * this store's lock.
+	 */
+	private Collection<ConfigurationImpl> getCandidates(String filter) {
+		if (filter.startsWith("(&") && filter.endsWith(")")) { //$NON-NLS-1$ //$NON-NLS-2$
+			Collection<ConfigurationImpl> result = null;
+			int end = filter.length() - 1;
+			int start = 2;
+			while (start < end) {
+				int next = endOfOperand(filter, start, end);
+				if (next < 0)
+					return null;
+				Collection<ConfigurationImpl> candidates = getEqualityCandidates(filter.substring(start, next));
+				if (candidates != null && (result == null || candidates.size() < result.size()))
+					result = candidates;
+				start = next;
+			}
+			return result;
+		}
+		return getEqualityCandidates(filter);
+	}
+
+	/*
+	 * Returns the index after the operand starting at the given index.
+	 */
+	private static int endOfOperand(String filter, int start, int end) {
+		if (filter.charAt(start) != '(')
+			return -1;
+		int depth = 0;
+		for (int i = start; i < end; i++) {
+			char c = filter.charAt(i);
+			if (c == '\\')
+				i++;
+			else if (c == '(')
+				depth++;
+			else if (c == ')' && --depth == 0)
+				return i + 1;
+		}
+		return -1;
+	}
+
+	private Collection<ConfigurationImpl> getEqualityCandidates(String operand) {
+		int equals = operand.indexOf('=');
+		if (!operand.startsWith("(") || !operand.endsWith(")") || equals < 0) //$NON-NLS-1$ //$NON-NLS-2$
+			return null;
+		String key = operand.substring(1, equals);
+		StringBuffer value = new StringBuffer();
+		for (int i = equals + 1; i < operand.length() - 1; i++) {
+			char c = operand.charAt(i);
+			if (c == '\\')
+				c = operand.charAt(++i);
+			else if (c == '*' || c == '(' || c == ')')
+				return null; // not a simple equality test
+			value.append(c);
+		}
+		if (key.equalsIgnoreCase(Constants.SERVICE_PID)) {
+			ConfigurationImpl config = configurations.get(value.toString());
+			return config == null ? Collections.<ConfigurationImpl> emptySet() : Collections.singleton(config);
+		}
+		if (key.equalsIgnoreCase(ConfigurationAdmin.SERVICE_FACTORYPID)) {
+			Set<ConfigurationImpl> configs = factoryPidIndex.get(value.toString());
+			return configs == null ? Collections.<ConfigurationImpl> emptySet() : configs;
+		}
+		if (key.equalsIgnoreCase(ConfigurationAdmin.SERVICE_BUNDLELOCATION)) {
+			synchronized (locationLock) {
+				// copied, the location index changes without this store's lock
+				Set<ConfigurationImpl> configs = locationIndex.get(value.toString());
+				return configs == null ? Collections.<ConfigurationImpl> emptySet() : new ArrayList<ConfigurationImpl>(configs);
+			}
+		}
+		return null;
+	}
+
 	public void unbindConfigurations(Bundle bundle) {
 		ConfigurationImpl[] copy;
 		synchronized (this) {
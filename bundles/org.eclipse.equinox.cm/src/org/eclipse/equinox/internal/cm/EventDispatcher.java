@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2013 Cognos Incorporated, IBM Corporation and others.
+ * Copyright (c) 2005, 2016 Cognos Incorporated, IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,8 @@
  *******************************************************************************/
 package org.eclipse.equinox.internal.cm;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.cm.*;
@@ -95,6 +97,57 @@ public class EventDispatcher {
 		}
 	}
 
+	/*
+	 * Dispatches the events of a batch. Asynchronous listeners receive all events in a single task.
+	 */
+	public void dispatchEvents(int[] types, String[] factoryPids, String[] pids) {
+		final List<ConfigurationEvent> events = new ArrayList<ConfigurationEvent>(types.length);
+		for (int i = 0; i < types.length; i++) {
+			ConfigurationEvent event = createConfigurationEvent(types[i], factoryPids[i], pids[i]);
+			if (event == null)
+				return;
+			events.add(event);
+		}
+
+		ServiceReference<SynchronousConfigurationListener>[] syncRefs = syncTracker.getServiceReferences();
+		if (syncRefs != null) {
+			for (ServiceReference<SynchronousConfigurationListener> ref : syncRefs) {
+				SynchronousConfigurationListener syncListener = syncTracker.getService(ref);
+				if (syncListener != null) {
+					for (ConfigurationEvent event : events) {
+						try {
+							syncListener.configurationEvent(event);
+						} catch (Throwable t) {
+							log.log(LogService.LOG_ERROR, t.getMessage(), t);
+						}
+					}
+				}
+			}
+		}
+		ServiceReference<ConfigurationListener>[] refs = tracker.getServiceReferences();
+		if (refs == null)
+			return;
+
+		for (int i = 0; i < refs.length; ++i) {
+			final ServiceReference<ConfigurationListener> ref = refs[i];
+			queue.put(new Runnable() {
+				public void run() {
+					for (ConfigurationEvent event : events) {
+						ConfigurationListener listener = tracker.getService(ref);
+						if (listener == null) {
+							return;
+						}
+						try {
+							listener.configurationEvent(event);
+						} catch (Throwable t) {
+							log.log(LogService.LOG_ERROR, t.getMessage(), t);
+						}
+					}
+				}
+			});
+		}
+	}
+
 	private synchronized ConfigurationEvent createConfigurationEvent(int type, String factoryPid, String pid) {
 		if (configAdminReference == null)
 			return null;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2013 Cognos Incorporated, IBM Corporation and others.
+ * Copyright (c) 2005, 2016 Cognos Incorporated, IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -30,11 +30,14 @@ class ManagedServiceFactoryTracker extends ServiceTracker<ManagedServiceFactory,
 	private final TargetMap targets = new TargetMap();
 
 	private final SerializedTaskQueue queue = new SerializedTaskQueue("ManagedServiceFactory Update Queue"); //$NON-NLS-1$
+	// delivers the updates of different services concurrently if enabled, otherwise null
+	private final ParallelTaskQueue parallelQueue;
 
 	public ManagedServiceFactoryTracker(ConfigurationAdminFactory configurationAdminFactory, ConfigurationStore configurationStore, BundleContext context) {
 		super(context, ManagedServiceFactory.class.getName(), null);
 		this.configurationAdminFactory = configurationAdminFactory;
 		this.configurationStore = configurationStore;
+		this.parallelQueue = ParallelTaskQueue.create("ManagedServiceFactory Update Queue", context.getProperty(ParallelTaskQueue.PROP_UPDATE_THREADS)); //$NON-NLS-1$
 	}
 
 	void notifyDeleted(ConfigurationImpl config) {
@@ -191,6 +194,17 @@ class ManagedServiceFactoryTracker extends ServiceTracker<ManagedServiceFactory,
 			untrackManagedServiceFactory(reference);
 		}
 		context.ungetService(reference);
+		if (parallelQueue != null)
+			logStatistics(service);
+	}
+
+	private void logStatistics(ManagedServiceFactory service) {
+		ParallelTaskQueue.TargetStatistics[] statistics = parallelQueue.getTargetStatistics();
+		for (int i = 0; i < statistics.length; i++) {
+			if (statistics[i].getTarget() == service)
+				configurationAdminFactory.log(LogService.LOG_DEBUG, "{Configuration Admin} update delivery to " + statistics[i] + ", queue depth " + parallelQueue.getQueueDepth() + " (max " + parallelQueue.getMaxQueueDepth() + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		}
+		parallelQueue.remove(service);
 	}
 
 	private void addReference(ServiceReference<ManagedServiceFactory> reference, ManagedServiceFactory service) {
@@ -262,7 +276,7 @@ class ManagedServiceFactoryTracker extends ServiceTracker<ManagedServiceFactory,
 	}
 
 	private void asynchDeleted(final ManagedServiceFactory service, final String pid) {
-		queue.put(new Runnable() {
+		execute(service, new Runnable() {
 			public void run() {
 				try {
 					service.deleted(pid);
@@ -277,7 +291,7 @@ class ManagedServiceFactoryTracker extends ServiceTracker<ManagedServiceFactory,
 		if (properties == null) {
 			return;
 		}
-		queue.put(new Runnable() {
+		execute(service, new Runnable() {
 			public void run() {
 				try {
 					service.updated(pid, properties);
@@ -291,4 +305,11 @@ class ManagedServiceFactoryTracker extends ServiceTracker<ManagedServiceFactory,
 			}
 		});
 	}
-}
\ No newline at end of file
+
+	private void execute(ManagedServiceFactory service, Runnable task) {
+		if (parallelQueue != null)
+			parallelQueue.put(service, task);
+		else
+			queue.put(task);
+	}
+}
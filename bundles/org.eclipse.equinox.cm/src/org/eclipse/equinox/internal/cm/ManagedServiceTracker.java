@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2013 Cognos Incorporated, IBM Corporation and others.
+ * Copyright (c) 2005, 2016 Cognos Incorporated, IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -29,11 +29,14 @@ class ManagedServiceTracker extends ServiceTracker<ManagedService, ManagedServic
 	private final TargetMap targets = new TargetMap();
 
 	private final SerializedTaskQueue queue = new SerializedTaskQueue("ManagedService Update Queue"); //$NON-NLS-1$
+	// delivers the updates of different services concurrently if enabled, otherwise null
+	private final ParallelTaskQueue parallelQueue;
 
 	public ManagedServiceTracker(ConfigurationAdminFactory configurationAdminFactory, ConfigurationStore configurationStore, BundleContext context) {
 		super(context, ManagedService.class.getName(), null);
 		this.configurationAdminFactory = configurationAdminFactory;
 		this.configurationStore = configurationStore;
+		this.parallelQueue = ParallelTaskQueue.create("ManagedService Update Queue", context.getProperty(ParallelTaskQueue.PROP_UPDATE_THREADS)); //$NON-NLS-1$
 	}
 
 	void notifyDeleted(ConfigurationImpl config) {
@@ -200,6 +203,17 @@ class ManagedServiceTracker extends ServiceTracker<ManagedService, ManagedServic
 			untrackManagedService(reference);
 		}
 		context.ungetService(reference);
+		if (parallelQueue != null)
+			logStatistics(service);
+	}
+
+	private void logStatistics(ManagedService service) {
+		ParallelTaskQueue.TargetStatistics[] statistics = parallelQueue.getTargetStatistics();
+		for (int i = 0; i < statistics.length; i++) {
+			if (statistics[i].getTarget() == service)
+				configurationAdminFactory.log(LogService.LOG_DEBUG, "{Configuration Admin} update delivery to " + statistics[i] + ", queue depth " + parallelQueue.getQueueDepth() + " (max " + parallelQueue.getMaxQueueDepth() + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		}
+		parallelQueue.remove(service);
 	}
 
 	private void addReference(ServiceReference<ManagedService> reference, ManagedService service) {
@@ -270,7 +284,7 @@ class ManagedServiceTracker extends ServiceTracker<ManagedService, ManagedServic
 	}
 
 	private void asynchUpdated(final ManagedService service, final Dictionary<String, ?> properties) {
-		queue.put(new Runnable() {
+		execute(service, new Runnable() {
 			public void run() {
 				try {
 					service.updated(properties);
@@ -284,4 +298,11 @@ class ManagedServiceTracker extends ServiceTracker<ManagedService, ManagedServic
 			}
 		});
 	}
-}
\ No newline at end of file
+
+	private void execute(ManagedService service, Runnable task) {
+		if (parallelQueue != null)
+			parallelQueue.put(service, task);
+		else
+			queue.put(task);
+	}
+}
@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.cm;
+
+import java.util.*;
+
+/**
+ * ParallelTaskQueue allows asynchronous execution of tasks on a bounded number of threads.
+ * Tasks put for the same target are executed one at a time and in order, tasks for
+ * different targets may be executed concurrently. Targets are compared by identity.
+ * <p>
+ * The queue keeps statistics about its depth and, for every target, about the time its
+ * tasks waited in the queue and took to run.
+ */
+public class ParallelTaskQueue {
+
+	/**
+	 * Framework property holding the maximum number of threads used to deliver configuration
+	 * updates. Updates are delivered through a {@link SerializedTaskQueue} if it is not set or
+	 * not greater than one.
+	 */
+	static final String PROP_UPDATE_THREADS = "equinox.cm.update.threads"; //$NON-NLS-1$
+
+	private static final int MAX_WAIT = 5000;
+	private final String queueName;
+	private final int maxThreads;
+
+	/** @GuardedBy this*/
+	private final Map<Object, Target> targets = new IdentityHashMap<Object, Target>();
+	/** @GuardedBy this*/
+	private final LinkedList<Target> ready = new LinkedList<Target>();
+	/** @GuardedBy this*/
+	private final Map<Object, TargetStatistics> statistics = new IdentityHashMap<Object, TargetStatistics>();
+	/** @GuardedBy this*/
+	private int threads = 0;
+	/** @GuardedBy this*/
+	private int idleThreads = 0;
+	/** @GuardedBy this*/
+	private int depth = 0;
+	/** @GuardedBy this*/
+	private int maxDepth = 0;
+
+	public ParallelTaskQueue(String queueName, int maxThreads) {
+		if (maxThreads < 1)
+			throw new IllegalArgumentException("maxThreads: " + maxThreads); //$NON-NLS-1$
+		this.queueName = queueName;
+		this.maxThreads = maxThreads;
+	}
+
+	/**
+	 * Returns a new queue if the {@value #PROP_UPDATE_THREADS} property enables parallel
+	 * delivery, otherwise <code>null</code>.
+	 */
+	static ParallelTaskQueue create(String queueName, String maxThreads) {
+		if (maxThreads == null)
+			return null;
+		try {
+			int threads = Integer.parseInt(maxThreads.trim());
+			return threads > 1 ? new ParallelTaskQueue(queueName, threads) : null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	public synchronized void put(Object key, Runnable newTask) {
+		Target target = targets.get(key);
+		if (target == null) {
+			target = new Target(key);
+			targets.put(key, target);
+		}
+		target.removed = false;
+		target.tasks.add(new Task(newTask));
+		if (++depth > maxDepth)
+			maxDepth = depth;
+		if (!target.active) {
+			target.active = true;
+			ready.add(target);
+		}
+		if (idleThreads > 0)
+			notify();
+		else if (threads < maxThreads) {
+			threads++;
+			Thread thread = new Thread(queueName) {
+				public void run() {
+					Target next = nextTarget(MAX_WAIT);
+					while (next != null) {
+						runNext(next);
+						next = nextTarget(MAX_WAIT);
+					}
+				}
+			};
+			thread.start();
+		}
+	}
+
+	synchronized Target nextTarget(int maxWait) {
+		if (ready.isEmpty()) {
+			idleThreads++;
+			try {
+				wait(maxWait);
+			} catch (InterruptedException e) {
+				// ignore -- we control the stack here and do not need to propagate it.
+			} finally {
+				idleThreads--;
+			}
+
+			if (ready.isEmpty()) {
+				threads--;
+				return null;
+			}
+		}
+		return ready.removeFirst();
+	}
+
+	private void runNext(Target target) {
+		Task task;
+		synchronized (this) {
+			task = target.tasks.removeFirst();
+			depth--;
+		}
+		long start = System.nanoTime();
+		try {
+			task.runnable.run();
+		} finally {
+			long end = System.nanoTime();
+			synchronized (this) {
+				// don't recreate the statistics of a removed target
+				if (!target.removed) {
+					TargetStatistics stats = statistics.get(target.key);
+					if (stats == null) {
+						stats = new TargetStatistics(target.key);
+						statistics.put(target.key, stats);
+					}
+					stats.record(start - task.queued, end - start);
+				}
+				if (target.tasks.isEmpty()) {
+					target.active = false;
+					targets.remove(target.key);
+				} else {
+					// let the other targets run before this target's next task
+					ready.add(target);
+					if (idleThreads > 0)
+						notify();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Discards the statistics kept for the given target. Tasks already put for the target
+	 * are still executed, but no statistics are kept for them. Statistics are kept again for
+	 * tasks put for the target afterwards.
+	 */
+	public synchronized void remove(Object key) {
+		statistics.remove(key);
+		Target target = targets.get(key);
+		if (target != null)
+			target.removed = true;
+	}
+
+	/**
+	 * Returns the number of tasks waiting to be executed.
+	 */
+	public synchronized int getQueueDepth() {
+		return depth;
+	}
+
+	/**
+	 * Returns the largest number of tasks which have been waiting to be executed at the same time.
+	 */
+	public synchronized int getMaxQueueDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Returns a snapshot of the statistics of the targets with executed tasks.
+	 */
+	public synchronized TargetStatistics[] getTargetStatistics() {
+		TargetStatistics[] result = new TargetStatistics[statistics.size()];
+		int i = 0;
+		for (TargetStatistics stats : statistics.values())
+			result[i++] = stats.copy();
+		return result;
+	}
+
+	private static class Target {
+		final Object key;
+		final LinkedList<Task> tasks = new LinkedList<Task>();
+		/** Whether the target is in the ready list or one of its tasks is running, @GuardedBy the queue*/
+		boolean active = false;
+		/** Whether the target has been removed since its last task was put, @GuardedBy the queue*/
+		boolean removed = false;
+
+		Target(Object key) {
+			this.key = key;
+		}
+	}
+
+	private static class Task {
+		final Runnable runnable;
+		final long queued = System.nanoTime();
+
+		Task(Runnable runnable) {
+			this.runnable = runnable;
+		}
+	}
+
+	/**
+	 * The number of tasks executed for a target, together with the time they waited in the
+	 * queue and the time they took to run.
+	 */
+	public static class TargetStatistics {
+		private final Object target;
+		private long count;
+		private long totalWaitNanos;
+		private long maxWaitNanos;
+		private long totalRunNanos;
+		private long maxRunNanos;
+
+		TargetStatistics(Object target) {
+			this.target = target;
+		}
+
+		void record(long waitNanos, long runNanos) {
+			count++;
+			totalWaitNanos += waitNanos;
+			totalRunNanos += runNanos;
+			if (waitNanos > maxWaitNanos)
+				maxWaitNanos = waitNanos;
+			if (runNanos > maxRunNanos)
+				maxRunNanos = runNanos;
+		}
+
+		TargetStatistics copy() {
+			TargetStatistics copy = new TargetStatistics(target);
+			copy.count = count;
+			copy.totalWaitNanos = totalWaitNanos;
+			copy.maxWaitNanos = maxWaitNanos;
+			copy.totalRunNanos = totalRunNanos;
+			copy.maxRunNanos = maxRunNanos;
+			return copy;
+		}
+
+		public Object getTarget() {
+			return target;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getTotalWaitNanos() {
+			return totalWaitNanos;
+		}
+
+		public long getMaxWaitNanos() {
+			return maxWaitNanos;
+		}
+
+		public long getTotalRunNanos() {
+			return totalRunNanos;
+		}
+
+		public long getMaxRunNanos() {
+			return maxRunNanos;
+		}
+
+		public String toString() {
+			long average = count == 0 ? 0 : (totalWaitNanos + totalRunNanos) / count;
+			return target + ": " + count + " tasks, average latency " + average / 1000000 + "ms, max wait " + maxWaitNanos / 1000000 + "ms, max run " + maxRunNanos / 1000000 + "ms"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		}
+	}
+}
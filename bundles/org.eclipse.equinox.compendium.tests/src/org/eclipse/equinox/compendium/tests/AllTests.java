@@ -23,6 +23,7 @@ public class AllTests {
 		suite.addTest(org.eclipse.equinox.useradmin.tests.AllTests.suite());
 		suite.addTest(org.eclipse.equinox.event.tests.AllTests.suite());
 		suite.addTest(org.eclipse.equinox.coordinator.tests.AllTests.suite());
+		suite.addTest(org.eclipse.equinox.preferences.tests.AllTests.suite());
 		return suite;
 	}
 
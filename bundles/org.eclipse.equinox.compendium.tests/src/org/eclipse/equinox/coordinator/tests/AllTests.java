@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2013 IBM Corporation and others
+ * Copyright (c) 2011, 2016 IBM Corporation and others
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -19,6 +19,7 @@ public class AllTests {
 		suite.addTestSuite(CoordinationMaxTimeoutTest.class);
 		suite.addTestSuite(ReverseParticipantOrderNotifyTest.class);
 		suite.addTestSuite(BugTests.class);
+		suite.addTestSuite(ParticipantWaitTest.class);
 		return suite;
 	}
 }
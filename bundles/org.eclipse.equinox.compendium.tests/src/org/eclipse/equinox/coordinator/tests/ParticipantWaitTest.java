@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.coordinator.tests;
+
+import org.osgi.service.coordinator.Coordination;
+import org.osgi.service.coordinator.CoordinationException;
+import org.osgi.service.coordinator.Participant;
+
+public class ParticipantWaitTest extends CoordinatorTest {
+	private static class WaitingThread extends Thread {
+		private final Coordination coordination;
+		private final Participant participant;
+		volatile CoordinationException exception;
+		volatile long joined;
+
+		public WaitingThread(Coordination coordination, Participant participant) {
+			this.coordination = coordination;
+			this.participant = participant;
+		}
+
+		public void run() {
+			try {
+				// Blocks while the participant is in the other coordination.
+				coordination.addParticipant(participant);
+				joined = System.currentTimeMillis();
+			} catch (CoordinationException e) {
+				exception = e;
+				joined = System.currentTimeMillis();
+			}
+		}
+	}
+
+	private final Participant participant = new Participant() {
+		public void ended(Coordination coordination) throws Exception {
+			// Nothing.
+		}
+
+		public void failed(Coordination coordination) throws Exception {
+			// Nothing.
+		}
+	};
+
+	public void testWaitingParticipantJoinsWhenOtherCoordinationEnds() throws Exception {
+		Coordination c1 = coordinator.create("c1", 0); //$NON-NLS-1$
+		Coordination c2 = coordinator.create("c2", 0); //$NON-NLS-1$
+		c1.addParticipant(participant);
+		WaitingThread thread = new WaitingThread(c2, participant);
+		thread.start();
+		// Give the thread time to block.
+		Thread.sleep(200);
+		assertTrue("The participant did not wait", thread.isAlive()); //$NON-NLS-1$
+		long ended = System.currentTimeMillis();
+		c1.end();
+		thread.join(5000);
+		assertFalse("The participant is still waiting", thread.isAlive()); //$NON-NLS-1$
+		assertNull("Unexpected exception", thread.exception); //$NON-NLS-1$
+		// Generous bound so that a loaded machine does not fail the test.
+		assertTrue("The participant was not released in time", thread.joined - ended < 2000); //$NON-NLS-1$
+		assertTrue("Missing participant", c2.getParticipants().contains(participant)); //$NON-NLS-1$
+		c2.end();
+	}
+
+	public void testWaitingParticipantReleasedWhenOwnCoordinationFails() throws Exception {
+		Coordination c1 = coordinator.create("c1", 0); //$NON-NLS-1$
+		Coordination c2 = coordinator.create("c2", 0); //$NON-NLS-1$
+		c1.addParticipant(participant);
+		WaitingThread thread = new WaitingThread(c2, participant);
+		thread.start();
+		// Give the thread time to block.
+		Thread.sleep(200);
+		assertTrue("The participant did not wait", thread.isAlive()); //$NON-NLS-1$
+		long failed = System.currentTimeMillis();
+		c2.fail(new Exception());
+		thread.join(5000);
+		assertFalse("The participant is still waiting", thread.isAlive()); //$NON-NLS-1$
+		assertNotNull("Missing exception", thread.exception); //$NON-NLS-1$
+		assertEquals("Wrong type", CoordinationException.FAILED, thread.exception.getType()); //$NON-NLS-1$
+		// Generous bound so that a loaded machine does not fail the test.
+		assertTrue("The participant was not released in time", thread.joined - failed < 2000); //$NON-NLS-1$
+		c1.end();
+	}
+
+	public void testTimeoutAfterExtension() throws Exception {
+		Coordination c = coordinator.create("c", 200); //$NON-NLS-1$
+		long deadline = c.extendTimeout(300);
+		c.join(5000);
+		assertTrue("Not terminated", c.isTerminated()); //$NON-NLS-1$
+		assertEquals("Wrong failure", Coordination.TIMEOUT, c.getFailure()); //$NON-NLS-1$
+		assertTrue("Timed out too early", System.currentTimeMillis() >= deadline); //$NON-NLS-1$
+	}
+}
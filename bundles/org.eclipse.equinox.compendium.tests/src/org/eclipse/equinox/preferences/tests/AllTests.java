@@ -0,0 +1,27 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.preferences.tests;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class AllTests {
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Tests for Equinox Preferences"); //$NON-NLS-1$
+		suite.addTestSuite(BatchingPreferenceChangeListenerTest.class);
+		suite.addTestSuite(FlushTreeTest.class);
+		suite.addTestSuite(PreferenceFlushSchedulerTest.class);
+		suite.addTestSuite(PreferenceLookupCacheTest.class);
+		suite.addTestSuite(PropertiesWriterTest.class);
+		suite.addTestSuite(PropertyMapTest.class);
+		return suite;
+	}
+}
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.preferences.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import junit.framework.TestCase;
+import org.eclipse.core.runtime.preferences.*;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
+
+public class BatchingPreferenceChangeListenerTest extends TestCase {
+	private static final String NODE = "org.eclipse.equinox.preferences.tests.batching"; //$NON-NLS-1$
+
+	/*
+	 * Runs the submitted tasks when the test asks for it.
+	 */
+	private static class ManualExecutor implements Executor {
+		final List tasks = new ArrayList();
+
+		public synchronized void execute(Runnable command) {
+			tasks.add(command);
+		}
+
+		void runAll() {
+			while (true) {
+				Runnable task;
+				synchronized (this) {
+					if (tasks.isEmpty())
+						return;
+					task = (Runnable) tasks.remove(0);
+				}
+				task.run();
+			}
+		}
+	}
+
+	private static class RecordingListener extends BatchingPreferenceChangeListener {
+		final List batches = new ArrayList();
+		volatile int concurrentDeliveries;
+		volatile boolean overlapped;
+
+		RecordingListener(Executor executor) {
+			super(executor);
+		}
+
+		RecordingListener(ScheduledExecutorService scheduler, long delay) {
+			super(scheduler, delay);
+		}
+
+		protected void preferenceChanges(PreferenceChangeEvent[] events) {
+			synchronized (this) {
+				if (++concurrentDeliveries > 1)
+					overlapped = true;
+			}
+			try {
+				// Give an overlapping delivery the chance to show up.
+				Thread.yield();
+				synchronized (this) {
+					batches.add(events);
+					notifyAll();
+				}
+			} finally {
+				synchronized (this) {
+					concurrentDeliveries--;
+				}
+			}
+		}
+
+		synchronized PreferenceChangeEvent[][] getBatches() {
+			return (PreferenceChangeEvent[][]) batches.toArray(new PreferenceChangeEvent[batches.size()][]);
+		}
+
+		synchronized PreferenceChangeEvent[] awaitBatch(int index, long timeout) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + timeout;
+			while (batches.size() <= index) {
+				long wait = deadline - System.currentTimeMillis();
+				if (wait <= 0)
+					fail("Batch " + index + " not delivered"); //$NON-NLS-1$ //$NON-NLS-2$
+				wait(wait);
+			}
+			return (PreferenceChangeEvent[]) batches.get(index);
+		}
+	}
+
+	private IEclipsePreferences node;
+
+	protected void setUp() throws Exception {
+		node = InstanceScope.INSTANCE.getNode(NODE);
+		node.clear();
+	}
+
+	protected void tearDown() throws Exception {
+		node.removeNode();
+	}
+
+	public void testChangesAreCoalesced() {
+		ManualExecutor executor = new ManualExecutor();
+		RecordingListener listener = new RecordingListener(executor);
+		node.put("unchanged", "0"); //$NON-NLS-1$ //$NON-NLS-2$
+		node.addPreferenceChangeListener(listener);
+		try {
+			node.put("a", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+			node.put("b", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+			node.put("a", "2"); //$NON-NLS-1$ //$NON-NLS-2$
+			node.put("unchanged", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+			node.put("unchanged", "0"); //$NON-NLS-1$ //$NON-NLS-2$
+			node.put("removed", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+			node.remove("removed"); //$NON-NLS-1$
+			assertEquals("Wrong number of scheduled deliveries", 1, executor.tasks.size()); //$NON-NLS-1$
+			assertEquals("Delivered too early", 0, listener.getBatches().length); //$NON-NLS-1$
+			executor.runAll();
+		} finally {
+			node.removePreferenceChangeListener(listener);
+		}
+		PreferenceChangeEvent[][] batches = listener.getBatches();
+		assertEquals("Wrong number of batches", 1, batches.length); //$NON-NLS-1$
+		PreferenceChangeEvent[] events = batches[0];
+		assertEquals("Wrong number of events", 2, events.length); //$NON-NLS-1$
+		// In the order in which the keys were first changed.
+		assertEvent(events[0], "a", null, "2"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEvent(events[1], "b", null, "1"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testChangesDuringDeliveryFormNextBatch() {
+		final ManualExecutor executor = new ManualExecutor();
+		final List batches = new ArrayList();
+		final int[] scheduledDuringDelivery = new int[1];
+		BatchingPreferenceChangeListener listener = new BatchingPreferenceChangeListener(executor) {
+			protected void preferenceChanges(PreferenceChangeEvent[] events) {
+				batches.add(events);
+				if (batches.size() == 1) {
+					node.put("a", "2"); //$NON-NLS-1$ //$NON-NLS-2$
+					scheduledDuringDelivery[0] = executor.tasks.size();
+				}
+			}
+		};
+		node.addPreferenceChangeListener(listener);
+		try {
+			node.put("a", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+			executor.runAll();
+		} finally {
+			node.removePreferenceChangeListener(listener);
+		}
+		// The next batch is not scheduled before the current one is delivered.
+		assertEquals("Scheduled during delivery", 0, scheduledDuringDelivery[0]); //$NON-NLS-1$
+		assertEquals("Wrong number of batches", 2, batches.size()); //$NON-NLS-1$
+		assertEvent(((PreferenceChangeEvent[]) batches.get(0))[0], "a", null, "1"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEvent(((PreferenceChangeEvent[]) batches.get(1))[0], "a", "1", "2"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	public void testBatchesAreDeliveredInOrder() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		RecordingListener listener = new RecordingListener(executor);
+		int count = 2000;
+		node.addPreferenceChangeListener(listener);
+		try {
+			for (int i = 1; i <= count; i++)
+				node.putInt("counter", i); //$NON-NLS-1$
+			// Wait for the batch carrying the last value.
+			for (int i = 0;; i++) {
+				PreferenceChangeEvent[] events = listener.awaitBatch(i, 10000);
+				if (String.valueOf(count).equals(events[events.length - 1].getNewValue()))
+					break;
+			}
+		} finally {
+			node.removePreferenceChangeListener(listener);
+			executor.shutdown();
+		}
+		assertFalse("Batches were delivered concurrently", listener.overlapped); //$NON-NLS-1$
+		PreferenceChangeEvent[][] batches = listener.getBatches();
+		int previous = 0;
+		for (int i = 0; i < batches.length; i++) {
+			assertEquals("Not coalesced", 1, batches[i].length); //$NON-NLS-1$
+			PreferenceChangeEvent event = batches[i][0];
+			// Each batch starts where the previous one ended.
+			assertEquals("Out of order", previous == 0 ? null : String.valueOf(previous), event.getOldValue()); //$NON-NLS-1$
+			previous = Integer.parseInt((String) event.getNewValue());
+		}
+		assertEquals("Missing changes", count, previous); //$NON-NLS-1$
+	}
+
+	public void testChangesWithinDelayFormOneBatch() throws Exception {
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		RecordingListener listener = new RecordingListener(scheduler, 200);
+		node.addPreferenceChangeListener(listener);
+		try {
+			node.put("a", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+			node.put("b", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+			node.put("c", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+			PreferenceChangeEvent[] events = listener.awaitBatch(0, 10000);
+			assertEquals("Wrong number of events", 3, events.length); //$NON-NLS-1$
+		} finally {
+			node.removePreferenceChangeListener(listener);
+			scheduler.shutdown();
+		}
+	}
+
+	private static void assertEvent(PreferenceChangeEvent event, String key, String oldValue, String newValue) {
+		assertEquals("Wrong key", key, event.getKey()); //$NON-NLS-1$
+		assertEquals("Wrong old value for " + key, oldValue, event.getOldValue()); //$NON-NLS-1$
+		assertEquals("Wrong new value for " + key, newValue, event.getNewValue()); //$NON-NLS-1$
+	}
+}
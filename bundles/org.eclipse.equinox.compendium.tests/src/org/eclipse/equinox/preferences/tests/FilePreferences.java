@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.preferences.tests;
+
+import java.io.*;
+import java.util.*;
+import org.eclipse.core.internal.preferences.EclipsePreferences;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.osgi.service.prefs.BackingStoreException;
+
+/*
+ * A scope stored in a directory chosen by the test. Like the instance scope
+ * every child of the root is a load level stored in its own file, and the
+ * children found on disk are only created when they are first accessed.
+ */
+class FilePreferences extends EclipsePreferences {
+	private final IPath root;
+	private final Set loadedNodes;
+	private final List saves;
+
+	FilePreferences(File directory) {
+		this(null, null, new Path(directory.getAbsolutePath()), new HashSet(), new ArrayList());
+		String[] names = computeChildren(root);
+		for (int i = 0; i < names.length; i++)
+			addChild(names[i], null);
+	}
+
+	private FilePreferences(EclipsePreferences parent, String name, IPath root, Set loadedNodes, List saves) {
+		super(parent, name);
+		this.root = root;
+		this.loadedNodes = loadedNodes;
+		this.saves = saves;
+	}
+
+	static File getFile(File directory, String name) {
+		return new File(new File(directory, DEFAULT_PREFERENCES_DIRNAME), name + '.' + PREFS_FILE_EXTENSION);
+	}
+
+	static Properties read(File directory, String name) throws IOException {
+		Properties result = new Properties();
+		InputStream input = new FileInputStream(getFile(directory, name));
+		try {
+			result.load(input);
+		} finally {
+			input.close();
+		}
+		return result;
+	}
+
+	static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null)
+			for (int i = 0; i < children.length; i++)
+				delete(children[i]);
+		file.delete();
+	}
+
+	/*
+	 * Returns the names of the load levels saved so far, in order.
+	 */
+	String[] getSaves() {
+		synchronized (saves) {
+			return (String[]) saves.toArray(new String[saves.size()]);
+		}
+	}
+
+	boolean isLoaded(String name) {
+		return loadedNodes.contains(name);
+	}
+
+	protected IEclipsePreferences getLoadLevel() {
+		if (parent == null)
+			return null;
+		EclipsePreferences node = this;
+		while (node.parent().parent() != null)
+			node = (EclipsePreferences) node.parent();
+		return node;
+	}
+
+	protected IPath getLocation() {
+		return getLoadLevel() == this ? computeLocation(root, name()) : null;
+	}
+
+	protected boolean isAlreadyLoaded(IEclipsePreferences node) {
+		return loadedNodes.contains(node.name());
+	}
+
+	protected void loaded() {
+		loadedNodes.add(name());
+	}
+
+	protected void save() throws BackingStoreException {
+		super.save();
+		synchronized (saves) {
+			saves.add(name());
+		}
+	}
+
+	protected EclipsePreferences internalCreate(EclipsePreferences nodeParent, String nodeName, Object context) {
+		return new FilePreferences(nodeParent, nodeName, root, loadedNodes, saves);
+	}
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.preferences.tests;
+
+import java.io.File;
+import java.util.*;
+import junit.framework.TestCase;
+import org.osgi.service.prefs.Preferences;
+
+/*
+ * Flushing a scope only writes the qualifiers which have been loaded and
+ * changed, the qualifiers which have not been accessed are neither loaded
+ * nor written.
+ */
+public class FlushTreeTest extends TestCase {
+	private static final String[] QUALIFIERS = new String[] {"q1", "q2", "q3"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+	private File directory;
+
+	protected void setUp() throws Exception {
+		directory = File.createTempFile("tree", ".dir"); //$NON-NLS-1$ //$NON-NLS-2$
+		directory.delete();
+		directory.mkdirs();
+		FilePreferences root = new FilePreferences(directory);
+		for (int i = 0; i < QUALIFIERS.length; i++) {
+			Preferences node = root.node(QUALIFIERS[i]);
+			node.put("key", QUALIFIERS[i]); //$NON-NLS-1$
+			node.node("child").put("key", QUALIFIERS[i]); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		root.flush();
+	}
+
+	protected void tearDown() throws Exception {
+		FilePreferences.delete(directory);
+	}
+
+	private Map readAll() throws Exception {
+		Map result = new HashMap();
+		File[] files = new File(directory, FilePreferences.DEFAULT_PREFERENCES_DIRNAME).listFiles();
+		for (int i = 0; i < files.length; i++) {
+			String name = files[i].getName();
+			name = name.substring(0, name.length() - FilePreferences.PREFS_FILE_EXTENSION.length() - 1);
+			result.put(name, FilePreferences.read(directory, name));
+		}
+		return result;
+	}
+
+	public void testFlushUnchanged() throws Exception {
+		Map before = readAll();
+		FilePreferences root = new FilePreferences(directory);
+		assertEquals(new HashSet(Arrays.asList(QUALIFIERS)), new HashSet(Arrays.asList(root.childrenNames())));
+		// q1 is loaded, the others are not
+		assertEquals("q1", root.node("q1").get("key", null)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		root.flush();
+		assertFalse(root.isLoaded("q2")); //$NON-NLS-1$
+		assertFalse(root.isLoaded("q3")); //$NON-NLS-1$
+		assertEquals(0, root.getSaves().length);
+		assertEquals(before, readAll());
+	}
+
+	public void testFlushChanged() throws Exception {
+		Map expected = readAll();
+		FilePreferences root = new FilePreferences(directory);
+		// change a loaded qualifier and add a new one, leave q2 and q3 unloaded
+		root.node("q1").node("child").put("key", "changed"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		root.node("q4").put("key", "q4"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		root.flush();
+		assertFalse(root.isLoaded("q2")); //$NON-NLS-1$
+		assertFalse(root.isLoaded("q3")); //$NON-NLS-1$
+		assertEquals(new HashSet(Arrays.asList(new String[] {"q1", "q4"})), new HashSet(Arrays.asList(root.getSaves()))); //$NON-NLS-1$ //$NON-NLS-2$
+		((Properties) expected.get("q1")).setProperty("child/key", "changed"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		Properties q4 = new Properties();
+		q4.setProperty("key", "q4"); //$NON-NLS-1$ //$NON-NLS-2$
+		q4.setProperty("eclipse.preferences.version", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+		expected.put("q4", q4); //$NON-NLS-1$
+		assertEquals(expected, readAll());
+		// the unloaded qualifiers still read back
+		FilePreferences reread = new FilePreferences(directory);
+		for (int i = 0; i < QUALIFIERS.length; i++)
+			assertEquals(QUALIFIERS[i], reread.node(QUALIFIERS[i]).get("key", null)); //$NON-NLS-1$
+	}
+}
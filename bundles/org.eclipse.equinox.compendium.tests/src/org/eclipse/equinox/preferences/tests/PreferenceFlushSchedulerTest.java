@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.preferences.tests;
+
+import java.io.File;
+import java.io.IOException;
+import junit.framework.TestCase;
+import org.eclipse.core.internal.preferences.EclipsePreferences;
+import org.eclipse.core.internal.preferences.TestHelper;
+
+public class PreferenceFlushSchedulerTest extends TestCase {
+	private static final String NODE = "org.eclipse.equinox.preferences.tests.flush"; //$NON-NLS-1$
+	// long enough for the background writer never to run during a test
+	private static final long NEVER = 60000;
+
+	private File directory;
+	private FilePreferences root;
+
+	protected void setUp() throws Exception {
+		directory = File.createTempFile("flush", ".dir"); //$NON-NLS-1$ //$NON-NLS-2$
+		directory.delete();
+		directory.mkdirs();
+		root = new FilePreferences(directory);
+	}
+
+	protected void tearDown() throws Exception {
+		TestHelper.stopFlushScheduler();
+		FilePreferences.delete(directory);
+	}
+
+	private EclipsePreferences getNode() {
+		return (EclipsePreferences) root.node(NODE);
+	}
+
+	private String readValue(String key) throws IOException {
+		return FilePreferences.read(directory, NODE).getProperty(key);
+	}
+
+	public void testFlushesAreCoalesced() throws Exception {
+		TestHelper.startFlushScheduler(NEVER);
+		EclipsePreferences node = getNode();
+		node.put("a", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+		node.flush();
+		node.put("a", "2"); //$NON-NLS-1$ //$NON-NLS-2$
+		node.node("child").put("b", "1"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		node.flush();
+		node.flush();
+		assertFalse("Written before the delay", FilePreferences.getFile(directory, NODE).exists()); //$NON-NLS-1$
+		assertEquals("Wrong number of writes", 0, root.getSaves().length); //$NON-NLS-1$
+		TestHelper.stopFlushScheduler();
+		assertEquals("Wrong number of writes", 1, root.getSaves().length); //$NON-NLS-1$
+		assertEquals("2", readValue("a")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("1", readValue("child/b")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testWrittenAfterDelay() throws Exception {
+		TestHelper.startFlushScheduler(10);
+		EclipsePreferences node = getNode();
+		node.put("a", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+		node.flush();
+		long deadline = System.currentTimeMillis() + 10000;
+		while (root.getSaves().length == 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertEquals("Wrong number of writes", 1, root.getSaves().length); //$NON-NLS-1$
+		assertEquals("1", readValue("a")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testFlushNow() throws Exception {
+		TestHelper.startFlushScheduler(NEVER);
+		EclipsePreferences node = getNode();
+		node.put("a", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+		node.flush();
+		node.put("a", "2"); //$NON-NLS-1$ //$NON-NLS-2$
+		((EclipsePreferences) node.node("child")).flushNow(); //$NON-NLS-1$
+		assertEquals("Wrong number of writes", 1, root.getSaves().length); //$NON-NLS-1$
+		assertEquals("2", readValue("a")); //$NON-NLS-1$ //$NON-NLS-2$
+		// nothing is left for the background writer
+		TestHelper.stopFlushScheduler();
+		assertEquals("Wrong number of writes", 1, root.getSaves().length); //$NON-NLS-1$
+	}
+
+	public void testPendingWrittenOnStop() throws Exception {
+		TestHelper.startFlushScheduler(NEVER);
+		EclipsePreferences node = getNode();
+		EclipsePreferences other = (EclipsePreferences) root.node(NODE + ".other"); //$NON-NLS-1$
+		node.put("a", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+		node.flush();
+		other.put("b", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+		other.flush();
+		assertEquals("Wrong number of writes", 0, root.getSaves().length); //$NON-NLS-1$
+		TestHelper.stopFlushScheduler();
+		assertEquals("Wrong number of writes", 2, root.getSaves().length); //$NON-NLS-1$
+		assertEquals("1", readValue("a")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("1", FilePreferences.read(directory, NODE + ".other").getProperty("b")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		// flushes after stopping are written right away
+		node.put("a", "2"); //$NON-NLS-1$ //$NON-NLS-2$
+		node.flush();
+		assertEquals("2", readValue("a")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testSyncKeepsFlushedChanges() throws Exception {
+		EclipsePreferences node = getNode();
+		node.put("a", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+		node.flush();
+		TestHelper.startFlushScheduler(NEVER);
+		node.put("a", "2"); //$NON-NLS-1$ //$NON-NLS-2$
+		node.flush();
+		// the file still holds the old value, which sync must not load
+		assertEquals("1", readValue("a")); //$NON-NLS-1$ //$NON-NLS-2$
+		node.sync();
+		assertEquals("2", node.get("a", null)); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("2", readValue("a")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
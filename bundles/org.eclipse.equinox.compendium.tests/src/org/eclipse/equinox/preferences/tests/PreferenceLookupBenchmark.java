@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.preferences.tests;
+
+import junit.framework.TestCase;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.preferences.*;
+
+/*
+ * Compares scoped look-ups of the preference service answered from its cache
+ * with the same look-ups resolved against the nodes every time, and prints the
+ * times. It is not part of the test suites, run it on its own as a JUnit
+ * plug-in test.
+ */
+public class PreferenceLookupBenchmark extends TestCase {
+	private static final String QUALIFIER = "org.eclipse.equinox.preferences.tests.benchmark"; //$NON-NLS-1$
+	private static final int KEYS = 100;
+	private static final int LOOKUPS = 200000;
+	private static final int ROUNDS = 5;
+
+	/*
+	 * Only the scopes of the preference service are cached, so this context
+	 * takes the uncached path while finding the same nodes.
+	 */
+	private static class UncachedInstanceScope implements IScopeContext {
+		public String getName() {
+			return InstanceScope.INSTANCE.getName();
+		}
+
+		public IEclipsePreferences getNode(String qualifier) {
+			return InstanceScope.INSTANCE.getNode(qualifier);
+		}
+
+		public IPath getLocation() {
+			return InstanceScope.INSTANCE.getLocation();
+		}
+	}
+
+	private IPreferencesService service;
+	private IEclipsePreferences node;
+	private String[] keys;
+
+	protected void setUp() throws Exception {
+		service = Platform.getPreferencesService();
+		node = InstanceScope.INSTANCE.getNode(QUALIFIER);
+		keys = new String[KEYS];
+		for (int i = 0; i < KEYS; i++) {
+			keys[i] = "key" + i; //$NON-NLS-1$
+			node.put(keys[i], Integer.toString(i));
+		}
+	}
+
+	protected void tearDown() throws Exception {
+		node.removeNode();
+	}
+
+	private long time(IScopeContext[] contexts) {
+		long start = System.nanoTime();
+		for (int i = 0; i < LOOKUPS; i++) {
+			String value = service.getString(QUALIFIER, keys[i % KEYS], null, contexts);
+			if (value == null)
+				fail("No value for " + keys[i % KEYS]); //$NON-NLS-1$
+		}
+		return System.nanoTime() - start;
+	}
+
+	public void testLookups() {
+		IScopeContext[] uncached = new IScopeContext[] {new UncachedInstanceScope()};
+		for (int round = 0; round < ROUNDS; round++) {
+			long cachedTime = time(null);
+			long uncachedTime = time(uncached);
+			System.out.println("Round " + round + ": cached " + cachedTime / LOOKUPS + "ns, uncached " + uncachedTime / LOOKUPS + "ns per look-up"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		}
+	}
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.preferences.tests;
+
+import junit.framework.TestCase;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.preferences.*;
+
+/*
+ * Scoped look-ups of the preference service are cached, these tests check that
+ * every kind of change is seen by the next look-up.
+ */
+public class PreferenceLookupCacheTest extends TestCase {
+	private static final String QUALIFIER = "org.eclipse.equinox.preferences.tests.lookup"; //$NON-NLS-1$
+	private static final String KEY = "key"; //$NON-NLS-1$
+
+	private IPreferencesService service;
+	private IEclipsePreferences instance;
+	private IEclipsePreferences defaults;
+
+	protected void setUp() throws Exception {
+		service = Platform.getPreferencesService();
+		instance = InstanceScope.INSTANCE.getNode(QUALIFIER);
+		defaults = DefaultScope.INSTANCE.getNode(QUALIFIER);
+		instance.clear();
+		defaults.clear();
+	}
+
+	protected void tearDown() throws Exception {
+		service.setDefaultLookupOrder(QUALIFIER, null, null);
+		service.setDefaultLookupOrder(QUALIFIER, KEY, null);
+		instance.removeNode();
+		defaults.removeNode();
+	}
+
+	private String lookup(String key) {
+		return service.getString(QUALIFIER, key, null, null);
+	}
+
+	public void testPut() {
+		assertNull(lookup(KEY));
+		instance.put(KEY, "1"); //$NON-NLS-1$
+		assertEquals("1", lookup(KEY)); //$NON-NLS-1$
+		assertEquals("1", lookup(KEY)); //$NON-NLS-1$
+		instance.put(KEY, "2"); //$NON-NLS-1$
+		assertEquals("2", lookup(KEY)); //$NON-NLS-1$
+		instance.putInt(KEY, 3);
+		assertEquals(3, service.getInt(QUALIFIER, KEY, 0, null));
+	}
+
+	public void testRemove() throws Exception {
+		instance.put(KEY, "1"); //$NON-NLS-1$
+		assertEquals("1", lookup(KEY)); //$NON-NLS-1$
+		instance.remove(KEY);
+		assertNull(lookup(KEY));
+		instance.put(KEY, "2"); //$NON-NLS-1$
+		instance.clear();
+		assertEquals("default", service.getString(QUALIFIER, KEY, "default", null)); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testNodeRemoval() throws Exception {
+		String key = "child/" + KEY; //$NON-NLS-1$
+		instance.node("child").put(KEY, "1"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("1", lookup(key)); //$NON-NLS-1$
+		instance.node("child").removeNode(); //$NON-NLS-1$
+		assertNull(lookup(key));
+
+		instance.put(KEY, "1"); //$NON-NLS-1$
+		assertEquals("1", lookup(KEY)); //$NON-NLS-1$
+		instance.removeNode();
+		assertNull(lookup(KEY));
+		instance = InstanceScope.INSTANCE.getNode(QUALIFIER);
+	}
+
+	public void testDefaultScopeChange() {
+		defaults.put(KEY, "1"); //$NON-NLS-1$
+		assertEquals("1", lookup(KEY)); //$NON-NLS-1$
+		defaults.put(KEY, "2"); //$NON-NLS-1$
+		assertEquals("2", lookup(KEY)); //$NON-NLS-1$
+		// an instance value hides the default
+		instance.put(KEY, "3"); //$NON-NLS-1$
+		assertEquals("3", lookup(KEY)); //$NON-NLS-1$
+		instance.remove(KEY);
+		assertEquals("2", lookup(KEY)); //$NON-NLS-1$
+		defaults.remove(KEY);
+		assertNull(lookup(KEY));
+	}
+
+	public void testLookupOrderChange() {
+		instance.put(KEY, "instance"); //$NON-NLS-1$
+		defaults.put(KEY, "default"); //$NON-NLS-1$
+		assertEquals("instance", lookup(KEY)); //$NON-NLS-1$
+		service.setDefaultLookupOrder(QUALIFIER, null, new String[] {DefaultScope.SCOPE, InstanceScope.SCOPE});
+		assertEquals("default", lookup(KEY)); //$NON-NLS-1$
+		service.setDefaultLookupOrder(QUALIFIER, null, null);
+		assertEquals("instance", lookup(KEY)); //$NON-NLS-1$
+		// an order for the key takes precedence over the order for the qualifier
+		service.setDefaultLookupOrder(QUALIFIER, KEY, new String[] {DefaultScope.SCOPE});
+		assertEquals("default", lookup(KEY)); //$NON-NLS-1$
+		service.setDefaultLookupOrder(QUALIFIER, KEY, null);
+		assertEquals("instance", lookup(KEY)); //$NON-NLS-1$
+	}
+}
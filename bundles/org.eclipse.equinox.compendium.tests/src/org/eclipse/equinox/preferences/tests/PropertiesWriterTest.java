@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.preferences.tests;
+
+import java.io.*;
+import java.util.*;
+import junit.framework.TestCase;
+import org.eclipse.core.internal.preferences.PropertiesWriter;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+
+public class PropertiesWriterTest extends TestCase {
+	private static final String QUALIFIER = "org.eclipse.equinox.preferences.tests.export"; //$NON-NLS-1$
+
+	private static final String[] STRINGS = new String[] {"plain", //$NON-NLS-1$
+			"", //$NON-NLS-1$
+			" leading and trailing ", //$NON-NLS-1$
+			"key=value:pair", //$NON-NLS-1$
+			"#comment", //$NON-NLS-1$
+			"!comment", //$NON-NLS-1$
+			"back\\slash", //$NON-NLS-1$
+			"tab\tnewline\nreturn\rfeed\f", //$NON-NLS-1$
+			"control\u0001\u001f\u007f", //$NON-NLS-1$
+			"latin \u00e9\u00ff", //$NON-NLS-1$
+			"unicode \u20ac\u4e2d\uffff", //$NON-NLS-1$
+			"surrogates \ud83d\ude00"}; //$NON-NLS-1$
+
+	private static String[] readLines(byte[] bytes) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes), "ISO-8859-1")); //$NON-NLS-1$
+		List lines = new ArrayList();
+		String line;
+		while ((line = reader.readLine()) != null)
+			lines.add(line);
+		return (String[]) lines.toArray(new String[lines.size()]);
+	}
+
+	/*
+	 * Returns the line written by Properties#store for the given pair.
+	 */
+	private static String store(String key, String value) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(key, value);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		properties.store(output, null);
+		String[] lines = readLines(output.toByteArray());
+		assertEquals(2, lines.length);
+		return lines[1];
+	}
+
+	private static String write(String key, String value) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PropertiesWriter writer = new PropertiesWriter(output);
+		writer.write(key, value);
+		writer.flush();
+		String[] lines = readLines(output.toByteArray());
+		assertEquals(1, lines.length);
+		return lines[0];
+	}
+
+	public void testEscapingMatchesStore() throws IOException {
+		for (int i = 0; i < STRINGS.length; i++) {
+			assertEquals("Key " + i, store(STRINGS[i], "value"), write(STRINGS[i], "value")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			assertEquals("Value " + i, store("key", STRINGS[i]), write("key", STRINGS[i])); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+	}
+
+	public void testTimestampMatchesStore() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		new Properties().store(output, null);
+		String[] stored = readLines(output.toByteArray());
+		output = new ByteArrayOutputStream();
+		PropertiesWriter writer = new PropertiesWriter(output);
+		writer.writeTimestamp();
+		writer.flush();
+		String[] written = readLines(output.toByteArray());
+		assertEquals(1, stored.length);
+		assertEquals(1, written.length);
+		assertTrue(written[0].startsWith("#")); //$NON-NLS-1$
+		assertEquals(stored[0].length(), written[0].length());
+	}
+
+	public void testKeysInWriteOrder() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PropertiesWriter writer = new PropertiesWriter(output);
+		writer.writeTimestamp();
+		for (int i = STRINGS.length - 1; i >= 0; i--)
+			writer.write(STRINGS[i], Integer.toString(i));
+		writer.flush();
+		byte[] bytes = output.toByteArray();
+		String[] lines = readLines(bytes);
+		assertEquals(STRINGS.length + 1, lines.length);
+		for (int i = 1; i < lines.length; i++)
+			assertEquals(write(STRINGS[STRINGS.length - i], Integer.toString(STRINGS.length - i)), lines[i]);
+		// and the comment and all pairs are read back
+		Properties loaded = new Properties();
+		loaded.load(new ByteArrayInputStream(bytes));
+		assertEquals(STRINGS.length, loaded.size());
+		for (int i = 0; i < STRINGS.length; i++)
+			assertEquals(Integer.toString(i), loaded.getProperty(STRINGS[i]));
+	}
+
+	public void testExportReadsBack() throws Exception {
+		IEclipsePreferences node = InstanceScope.INSTANCE.getNode(QUALIFIER);
+		try {
+			for (int i = 0; i < STRINGS.length; i++)
+				node.put("key" + i, STRINGS[i]); //$NON-NLS-1$
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			Platform.getPreferencesService().exportPreferences(node, output, null);
+			byte[] bytes = output.toByteArray();
+			assertTrue(readLines(bytes)[0].startsWith("#")); //$NON-NLS-1$
+			Properties loaded = new Properties();
+			loaded.load(new ByteArrayInputStream(bytes));
+			for (int i = 0; i < STRINGS.length; i++)
+				assertEquals(STRINGS[i], loaded.getProperty(node.absolutePath() + "/key" + i)); //$NON-NLS-1$
+		} finally {
+			node.removeNode();
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.preferences.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import junit.framework.TestCase;
+import org.eclipse.core.internal.preferences.ImmutableMap;
+import org.eclipse.core.internal.preferences.PropertyMap;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.preferences.*;
+
+/*
+ * Measures filling a node's map with many keys, once with the mutable
+ * property map and once with the copy-on-write maps nodes used before, and
+ * importing a node with many keys. Prints the times. It is not part of the
+ * test suites, run it on its own as a JUnit plug-in test.
+ */
+public class PropertyMapBenchmark extends TestCase {
+	private static final String QUALIFIER = "org.eclipse.equinox.preferences.tests.mapbenchmark"; //$NON-NLS-1$
+	private static final int KEYS = 5000;
+	private static final int ROUNDS = 5;
+
+	private String[] keys;
+
+	protected void setUp() throws Exception {
+		keys = new String[KEYS];
+		for (int i = 0; i < KEYS; i++)
+			keys[i] = "key" + i; //$NON-NLS-1$
+	}
+
+	public void testPut() {
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			ImmutableMap map = new PropertyMap();
+			for (int i = 0; i < KEYS; i++)
+				map = map.put(keys[i], keys[i]);
+			long mutable = System.nanoTime() - start;
+			assertEquals(KEYS, map.size());
+
+			start = System.nanoTime();
+			map = ImmutableMap.EMPTY;
+			for (int i = 0; i < KEYS; i++)
+				map = map.put(keys[i], keys[i]);
+			long copyOnWrite = System.nanoTime() - start;
+			assertEquals(KEYS, map.size());
+			System.out.println("Round " + round + ": " + KEYS + " puts, property map " + mutable / 1000 + "us, copy-on-write map " + copyOnWrite / 1000 + "us"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		}
+	}
+
+	public void testImport() throws Exception {
+		IPreferencesService service = Platform.getPreferencesService();
+		IEclipsePreferences node = InstanceScope.INSTANCE.getNode(QUALIFIER);
+		try {
+			for (int i = 0; i < KEYS; i++)
+				node.put(keys[i], keys[i]);
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			service.exportPreferences(node, output, null);
+			byte[] exported = output.toByteArray();
+			for (int round = 0; round < ROUNDS; round++) {
+				node.clear();
+				long start = System.nanoTime();
+				service.importPreferences(new ByteArrayInputStream(exported));
+				long elapsed = System.nanoTime() - start;
+				// the exported node is an export root, so the import replaces it
+				node = InstanceScope.INSTANCE.getNode(QUALIFIER);
+				assertEquals(KEYS, node.keys().length);
+				System.out.println("Round " + round + ": import of " + KEYS + " keys " + elapsed / 1000 + "us"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			}
+		} finally {
+			node.removeNode();
+		}
+	}
+}
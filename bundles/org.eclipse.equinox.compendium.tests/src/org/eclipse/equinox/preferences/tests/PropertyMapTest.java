@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.preferences.tests;
+
+import java.io.*;
+import java.util.*;
+import junit.framework.TestCase;
+import org.eclipse.core.internal.preferences.*;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+
+public class PropertyMapTest extends TestCase {
+	private static final String QUALIFIER = "org.eclipse.equinox.preferences.tests.map"; //$NON-NLS-1$
+
+	/*
+	 * A node which assigns its own map to the properties field, as
+	 * subclasses in other bundles may do.
+	 */
+	private static class ReplacedMapPreferences extends EclipsePreferences {
+		ReplacedMapPreferences() {
+			properties = ImmutableMap.EMPTY.put("a", "1").put("b", "2"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		}
+	}
+
+	private static Set asSet(String[] strings) {
+		return new HashSet(Arrays.asList(strings));
+	}
+
+	public void testPutGetRemove() {
+		PropertyMap map = new PropertyMap();
+		assertEquals(0, map.size());
+		assertNull(map.get("a")); //$NON-NLS-1$
+		// the receiver is returned to keep the ImmutableMap contract
+		assertSame(map, map.put("a", "1")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertSame(map, map.put("b", "2")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("1", map.get("a")); //$NON-NLS-1$ //$NON-NLS-2$
+		map.put("a", "3"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("3", map.get("a")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(2, map.size());
+		assertEquals("3", map.remove("a")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull(map.remove("a")); //$NON-NLS-1$
+		assertSame(map, map.removeKey("b")); //$NON-NLS-1$
+		assertSame(map, map.removeKey("b")); //$NON-NLS-1$
+		assertEquals(0, map.size());
+		assertEquals(0, map.keys().length);
+		assertEquals(0, map.entries().length);
+	}
+
+	public void testSnapshots() {
+		PropertyMap map = new PropertyMap();
+		for (int i = 0; i < 100; i++)
+			map.put("key" + i, "value" + i); //$NON-NLS-1$ //$NON-NLS-2$
+		String[] keys = map.keys();
+		String[] entries = map.entries();
+		map.put("added", "value"); //$NON-NLS-1$ //$NON-NLS-2$
+		map.removeKey("key0"); //$NON-NLS-1$
+		assertEquals(100, keys.length);
+		assertEquals(200, entries.length);
+		Set expected = new HashSet();
+		for (int i = 0; i < 100; i++)
+			expected.add("key" + i); //$NON-NLS-1$
+		assertEquals(expected, asSet(keys));
+		for (int i = 0; i < entries.length; i += 2)
+			assertEquals("value" + entries[i].substring(3), entries[i + 1]); //$NON-NLS-1$
+	}
+
+	public void testReplacedMapIsCopied() throws Exception {
+		EclipsePreferences node = new ReplacedMapPreferences();
+		assertEquals("1", node.get("a", null)); //$NON-NLS-1$ //$NON-NLS-2$
+		node.put("c", "3"); //$NON-NLS-1$ //$NON-NLS-2$
+		node.remove("a"); //$NON-NLS-1$
+		assertEquals(asSet(new String[] {"b", "c"}), asSet(node.keys())); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testSavedInKeyOrder() throws Exception {
+		File directory = File.createTempFile("map", ".dir"); //$NON-NLS-1$ //$NON-NLS-2$
+		directory.delete();
+		directory.mkdirs();
+		try {
+			EclipsePreferences node = (EclipsePreferences) new FilePreferences(directory).node(QUALIFIER);
+			List keys = new ArrayList();
+			for (int i = 0; i < 50; i++)
+				keys.add("key" + i); //$NON-NLS-1$
+			Collections.shuffle(keys, new Random(0));
+			for (Iterator i = keys.iterator(); i.hasNext();) {
+				String key = (String) i.next();
+				node.put(key, key);
+			}
+			node.flush();
+			// the keys are written sorted whatever the order of the map
+			BufferedReader reader = new BufferedReader(new FileReader(FilePreferences.getFile(directory, QUALIFIER)));
+			List written = new ArrayList();
+			try {
+				String line;
+				while ((line = reader.readLine()) != null)
+					if (!line.startsWith("#")) //$NON-NLS-1$
+						written.add(line.substring(0, line.indexOf('=')));
+			} finally {
+				reader.close();
+			}
+			keys.add("eclipse.preferences.version"); //$NON-NLS-1$
+			Collections.sort(keys);
+			assertEquals(keys, written);
+		} finally {
+			FilePreferences.delete(directory);
+		}
+	}
+
+	private void importPreferences(String contents) throws Exception {
+		Platform.getPreferencesService().importPreferences(new ByteArrayInputStream(contents.getBytes("ISO-8859-1"))); //$NON-NLS-1$
+	}
+
+	public void testImportSetsKeysOfImportedNodes() throws Exception {
+		IEclipsePreferences node = InstanceScope.INSTANCE.getNode(QUALIFIER);
+		try {
+			node.put("a", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+			node.put("b", "2"); //$NON-NLS-1$ //$NON-NLS-2$
+			node.node("other").put("x", "1"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			String path = node.absolutePath();
+			importPreferences("file_export_version=3.0\n" + path + "/a=3\n" + path + "/c=4\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			// an imported node holds exactly the imported keys
+			assertEquals("3", node.get("a", null)); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals("4", node.get("c", null)); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals(asSet(new String[] {"a", "c"}), asSet(node.keys())); //$NON-NLS-1$ //$NON-NLS-2$
+			// nodes missing from the file are left alone
+			assertEquals("1", node.node("other").get("x", null)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		} finally {
+			node.removeNode();
+		}
+	}
+
+	public void testImportExportRootReplaces() throws Exception {
+		IEclipsePreferences node = InstanceScope.INSTANCE.getNode(QUALIFIER);
+		try {
+			node.put("a", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+			node.node("other").put("x", "1"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			String path = node.absolutePath();
+			importPreferences("file_export_version=3.0\n\\!" + path + "=\n" + path + "/a=3\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			// the tree below an export root is replaced by the imported one
+			node = InstanceScope.INSTANCE.getNode(QUALIFIER);
+			assertEquals("3", node.get("a", null)); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals(1, node.keys().length);
+			assertFalse(node.nodeExists("other")); //$NON-NLS-1$
+		} finally {
+			node.removeNode();
+		}
+	}
+}
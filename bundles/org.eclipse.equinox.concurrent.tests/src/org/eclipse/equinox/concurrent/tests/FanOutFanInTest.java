@@ -0,0 +1,107 @@
+/******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others. All rights reserved. This
+ * program and the accompanying materials are made available under the terms of
+ * the Eclipse Public License v1.0 which accompanies this distribution, and is
+ * available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   IBM Corporation - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.equinox.concurrent.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.concurrent.future.Futures;
+import org.eclipse.equinox.concurrent.future.IExecutor;
+import org.eclipse.equinox.concurrent.future.IFuture;
+import org.eclipse.equinox.concurrent.future.IListenableFuture;
+import org.eclipse.equinox.concurrent.future.IProgressFunction;
+import org.eclipse.equinox.concurrent.future.IProgressRunnable;
+import org.eclipse.equinox.concurrent.future.ImmediateExecutor;
+import org.eclipse.equinox.concurrent.future.PooledExecutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Fans out operations on a pool and joins their results, once with
+ * {@link Futures#allOf(List, IProgressMonitor)} and once by blocking on every
+ * future.
+ */
+public class FanOutFanInTest {
+
+	private static final int COUNT = 200;
+	private static final long EXPECTED_SUM = (long) COUNT * (COUNT - 1);
+
+	private final IExecutor immediate = new ImmediateExecutor();
+	private PooledExecutor executor;
+
+	@Before
+	public void setUp() {
+		executor = new PooledExecutor(4);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	private IListenableFuture<Integer> start(final int value) {
+		@SuppressWarnings("unchecked")
+		IListenableFuture<Integer> future = (IListenableFuture<Integer>) executor
+				.execute(new IProgressRunnable<Integer>() {
+					public Integer run(IProgressMonitor monitor)
+							throws Exception {
+						return new Integer(value);
+					}
+				}, null);
+		return future;
+	}
+
+	@Test
+	public void testAllOfMapped() throws Exception {
+		IProgressFunction<Integer, Integer> twice = new IProgressFunction<Integer, Integer>() {
+			public Integer apply(Integer input, IProgressMonitor monitor)
+					throws Exception {
+				return new Integer(input.intValue() * 2);
+			}
+		};
+		final AtomicInteger work = new AtomicInteger();
+		IProgressMonitor monitor = new NullProgressMonitor() {
+			public void worked(int worked) {
+				work.addAndGet(worked);
+			}
+		};
+		List<IListenableFuture<Integer>> futures = new ArrayList<IListenableFuture<Integer>>(
+				COUNT);
+		for (int i = 0; i < COUNT; i++)
+			futures.add(Futures.map(start(i), twice, immediate));
+		List<Integer> results = Futures.allOf(futures, monitor).get(10000);
+		assertEquals(COUNT, results.size());
+		long sum = 0;
+		for (int i = 0; i < COUNT; i++) {
+			// In the order of the futures
+			assertEquals(new Integer(i * 2), results.get(i));
+			sum += results.get(i).intValue();
+		}
+		assertEquals(EXPECTED_SUM, sum);
+		assertEquals(COUNT, work.get());
+	}
+
+	@Test
+	public void testBlockingGet() throws Exception {
+		List<IFuture<Integer>> futures = new ArrayList<IFuture<Integer>>(COUNT);
+		for (int i = 0; i < COUNT; i++)
+			futures.add(start(i));
+		long sum = 0;
+		for (IFuture<Integer> future : futures)
+			sum += future.get().intValue() * 2;
+		assertEquals(EXPECTED_SUM, sum);
+	}
+}
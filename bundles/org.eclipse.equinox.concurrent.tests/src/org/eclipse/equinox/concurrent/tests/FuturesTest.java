@@ -0,0 +1,372 @@
+/******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others. All rights reserved. This
+ * program and the accompanying materials are made available under the terms of
+ * the Eclipse Public License v1.0 which accompanies this distribution, and is
+ * available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   IBM Corporation - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.equinox.concurrent.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.equinox.concurrent.future.Futures;
+import org.eclipse.equinox.concurrent.future.IExecutor;
+import org.eclipse.equinox.concurrent.future.IFuture;
+import org.eclipse.equinox.concurrent.future.IListenableFuture;
+import org.eclipse.equinox.concurrent.future.IProgressFunction;
+import org.eclipse.equinox.concurrent.future.ImmediateExecutor;
+import org.eclipse.equinox.concurrent.future.SettableListenableFuture;
+import org.eclipse.equinox.concurrent.future.TimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FuturesTest {
+
+	private final IExecutor executor = new ImmediateExecutor();
+	private ScheduledThreadPoolExecutor scheduler;
+
+	private final IProgressFunction<Integer, String> toString = new IProgressFunction<Integer, String>() {
+		public String apply(Integer input, IProgressMonitor monitor)
+				throws Exception {
+			return String.valueOf(input);
+		}
+	};
+
+	@Before
+	public void setUp() {
+		scheduler = new ScheduledThreadPoolExecutor(1);
+	}
+
+	@After
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	private static void assertCanceled(IFuture<?> future) {
+		assertTrue("Not done", future.isDone()); //$NON-NLS-1$
+		assertEquals(IStatus.CANCEL, future.getStatus().getSeverity());
+	}
+
+	private static void assertFailed(IFuture<?> future, Throwable failure) {
+		assertTrue("Not done", future.isDone()); //$NON-NLS-1$
+		assertEquals(IStatus.ERROR, future.getStatus().getSeverity());
+		assertSame(failure, future.getStatus().getException());
+	}
+
+	@Test
+	public void testMap() throws Exception {
+		SettableListenableFuture<Integer> source = new SettableListenableFuture<Integer>();
+		IListenableFuture<String> result = Futures.map(source, toString,
+				executor);
+		assertFalse(result.isDone());
+		source.setResult(new Integer(42));
+		assertEquals("42", result.get()); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testMapSourceFails() throws Exception {
+		SettableListenableFuture<Integer> source = new SettableListenableFuture<Integer>();
+		IListenableFuture<String> result = Futures.map(source, toString,
+				executor);
+		Exception failure = new IllegalStateException();
+		source.setFailure(failure);
+		assertFailed(result, failure);
+	}
+
+	@Test
+	public void testMapFunctionFails() throws Exception {
+		final Exception failure = new IllegalStateException();
+		SettableListenableFuture<Integer> source = new SettableListenableFuture<Integer>();
+		IListenableFuture<String> result = Futures.map(source,
+				new IProgressFunction<Integer, String>() {
+					public String apply(Integer input, IProgressMonitor monitor)
+							throws Exception {
+						throw failure;
+					}
+				}, executor);
+		source.setResult(new Integer(1));
+		assertFailed(result, failure);
+	}
+
+	@Test
+	public void testMapSourceCanceled() throws Exception {
+		SettableListenableFuture<Integer> source = new SettableListenableFuture<Integer>();
+		IListenableFuture<String> result = Futures.map(source, toString,
+				executor);
+		source.cancel();
+		assertCanceled(result);
+	}
+
+	@Test
+	public void testMapCancelCancelsSource() throws Exception {
+		SettableListenableFuture<Integer> source = new SettableListenableFuture<Integer>();
+		IListenableFuture<String> result = Futures.map(source, toString,
+				executor);
+		assertTrue(result.cancel());
+		assertCanceled(source);
+	}
+
+	@Test
+	public void testFlatMap() throws Exception {
+		SettableListenableFuture<Integer> source = new SettableListenableFuture<Integer>();
+		final SettableListenableFuture<String> next = new SettableListenableFuture<String>();
+		final Integer[] input = new Integer[1];
+		IListenableFuture<String> result = Futures.flatMap(source,
+				new IProgressFunction<Integer, IListenableFuture<String>>() {
+					public IListenableFuture<String> apply(Integer value,
+							IProgressMonitor monitor) throws Exception {
+						input[0] = value;
+						return next;
+					}
+				}, executor);
+		source.setResult(new Integer(7));
+		assertEquals(new Integer(7), input[0]);
+		assertFalse(result.isDone());
+		next.setResult("seven"); //$NON-NLS-1$
+		assertEquals("seven", result.get()); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testFlatMapNextFails() throws Exception {
+		SettableListenableFuture<Integer> source = new SettableListenableFuture<Integer>();
+		final SettableListenableFuture<String> next = new SettableListenableFuture<String>();
+		IListenableFuture<String> result = Futures.flatMap(source,
+				new IProgressFunction<Integer, IListenableFuture<String>>() {
+					public IListenableFuture<String> apply(Integer value,
+							IProgressMonitor monitor) throws Exception {
+						return next;
+					}
+				}, executor);
+		source.setResult(new Integer(7));
+		Exception failure = new IllegalStateException();
+		next.setFailure(failure);
+		assertFailed(result, failure);
+	}
+
+	@Test
+	public void testFlatMapCancelCancelsNext() throws Exception {
+		SettableListenableFuture<Integer> source = new SettableListenableFuture<Integer>();
+		final SettableListenableFuture<String> next = new SettableListenableFuture<String>();
+		IListenableFuture<String> result = Futures.flatMap(source,
+				new IProgressFunction<Integer, IListenableFuture<String>>() {
+					public IListenableFuture<String> apply(Integer value,
+							IProgressMonitor monitor) throws Exception {
+						return next;
+					}
+				}, executor);
+		source.setResult(new Integer(7));
+		result.cancel();
+		assertCanceled(next);
+	}
+
+	@Test
+	public void testAllOf() throws Exception {
+		List<SettableListenableFuture<Integer>> sources = new ArrayList<SettableListenableFuture<Integer>>();
+		for (int i = 0; i < 3; i++)
+			sources.add(new SettableListenableFuture<Integer>());
+		final int[] work = new int[2];
+		IProgressMonitor monitor = new NullProgressMonitor() {
+			public void beginTask(String name, int totalWork) {
+				work[0] = totalWork;
+			}
+
+			public void worked(int worked) {
+				work[1] += worked;
+			}
+		};
+		IListenableFuture<List<Integer>> result = Futures.allOf(sources,
+				monitor);
+		assertEquals(3, work[0]);
+		// Complete out of order, the results keep the order of the sources
+		sources.get(2).setResult(new Integer(2));
+		sources.get(0).setResult(new Integer(0));
+		assertFalse(result.isDone());
+		assertEquals(2, work[1]);
+		sources.get(1).setResult(new Integer(1));
+		assertEquals(Arrays.asList(new Integer[] {new Integer(0),
+				new Integer(1), new Integer(2)}), result.get());
+		assertEquals(3, work[1]);
+	}
+
+	@Test
+	public void testAllOfEmpty() throws Exception {
+		List<IListenableFuture<Integer>> sources = Collections.emptyList();
+		IListenableFuture<List<Integer>> result = Futures.allOf(sources, null);
+		assertTrue(result.isDone());
+		assertTrue(result.get().isEmpty());
+	}
+
+	@Test
+	public void testAllOfFailsFast() throws Exception {
+		SettableListenableFuture<Integer> first = new SettableListenableFuture<Integer>();
+		SettableListenableFuture<Integer> second = new SettableListenableFuture<Integer>();
+		IListenableFuture<List<Integer>> result = Futures.allOf(Arrays
+				.asList(first, second), null);
+		Exception failure = new IllegalStateException();
+		second.setFailure(failure);
+		// Does not wait for the first future
+		assertFailed(result, failure);
+		assertFalse(first.isDone());
+	}
+
+	@Test
+	public void testAllOfCancelCancelsSources() throws Exception {
+		SettableListenableFuture<Integer> first = new SettableListenableFuture<Integer>();
+		SettableListenableFuture<Integer> second = new SettableListenableFuture<Integer>();
+		IListenableFuture<List<Integer>> result = Futures.allOf(Arrays
+				.asList(first, second), null);
+		first.setResult(new Integer(1));
+		result.cancel();
+		assertCanceled(second);
+		assertEquals(IStatus.OK, first.getStatus().getSeverity());
+	}
+
+	@Test
+	public void testAnyOf() throws Exception {
+		SettableListenableFuture<Integer> first = new SettableListenableFuture<Integer>();
+		SettableListenableFuture<Integer> second = new SettableListenableFuture<Integer>();
+		IListenableFuture<Integer> result = Futures.anyOf(Arrays.asList(
+				first, second), null);
+		second.setResult(new Integer(2));
+		assertEquals(new Integer(2), result.get());
+		// The other futures are left running
+		assertFalse(first.isDone());
+		first.setFailure(new IllegalStateException());
+		assertEquals(new Integer(2), result.get());
+	}
+
+	@Test
+	public void testAnyOfFirstFails() throws Exception {
+		SettableListenableFuture<Integer> first = new SettableListenableFuture<Integer>();
+		SettableListenableFuture<Integer> second = new SettableListenableFuture<Integer>();
+		IListenableFuture<Integer> result = Futures.anyOf(Arrays.asList(
+				first, second), null);
+		Exception failure = new IllegalStateException();
+		first.setFailure(failure);
+		second.setResult(new Integer(2));
+		assertFailed(result, failure);
+	}
+
+	@Test
+	public void testAnyOfCancelCancelsSources() throws Exception {
+		SettableListenableFuture<Integer> first = new SettableListenableFuture<Integer>();
+		SettableListenableFuture<Integer> second = new SettableListenableFuture<Integer>();
+		IListenableFuture<Integer> result = Futures.anyOf(Arrays.asList(
+				first, second), null);
+		result.cancel();
+		assertCanceled(first);
+		assertCanceled(second);
+	}
+
+	@Test
+	public void testWithTimeoutExpires() throws Exception {
+		SettableListenableFuture<Integer> source = new SettableListenableFuture<Integer>();
+		IListenableFuture<Integer> result = Futures.withTimeout(source, 50,
+				scheduler);
+		// Waits for the failure rather than timing out itself
+		result.get(10000);
+		assertTrue(result.isDone());
+		assertTrue(result.getStatus().getException() instanceof TimeoutException);
+		// The source is canceled right after the result has failed
+		try {
+			source.get(10000);
+			fail("Not canceled"); //$NON-NLS-1$
+		} catch (OperationCanceledException e) {
+			// expected
+		}
+		assertCanceled(source);
+	}
+
+	@Test
+	public void testWithTimeoutCompletes() throws Exception {
+		SettableListenableFuture<Integer> source = new SettableListenableFuture<Integer>();
+		IListenableFuture<Integer> result = Futures.withTimeout(source, 60000,
+				scheduler);
+		assertEquals(1, scheduler.getQueue().size());
+		source.setResult(new Integer(1));
+		assertEquals(new Integer(1), result.get());
+		// The pending timeout does not linger in the scheduler
+		assertEquals(0, scheduler.getQueue().size());
+	}
+
+	@Test
+	public void testWithTimeoutCancelCancelsSource() throws Exception {
+		SettableListenableFuture<Integer> source = new SettableListenableFuture<Integer>();
+		IListenableFuture<Integer> result = Futures.withTimeout(source, 60000,
+				scheduler);
+		result.cancel();
+		assertCanceled(source);
+		assertEquals(0, scheduler.getQueue().size());
+	}
+
+	@Test(expected = RejectedExecutionException.class)
+	public void testWithTimeoutSchedulerShutDown() throws Exception {
+		scheduler.shutdown();
+		Futures.withTimeout(new SettableListenableFuture<Integer>(), 1000,
+				scheduler);
+	}
+
+	@Test
+	public void testToFuture() throws Exception {
+		SettableListenableFuture<Integer> succeeded = new SettableListenableFuture<Integer>();
+		succeeded.setResult(new Integer(1));
+		assertEquals(new Integer(1), Futures.toFuture(succeeded).get());
+
+		SettableListenableFuture<Integer> failed = new SettableListenableFuture<Integer>();
+		Exception failure = new IllegalStateException();
+		failed.setFailure(failure);
+		try {
+			Futures.toFuture(failed).get();
+			fail("No failure"); //$NON-NLS-1$
+		} catch (ExecutionException e) {
+			assertSame(failure, e.getCause());
+		}
+
+		SettableListenableFuture<Integer> canceled = new SettableListenableFuture<Integer>();
+		canceled.cancel();
+		assertTrue(Futures.toFuture(canceled).isCancelled());
+		try {
+			Futures.toFuture(canceled).get();
+			fail("Not canceled"); //$NON-NLS-1$
+		} catch (CancellationException e) {
+			// expected
+		}
+	}
+	@Test
+	public void testToFutureTimedGetLeavesFutureUntouched() throws Exception {
+		SettableListenableFuture<Integer> source = new SettableListenableFuture<Integer>();
+		Future<Integer> future = Futures.toFuture(source);
+		try {
+			future.get(10, TimeUnit.MILLISECONDS);
+			fail("No timeout"); //$NON-NLS-1$
+		} catch (java.util.concurrent.TimeoutException e) {
+			// expected
+		}
+		assertFalse(source.isDone());
+		assertFalse(future.isDone());
+		assertTrue(source.setResult(new Integer(1)));
+		assertEquals(new Integer(1), future.get(10, TimeUnit.MILLISECONDS));
+	}
+}
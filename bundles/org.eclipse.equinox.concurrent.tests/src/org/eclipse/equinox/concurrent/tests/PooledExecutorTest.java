@@ -0,0 +1,165 @@
+/******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others. All rights reserved. This
+ * program and the accompanying materials are made available under the terms of
+ * the Eclipse Public License v1.0 which accompanies this distribution, and is
+ * available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   IBM Corporation - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.equinox.concurrent.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.equinox.concurrent.future.IFuture;
+import org.eclipse.equinox.concurrent.future.IProgressRunnable;
+import org.eclipse.equinox.concurrent.future.PooledExecutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PooledExecutorTest {
+
+	private PooledExecutor executor;
+	private final CountDownLatch started = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@Before
+	public void setUp() {
+		executor = new PooledExecutor(1);
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		executor.shutdown();
+	}
+
+	/*
+	 * Occupies the single pool thread until released.
+	 */
+	private IFuture<?> block() throws InterruptedException {
+		IFuture<?> future = executor.execute(new IProgressRunnable<String>() {
+			public String run(IProgressMonitor monitor) throws Exception {
+				started.countDown();
+				release.await(10, TimeUnit.SECONDS);
+				return null;
+			}
+		}, null);
+		assertTrue("Not started", started.await(10, TimeUnit.SECONDS)); //$NON-NLS-1$
+		return future;
+	}
+
+	private static IProgressRunnable<String> flag(final AtomicBoolean ran) {
+		return new IProgressRunnable<String>() {
+			public String run(IProgressMonitor monitor) throws Exception {
+				ran.set(true);
+				return "done"; //$NON-NLS-1$
+			}
+		};
+	}
+
+	// the counts are updated after the future is done, so wait for them
+	private void awaitCompleted(long count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (executor.getCompletedCount() < count) {
+			if (System.currentTimeMillis() > deadline)
+				fail("Completed " + executor.getCompletedCount()); //$NON-NLS-1$
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	public void testExecute() throws Exception {
+		AtomicBoolean ran = new AtomicBoolean();
+		IFuture<?> future = executor.execute(flag(ran), null);
+		assertEquals("done", future.get(10000)); //$NON-NLS-1$
+		assertTrue(ran.get());
+		assertEquals(IStatus.OK, future.getStatus().getSeverity());
+	}
+
+	@Test
+	public void testCanceledWhileQueuedIsSkipped() throws Exception {
+		block();
+		AtomicBoolean ran = new AtomicBoolean();
+		IFuture<?> queued = executor.execute(flag(ran), null);
+		assertTrue(queued.cancel());
+		release.countDown();
+		awaitCompleted(2);
+		assertFalse("Canceled runnable was run", ran.get()); //$NON-NLS-1$
+		assertEquals(IStatus.CANCEL, queued.getStatus().getSeverity());
+	}
+
+	@Test
+	public void testCounts() throws Exception {
+		assertEquals(0, executor.getQueuedCount());
+		assertEquals(0, executor.getActiveCount());
+		assertEquals(0, executor.getCompletedCount());
+		IFuture<?> blocking = block();
+		AtomicBoolean ran = new AtomicBoolean();
+		executor.execute(flag(ran), null);
+		executor.execute(flag(ran), null);
+		assertEquals(2, executor.getQueuedCount());
+		assertEquals(1, executor.getActiveCount());
+		assertEquals(0, executor.getCompletedCount());
+		assertEquals(1, executor.getPoolSize());
+		release.countDown();
+		blocking.get(10000);
+		awaitCompleted(3);
+		assertEquals(0, executor.getQueuedCount());
+		assertEquals(0, executor.getActiveCount());
+		assertEquals(3, executor.getCompletedCount());
+	}
+
+	@Test
+	public void testShutdownRunsSubmitted() throws Exception {
+		block();
+		AtomicBoolean ran = new AtomicBoolean();
+		IFuture<?> queued = executor.execute(flag(ran), null);
+		executor.shutdown();
+		release.countDown();
+		assertEquals("done", queued.get(10000)); //$NON-NLS-1$
+		assertTrue(ran.get());
+	}
+
+	@Test
+	public void testRejectedAfterShutdown() throws Exception {
+		executor.shutdown();
+		try {
+			executor.execute(flag(new AtomicBoolean()), null);
+			fail("Not rejected"); //$NON-NLS-1$
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+		// a rejected runnable is not counted
+		assertEquals(0, executor.getQueuedCount());
+		assertEquals(0, executor.getCompletedCount());
+	}
+
+	@Test
+	public void testGivenExecutorServiceNotShutDown() throws Exception {
+		ExecutorService service = Executors.newSingleThreadExecutor();
+		try {
+			PooledExecutor pooled = new PooledExecutor(service);
+			pooled.shutdown();
+			assertFalse(service.isShutdown());
+			AtomicBoolean ran = new AtomicBoolean();
+			assertEquals("done", pooled.execute(flag(ran), null).get(10000)); //$NON-NLS-1$
+			assertEquals(-1, pooled.getPoolSize());
+		} finally {
+			service.shutdown();
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others. All rights reserved. This
+ * program and the accompanying materials are made available under the terms of
+ * the Eclipse Public License v1.0 which accompanies this distribution, and is
+ * available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   IBM Corporation - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.equinox.concurrent.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.equinox.concurrent.future.IProgressRunnable;
+import org.eclipse.equinox.concurrent.future.ImmediateExecutor;
+import org.eclipse.equinox.concurrent.future.SettableListenableFuture;
+import org.junit.Test;
+
+public class SettableListenableFutureTest {
+
+	private SettableListenableFuture<String> newFuture(
+			final AtomicInteger notified) {
+		SettableListenableFuture<String> future = new SettableListenableFuture<String>();
+		future.addListener(new ImmediateExecutor(),
+				new IProgressRunnable<String>() {
+					public String run(IProgressMonitor monitor)
+							throws Exception {
+						notified.incrementAndGet();
+						return null;
+					}
+				}, null);
+		return future;
+	}
+
+	@Test
+	public void testSetResult() throws Exception {
+		AtomicInteger notified = new AtomicInteger();
+		SettableListenableFuture<String> future = newFuture(notified);
+		assertTrue(future.setResult("first")); //$NON-NLS-1$
+		assertFalse(future.setResult("second")); //$NON-NLS-1$
+		assertFalse(future.setFailure(new IllegalStateException()));
+		assertFalse(future.cancel());
+		assertEquals("first", future.get()); //$NON-NLS-1$
+		assertEquals(IStatus.OK, future.getStatus().getSeverity());
+		assertEquals(1, notified.get());
+	}
+
+	@Test
+	public void testSetFailure() throws Exception {
+		AtomicInteger notified = new AtomicInteger();
+		SettableListenableFuture<String> future = newFuture(notified);
+		Exception failure = new IllegalStateException();
+		assertTrue(future.setFailure(failure));
+		assertFalse(future.setResult("late")); //$NON-NLS-1$
+		assertEquals(IStatus.ERROR, future.getStatus().getSeverity());
+		assertSame(failure, future.getStatus().getException());
+		assertEquals(1, notified.get());
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		AtomicInteger notified = new AtomicInteger();
+		SettableListenableFuture<String> future = newFuture(notified);
+		assertTrue(future.cancel());
+		assertFalse(future.setResult("late")); //$NON-NLS-1$
+		assertEquals(IStatus.CANCEL, future.getStatus().getSeverity());
+		assertEquals(1, notified.get());
+	}
+
+	@Test
+	public void testSetFromOtherThread() throws Exception {
+		final SettableListenableFuture<String> future = new SettableListenableFuture<String>();
+		new Thread() {
+			public void run() {
+				future.setResult("async"); //$NON-NLS-1$
+			}
+		}.start();
+		assertEquals("async", future.get(10000)); //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,197 @@
+/******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others. All rights reserved. This
+ * program and the accompanying materials are made available under the terms of
+ * the Eclipse Public License v1.0 which accompanies this distribution, and is
+ * available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   IBM Corporation - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.equinox.concurrent.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.equinox.concurrent.future.Futures;
+import org.eclipse.equinox.concurrent.future.IExecutor;
+import org.eclipse.equinox.concurrent.future.IListenableFuture;
+import org.eclipse.equinox.concurrent.future.IProgressFunction;
+import org.eclipse.equinox.concurrent.future.IProgressRunnable;
+import org.eclipse.equinox.concurrent.future.ImmediateExecutor;
+import org.eclipse.equinox.concurrent.future.SingleOperationListenableFuture;
+import org.eclipse.equinox.concurrent.future.TimeoutException;
+import org.junit.Test;
+
+public class SingleOperationListenableFutureTest {
+
+	private final IExecutor executor = new ImmediateExecutor();
+
+	private IProgressRunnable<String> counter(final AtomicInteger count) {
+		return new IProgressRunnable<String>() {
+			public String run(IProgressMonitor monitor) throws Exception {
+				count.incrementAndGet();
+				return null;
+			}
+		};
+	}
+
+	private IProgressRunnable<String> result(final String value) {
+		return new IProgressRunnable<String>() {
+			public String run(IProgressMonitor monitor) throws Exception {
+				return value;
+			}
+		};
+	}
+
+	@Test
+	public void testAllListenersNotified() throws Exception {
+		SingleOperationListenableFuture<String> future = new SingleOperationListenableFuture<String>();
+		AtomicInteger count = new AtomicInteger();
+		// Only the first listener used to be kept
+		for (int i = 0; i < 3; i++)
+			future.addListener(executor, counter(count), null);
+		assertEquals(0, count.get());
+		future.runWithProgress(result("done")); //$NON-NLS-1$
+		assertEquals(3, count.get());
+		assertEquals("done", future.get()); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testListenerAddedWhenDone() throws Exception {
+		SingleOperationListenableFuture<String> future = new SingleOperationListenableFuture<String>();
+		future.runWithProgress(result("done")); //$NON-NLS-1$
+		AtomicInteger count = new AtomicInteger();
+		future.addListener(executor, counter(count), null);
+		assertEquals(1, count.get());
+	}
+
+	@Test
+	public void testListenersNotifiedOnFailure() throws Exception {
+		SingleOperationListenableFuture<String> future = new SingleOperationListenableFuture<String>();
+		AtomicInteger count = new AtomicInteger();
+		future.addListener(executor, counter(count), null);
+		future.runWithProgress(new IProgressRunnable<String>() {
+			public String run(IProgressMonitor monitor) throws Exception {
+				throw new IllegalStateException();
+			}
+		});
+		assertEquals(1, count.get());
+		assertEquals(IStatus.ERROR, future.getStatus().getSeverity());
+		assertTrue(future.getStatus().getException() instanceof IllegalStateException);
+	}
+
+	@Test
+	public void testListenersNotifiedOnCancel() throws Exception {
+		SingleOperationListenableFuture<String> future = new SingleOperationListenableFuture<String>();
+		AtomicInteger count = new AtomicInteger();
+		future.addListener(executor, counter(count), null);
+		future.addListener(executor, counter(count), null);
+		assertTrue(future.cancel());
+		assertEquals(2, count.get());
+		assertEquals(IStatus.CANCEL, future.getStatus().getSeverity());
+		// A second cancel or a late completion does not notify again
+		assertFalse(future.cancel());
+		future.runWithProgress(result("late")); //$NON-NLS-1$
+		assertEquals(2, count.get());
+	}
+
+	@Test
+	public void testListenersNotifiedOnce() throws Exception {
+		SingleOperationListenableFuture<String> future = new SingleOperationListenableFuture<String>();
+		AtomicInteger count = new AtomicInteger();
+		future.addListener(executor, counter(count), null);
+		future.runWithProgress(result("done")); //$NON-NLS-1$
+		assertFalse(future.cancel());
+		assertEquals(1, count.get());
+	}
+
+	@Test
+	public void testListenersRunOutsideLock() throws Exception {
+		final SingleOperationListenableFuture<String> completed = new SingleOperationListenableFuture<String>();
+		final SingleOperationListenableFuture<String> canceled = new SingleOperationListenableFuture<String>();
+		final AtomicBoolean locked = new AtomicBoolean();
+		completed.addListener(executor, new IProgressRunnable<String>() {
+			public String run(IProgressMonitor monitor) throws Exception {
+				locked.compareAndSet(false, Thread.holdsLock(completed));
+				return null;
+			}
+		}, null);
+		canceled.addListener(executor, new IProgressRunnable<String>() {
+			public String run(IProgressMonitor monitor) throws Exception {
+				locked.compareAndSet(false, Thread.holdsLock(canceled));
+				return null;
+			}
+		}, null);
+		completed.runWithProgress(result("done")); //$NON-NLS-1$
+		canceled.cancel();
+		assertFalse("A listener ran while holding the future's lock", locked.get()); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testListenerCanBlockOnOtherThread() throws Exception {
+		// A listener waiting for another thread which uses the future must not
+		// deadlock
+		final SingleOperationListenableFuture<String> future = new SingleOperationListenableFuture<String>();
+		final CountDownLatch checked = new CountDownLatch(1);
+		final AtomicBoolean released = new AtomicBoolean();
+		future.addListener(executor, new IProgressRunnable<String>() {
+			public String run(IProgressMonitor monitor) throws Exception {
+				Thread thread = new Thread() {
+					public void run() {
+						future.isDone();
+						checked.countDown();
+					}
+				};
+				thread.start();
+				released.set(checked.await(5, TimeUnit.SECONDS));
+				return null;
+			}
+		}, null);
+		future.runWithProgress(result("done")); //$NON-NLS-1$
+		assertTrue("The listener blocked the future", released.get()); //$NON-NLS-1$
+	}
+	@Test
+	public void testTimedOutGetNotifiesListeners() throws Exception {
+		SingleOperationListenableFuture<Integer> future = new SingleOperationListenableFuture<Integer>();
+		final AtomicInteger count = new AtomicInteger();
+		future.addListener(executor, new IProgressRunnable<Integer>() {
+			public Integer run(IProgressMonitor monitor) throws Exception {
+				count.incrementAndGet();
+				return null;
+			}
+		}, null);
+		IListenableFuture<String> mapped = Futures.map(future,
+				new IProgressFunction<Integer, String>() {
+					public String apply(Integer input, IProgressMonitor monitor)
+							throws Exception {
+						return String.valueOf(input);
+					}
+				}, executor);
+		try {
+			future.get(10);
+			fail("No timeout"); //$NON-NLS-1$
+		} catch (TimeoutException e) {
+			// expected
+		}
+		assertEquals(1, count.get());
+		assertTrue("Dependent future not done", mapped.isDone()); //$NON-NLS-1$
+		assertEquals(IStatus.ERROR, mapped.getStatus().getSeverity());
+		// A second timed get does not notify again
+		try {
+			future.get(10);
+			fail("No timeout"); //$NON-NLS-1$
+		} catch (TimeoutException e) {
+			// expected
+		}
+		assertEquals(1, count.get());
+	}
+}
@@ -1,5 +1,5 @@
 /******************************************************************************
- * Copyright (c) 2009, 2013 EclipseSource and others. All rights reserved. This
+ * Copyright (c) 2009, 2016 EclipseSource and others. All rights reserved. This
  * program and the accompanying materials are made available under the terms of
  * the Eclipse Public License v1.0 which accompanies this distribution, and is
  * available at http://www.eclipse.org/legal/epl-v10.html
@@ -50,7 +50,8 @@ public class FutureProgressMonitor extends ProgressMonitorWrapper {
 	public void done() {
 		super.done();
 		synchronized (lock) {
-			monitor.done();
+			if (monitor != null)
+				monitor.done();
 			monitor = null;
 		}
 	}
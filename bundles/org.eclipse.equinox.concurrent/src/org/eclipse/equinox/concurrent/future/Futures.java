@@ -0,0 +1,501 @@
+/******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others. All rights reserved. This
+ * program and the accompanying materials are made available under the terms of
+ * the Eclipse Public License v1.0 which accompanies this distribution, and is
+ * available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   IBM Corporation - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.equinox.concurrent.future;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * <p>
+ * Operations composing {@link IListenableFuture}s without blocking a thread
+ * per future. Each operation returns a new future which is completed from the
+ * listeners of the given futures:
+ * </p>
+ * <ul>
+ * <li>{@link #map(IListenableFuture, IProgressFunction, IExecutor)} and
+ * {@link #flatMap(IListenableFuture, IProgressFunction, IExecutor)} chain an
+ * operation after another;</li>
+ * <li>{@link #allOf(List, IProgressMonitor)} and
+ * {@link #anyOf(List, IProgressMonitor)} join several operations and report
+ * their progress to a single monitor;</li>
+ * <li>{@link #withTimeout(IListenableFuture, long, ScheduledExecutorService)}
+ * fails a future after a timeout, using a scheduler supplied by the
+ * caller.</li>
+ * </ul>
+ * <p>
+ * A failure or cancellation of a given future is passed on to the returned
+ * future, and canceling the returned future cancels the given futures.
+ * </p>
+ * <p>
+ * {@link #toFuture(IFuture)} adapts an {@link IFuture} to a
+ * {@link java.util.concurrent.Future}. In the other direction, a
+ * {@link SettableListenableFuture} can be completed from the callback of any
+ * other asynchronous API.
+ * </p>
+ *
+ * @since 1.2
+ */
+public final class Futures {
+
+	private static final IExecutor IMMEDIATE = new ImmediateExecutor();
+
+	private Futures() {
+		// no instances
+	}
+
+	/**
+	 * Return a future completed with the result of the given function applied
+	 * to the result of the given future. The function is run by the given
+	 * executor once the future has completed successfully.
+	 *
+	 * @param future
+	 *            the future providing the input. Must not be <code>null</code>.
+	 * @param function
+	 *            the function to apply. Must not be <code>null</code>.
+	 * @param executor
+	 *            the executor to run the function. Must not be
+	 *            <code>null</code>.
+	 * @return the future result of the function
+	 */
+	public static <InputType, ResultType> IListenableFuture<ResultType> map(
+			final IListenableFuture<InputType> future,
+			final IProgressFunction<? super InputType, ? extends ResultType> function,
+			IExecutor executor) {
+		Assert.isNotNull(future);
+		Assert.isNotNull(function);
+		Assert.isNotNull(executor);
+		final SettableListenableFuture<ResultType> result = new SettableListenableFuture<ResultType>();
+		cancelOnCancel(result, future);
+		future.addListener(executor, new IProgressRunnable<InputType>() {
+			public InputType run(IProgressMonitor monitor) throws Exception {
+				if (!isSuccessful(future)) {
+					copyFailure(future, result);
+				} else if (!result.isDone()) {
+					try {
+						result.setResult(function.apply(getResult(future),
+								result.getProgressMonitor()));
+					} catch (Exception e) {
+						result.setFailure(e);
+					}
+				}
+				return null;
+			}
+		}, null);
+		return result;
+	}
+
+	/**
+	 * Return a future completed with the outcome of the future returned by the
+	 * given function applied to the result of the given future. The function
+	 * is run by the given executor once the future has completed
+	 * successfully.
+	 *
+	 * @param future
+	 *            the future providing the input. Must not be <code>null</code>.
+	 * @param function
+	 *            the function starting the next operation. Must not be
+	 *            <code>null</code>, and must not return <code>null</code>.
+	 * @param executor
+	 *            the executor to run the function. Must not be
+	 *            <code>null</code>.
+	 * @return the future result of the next operation
+	 */
+	public static <InputType, ResultType> IListenableFuture<ResultType> flatMap(
+			final IListenableFuture<InputType> future,
+			final IProgressFunction<? super InputType, ? extends IListenableFuture<? extends ResultType>> function,
+			IExecutor executor) {
+		Assert.isNotNull(future);
+		Assert.isNotNull(function);
+		Assert.isNotNull(executor);
+		final SettableListenableFuture<ResultType> result = new SettableListenableFuture<ResultType>();
+		cancelOnCancel(result, future);
+		future.addListener(executor, new IProgressRunnable<InputType>() {
+			public InputType run(IProgressMonitor monitor) throws Exception {
+				if (!isSuccessful(future)) {
+					copyFailure(future, result);
+				} else if (!result.isDone()) {
+					final IListenableFuture<? extends ResultType> next;
+					try {
+						next = function.apply(getResult(future),
+								result.getProgressMonitor());
+						Assert.isNotNull(next);
+					} catch (Exception e) {
+						result.setFailure(e);
+						return null;
+					}
+					cancelOnCancel(result, next);
+					whenDone(next, new Runnable() {
+						public void run() {
+							copyOutcome(next, result);
+						}
+					});
+				}
+				return null;
+			}
+		}, null);
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Return a future completed with the results of all the given futures, in
+	 * the same order, once all have completed successfully. If one of the
+	 * futures fails or is canceled, the returned future fails or is canceled
+	 * right away, without waiting for the others.
+	 * </p>
+	 * <p>
+	 * The progress monitor of the returned future is given one unit of work
+	 * per future, and is worked as the futures complete.
+	 * </p>
+	 *
+	 * @param futures
+	 *            the futures to join. Must not be <code>null</code>.
+	 * @param monitor
+	 *            a progress monitor for the returned future. May be
+	 *            <code>null</code>.
+	 * @return the future list of results
+	 */
+	public static <ResultType> IListenableFuture<List<ResultType>> allOf(
+			List<? extends IListenableFuture<? extends ResultType>> futures,
+			IProgressMonitor monitor) {
+		Assert.isNotNull(futures);
+		final List<IListenableFuture<? extends ResultType>> sources = new ArrayList<IListenableFuture<? extends ResultType>>(
+				futures);
+		final SettableListenableFuture<List<ResultType>> result = new SettableListenableFuture<List<ResultType>>(
+				monitor);
+		final IProgressMonitor progressMonitor = result.getProgressMonitor();
+		progressMonitor.beginTask("", sources.size()); //$NON-NLS-1$
+		if (sources.isEmpty()) {
+			progressMonitor.done();
+			result.setResult(new ArrayList<ResultType>(0));
+			return result;
+		}
+		cancelOnCancel(result, sources.toArray(new IFuture<?>[sources.size()]));
+		final AtomicInteger remaining = new AtomicInteger(sources.size());
+		for (final IListenableFuture<? extends ResultType> source : sources) {
+			whenDone(source, new Runnable() {
+				public void run() {
+					if (!isSuccessful(source)) {
+						copyFailure(source, result);
+						return;
+					}
+					worked(progressMonitor);
+					if (remaining.decrementAndGet() > 0)
+						return;
+					// All sources are done, so the results are available
+					// without blocking
+					List<ResultType> results = new ArrayList<ResultType>(
+							sources.size());
+					try {
+						for (IListenableFuture<? extends ResultType> done : sources)
+							results.add(getResult(done));
+					} catch (Exception e) {
+						result.setFailure(e);
+						return;
+					}
+					done(progressMonitor);
+					result.setResult(results);
+				}
+			});
+		}
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Return a future completed with the outcome of the first of the given
+	 * futures to complete, whether it completed successfully, failed or was
+	 * canceled. The other futures are left running.
+	 * </p>
+	 * <p>
+	 * The progress monitor of the returned future is given one unit of work,
+	 * which is worked when the first future completes.
+	 * </p>
+	 *
+	 * @param futures
+	 *            the futures to wait for. Must not be <code>null</code> or
+	 *            empty.
+	 * @param monitor
+	 *            a progress monitor for the returned future. May be
+	 *            <code>null</code>.
+	 * @return the future result of the first future to complete
+	 */
+	public static <ResultType> IListenableFuture<ResultType> anyOf(
+			List<? extends IListenableFuture<? extends ResultType>> futures,
+			IProgressMonitor monitor) {
+		Assert.isNotNull(futures);
+		Assert.isLegal(!futures.isEmpty(), "futures must not be empty"); //$NON-NLS-1$
+		final SettableListenableFuture<ResultType> result = new SettableListenableFuture<ResultType>(
+				monitor);
+		final IProgressMonitor progressMonitor = result.getProgressMonitor();
+		progressMonitor.beginTask("", 1); //$NON-NLS-1$
+		final List<IListenableFuture<? extends ResultType>> sources = new ArrayList<IListenableFuture<? extends ResultType>>(
+				futures);
+		cancelOnCancel(result, sources.toArray(new IFuture<?>[sources.size()]));
+		for (final IListenableFuture<? extends ResultType> source : sources) {
+			whenDone(source, new Runnable() {
+				public void run() {
+					if (result.isDone())
+						return;
+					if (isSuccessful(source)) {
+						ResultType value;
+						try {
+							value = getResult(source);
+						} catch (Exception e) {
+							result.setFailure(e);
+							return;
+						}
+						if (result.setResult(value)) {
+							worked(progressMonitor);
+							done(progressMonitor);
+						}
+					} else {
+						copyFailure(source, result);
+					}
+				}
+			});
+		}
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Return a future completed with the outcome of the given future, or
+	 * failed with a {@link TimeoutException} if the given future has not
+	 * completed within the given time. In the latter case the given future is
+	 * canceled.
+	 * </p>
+	 * <p>
+	 * No thread waits for the given future. The timeout is tracked by the given
+	 * scheduler, which may be shared by any number of futures. The lifecycle
+	 * of the scheduler remains with the caller, e.g. a bundle should shut down
+	 * its scheduler when it is stopped. If the scheduler is a
+	 * {@link ScheduledThreadPoolExecutor}, the timeout is removed from its
+	 * queue once the given future completes.
+	 * </p>
+	 *
+	 * @param future
+	 *            the future to time out. Must not be <code>null</code>.
+	 * @param timeoutInMillis
+	 *            the timeout in milliseconds. Must be >= 0.
+	 * @param scheduler
+	 *            the scheduler to run the timeout. Must not be
+	 *            <code>null</code>.
+	 * @return the future result of the given future
+	 * @throws java.util.concurrent.RejectedExecutionException
+	 *             if the scheduler does not accept the timeout, e.g. because
+	 *             it has been shut down
+	 */
+	public static <ResultType> IListenableFuture<ResultType> withTimeout(
+			final IListenableFuture<ResultType> future,
+			final long timeoutInMillis,
+			final ScheduledExecutorService scheduler) {
+		Assert.isNotNull(future);
+		Assert.isLegal(timeoutInMillis >= 0, "timeoutInMillis must be => 0"); //$NON-NLS-1$
+		Assert.isNotNull(scheduler);
+		final SettableListenableFuture<ResultType> result = new SettableListenableFuture<ResultType>();
+		cancelOnCancel(result, future);
+		final ScheduledFuture<?> timeout = scheduler.schedule(new Runnable() {
+			public void run() {
+				if (result.setFailure(new TimeoutException(
+						"Operation timeout", timeoutInMillis))) //$NON-NLS-1$
+					future.cancel();
+			}
+		}, timeoutInMillis, TimeUnit.MILLISECONDS);
+		whenDone(future, new Runnable() {
+			public void run() {
+				copyOutcome(future, result);
+				// Don't keep the canceled timeout queued until it expires
+				if (timeout.cancel(false)
+						&& scheduler instanceof ScheduledThreadPoolExecutor
+						&& timeout instanceof Runnable)
+					((ScheduledThreadPoolExecutor) scheduler)
+							.remove((Runnable) timeout);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Return a {@link java.util.concurrent.Future} view of the given future.
+	 * {@link Future#get()} throws a {@link CancellationException} if the
+	 * future has been canceled, and an {@link ExecutionException} wrapping the
+	 * cause if it has failed. Unlike {@link IFuture#get(long)}, a
+	 * {@link Future#get(long, TimeUnit)} which runs out of time leaves the
+	 * future untouched.
+	 *
+	 * @param future
+	 *            the future to adapt. Must not be <code>null</code>.
+	 * @return the adapted future
+	 */
+	public static <ResultType> Future<ResultType> toFuture(
+			final IListenableFuture<ResultType> future) {
+		Assert.isNotNull(future);
+		return new Future<ResultType>() {
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				return future.cancel();
+			}
+
+			public boolean isCancelled() {
+				IStatus status = future.getStatus();
+				return status != null
+						&& status.getSeverity() == IStatus.CANCEL;
+			}
+
+			public boolean isDone() {
+				return future.isDone();
+			}
+
+			public ResultType get() throws InterruptedException,
+					ExecutionException {
+				ResultType value;
+				try {
+					value = future.get();
+				} catch (OperationCanceledException e) {
+					throw newCancellationException(e);
+				}
+				return checkStatus(value);
+			}
+
+			public ResultType get(long timeout, TimeUnit unit)
+					throws InterruptedException, ExecutionException,
+					java.util.concurrent.TimeoutException {
+				// Wait for a listener rather than IFuture#get(long), which
+				// fails the future when the time is up
+				final CountDownLatch done = new CountDownLatch(1);
+				whenDone(future, new Runnable() {
+					public void run() {
+						done.countDown();
+					}
+				});
+				if (!done.await(timeout, unit))
+					throw new java.util.concurrent.TimeoutException(
+							"Operation timeout after " + timeout + " " + unit); //$NON-NLS-1$ //$NON-NLS-2$
+				return get();
+			}
+
+			private ResultType checkStatus(ResultType value)
+					throws ExecutionException {
+				IStatus status = future.getStatus();
+				if (status != null && status.getSeverity() == IStatus.CANCEL)
+					throw new CancellationException();
+				if (status != null && status.getSeverity() == IStatus.ERROR)
+					throw new ExecutionException(getFailure(status));
+				return value;
+			}
+
+			private CancellationException newCancellationException(
+					OperationCanceledException e) {
+				CancellationException ce = new CancellationException(e
+						.getMessage());
+				ce.initCause(e);
+				return ce;
+			}
+		};
+	}
+
+	/*
+	 * Run the given runnable in the thread completing the given future, or
+	 * right away if it is already done.
+	 */
+	private static <T> void whenDone(IListenableFuture<T> future,
+			final Runnable runnable) {
+		future.addListener(IMMEDIATE, new IProgressRunnable<T>() {
+			public T run(IProgressMonitor monitor) throws Exception {
+				runnable.run();
+				return null;
+			}
+		}, null);
+	}
+
+	/*
+	 * Cancel the sources when the target is canceled.
+	 */
+	private static void cancelOnCancel(
+			final SettableListenableFuture<?> target,
+			final IFuture<?>... sources) {
+		whenDone(target, new Runnable() {
+			public void run() {
+				if (target.isCanceled())
+					for (IFuture<?> source : sources)
+						source.cancel();
+			}
+		});
+	}
+
+	private static boolean isSuccessful(IFuture<?> done) {
+		IStatus status = done.getStatus();
+		return status != null && status.getSeverity() != IStatus.CANCEL
+				&& status.getSeverity() != IStatus.ERROR;
+	}
+
+	private static <T> T getResult(IFuture<T> done) throws InterruptedException {
+		// Does not block as the future is done
+		return done.get();
+	}
+
+	private static Throwable getFailure(IStatus status) {
+		Throwable failure = status.getException();
+		return failure != null ? failure : new CoreException(status);
+	}
+
+	/*
+	 * Pass on the failure or cancellation of a done source.
+	 */
+	private static void copyFailure(IFuture<?> source,
+			SettableListenableFuture<?> target) {
+		IStatus status = source.getStatus();
+		if (status.getSeverity() == IStatus.CANCEL)
+			target.cancel();
+		else
+			target.setFailure(getFailure(status));
+	}
+
+	private static <T> void copyOutcome(IFuture<? extends T> source,
+			SettableListenableFuture<T> target) {
+		if (!isSuccessful(source)) {
+			copyFailure(source, target);
+			return;
+		}
+		try {
+			target.setResult(getResult(source));
+		} catch (Exception e) {
+			target.setFailure(e);
+		}
+	}
+
+	private static void worked(IProgressMonitor monitor) {
+		// The futures may complete concurrently
+		synchronized (monitor) {
+			monitor.worked(1);
+		}
+	}
+
+	private static void done(IProgressMonitor monitor) {
+		synchronized (monitor) {
+			monitor.done();
+		}
+	}
+}
@@ -0,0 +1,45 @@
+/******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others. All rights reserved. This
+ * program and the accompanying materials are made available under the terms of
+ * the Eclipse Public License v1.0 which accompanies this distribution, and is
+ * available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   IBM Corporation - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.equinox.concurrent.future;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * <p>
+ * A function from the result of one operation to the result of another,
+ * reporting its progress to an {@link IProgressMonitor}. Like an
+ * {@link IProgressRunnable} which takes an input.
+ * </p>
+ *
+ * @see Futures
+ * @param <InputType>
+ *            the type of the input
+ * @param <ResultType>
+ *            the type returned by {@link #apply(Object, IProgressMonitor)}
+ * @since 1.2
+ */
+public interface IProgressFunction<InputType, ResultType> {
+
+	/**
+	 * Compute a result from the given input.
+	 * 
+	 * @param input
+	 *            the result of the previous operation. May be
+	 *            <code>null</code>.
+	 * @param monitor
+	 *            the progress monitor. Will not be <code>null</code>.
+	 * @return the result of the function
+	 * @throws Exception
+	 *             if the function fails
+	 */
+	ResultType apply(InputType input, IProgressMonitor monitor)
+			throws Exception;
+
+}
@@ -0,0 +1,231 @@
+/******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others. All rights reserved. This
+ * program and the accompanying materials are made available under the terms of
+ * the Eclipse Public License v1.0 which accompanies this distribution, and is
+ * available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   IBM Corporation - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.equinox.concurrent.future;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * <p>
+ * An executor that runs the given {@link IProgressRunnable}s on the threads of
+ * an {@link ExecutorService}, rather than on a new {@link Thread} for every
+ * runnable as {@link ThreadsExecutor} does.
+ * </p>
+ * <p>
+ * By default, the runnables are run by a bounded pool of daemon threads.
+ * Threads are started on demand, up to the maximum, and runnables submitted
+ * while all threads are busy wait in an unbounded queue. Alternatively, any
+ * {@link ExecutorService} may be given to the constructor, e.g. a work-stealing
+ * pool or an executor starting a virtual thread per task, where the running VM
+ * provides one.
+ * </p>
+ * <p>
+ * The returned futures support cancellation in the same way as those of
+ * {@link ThreadsExecutor}. A runnable whose future is canceled before it was
+ * started is not run.
+ * </p>
+ * <p>
+ * The executor counts the runnables which are waiting to be run, which are
+ * running and which have completed. The counts are exact for the runnables
+ * submitted through this executor, whatever the executor service.
+ * </p>
+ * <p>
+ * Subclasses may extend the behavior of this PooledExecutor.
+ * </p>
+ *
+ * @since 1.2
+ */
+public class PooledExecutor extends AbstractExecutor {
+
+	private static final AtomicInteger poolNumber = new AtomicInteger();
+
+	private final ExecutorService executorService;
+	private final boolean ownsExecutorService;
+
+	private final AtomicInteger queuedCount = new AtomicInteger();
+	private final AtomicInteger activeCount = new AtomicInteger();
+	private final AtomicLong completedCount = new AtomicLong();
+
+	/**
+	 * Create an executor with a pool of at most as many daemon threads as
+	 * there are processors available to the VM.
+	 */
+	public PooledExecutor() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create an executor with a pool of at most <code>maxThreads</code> daemon
+	 * threads. The pool is shut down by {@link #shutdown()}.
+	 *
+	 * @param maxThreads
+	 *            the maximum number of threads. Must be greater than 0.
+	 */
+	public PooledExecutor(int maxThreads) {
+		Assert.isLegal(maxThreads > 0, "maxThreads must be > 0"); //$NON-NLS-1$
+		final String prefix = "PooledExecutor-" + poolNumber.incrementAndGet() + "-"; //$NON-NLS-1$ //$NON-NLS-2$
+		this.executorService = new ThreadPoolExecutor(maxThreads, maxThreads,
+				0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger threadNumber = new AtomicInteger();
+
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, prefix
+								+ threadNumber.incrementAndGet());
+						configureThreadForExecution(thread);
+						return thread;
+					}
+				});
+		this.ownsExecutorService = true;
+	}
+
+	/**
+	 * Create an executor running the runnables with the given executor service.
+	 * The executor service is not shut down by {@link #shutdown()}; its
+	 * lifecycle remains with the caller.
+	 *
+	 * @param executorService
+	 *            the executor service to run the runnables. Must not be
+	 *            <code>null</code>.
+	 */
+	public PooledExecutor(ExecutorService executorService) {
+		Assert.isNotNull(executorService);
+		this.executorService = executorService;
+		this.ownsExecutorService = false;
+	}
+
+	/**
+	 * Configure the given pool thread prior to starting it. Subclasses may
+	 * override as appropriate. The default implementation calls
+	 * {@link Thread#setDaemon(boolean)}. Not called if an executor service has
+	 * been given to the constructor.
+	 *
+	 * @param thread
+	 *            the thread to configure
+	 */
+	protected void configureThreadForExecution(Thread thread) {
+		// By default, we'll make the thread a daemon thread
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Create an {@link AbstractFuture} with the given IProgressMonitor.
+	 *
+	 * @param monitor
+	 *            a progress monitor to associate with the future. May be
+	 *            <code>null</code>.
+	 */
+	@SuppressWarnings("rawtypes")
+	protected AbstractFuture<?> createFuture(IProgressMonitor monitor) {
+		return new SingleOperationListenableFuture(monitor);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws RejectedExecutionException
+	 *             if the executor service does not accept the runnable, e.g.
+	 *             because it has been shut down
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public <ResultType> IFuture<ResultType> execute(
+			final IProgressRunnable<? extends ResultType> runnable,
+			IProgressMonitor monitor) throws RejectedExecutionException {
+		Assert.isNotNull(runnable);
+		// Now create future
+		final AbstractFuture sof = createFuture(monitor);
+		queuedCount.incrementAndGet();
+		try {
+			executorService.execute(new Runnable() {
+				public void run() {
+					queuedCount.decrementAndGet();
+					activeCount.incrementAndGet();
+					try {
+						// Does not run the runnable if the future has been
+						// canceled in the meantime
+						sof.runWithProgress(runnable);
+					} finally {
+						activeCount.decrementAndGet();
+						completedCount.incrementAndGet();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			queuedCount.decrementAndGet();
+			throw e;
+		}
+		return sof;
+	}
+
+	/**
+	 * Return the number of runnables waiting to be run.
+	 *
+	 * @return the number of queued runnables
+	 */
+	public int getQueuedCount() {
+		return queuedCount.get();
+	}
+
+	/**
+	 * Return the number of runnables being run.
+	 *
+	 * @return the number of active runnables
+	 */
+	public int getActiveCount() {
+		return activeCount.get();
+	}
+
+	/**
+	 * Return the number of runnables which have been run or skipped because
+	 * their future had been canceled.
+	 *
+	 * @return the number of completed runnables
+	 */
+	public long getCompletedCount() {
+		return completedCount.get();
+	}
+
+	/**
+	 * Return the current number of threads in the pool, or -1 if an executor
+	 * service has been given to the constructor and its pool size is unknown.
+	 *
+	 * @return the number of pool threads
+	 */
+	public int getPoolSize() {
+		if (executorService instanceof ThreadPoolExecutor)
+			return ((ThreadPoolExecutor) executorService).getPoolSize();
+		return -1;
+	}
+
+	/**
+	 * Shut down the pool created by this executor. The runnables already
+	 * submitted are still run, new ones are rejected. Does nothing if an
+	 * executor service has been given to the constructor.
+	 */
+	public void shutdown() {
+		if (ownsExecutorService)
+			executorService.shutdown();
+	}
+
+	public String toString() {
+		return "PooledExecutor[queued=" + getQueuedCount() + ", active=" //$NON-NLS-1$ //$NON-NLS-2$
+				+ getActiveCount() + ", completed=" + getCompletedCount() //$NON-NLS-1$
+				+ "]"; //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,77 @@
+/******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others. All rights reserved. This
+ * program and the accompanying materials are made available under the terms of
+ * the Eclipse Public License v1.0 which accompanies this distribution, and is
+ * available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   IBM Corporation - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.equinox.concurrent.future;
+
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * <p>
+ * Listenable future which is completed by calling {@link #setResult(Object)}
+ * or {@link #setFailure(Throwable)}, rather than by running an
+ * {@link IProgressRunnable}. The first completion wins, later ones are
+ * ignored.
+ * </p>
+ * <p>
+ * This allows to bridge other asynchronous APIs to {@link IFuture}s without
+ * blocking a thread, e.g. by completing a SettableListenableFuture from the
+ * completion callback of the other API.
+ * </p>
+ *
+ * @since 1.2
+ */
+public class SettableListenableFuture<ResultType> extends
+		SingleOperationListenableFuture<ResultType> {
+
+	public SettableListenableFuture() {
+		super();
+	}
+
+	public SettableListenableFuture(IProgressMonitor progressMonitor) {
+		super(progressMonitor);
+	}
+
+	/**
+	 * Complete this future with the given result, unless it is already done.
+	 * 
+	 * @param result
+	 *            the result. May be <code>null</code>.
+	 * @return <code>true</code> if this call completed the future
+	 */
+	public boolean setResult(ResultType result) {
+		synchronized (this) {
+			if (isDone())
+				return false;
+			set(result);
+		}
+		execListeners();
+		return true;
+	}
+
+	/**
+	 * Complete this future with the given failure, unless it is already done.
+	 * The failure is available from the status of the future.
+	 * 
+	 * @param failure
+	 *            the cause of the failure. Must not be <code>null</code>.
+	 * @return <code>true</code> if this call completed the future
+	 */
+	public boolean setFailure(Throwable failure) {
+		Assert.isNotNull(failure);
+		synchronized (this) {
+			if (isDone())
+				return false;
+			setException(failure);
+		}
+		execListeners();
+		return true;
+	}
+
+}
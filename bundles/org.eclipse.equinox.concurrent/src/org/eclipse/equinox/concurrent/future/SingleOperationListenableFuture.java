@@ -1,5 +1,5 @@
 /******************************************************************************
- * Copyright (c) 2010, 2013 Composent, Inc. and others. All rights reserved. This
+ * Copyright (c) 2010, 2016 Composent, Inc. and others. All rights reserved. This
  * program and the accompanying materials are made available under the terms of
  * the Eclipse Public License v1.0 which accompanies this distribution, and is
  * available at http://www.eclipse.org/legal/epl-v10.html
@@ -9,10 +9,14 @@
  ******************************************************************************/
 package org.eclipse.equinox.concurrent.future;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.ISafeRunnable;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SafeRunner;
 
 /**
@@ -20,6 +24,12 @@ import org.eclipse.core.runtime.SafeRunner;
  * Listenable future implementation for a single operation.
  * </p>
  * <p>
+ * Any number of listeners may be added. Each listener is executed once, when
+ * the operation completes, fails or is canceled, or right away if the
+ * operation is already done. The listeners are handed to their executors
+ * without holding the lock of this future.
+ * </p>
+ * <p>
  * Subclasses may be created if desired. Note that if subclasses are created,
  * that they should/must be very careful with respect to overriding the
  * synchronized methods in this class.
@@ -30,9 +40,23 @@ public class SingleOperationListenableFuture<ResultType> extends
 		SingleOperationFuture<ResultType> implements
 		IListenableFuture<ResultType> {
 
-	private IProgressRunnable<ResultType> progressRunnable;
-	private IProgressMonitor progressMonitor;
-	private IExecutor listenerExecutor;
+	private static class Listener {
+		final IExecutor executor;
+		final IProgressRunnable<?> progressRunnable;
+		final IProgressMonitor monitor;
+
+		Listener(IExecutor executor, IProgressRunnable<?> progressRunnable,
+				IProgressMonitor monitor) {
+			this.executor = executor;
+			this.progressRunnable = progressRunnable;
+			// Make sure that the progress monitor is set to non-null
+			this.monitor = (monitor == null) ? new NullProgressMonitor()
+					: monitor;
+		}
+	}
+
+	// The listeners waiting for this future to be done. Guarded by this.
+	private List<Listener> listeners;
 
 	public SingleOperationListenableFuture() {
 		super();
@@ -47,16 +71,17 @@ public class SingleOperationListenableFuture<ResultType> extends
 			IProgressMonitor monitor) {
 		Assert.isNotNull(executor);
 		Assert.isNotNull(progressRunnable);
+		Listener listener = new Listener(executor, progressRunnable, monitor);
 		synchronized (this) {
-			if (this.progressRunnable == null) {
-				this.progressRunnable = progressRunnable;
-				this.progressMonitor = monitor;
-				this.listenerExecutor = executor;
-				// Now, if we're already done, then execute the listenable now
-				if (isDone())
-					execListenable();
+			if (!isDone()) {
+				if (listeners == null)
+					listeners = new ArrayList<Listener>(1);
+				listeners.add(listener);
+				return;
 			}
 		}
+		// We're already done, so execute the listener now
+		execListener(listener);
 	}
 
 	public void runWithProgress(final IProgressRunnable<?> runnable) {
@@ -67,8 +92,8 @@ public class SingleOperationListenableFuture<ResultType> extends
 					synchronized (SingleOperationListenableFuture.this) {
 						if (!isCanceled())
 							setException(exception);
-						execListenable();
 					}
+					execListeners();
 				}
 
 				public void run() throws Exception {
@@ -78,21 +103,58 @@ public class SingleOperationListenableFuture<ResultType> extends
 					synchronized (SingleOperationListenableFuture.this) {
 						if (!isCanceled())
 							set(result);
-						execListenable();
 					}
+					execListeners();
 				}
 			});
 		}
 	}
 
-	private void execListenable() {
-		// If no progressRunnable has been set, then we simply return
-		if (progressRunnable == null || listenerExecutor == null)
-			return;
-		// Make sure that the progress monitor is set to non-null
-		if (progressMonitor == null)
-			progressMonitor = new NullProgressMonitor();
-		// then we execute using executor
-		this.listenerExecutor.execute(progressRunnable, progressMonitor);
+	public ResultType get(long waitTimeInMillis) throws InterruptedException,
+			TimeoutException, OperationCanceledException {
+		try {
+			return super.get(waitTimeInMillis);
+		} catch (TimeoutException e) {
+			// The timeout has failed this future, so the listeners are due
+			execListeners();
+			throw e;
+		}
+	}
+
+	public boolean cancel() {
+		boolean canceled = super.cancel();
+		if (canceled)
+			execListeners();
+		return canceled;
+	}
+
+	/**
+	 * Execute the listeners added so far, once the future is done. Listeners
+	 * added afterwards are executed by
+	 * {@link #addListener(IExecutor, IProgressRunnable, IProgressMonitor)}.
+	 * Subclasses which complete the future by other means than
+	 * {@link #runWithProgress(IProgressRunnable)} or {@link #cancel()} must
+	 * call this method afterwards, without holding the lock of this future.
+	 *
+	 * @since 1.2
+	 */
+	protected void execListeners() {
+		List<Listener> toExecute;
+		synchronized (this) {
+			if (!isDone())
+				return;
+			toExecute = listeners;
+			listeners = null;
+		}
+		if (toExecute != null)
+			for (Listener listener : toExecute)
+				execListener(listener);
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private void execListener(Listener listener) {
+		// Execute using the listener's executor
+		listener.executor.execute((IProgressRunnable) listener.progressRunnable,
+				listener.monitor);
 	}
 }
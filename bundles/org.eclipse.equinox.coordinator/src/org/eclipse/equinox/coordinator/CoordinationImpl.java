@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2014 IBM Corporation and others.
+ * Copyright (c) 2010, 2016 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,11 +12,10 @@ package org.eclipse.equinox.coordinator;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
 
 import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.Bundle;
@@ -35,11 +34,14 @@ public class CoordinationImpl {
 	private volatile boolean terminated;
 	private volatile boolean ending = false;
 	
-	private Date deadline;
+	private long deadline;
 	private CoordinationImpl enclosingCoordination;
 	private Thread thread;
 	private long totalTimeout;
-	private TimerTask timerTask;
+	private CoordinationTimerTask timerTask;
+	// Released when this coordination has terminated and the participants have
+	// been notified. Used by participants waiting to join another coordination.
+	private final List<CountDownLatch> terminationLatches = new ArrayList<CountDownLatch>(0);
 
 	private final CoordinatorImpl coordinator;
 	private final long id;
@@ -79,6 +81,7 @@ public class CoordinationImpl {
 		 * (3) This thread is interrupted.
 		 * (4) The participant is not participating in another coordination.
 		 */
+		CountDownLatch latch = null;
 		while (true) {
 			CoordinationImpl coordination;
 			synchronized (this) {
@@ -109,18 +112,37 @@ public class CoordinationImpl {
 				}
 			}
 			// The participant is already participating in another coordination
-			// that's not using this thread. Block until that coordination has
-			// finished. A decision was made here to use a timeout and incur the
-			// expense of waking up and rejoining in order to make a reasonably
-			// timely exit if this coordination terminates.
+			// that's not using this thread. Block until that coordination or this
+			// one has finished, whichever comes first. The same latch is
+			// registered with both so that either one wakes up this thread
+			// right away.
+			if (latch == null || latch.getCount() == 0)
+				latch = new CountDownLatch(1);
+			if (!coordination.addTerminationLatch(latch)) {
+				// The other coordination terminated after the participant was
+				// looked up. Make sure the participant is no longer registered
+				// with it before trying again, so that the next look-up cannot
+				// return the same terminated coordination and the loop does not
+				// spin.
+				coordinator.releaseParticipant(participant, coordination);
+				continue;
+			}
 			try {
-				coordination.join(1000);
-			} catch (InterruptedException e) {
-				String message = NLS.bind(Messages.LockInterrupted, new Object[]{participant, name, id, coordination.getName(), coordination.getId()});
-				coordinator.getLogService().log(LogService.LOG_DEBUG, message, e);
-				// This thread was interrupted while waiting for the coordination
-				// to terminate.
-				throw new CoordinationException(message, referent, CoordinationException.LOCK_INTERRUPTED, e);
+				if (!addTerminationLatch(latch))
+					continue;
+				try {
+					latch.await();
+				} catch (InterruptedException e) {
+					String message = NLS.bind(Messages.LockInterrupted, new Object[]{participant, name, id, coordination.getName(), coordination.getId()});
+					coordinator.getLogService().log(LogService.LOG_DEBUG, message, e);
+					// This thread was interrupted while waiting for the coordination
+					// to terminate.
+					throw new CoordinationException(message, referent, CoordinationException.LOCK_INTERRUPTED, e);
+				} finally {
+					removeTerminationLatch(latch);
+				}
+			} finally {
+				coordination.removeTerminationLatch(latch);
 			}
 		}
 	}
@@ -193,10 +215,8 @@ public class CoordinationImpl {
 				}
 			}
 		}
-		synchronized (this) {
-			// Notify everything joined to this coordination that it has finished.
-			notifyAll();
-		}
+		// Notify everything joined to this coordination that it has finished.
+		notifyTerminated();
 		// If a partial ending has occurred, throw the required exception.
 		if (exception != null) {
 			throw new CoordinationException(NLS.bind(Messages.CoordinationPartiallyEnded, new Object[]{name, id, exceptionParticipant}), referent, CoordinationException.PARTIALLY_ENDED, exception);
@@ -219,7 +239,7 @@ public class CoordinationImpl {
 			// Passing anything less than zero as well as zero itself will return the
 			// existing deadline. The deadline will not be null if timerTask is not null.
 			if (timeInMillis == 0)
-				return deadline.getTime();
+				return deadline;
 			long maxTimeout = coordinator.getMaxTimeout();
 			long newTotalTimeout = totalTimeout + timeInMillis;
 			// If there is no maximum timeout, there's no need to track the total timeout.
@@ -240,7 +260,7 @@ public class CoordinationImpl {
 					totalTimeout = newTotalTimeout;
 			}
 			// Cancel the current timeout.
-			boolean cancelled = timerTask.cancel();
+			boolean cancelled = coordinator.cancel(timerTask);
 			if (!cancelled) {
 				// This means the previous task has run and is waiting to get a lock on
 				// this coordination. We can't throw an exception yet because we can't
@@ -258,14 +278,12 @@ public class CoordinationImpl {
 					throw new CoordinationException(NLS.bind(Messages.InterruptedTimeoutExtension, new Object[]{totalTimeout, getName(), getId(), timeInMillis}), referent, CoordinationException.UNKNOWN, e);
 				}
 			}
-			// Create the new timeout.
-			timerTask = new CoordinationTimerTask(this);
 			// Extend the current deadline.
-			deadline = new Date(deadline.getTime() + timeInMillis);
-			// Schedule the new timeout.
+			deadline += timeInMillis;
+			// Schedule the canceled timeout again with the new deadline.
 			coordinator.schedule(timerTask, deadline);
 			// Return the new deadline.
-			return deadline.getTime();
+			return deadline;
 		}
 	}
 
@@ -297,10 +315,8 @@ public class CoordinationImpl {
 				coordinator.getLogService().log(LogService.LOG_WARNING, NLS.bind(Messages.ParticipantFailedError, new Object[]{participant, name, id}), e);
 			}
 		}
-		synchronized (this) {
-			// Notify everything joined to this coordination that it has finished.
-			notifyAll();
-		}
+		// Notify everything joined to this coordination that it has finished.
+		notifyTerminated();
 		// Return true to indicate this call resulted in the coordination's failure.
 		return true;
 	}
@@ -400,12 +416,27 @@ public class CoordinationImpl {
 		return referent;
 	}
 
-	synchronized void setTimerTask(TimerTask timerTask) {
+	synchronized void setTimerTask(CoordinationTimerTask timerTask) {
 		this.timerTask = timerTask;
-		deadline = new Date(System.currentTimeMillis() + totalTimeout);
+		deadline = System.currentTimeMillis() + totalTimeout;
 		coordinator.schedule(timerTask, deadline);
 	}
 
+	/*
+	 * Returns false without registering the latch if this coordination has
+	 * already terminated.
+	 */
+	synchronized boolean addTerminationLatch(CountDownLatch latch) {
+		if (terminated)
+			return false;
+		terminationLatches.add(latch);
+		return true;
+	}
+
+	synchronized void removeTerminationLatch(CountDownLatch latch) {
+		terminationLatches.remove(latch);
+	}
+
 	synchronized void setThreadAndEnclosingCoordination(Thread t, CoordinationImpl c) {
 		thread = t;
 		enclosingCoordination = c;
@@ -429,13 +460,19 @@ public class CoordinationImpl {
 	private void terminate() throws CoordinationException {
 		checkTerminated();
 		terminated = true;
-		// Cancel the timeout. Purge the task if it was, in fact, canceled.
-		if (timerTask != null && timerTask.cancel()) {
-			coordinator.purge();
-		}
+		// Cancel the timeout. The timer does not keep canceled tasks.
+		if (timerTask != null)
+			coordinator.cancel(timerTask);
 		coordinator.terminate(this, participants);
 	}
 
+	private synchronized void notifyTerminated() {
+		notifyAll();
+		for (CountDownLatch latch : terminationLatches)
+			latch.countDown();
+		terminationLatches.clear();
+	}
+
 	private static void validateName(String name) {
 		boolean valid = true;
 		if (name == null || name.length() == 0)
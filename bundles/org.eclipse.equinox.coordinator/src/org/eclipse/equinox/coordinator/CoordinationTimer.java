@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.coordinator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * A hashed timing wheel for the coordination timeouts of all coordinators.
+ * Time is divided in ticks, and a task is kept in the bucket of the tick its
+ * deadline falls into, modulo the number of buckets. Scheduling and
+ * canceling a task take constant time and canceled tasks do not linger in
+ * the wheel. Tasks expire at most one tick late. Tasks more than one
+ * revolution ahead share their bucket with nearer ones and are skipped until
+ * their tick comes.
+ *
+ * Expired tasks are run by the timer thread outside of the timer's lock.
+ *
+ * This is the same algorithm as the optional wheel of the Timer service in
+ * org.eclipse.equinox.util, which is internal to that bundle and is not a
+ * dependency of the coordinator.
+ */
+public class CoordinationTimer implements Runnable {
+	private static final long TICK = 10;
+	private static final int WHEEL_SIZE = 512;
+	private static final int MASK = WHEEL_SIZE - 1;
+
+	private final CoordinationTimerTask[] buckets = new CoordinationTimerTask[WHEEL_SIZE];
+	private final long origin = System.currentTimeMillis();
+	private final Thread thread;
+
+	// The following fields are guarded by this.
+	private long lastTick;
+	private int size;
+	private boolean cancelled;
+	// The time the timer thread waits for, 0 while it is not waiting.
+	private long wakeUpTime;
+
+	public CoordinationTimer() {
+		thread = new Thread(this, "Coordination Timer"); //$NON-NLS-1$
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/*
+	 * Stops the timer thread. Pending tasks are discarded.
+	 */
+	public void cancel() {
+		synchronized (this) {
+			cancelled = true;
+			notifyAll();
+		}
+	}
+
+	public void run() {
+		List<CoordinationTimerTask> expired = new ArrayList<CoordinationTimerTask>();
+		while (true) {
+			synchronized (this) {
+				while (!cancelled) {
+					long now = System.currentTimeMillis();
+					if (expire(now, expired))
+						break;
+					long wait = getWaitTime(now);
+					wakeUpTime = wait < 0 ? Long.MAX_VALUE : now + wait;
+					try {
+						wait(wait < 0 ? 0 : wait);
+					} catch (InterruptedException e) {
+						// Ignore and check the state again.
+					}
+					wakeUpTime = 0;
+				}
+				if (cancelled)
+					return;
+			}
+			for (CoordinationTimerTask task : expired)
+				task.run();
+			expired.clear();
+		}
+	}
+
+	synchronized void schedule(CoordinationTimerTask task, long deadline) {
+		if (cancelled)
+			throw new IllegalStateException();
+		long tick = (deadline - origin + TICK - 1) / TICK;
+		if (tick <= lastTick)
+			tick = lastTick + 1;
+		task.tick = tick;
+		int index = (int) (tick & MASK);
+		CoordinationTimerTask head = buckets[index];
+		task.previous = null;
+		task.next = head;
+		if (head != null)
+			head.previous = task;
+		buckets[index] = task;
+		task.scheduled = true;
+		size++;
+		// Wake up the timer thread if it would sleep past the new deadline.
+		if (deadline < wakeUpTime)
+			notifyAll();
+	}
+
+	/*
+	 * Returns true if the task was removed before it expired.
+	 */
+	synchronized boolean cancel(CoordinationTimerTask task) {
+		if (!task.scheduled)
+			return false;
+		unlink(task);
+		return true;
+	}
+
+	private void unlink(CoordinationTimerTask task) {
+		if (task.previous != null)
+			task.previous.next = task.next;
+		else
+			buckets[(int) (task.tick & MASK)] = task.next;
+		if (task.next != null)
+			task.next.previous = task.previous;
+		task.previous = task.next = null;
+		task.scheduled = false;
+		size--;
+	}
+
+	/*
+	 * Moves the tasks which have expired until now to the given list. Returns
+	 * true if there are any.
+	 */
+	private boolean expire(long now, List<CoordinationTimerTask> expired) {
+		long nowTick = (now - origin) / TICK;
+		if (nowTick <= lastTick)
+			// No tick has passed or the clock has been set back.
+			return false;
+		// One revolution visits every bucket.
+		long last = Math.min(nowTick, lastTick + WHEEL_SIZE);
+		for (long t = lastTick + 1; t <= last && size > 0; t++) {
+			CoordinationTimerTask task = buckets[(int) (t & MASK)];
+			while (task != null) {
+				CoordinationTimerTask next = task.next;
+				if (task.tick <= nowTick) {
+					unlink(task);
+					expired.add(task);
+				}
+				task = next;
+			}
+		}
+		lastTick = nowTick;
+		return !expired.isEmpty();
+	}
+
+	/*
+	 * Returns the milliseconds until the first tick whose bucket is not
+	 * empty, or -1 if the wheel is empty.
+	 */
+	private long getWaitTime(long now) {
+		if (size == 0)
+			return -1;
+		long t = lastTick + 1;
+		for (int i = 0; i < WHEEL_SIZE && buckets[(int) (t & MASK)] == null; i++)
+			t++;
+		// Never return 0 here, which would mean waiting indefinitely.
+		return Math.max(1, origin + t * TICK - now);
+	}
+}
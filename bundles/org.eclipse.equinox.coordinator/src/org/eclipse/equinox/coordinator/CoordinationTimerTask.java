@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2013 IBM Corporation and others.
+ * Copyright (c) 2010, 2016 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,22 +10,28 @@
  *******************************************************************************/
 package org.eclipse.equinox.coordinator;
 
-import java.util.TimerTask;
-
 import org.eclipse.osgi.util.NLS;
 import org.osgi.service.coordinator.Coordination;
 import org.osgi.service.log.LogService;
 
-public class CoordinationTimerTask extends TimerTask {
+public class CoordinationTimerTask {
 	private final CoordinationImpl coordination;
 
+	// The following fields are guarded by the CoordinationTimer.
+	// The neighbors of this task in its bucket of the timing wheel.
+	CoordinationTimerTask previous;
+	CoordinationTimerTask next;
+	// The tick this task expires on.
+	long tick;
+	// Whether this task is in the timing wheel.
+	boolean scheduled;
+
 	public CoordinationTimerTask(CoordinationImpl coordination) {
 		if (coordination == null)
 			throw new NullPointerException(NLS.bind(Messages.NullParameter, "coordination")); //$NON-NLS-1$
 		this.coordination = coordination;
 	}
 
-	@Override
 	public void run() {
 		// Catch all exceptions and errors in order to prevent the timer 
 		// thread from stopping.
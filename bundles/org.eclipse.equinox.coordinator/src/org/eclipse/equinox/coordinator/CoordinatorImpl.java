@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2013 IBM Corporation and others.
+ * Copyright (c) 2010, 2016 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,14 +14,15 @@ import java.security.Permission;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
-import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.Bundle;
@@ -34,17 +35,22 @@ import org.osgi.service.log.LogService;
 
 public class CoordinatorImpl implements Coordinator {
 	// IDs must be positive integers and monotonically increasing.
-	private static long lastId;
-
-	private synchronized static long getNextId() {
-		if (Long.MAX_VALUE == lastId)
-			throw new IllegalStateException(NLS.bind(Messages.MaxCoordinationIdExceeded, lastId));
-		// First ID will be 1.
-		return ++lastId;
+	private static final AtomicLong lastId = new AtomicLong();
+
+	private static long getNextId() {
+		while (true) {
+			long id = lastId.get();
+			if (Long.MAX_VALUE == id)
+				throw new IllegalStateException(NLS.bind(Messages.MaxCoordinationIdExceeded, id));
+			// First ID will be 1.
+			if (lastId.compareAndSet(id, id + 1))
+				return id + 1;
+		}
 	}
 
-	// Coordination IDs must be unique across all using bundles.
-	private static final Map<Long, CoordinationImpl> idToCoordination = new HashMap<Long, CoordinationImpl>();
+	// Coordination IDs must be unique across all using bundles. The map is read
+	// without locking by getCoordination() and getCoordinations().
+	private static final ConcurrentMap<Long, CoordinationImpl> idToCoordination = new ConcurrentHashMap<Long, CoordinationImpl>();
 	// Coordination participation must be tracked across all using bundles.
 	private static final Map<Participant, CoordinationImpl> participantToCoordination = Collections.synchronizedMap(new IdentityHashMap<Participant, CoordinationImpl>());
 
@@ -89,18 +95,20 @@ public class CoordinatorImpl implements Coordinator {
 	}
 
 	private final Bundle bundle;
-	private final List<CoordinationImpl> coordinations;
+	// A set so that terminated coordinations are removed in constant time. The
+	// creation order is kept for shutdown().
+	private final Set<CoordinationImpl> coordinations;
 	private final LogService logService;
 	private final long maxTimeout;
-	private final Timer timer;
+	private final CoordinationTimer timer;
 
 	private boolean shutdown;
 
-	public CoordinatorImpl(Bundle bundle, LogService logService, Timer timer, long maxTimeout) {
+	public CoordinatorImpl(Bundle bundle, LogService logService, CoordinationTimer timer, long maxTimeout) {
 		this.bundle = bundle;
 		this.logService = logService;
 		this.timer = timer;
-		coordinations = new ArrayList<CoordinationImpl>();
+		coordinations = new LinkedHashSet<CoordinationImpl>();
 		if (maxTimeout < 0)
 			throw new IllegalArgumentException(NLS.bind(Messages.InvalidTimeInterval, maxTimeout));
 		this.maxTimeout = maxTimeout;
@@ -146,13 +154,13 @@ public class CoordinatorImpl implements Coordinator {
 		synchronized (this) {
 			if (shutdown)
 				throw new IllegalStateException(NLS.bind(Messages.CoordinatorShutdown, name, timeout));
-			synchronized (CoordinatorImpl.class) {
-				coordinations.add(coordination);
-				idToCoordination.put(new Long(coordination.getId()), coordination);
-			}
+			coordinations.add(coordination);
+			// Register the id within the same lock so that a concurrent shutdown,
+			// which terminates and unregisters the coordination, comes after it.
+			idToCoordination.put(new Long(coordination.getId()), coordination);
 		}
 		if (timeout > 0) {
-			TimerTask timerTask = new CoordinationTimerTask(coordination);
+			CoordinationTimerTask timerTask = new CoordinationTimerTask(coordination);
 			coordination.setTimerTask(timerTask);
 		}
 		// Make sure to return the referent targeted towards the initiator here.
@@ -170,11 +178,9 @@ public class CoordinatorImpl implements Coordinator {
 	public Coordination getCoordination(long id) {
 		CoordinationWeakReference.processOrphanedCoordinations();
 		CoordinationReferent result = null;
-		synchronized (CoordinatorImpl.class) {
-			CoordinationImpl c = idToCoordination.get(new Long(id));
-			if (c != null)
-				result = c.getReferent();
-		}
+		CoordinationImpl c = idToCoordination.get(new Long(id));
+		if (c != null)
+			result = c.getReferent();
 		if (result != null && !result.isTerminated()) {
 			try {
 				checkPermission(CoordinationPermission.ADMIN, result.getName());
@@ -188,20 +194,19 @@ public class CoordinatorImpl implements Coordinator {
 
 	public Collection<Coordination> getCoordinations() {
 		CoordinationWeakReference.processOrphanedCoordinations();
-		ArrayList<Coordination> result;
-		synchronized (CoordinatorImpl.class) {
-			result = new ArrayList<Coordination>(idToCoordination.size());
-			for (CoordinationImpl coordination : idToCoordination.values()) {
-				// Ideally, we're only interested in coordinations that have not terminated.
-				// It's okay, however, if the coordination terminates from this point forward.
-				if (coordination.isTerminated())
-					continue;
-				try {
-					checkPermission(CoordinationPermission.ADMIN, coordination.getName());
-					result.add(coordination.getReferent());
-				} catch (SecurityException e) {
-					logService.log(LogService.LOG_DEBUG, NLS.bind(Messages.GetCoordinationNotPermitted, new Object[]{Thread.currentThread(), coordination.getName(), coordination.getId()}), e);
-				}
+		ArrayList<Coordination> result = new ArrayList<Coordination>(idToCoordination.size());
+		// The iteration reflects the coordinations created or terminated
+		// concurrently only in part, which is fine as explained below.
+		for (CoordinationImpl coordination : idToCoordination.values()) {
+			// Ideally, we're only interested in coordinations that have not terminated.
+			// It's okay, however, if the coordination terminates from this point forward.
+			if (coordination.isTerminated())
+				continue;
+			try {
+				checkPermission(CoordinationPermission.ADMIN, coordination.getName());
+				result.add(coordination.getReferent());
+			} catch (SecurityException e) {
+				logService.log(LogService.LOG_DEBUG, NLS.bind(Messages.GetCoordinationNotPermitted, new Object[]{Thread.currentThread(), coordination.getName(), coordination.getId()}), e);
 			}
 		}
 		result.trimToSize();
@@ -235,6 +240,17 @@ public class CoordinatorImpl implements Coordinator {
 		return result;
 	}
 
+	/*
+	 * Removes the participant if it is still registered with the given
+	 * coordination, which has terminated.
+	 */
+	void releaseParticipant(Participant participant, CoordinationImpl coordination) {
+		synchronized (participantToCoordination) {
+			if (participantToCoordination.get(participant) == coordination)
+				participantToCoordination.remove(participant);
+		}
+	}
+
 	void checkPermission(String permissionType, String coordinationName) {
 		checkPermission(new CoordinationPermission(coordinationName, bundle, permissionType));
 	}
@@ -258,20 +274,19 @@ public class CoordinatorImpl implements Coordinator {
 		return maxTimeout;
 	}
 
-	void purge() {
-		// Purge the timer of all canceled tasks if we're running on a supportive JCL.
-		try {
-			Timer.class.getMethod("purge", (Class<?>[]) null).invoke(timer, (Object[]) null); //$NON-NLS-1$
-		} catch (Exception e) {
-			logService.log(LogService.LOG_DEBUG, Messages.CanceledTaskNotPurged, e);
-		}
+	/*
+	 * Returns true if the task was prevented from running. The task may be
+	 * scheduled again afterwards.
+	 */
+	boolean cancel(CoordinationTimerTask task) {
+		return timer.cancel(task);
 	}
 
 	void push(CoordinationImpl coordination) throws CoordinationException {
 		coordinationStack.get().push(coordination);
 	}
 
-	void schedule(TimerTask task, Date deadline) {
+	void schedule(CoordinationTimerTask task, long deadline) {
 		timer.schedule(task, deadline);
 	}
 
@@ -280,7 +295,7 @@ public class CoordinatorImpl implements Coordinator {
 		List<CoordinationImpl> coords;
 		synchronized (this) {
 			shutdown = true;
-			// Make a copy so the removal of the coordination from the list during
+			// Make a copy so the removal of the coordination from the set during
 			// termination does not interfere with the iteration.
 			coords = new ArrayList<CoordinationImpl>(this.coordinations);
 		}
@@ -295,11 +310,9 @@ public class CoordinatorImpl implements Coordinator {
 	void terminate(CoordinationImpl coordination, List<Participant> participants) {
 		// A coordination has been terminated and needs to be removed from the thread local stack.
 		synchronized (this) {
-			synchronized (CoordinatorImpl.class) {
-				this.coordinations.remove(coordination);
-				idToCoordination.remove(new Long(coordination.getId()));
-				participantToCoordination.keySet().removeAll(participants);
-			}
+			this.coordinations.remove(coordination);
 		}
+		idToCoordination.remove(new Long(coordination.getId()));
+		participantToCoordination.keySet().removeAll(participants);
 	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2011 IBM Corporation and others.
+ * Copyright (c) 2010, 2016 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,8 +10,6 @@
  *******************************************************************************/
 package org.eclipse.equinox.coordinator;
 
-import java.util.Timer;
-
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceFactory;
@@ -21,7 +19,7 @@ import org.osgi.service.coordinator.Coordinator;
 public class CoordinatorServiceFactory implements ServiceFactory<Coordinator> {
 	private final BundleContext bundleContext;
 	private final LogTracker logTracker;
-	private final Timer timer = new Timer(true);
+	private final CoordinationTimer timer = new CoordinationTimer();
 
 	public CoordinatorServiceFactory(BundleContext bundleContext) {
 		this.bundleContext = bundleContext;
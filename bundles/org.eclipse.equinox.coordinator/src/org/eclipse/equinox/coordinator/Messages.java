@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2011 IBM Corporation and others.
+ * Copyright (c) 2010, 2016 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -32,7 +32,6 @@ public class Messages extends NLS {
 	public static String GetCoordinationNotPermitted;
 	public static String CoordinatorShutdown;
 	public static String CoordinationAlreadyExists;
-	public static String CanceledTaskNotPurged;
 	public static String OrphanedCoordinationError;
 	public static String MaximumTimeout;
 
@@ -33,7 +33,10 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.servlet.Filter;
@@ -68,6 +71,10 @@ import junit.framework.TestCase;
 
 import org.eclipse.equinox.http.servlet.ExtendedHttpService;
 import org.eclipse.equinox.http.servlet.context.ContextPathCustomizer;
+import org.eclipse.equinox.http.servlet.runtime.HttpServiceRuntimeMetrics;
+import org.eclipse.equinox.http.servlet.runtime.dto.RequestMetricsDTO;
+import org.eclipse.equinox.http.servlet.runtime.dto.RuntimeMetricsDTO;
+import org.eclipse.equinox.http.servlet.runtime.dto.ServletContextMetricsDTO;
 import org.eclipse.equinox.http.servlet.tests.bundle.Activator;
 import org.eclipse.equinox.http.servlet.tests.bundle.BundleAdvisor;
 import org.eclipse.equinox.http.servlet.tests.bundle.BundleInstaller;
@@ -1265,6 +1272,77 @@ public class ServletTest extends TestCase {
 		}
 	}
 
+	public void test_Registration18() throws Exception {
+		final CountDownLatch initStarted = new CountDownLatch(1);
+		final CountDownLatch releaseInit = new CountDownLatch(1);
+		final AtomicBoolean initFinished = new AtomicBoolean();
+
+		Servlet slowServlet = new HttpServlet() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void init(ServletConfig config) throws ServletException {
+				super.init(config);
+				initStarted.countDown();
+				try {
+					releaseInit.await(30, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				initFinished.set(true);
+			}
+
+		};
+
+		final BundleContext bundleContext = getBundleContext();
+		final Collection<ServiceRegistration<?>> registrations = new ArrayList<ServiceRegistration<?>>();
+		try {
+			Dictionary<String, Object> servletProps = new Hashtable<String, Object>();
+			servletProps.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_NAME, "slow");
+			servletProps.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_PATTERN, "/slow");
+			servletProps.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_CONTEXT_SELECT, "(" + HttpWhiteboardConstants.HTTP_WHITEBOARD_CONTEXT_NAME + "=slow)");
+			registrations.add(bundleContext.registerService(Servlet.class, slowServlet, servletProps));
+
+			// the slow servlet is initialized when its context is created
+			Thread thread = new Thread() {
+
+				@Override
+				public void run() {
+					Dictionary<String, Object> contextProps = new Hashtable<String, Object>();
+					contextProps.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_CONTEXT_NAME, "slow");
+					contextProps.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_CONTEXT_PATH, "/slowcontext");
+					registrations.add(bundleContext.registerService(
+						ServletContextHelper.class, new ServletContextHelper(bundleContext.getBundle()){}, contextProps));
+				}
+
+			};
+			thread.start();
+
+			Assert.assertTrue(initStarted.await(10, TimeUnit.SECONDS));
+
+			// neither registration nor request processing waits for the slow init
+			ExtendedHttpService extendedHttpService = (ExtendedHttpService)getHttpService();
+			extendedHttpService.registerServlet("/fast", new BaseServlet("fast"), null, extendedHttpService.createDefaultHttpContext());
+
+			Assert.assertEquals("fast", requestAdvisor.request("fast"));
+			Assert.assertFalse(initFinished.get());
+
+			releaseInit.countDown();
+			thread.join(10000);
+
+			Assert.assertTrue(initFinished.get());
+
+			extendedHttpService.unregister("/fast");
+		}
+		finally {
+			releaseInit.countDown();
+			for (ServiceRegistration<?> registration : registrations) {
+				registration.unregister();
+			}
+		}
+	}
+
 	public void test_RegistrationTCCL1() {
 		final Set<String> filterTCCL = Collections.synchronizedSet(new HashSet<String>());
 		final Set<String> servletTCCL = Collections.synchronizedSet(new HashSet<String>());
@@ -2663,6 +2741,371 @@ public class ServletTest extends TestCase {
 		}
 	}
 
+	public void test_ResponseCompression() throws Exception {
+		Servlet servlet = new HttpServlet() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void doGet(
+				HttpServletRequest request, HttpServletResponse response)
+				throws ServletException, IOException {
+
+				response.setContentType("application/json");
+
+				PrintWriter writer = response.getWriter();
+
+				int count = Integer.parseInt(request.getParameter("count"));
+
+				writer.print('[');
+				for (int i = 0; i < count; i++) {
+					writer.print("{\"id\":" + i + "},");
+				}
+				writer.print("{}]");
+			}
+
+		};
+
+		System.setProperty("equinox.http.compression.enabled", "true");
+		System.setProperty("equinox.http.compression.threshold", "1024");
+		Collection<ServiceRegistration<?>> registrations = new ArrayList<ServiceRegistration<?>>();
+		try {
+			stopJetty();
+			startJetty();
+
+			Dictionary<String, Object> servletProps = new Hashtable<String, Object>();
+			servletProps.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_NAME, "S1");
+			servletProps.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_PATTERN, "/s");
+			registrations.add(getBundleContext().registerService(Servlet.class, servlet, servletProps));
+
+			Map<String, List<String>> headers = new HashMap<String, List<String>>();
+			headers.put("Accept-Encoding", Collections.singletonList("gzip"));
+
+			// above the threshold
+			Map<String, List<String>> response = requestAdvisor.request("s?count=1000", headers);
+
+			Assert.assertEquals("200", response.get("responseCode").get(0));
+			Assert.assertEquals("gzip", response.get("Content-Encoding").get(0));
+			Assert.assertTrue(response.get("Vary").contains("Accept-Encoding"));
+
+			// below the threshold
+			response = requestAdvisor.request("s?count=2", headers);
+
+			Assert.assertEquals("200", response.get("responseCode").get(0));
+			Assert.assertNull(response.get("Content-Encoding"));
+			Assert.assertEquals("[{\"id\":0},{\"id\":1},{}]", response.get("responseBody").get(0));
+
+			// gzip not accepted
+			response = requestAdvisor.request("s?count=1000", Collections.<String, List<String>>emptyMap());
+
+			Assert.assertEquals("200", response.get("responseCode").get(0));
+			Assert.assertNull(response.get("Content-Encoding"));
+
+			// an explicit coding takes precedence over "*"
+			headers.put("Accept-Encoding", Collections.singletonList("*;q=0, gzip"));
+			response = requestAdvisor.request("s?count=1000", headers);
+
+			Assert.assertEquals("200", response.get("responseCode").get(0));
+			Assert.assertEquals("gzip", response.get("Content-Encoding").get(0));
+
+			headers.put("Accept-Encoding", Collections.singletonList("gzip;q=0, *"));
+			response = requestAdvisor.request("s?count=1000", headers);
+
+			Assert.assertEquals("200", response.get("responseCode").get(0));
+			Assert.assertNull(response.get("Content-Encoding"));
+		}
+		finally {
+			for (ServiceRegistration<?> registration : registrations) {
+				registration.unregister();
+			}
+			System.clearProperty("equinox.http.compression.enabled");
+			System.clearProperty("equinox.http.compression.threshold");
+		}
+	}
+
+	public void test_ResponseETag() throws Exception {
+		final AtomicInteger invocations = new AtomicInteger();
+
+		Servlet servlet = new HttpServlet() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void doGet(
+				HttpServletRequest request, HttpServletResponse response)
+				throws ServletException, IOException {
+
+				invocations.incrementAndGet();
+
+				response.setContentType("text/plain");
+				response.getWriter().print("test_ResponseETag");
+			}
+
+		};
+
+		System.setProperty("equinox.http.etag.enabled", "true");
+		System.setProperty("equinox.http.etag.revalidate", "60000");
+		Collection<ServiceRegistration<?>> registrations = new ArrayList<ServiceRegistration<?>>();
+		try {
+			stopJetty();
+			startJetty();
+
+			Dictionary<String, Object> servletProps = new Hashtable<String, Object>();
+			servletProps.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_NAME, "S1");
+			servletProps.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_PATTERN, "/s");
+			registrations.add(getBundleContext().registerService(Servlet.class, servlet, servletProps));
+
+			Map<String, List<String>> response = requestAdvisor.request("s", null);
+
+			Assert.assertEquals("200", response.get("responseCode").get(0));
+			Assert.assertEquals("test_ResponseETag", response.get("responseBody").get(0));
+
+			String etag = response.get("ETag").get(0);
+
+			Assert.assertTrue(etag, etag.startsWith("\"") && etag.endsWith("\""));
+			Assert.assertEquals(1, invocations.get());
+
+			Map<String, List<String>> headers = new HashMap<String, List<String>>();
+			headers.put("If-None-Match", Collections.singletonList(etag));
+
+			// answered from the runtime without invoking the servlet
+			response = requestAdvisor.request("s", headers);
+
+			Assert.assertEquals("304", response.get("responseCode").get(0));
+			Assert.assertEquals(etag, response.get("ETag").get(0));
+			Assert.assertEquals(1, invocations.get());
+
+			headers.put("If-None-Match", Collections.singletonList("\"other\""));
+
+			response = requestAdvisor.request("s", headers);
+
+			Assert.assertEquals("200", response.get("responseCode").get(0));
+			Assert.assertEquals(2, invocations.get());
+		}
+		finally {
+			for (ServiceRegistration<?> registration : registrations) {
+				registration.unregister();
+			}
+			System.clearProperty("equinox.http.etag.enabled");
+			System.clearProperty("equinox.http.etag.revalidate");
+		}
+	}
+
+	public void test_ResponseETagDeniedByFilter() throws Exception {
+		final AtomicInteger invocations = new AtomicInteger();
+		final AtomicBoolean deny = new AtomicBoolean();
+
+		Servlet servlet = new HttpServlet() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void doGet(
+				HttpServletRequest request, HttpServletResponse response)
+				throws ServletException, IOException {
+
+				invocations.incrementAndGet();
+
+				response.setContentType("text/plain");
+				response.getWriter().print("test_ResponseETagDeniedByFilter");
+			}
+
+		};
+
+		Filter filter = new Filter() {
+
+			@Override
+			public void init(FilterConfig filterConfig) {
+			}
+
+			@Override
+			public void doFilter(
+					ServletRequest request, ServletResponse response, FilterChain chain)
+				throws IOException, ServletException {
+
+				if (deny.get()) {
+					((HttpServletResponse)response).sendError(HttpServletResponse.SC_FORBIDDEN);
+
+					return;
+				}
+
+				chain.doFilter(request, response);
+			}
+
+			@Override
+			public void destroy() {
+			}
+
+		};
+
+		System.setProperty("equinox.http.etag.enabled", "true");
+		System.setProperty("equinox.http.etag.revalidate", "60000");
+		Collection<ServiceRegistration<?>> registrations = new ArrayList<ServiceRegistration<?>>();
+		try {
+			stopJetty();
+			startJetty();
+
+			Dictionary<String, Object> servletProps = new Hashtable<String, Object>();
+			servletProps.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_NAME, "S1");
+			servletProps.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_PATTERN, "/s");
+			registrations.add(getBundleContext().registerService(Servlet.class, servlet, servletProps));
+
+			Dictionary<String, Object> filterProps = new Hashtable<String, Object>();
+			filterProps.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_NAME, "F1");
+			filterProps.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_PATTERN, "/s");
+			registrations.add(getBundleContext().registerService(Filter.class, filter, filterProps));
+
+			Map<String, List<String>> response = requestAdvisor.request("s", null);
+
+			Assert.assertEquals("200", response.get("responseCode").get(0));
+
+			String etag = response.get("ETag").get(0);
+
+			Map<String, List<String>> headers = new HashMap<String, List<String>>();
+			headers.put("If-None-Match", Collections.singletonList(etag));
+
+			// the filter runs, and the servlet is invoked to compare the ETag
+			response = requestAdvisor.request("s", headers);
+
+			Assert.assertEquals("304", response.get("responseCode").get(0));
+			Assert.assertEquals(2, invocations.get());
+
+			// a filter denying the request is not bypassed by a known ETag
+			deny.set(true);
+
+			response = requestAdvisor.request("s", headers);
+
+			Assert.assertEquals("403", response.get("responseCode").get(0));
+			Assert.assertEquals(2, invocations.get());
+		}
+		finally {
+			for (ServiceRegistration<?> registration : registrations) {
+				registration.unregister();
+			}
+			System.clearProperty("equinox.http.etag.enabled");
+			System.clearProperty("equinox.http.etag.revalidate");
+		}
+	}
+
+	public void test_RequestMetrics() throws Exception {
+		Servlet servlet = new HttpServlet() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void doGet(
+				HttpServletRequest request, HttpServletResponse response)
+				throws ServletException, IOException {
+
+				if (request.getParameter("fail") != null) {
+					response.sendError(HttpServletResponse.SC_NOT_FOUND);
+
+					return;
+				}
+
+				response.getWriter().print("test_RequestMetrics");
+			}
+
+		};
+
+		Filter filter = new Filter() {
+
+			@Override
+			public void init(FilterConfig filterConfig) {
+			}
+
+			@Override
+			public void doFilter(
+					ServletRequest request, ServletResponse response, FilterChain chain)
+				throws IOException, ServletException {
+
+				chain.doFilter(request, response);
+			}
+
+			@Override
+			public void destroy() {
+			}
+
+		};
+
+		System.setProperty("equinox.http.metrics.enabled", "true");
+		System.setProperty("equinox.http.metrics.slowRequestThreshold", "0");
+		Collection<ServiceRegistration<?>> registrations = new ArrayList<ServiceRegistration<?>>();
+		try {
+			stopJetty();
+			startJetty();
+
+			Dictionary<String, Object> servletProps = new Hashtable<String, Object>();
+			servletProps.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_NAME, "S1");
+			servletProps.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_PATTERN, "/s");
+			registrations.add(getBundleContext().registerService(Servlet.class, servlet, servletProps));
+
+			Dictionary<String, Object> filterProps = new Hashtable<String, Object>();
+			filterProps.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_NAME, "F1");
+			filterProps.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_PATTERN, "/s");
+			registrations.add(getBundleContext().registerService(Filter.class, filter, filterProps));
+
+			Assert.assertEquals("test_RequestMetrics", requestAdvisor.request("s"));
+			Assert.assertEquals("test_RequestMetrics", requestAdvisor.request("s"));
+
+			Map<String, List<String>> response = requestAdvisor.request("s?fail=true", null);
+
+			Assert.assertEquals("404", response.get("responseCode").get(0));
+
+			BundleContext bundleContext = getBundleContext();
+
+			ServiceReference<HttpServiceRuntimeMetrics> serviceReference =
+				bundleContext.getServiceReference(HttpServiceRuntimeMetrics.class);
+
+			Assert.assertNotNull(serviceReference);
+
+			RuntimeMetricsDTO runtimeMetricsDTO =
+				bundleContext.getService(serviceReference).getRuntimeMetricsDTO();
+
+			Assert.assertTrue(runtimeMetricsDTO.enabled);
+
+			RequestMetricsDTO servletMetricsDTO = null;
+			RequestMetricsDTO filterMetricsDTO = null;
+
+			for (ServletContextMetricsDTO servletContextMetricsDTO : runtimeMetricsDTO.servletContextMetricsDTOs) {
+				for (RequestMetricsDTO requestMetricsDTO : servletContextMetricsDTO.servletMetricsDTOs) {
+					if ("S1".equals(requestMetricsDTO.name)) {
+						servletMetricsDTO = requestMetricsDTO;
+					}
+				}
+				for (RequestMetricsDTO requestMetricsDTO : servletContextMetricsDTO.filterMetricsDTOs) {
+					if ("F1".equals(requestMetricsDTO.name)) {
+						filterMetricsDTO = requestMetricsDTO;
+					}
+				}
+			}
+
+			Assert.assertNotNull(servletMetricsDTO);
+			Assert.assertEquals(3, servletMetricsDTO.requests);
+			Assert.assertEquals(0, servletMetricsDTO.active);
+			Assert.assertEquals(2, servletMetricsDTO.statusCounts[2]);
+			Assert.assertEquals(1, servletMetricsDTO.statusCounts[4]);
+			Assert.assertEquals(2 * "test_RequestMetrics".length(), servletMetricsDTO.bytesOut);
+
+			long histogramTotal = 0;
+			for (long count : servletMetricsDTO.latencyBuckets) {
+				histogramTotal += count;
+			}
+			Assert.assertEquals(3, histogramTotal);
+
+			Assert.assertNotNull(filterMetricsDTO);
+			Assert.assertEquals(3, filterMetricsDTO.requests);
+
+			// every request is slow with a threshold of 0
+			Assert.assertEquals(3, runtimeMetricsDTO.slowRequestDTOs.length);
+			Assert.assertEquals("S1", runtimeMetricsDTO.slowRequestDTOs[0].name);
+			Assert.assertEquals(404, runtimeMetricsDTO.slowRequestDTOs[2].status);
+		}
+		finally {
+			for (ServiceRegistration<?> registration : registrations) {
+				registration.unregister();
+			}
+			System.clearProperty("equinox.http.metrics.enabled");
+			System.clearProperty("equinox.http.metrics.slowRequestThreshold");
+		}
+	}
+
 	protected static final String PROTOTYPE = "prototype/";
 	protected static final String CONFIGURE = "configure";
 	protected static final String UNREGISTER = "unregister";
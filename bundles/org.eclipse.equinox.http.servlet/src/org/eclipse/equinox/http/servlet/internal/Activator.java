@@ -23,6 +23,7 @@ import org.eclipse.equinox.http.servlet.ExtendedHttpService;
 import org.eclipse.equinox.http.servlet.internal.servlet.ProxyServlet;
 import org.eclipse.equinox.http.servlet.internal.util.HttpTuple;
 import org.eclipse.equinox.http.servlet.internal.util.UMDictionaryMap;
+import org.eclipse.equinox.http.servlet.runtime.HttpServiceRuntimeMetrics;
 import org.osgi.framework.*;
 import org.osgi.service.http.HttpService;
 import org.osgi.service.http.runtime.HttpServiceRuntime;
@@ -40,12 +41,17 @@ public class Activator
 	private static final String[] HTTP_SERVICES_CLASSES = new String[] {
 		HttpService.class.getName(), ExtendedHttpService.class.getName()
 	};
+	private static final String[] HTTP_SERVICE_RUNTIME_CLASSES = new String[] {
+		HttpServiceRuntime.class.getName(),
+		HttpServiceRuntimeMetrics.class.getName()
+	};
 
 	private static volatile BundleContext context;
 	private static ConcurrentMap<ProxyServlet, Object> registrations =
 		new ConcurrentHashMap<ProxyServlet, Object>();
 
 	private ServiceTracker<HttpServlet, HttpTuple> serviceTracker;
+	private ServiceRegistration<HttpMetricsCommand> commandRegistration;
 
 	public static void addProxyServlet(ProxyServlet proxyServlet) {
 		Object previousRegistration = registrations.putIfAbsent(
@@ -83,9 +89,23 @@ public class Activator
 			context, HttpServlet.class, this);
 
 		serviceTracker.open();
+
+		Dictionary<String, Object> commandProperties =
+			new Hashtable<String, Object>();
+
+		commandProperties.put(
+			HttpMetricsCommand.COMMAND_SCOPE, HttpMetricsCommand.SCOPE);
+		commandProperties.put(
+			HttpMetricsCommand.COMMAND_FUNCTION, HttpMetricsCommand.FUNCTIONS);
+
+		commandRegistration = context.registerService(
+			HttpMetricsCommand.class, new HttpMetricsCommand(context),
+			commandProperties);
 	}
 
 	public void stop(BundleContext bundleContext) throws Exception {
+		commandRegistration.unregister();
+		commandRegistration = null;
 		serviceTracker.close();
 		serviceTracker = null;
 		context = null;
@@ -160,9 +180,9 @@ public class Activator
 			HTTP_SERVICES_CLASSES, httpServiceFactory, serviceProperties);
 
 		serviceProperties.put(HttpServiceRuntimeConstants.HTTP_SERVICE_ID, Collections.singletonList(hsfRegistration.getReference().getProperty(Constants.SERVICE_ID)));
-		ServiceRegistration<HttpServiceRuntime> hsrRegistration =
+		ServiceRegistration<?> hsrRegistration =
 			context.registerService(
-				HttpServiceRuntime.class, httpServiceRuntime,
+				HTTP_SERVICE_RUNTIME_CLASSES, httpServiceRuntime,
 				serviceProperties);
 		return new HttpTuple(
 			proxyServlet, httpServiceFactory, hsfRegistration,
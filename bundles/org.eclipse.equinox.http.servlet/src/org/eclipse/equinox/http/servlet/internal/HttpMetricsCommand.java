@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.equinox.http.servlet.internal;
+
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.Date;
+import org.eclipse.equinox.http.servlet.runtime.HttpServiceRuntimeMetrics;
+import org.eclipse.equinox.http.servlet.runtime.dto.*;
+import org.osgi.framework.*;
+
+/**
+ * The <code>equinox:httpmetrics</code> console command, which prints the
+ * request metrics of every Http Whiteboard runtime of this bundle.
+ */
+public class HttpMetricsCommand {
+
+	static final String COMMAND_FUNCTION = "osgi.command.function"; //$NON-NLS-1$
+	static final String COMMAND_SCOPE = "osgi.command.scope"; //$NON-NLS-1$
+	static final String[] FUNCTIONS = new String[] {"httpmetrics"}; //$NON-NLS-1$
+	static final String SCOPE = "equinox"; //$NON-NLS-1$
+
+	public HttpMetricsCommand(BundleContext context) {
+		this.context = context;
+	}
+
+	public void httpmetrics() throws InvalidSyntaxException {
+		PrintStream out = System.out;
+
+		Collection<ServiceReference<HttpServiceRuntimeMetrics>> serviceReferences =
+			context.getServiceReferences(HttpServiceRuntimeMetrics.class, null);
+
+		if (serviceReferences.isEmpty()) {
+			out.println("No http service runtime is available."); //$NON-NLS-1$
+
+			return;
+		}
+
+		for (ServiceReference<HttpServiceRuntimeMetrics> serviceReference : serviceReferences) {
+			HttpServiceRuntimeMetrics metrics = context.getService(serviceReference);
+
+			if (metrics == null) {
+				continue;
+			}
+
+			try {
+				print(
+					out, serviceReference.getProperty(Constants.SERVICE_ID),
+					metrics.getRuntimeMetricsDTO());
+			}
+			finally {
+				context.ungetService(serviceReference);
+			}
+		}
+	}
+
+	private void print(
+		PrintStream out, Object serviceId, RuntimeMetricsDTO runtimeMetricsDTO) {
+
+		out.println("Http service runtime " + serviceId); //$NON-NLS-1$
+
+		if (!runtimeMetricsDTO.enabled) {
+			out.println("  metrics are disabled, set " + HttpServiceRuntimeImpl.PROP_METRICS_ENABLED + "=true to enable them"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+		out.println("  compressed responses: " + runtimeMetricsDTO.compressedResponses + //$NON-NLS-1$
+			", not modified responses: " + runtimeMetricsDTO.notModifiedResponses + //$NON-NLS-1$
+			", bytes saved: " + runtimeMetricsDTO.bytesSaved); //$NON-NLS-1$
+
+		for (ServletContextMetricsDTO servletContextMetricsDTO : runtimeMetricsDTO.servletContextMetricsDTOs) {
+			print(out, "  context", servletContextMetricsDTO); //$NON-NLS-1$
+
+			for (RequestMetricsDTO requestMetricsDTO : servletContextMetricsDTO.servletMetricsDTOs) {
+				print(out, "    servlet", requestMetricsDTO); //$NON-NLS-1$
+			}
+
+			for (RequestMetricsDTO requestMetricsDTO : servletContextMetricsDTO.resourceMetricsDTOs) {
+				print(out, "    resource", requestMetricsDTO); //$NON-NLS-1$
+			}
+
+			for (RequestMetricsDTO requestMetricsDTO : servletContextMetricsDTO.filterMetricsDTOs) {
+				print(out, "    filter", requestMetricsDTO); //$NON-NLS-1$
+			}
+		}
+
+		if (runtimeMetricsDTO.slowRequestDTOs.length > 0) {
+			out.println("  slow requests:"); //$NON-NLS-1$
+
+			for (SlowRequestDTO slowRequestDTO : runtimeMetricsDTO.slowRequestDTOs) {
+				out.println("    " + new Date(slowRequestDTO.timestamp) + ' ' + //$NON-NLS-1$
+					slowRequestDTO.method + ' ' + slowRequestDTO.path + ' ' +
+					slowRequestDTO.status + ' ' + slowRequestDTO.time + "ms (" + //$NON-NLS-1$
+					slowRequestDTO.name + ')');
+			}
+		}
+	}
+
+	private void print(
+		PrintStream out, String kind, RequestMetricsDTO requestMetricsDTO) {
+
+		long average = (requestMetricsDTO.requests == 0) ? 0 :
+			requestMetricsDTO.totalTime / requestMetricsDTO.requests;
+
+		StringBuilder sb = new StringBuilder();
+
+		sb.append(kind).append(' ').append(requestMetricsDTO.name);
+		sb.append(" [").append(requestMetricsDTO.serviceId).append("]: "); //$NON-NLS-1$ //$NON-NLS-2$
+		sb.append(requestMetricsDTO.requests).append(" requests, "); //$NON-NLS-1$
+		sb.append(requestMetricsDTO.active).append(" active, "); //$NON-NLS-1$
+		sb.append(requestMetricsDTO.failures).append(" failures, avg "); //$NON-NLS-1$
+		sb.append(average).append("ms, max "); //$NON-NLS-1$
+		sb.append(requestMetricsDTO.maxTime).append("ms"); //$NON-NLS-1$
+
+		if (requestMetricsDTO.bytesIn > 0 || requestMetricsDTO.bytesOut > 0) {
+			sb.append(", in ").append(requestMetricsDTO.bytesIn); //$NON-NLS-1$
+			sb.append("B, out ").append(requestMetricsDTO.bytesOut).append('B'); //$NON-NLS-1$
+		}
+
+		for (int i = 1; i < requestMetricsDTO.statusCounts.length; i++) {
+			if (requestMetricsDTO.statusCounts[i] > 0) {
+				sb.append(", ").append(i).append("xx: "); //$NON-NLS-1$ //$NON-NLS-2$
+				sb.append(requestMetricsDTO.statusCounts[i]);
+			}
+		}
+
+		out.println(sb);
+	}
+
+	private final BundleContext context;
+
+}
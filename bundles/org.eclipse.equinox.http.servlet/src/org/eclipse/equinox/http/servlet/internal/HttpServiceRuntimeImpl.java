@@ -15,6 +15,7 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.servlet.*;
@@ -23,8 +24,11 @@ import javax.servlet.http.*;
 import org.eclipse.equinox.http.servlet.context.ContextPathCustomizer;
 import org.eclipse.equinox.http.servlet.internal.context.*;
 import org.eclipse.equinox.http.servlet.internal.error.*;
-import org.eclipse.equinox.http.servlet.internal.servlet.Match;
+import org.eclipse.equinox.http.servlet.internal.registration.EndpointRegistration;
+import org.eclipse.equinox.http.servlet.internal.servlet.*;
 import org.eclipse.equinox.http.servlet.internal.util.*;
+import org.eclipse.equinox.http.servlet.runtime.HttpServiceRuntimeMetrics;
+import org.eclipse.equinox.http.servlet.runtime.dto.*;
 import org.osgi.framework.*;
 import org.osgi.framework.dto.ServiceReferenceDTO;
 import org.osgi.service.http.HttpContext;
@@ -42,9 +46,16 @@ import org.osgi.util.tracker.ServiceTrackerCustomizer;
  */
 public class HttpServiceRuntimeImpl
 	implements
-		HttpServiceRuntime,
+		HttpServiceRuntime, HttpServiceRuntimeMetrics,
 		ServiceTrackerCustomizer<ServletContextHelper, AtomicReference<ContextController>> {
 
+	public static final String PROP_METRICS_ENABLED = "equinox.http.metrics.enabled"; //$NON-NLS-1$
+	public static final String PROP_METRICS_SLOW_REQUEST_LOG_SIZE = "equinox.http.metrics.slowRequestLogSize"; //$NON-NLS-1$
+	public static final String PROP_METRICS_SLOW_REQUEST_THRESHOLD = "equinox.http.metrics.slowRequestThreshold"; //$NON-NLS-1$
+
+	private static final int DEFAULT_SLOW_REQUEST_LOG_SIZE = 100;
+	private static final long DEFAULT_SLOW_REQUEST_THRESHOLD = 1000;
+
 	public HttpServiceRuntimeImpl(
 		BundleContext trackingContext, BundleContext consumingContext,
 		ServletContext parentServletContext, Map<String, Object> attributes) {
@@ -60,6 +71,17 @@ public class HttpServiceRuntimeImpl
 		this.parentServletContext = parentServletContext;
 		this.attributes = Collections.unmodifiableMap(attributes);
 		this.targetFilter = "(" + Activator.UNIQUE_SERVICE_ID + "=" + attributes.get(Activator.UNIQUE_SERVICE_ID) + ")";  //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		this.responseCompressionFilter = ResponseCompressionFilter.create(this);
+		this.metricsEnabled = BooleanPlus.from(
+			getRuntimeProperty(PROP_METRICS_ENABLED), false);
+		this.slowRequestThreshold = TimeUnit.MILLISECONDS.toNanos(
+			LongPlus.from(
+				getRuntimeProperty(PROP_METRICS_SLOW_REQUEST_THRESHOLD),
+				DEFAULT_SLOW_REQUEST_THRESHOLD));
+		this.slowRequestLog = new SlowRequestLog(
+			(int)LongPlus.from(
+				getRuntimeProperty(PROP_METRICS_SLOW_REQUEST_LOG_SIZE),
+				DEFAULT_SLOW_REQUEST_LOG_SIZE));
 
 		contextServiceTracker =
 			new ServiceTracker<ServletContextHelper, AtomicReference<ContextController>>(
@@ -81,7 +103,7 @@ public class HttpServiceRuntimeImpl
 	}
 
 	@Override
-	public synchronized AtomicReference<ContextController> addingService(
+	public AtomicReference<ContextController> addingService(
 		ServiceReference<ServletContextHelper> serviceReference) {
 
 		AtomicReference<ContextController> result = new AtomicReference<ContextController>();
@@ -111,8 +133,12 @@ public class HttpServiceRuntimeImpl
 				trackingContext, consumingContext, serviceReference, new ProxyContext(parentServletContext),
 				this, contextName, contextPath);
 
+			// the controller initialized its servlets and filters without
+			// holding any runtime lock, it only becomes routable here
 			controllerMap.put(serviceReference, contextController);
 
+			publishContextRoutes();
+
 			result.set(contextController);
 		}
 		catch (HttpWhiteboardFailureException hwfe) {
@@ -178,8 +204,13 @@ public class HttpServiceRuntimeImpl
 		contextPathAdaptorTracker.close();
 
 		controllerMap.clear();
+		contextRoutes.set(Collections.<String, List<ContextController>>emptyMap());
 		registeredObjects.clear();
 
+		if (responseCompressionFilter != null) {
+			responseCompressionFilter.destroy();
+		}
+
 		failedFilterDTOs.clear();
 		failedListenerDTOs.clear();
 		failedResourceDTOs.clear();
@@ -231,6 +262,53 @@ public class HttpServiceRuntimeImpl
 		return dispatchTargets;
 	}
 
+	/**
+	 * Returns the value of a runtime configuration property. The attributes of
+	 * the runtime (the init parameters of the proxy servlet) take precedence
+	 * over the framework properties.
+	 */
+	public Object getRuntimeProperty(String key) {
+		Object value = attributes.get(key);
+
+		if ((value == null) && (consumingContext != null)) {
+			value = consumingContext.getProperty(key);
+		}
+
+		return value;
+	}
+
+	public ResponseCompressionFilter getResponseCompressionFilter() {
+		return responseCompressionFilter;
+	}
+
+	public boolean isMetricsEnabled() {
+		return metricsEnabled;
+	}
+
+	public void recordSlowRequest(
+		HttpServletRequest request, EndpointRegistration<?> endpointRegistration,
+		ContextController contextController, long elapsedNanos, int status) {
+
+		if ((slowRequestThreshold < 0) || (elapsedNanos < slowRequestThreshold)) {
+			return;
+		}
+
+		SlowRequestDTO slowRequestDTO = new SlowRequestDTO();
+
+		String queryString = request.getQueryString();
+
+		slowRequestDTO.method = request.getMethod();
+		slowRequestDTO.name = endpointRegistration.getName();
+		slowRequestDTO.path = (queryString == null) ? request.getRequestURI() :
+			request.getRequestURI().concat("?").concat(queryString); //$NON-NLS-1$
+		slowRequestDTO.servletContextId = contextController.getServiceId();
+		slowRequestDTO.status = status;
+		slowRequestDTO.time = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+		slowRequestDTO.timestamp = System.currentTimeMillis();
+
+		slowRequestLog.add(slowRequestDTO);
+	}
+
 	public Set<Object> getRegisteredObjects() {
 		return registeredObjects;
 	}
@@ -260,6 +338,40 @@ public class HttpServiceRuntimeImpl
 		return runtimeDTO;
 	}
 
+	@Override
+	public RuntimeMetricsDTO getRuntimeMetricsDTO() {
+		RuntimeMetricsDTO runtimeMetricsDTO = new RuntimeMetricsDTO();
+
+		runtimeMetricsDTO.enabled = metricsEnabled;
+
+		List<ServletContextMetricsDTO> servletContextMetricsDTOs =
+			new ArrayList<ServletContextMetricsDTO>();
+
+		for (ContextController contextController : controllerMap.values()) {
+			ServletContextMetricsDTO servletContextMetricsDTO =
+				contextController.getServletContextMetricsDTO();
+
+			if (servletContextMetricsDTO != null) {
+				servletContextMetricsDTOs.add(servletContextMetricsDTO);
+			}
+		}
+
+		runtimeMetricsDTO.servletContextMetricsDTOs = servletContextMetricsDTOs.toArray(
+			new ServletContextMetricsDTO[servletContextMetricsDTOs.size()]);
+		runtimeMetricsDTO.slowRequestDTOs = slowRequestLog.getSlowRequestDTOs();
+
+		if (responseCompressionFilter != null) {
+			ResponseCompressionStatistics statistics =
+				responseCompressionFilter.getStatistics();
+
+			runtimeMetricsDTO.compressedResponses = statistics.getCompressedResponses();
+			runtimeMetricsDTO.notModifiedResponses = statistics.getNotModifiedResponses();
+			runtimeMetricsDTO.bytesSaved = statistics.getBytesSaved();
+		}
+
+		return runtimeMetricsDTO;
+	}
+
 	private ServiceReferenceDTO getServiceDTO() {
 		ServiceReferenceDTO[] services = consumingContext.getBundle().adapt(ServiceReferenceDTO[].class);
 		for (ServiceReferenceDTO serviceDTO : services) {
@@ -302,42 +414,47 @@ public class HttpServiceRuntimeImpl
 	}
 
 	@Override
-	public synchronized void modifiedService(
+	public void modifiedService(
 		ServiceReference<ServletContextHelper> serviceReference,
 		AtomicReference<ContextController> contextController) {
 
-		removedService(serviceReference, contextController);
-		AtomicReference<ContextController> added = addingService(serviceReference);
-		contextController.set(added.get());
+		// only changes of the same context need to be serialized
+		synchronized (contextController) {
+			removedService(serviceReference, contextController);
+			AtomicReference<ContextController> added = addingService(serviceReference);
+			contextController.set(added.get());
+		}
 	}
 
 	@Override
-	public synchronized void removedService(
+	public void removedService(
 		ServiceReference<ServletContextHelper> serviceReference,
 		AtomicReference<ContextController> contextControllerRef) {
 
-		ContextController contextController = contextControllerRef.get();
-		if (contextController != null) {
-			contextController.destroy();
+		synchronized (contextControllerRef) {
+			// stop routing requests to the context before destroying it
+			controllerMap.remove(serviceReference);
+
+			publishContextRoutes();
+
+			ContextController contextController = contextControllerRef.get();
+			if (contextController != null) {
+				contextController.destroy();
+			}
+			failedServletContextDTOs.remove(serviceReference);
+			trackingContext.ungetService(serviceReference);
 		}
-		controllerMap.remove(serviceReference);
-		failedServletContextDTOs.remove(serviceReference);
-		trackingContext.ungetService(serviceReference);
 	}
 
 	Collection<ContextController> getContextControllers(String requestURI) {
+		Map<String, List<ContextController>> routes = contextRoutes.get();
+
 		int pos = requestURI.lastIndexOf('/');
 
 		do {
-			List<ContextController> contextControllers = new ArrayList<ContextController>();
-
-			for (ContextController contextController : controllerMap.values()) {
-				if (contextController.getContextPath().equals(requestURI)) {
-					contextControllers.add(contextController);
-				}
-			}
+			List<ContextController> contextControllers = routes.get(requestURI);
 
-			if (!contextControllers.isEmpty()) {
+			if (contextControllers != null) {
 				return contextControllers;
 			}
 
@@ -355,6 +472,48 @@ public class HttpServiceRuntimeImpl
 		return null;
 	}
 
+	/**
+	 * Rebuilds the immutable context path to context controller table used to
+	 * route requests and publishes it atomically. Requests always see either
+	 * the previous or the new table and never wait for a registration.
+	 */
+	private void publishContextRoutes() {
+		synchronized (contextRoutes) {
+			Map<String, List<ContextController>> routes =
+				new HashMap<String, List<ContextController>>();
+			List<ServiceReference<ServletContextHelper>> serviceReferences =
+				new ArrayList<ServiceReference<ServletContextHelper>>(controllerMap.keySet());
+
+			// highest ranked context first
+			Collections.sort(serviceReferences, Collections.reverseOrder());
+
+			for (ServiceReference<ServletContextHelper> serviceReference : serviceReferences) {
+				ContextController contextController = controllerMap.get(serviceReference);
+
+				if (contextController == null) {
+					continue;
+				}
+
+				List<ContextController> contextControllers = routes.get(
+					contextController.getContextPath());
+
+				if (contextControllers == null) {
+					contextControllers = new ArrayList<ContextController>(1);
+
+					routes.put(contextController.getContextPath(), contextControllers);
+				}
+
+				contextControllers.add(contextController);
+			}
+
+			for (Map.Entry<String, List<ContextController>> entry : routes.entrySet()) {
+				entry.setValue(Collections.unmodifiableList(entry.getValue()));
+			}
+
+			contextRoutes.set(Collections.unmodifiableMap(routes));
+		}
+	}
+
 	long generateLegacyId() {
 		return legacyIdGenerator.getAndIncrement();
 	}
@@ -524,54 +683,56 @@ public class HttpServiceRuntimeImpl
 		}
 
 		synchronized (legacyMappings) {
-			if (getRegisteredObjects().contains(filter)) {
-				throw new RegisteredFilterException(filter);
-			}
-			HttpServiceObjectRegistration existing = legacyMappings.get(filter);
-			if (existing != null) {
+			if (getRegisteredObjects().contains(filter) ||
+				legacyMappings.containsKey(filter) ||
+				!pendingLegacyKeys.add(filter)) {
+
 				throw new RegisteredFilterException(filter);
 			}
+		}
+
+		// the filter is initialized by the whiteboard without holding the
+		// legacy lock; the pending key keeps concurrent callers out
+		HttpContextHelperFactory factory = null;
+		HttpServiceObjectRegistration objectRegistration = null;
+		ServiceRegistration<Filter> registration = null;
+		try {
 			String filterName = filter.getClass().getName();
 			if ((initparams != null) && (initparams.get(Const.FILTER_NAME) != null)) {
 				filterName = initparams.get(Const.FILTER_NAME);
 			}
-			HttpContextHelperFactory factory = getOrRegisterHttpContextHelperFactory(bundle, httpContext);
-
-			HttpServiceObjectRegistration objectRegistration = null;
-			ServiceRegistration<Filter> registration = null;
-			try {
-				Dictionary<String, Object> props = new Hashtable<String, Object>();
-				props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_TARGET, targetFilter);
-				props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_PATTERN, alias);
-				props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_NAME, filterName);
-				props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_CONTEXT_SELECT, "(" + Const.EQUINOX_LEGACY_CONTEXT_HELPER + "=true)"); //$NON-NLS-1$ //$NON-NLS-2$
-				props.put(Const.EQUINOX_LEGACY_CONTEXT_SELECT, factory.getFilter());
-				props.put(Const.EQUINOX_LEGACY_TCCL_PROP, Thread.currentThread().getContextClassLoader());
-				props.put(Constants.SERVICE_RANKING, findFilterPriority(initparams));
-				fillInitParams(props, initparams, HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_INIT_PARAM_PREFIX);
-
-				LegacyFilterFactory filterFactory = new LegacyFilterFactory(filter);
-				registration = bundle.getBundleContext().registerService(Filter.class, filterFactory, props);
-
-				// check that init got called and did not throw an exception
-				filterFactory.checkForError();
-
-				objectRegistration = new HttpServiceObjectRegistration(filter, registration, factory, bundle);
-				Set<HttpServiceObjectRegistration> objectRegistrations = bundleRegistrations.get(bundle);
-				if (objectRegistrations == null) {
-					objectRegistrations = new HashSet<HttpServiceObjectRegistration>();
-					bundleRegistrations.put(bundle, objectRegistrations);
-				}
-				objectRegistrations.add(objectRegistration);
-				legacyMappings.put(objectRegistration.serviceKey, objectRegistration);
-			} finally {
-				if (objectRegistration == null || !legacyMappings.containsKey(objectRegistration.serviceKey)) {
-					// something bad happened above (likely going to throw a runtime exception)
-					// need to clean up the factory reference
+			factory = getOrRegisterHttpContextHelperFactory(bundle, httpContext);
+
+			Dictionary<String, Object> props = new Hashtable<String, Object>();
+			props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_TARGET, targetFilter);
+			props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_PATTERN, alias);
+			props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_NAME, filterName);
+			props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_CONTEXT_SELECT, "(" + Const.EQUINOX_LEGACY_CONTEXT_HELPER + "=true)"); //$NON-NLS-1$ //$NON-NLS-2$
+			props.put(Const.EQUINOX_LEGACY_CONTEXT_SELECT, factory.getFilter());
+			props.put(Const.EQUINOX_LEGACY_TCCL_PROP, Thread.currentThread().getContextClassLoader());
+			props.put(Constants.SERVICE_RANKING, findFilterPriority(initparams));
+			fillInitParams(props, initparams, HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_INIT_PARAM_PREFIX);
+
+			LegacyFilterFactory filterFactory = new LegacyFilterFactory(filter);
+			registration = bundle.getBundleContext().registerService(Filter.class, filterFactory, props);
+
+			// check that init got called and did not throw an exception
+			filterFactory.checkForError();
+
+			objectRegistration = new HttpServiceObjectRegistration(filter, registration, factory, bundle);
+
+			addLegacyRegistration(objectRegistration, null, null);
+		} finally {
+			pendingLegacyKeys.remove(filter);
+
+			if (objectRegistration == null || !legacyMappings.containsKey(objectRegistration.serviceKey)) {
+				// something bad happened above (likely going to throw a runtime exception)
+				// need to clean up the factory reference
+				if (factory != null) {
 					decrementFactoryUseCount(factory);
-					if (registration != null) {
-						registration.unregister();
-					}
+				}
+				if (registration != null) {
+					registration.unregister();
 				}
 			}
 		}
@@ -637,45 +798,32 @@ public class HttpServiceRuntimeImpl
 
 		ContextController.checkPattern(alias);
 
-		synchronized (legacyMappings) {
-			HttpServiceObjectRegistration objectRegistration = null;
-			HttpContextHelperFactory factory = getOrRegisterHttpContextHelperFactory(bundle, httpContext);
-			try {
-				String fullAlias = getFullAlias(alias, factory);
-				HttpServiceObjectRegistration existing = legacyMappings.get(fullAlias);
-				if (existing != null) {
-					throw new PatternInUseException(alias);
-				}
-				Dictionary<String, Object> props = new Hashtable<String, Object>();
-				props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_TARGET, targetFilter);
-				props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_RESOURCE_PATTERN, pattern);
-				props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_RESOURCE_PREFIX, name);
-				props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_CONTEXT_SELECT, factory.getFilter());
-				props.put(Constants.SERVICE_RANKING, Integer.MAX_VALUE);
-				props.put(Const.EQUINOX_LEGACY_TCCL_PROP, Thread.currentThread().getContextClassLoader());
-				ServiceRegistration<?> registration = bundle.getBundleContext().registerService(String.class, "resource", props); //$NON-NLS-1$
-				objectRegistration = new HttpServiceObjectRegistration(fullAlias, registration, factory, bundle);
-
-				Set<HttpServiceObjectRegistration> objectRegistrations = bundleRegistrations.get(bundle);
-				if (objectRegistrations == null) {
-					objectRegistrations = new HashSet<HttpServiceObjectRegistration>();
-					bundleRegistrations.put(bundle, objectRegistrations);
-				}
-				objectRegistrations.add(objectRegistration);
+		HttpServiceObjectRegistration objectRegistration = null;
+		HttpContextHelperFactory factory = getOrRegisterHttpContextHelperFactory(bundle, httpContext);
+		String fullAlias = null;
+		try {
+			fullAlias = reserveLegacyAlias(alias, factory);
+
+			Dictionary<String, Object> props = new Hashtable<String, Object>();
+			props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_TARGET, targetFilter);
+			props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_RESOURCE_PATTERN, pattern);
+			props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_RESOURCE_PREFIX, name);
+			props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_CONTEXT_SELECT, factory.getFilter());
+			props.put(Constants.SERVICE_RANKING, Integer.MAX_VALUE);
+			props.put(Const.EQUINOX_LEGACY_TCCL_PROP, Thread.currentThread().getContextClassLoader());
+			ServiceRegistration<?> registration = bundle.getBundleContext().registerService(String.class, "resource", props); //$NON-NLS-1$
+			objectRegistration = new HttpServiceObjectRegistration(fullAlias, registration, factory, bundle);
+
+			addLegacyRegistration(objectRegistration, alias, fullAlias);
+		} finally {
+			if (fullAlias != null) {
+				pendingLegacyKeys.remove(fullAlias);
+			}
 
-				Map<String, String> aliasCustomizations = bundleAliasCustomizations.get(bundle);
-				if (aliasCustomizations == null) {
-					aliasCustomizations = new HashMap<String, String>();
-					bundleAliasCustomizations.put(bundle, aliasCustomizations);
-				}
-				aliasCustomizations.put(alias, fullAlias);
-				legacyMappings.put(objectRegistration.serviceKey, objectRegistration);
-			} finally {
-				if (objectRegistration == null || !legacyMappings.containsKey(objectRegistration.serviceKey)) {
-					// something bad happened above (likely going to throw a runtime exception)
-					// need to clean up the factory reference
-					decrementFactoryUseCount(factory);
-				}
+			if (objectRegistration == null || !legacyMappings.containsKey(objectRegistration.serviceKey)) {
+				// something bad happened above (likely going to throw a runtime exception)
+				// need to clean up the factory reference
+				decrementFactoryUseCount(factory);
 			}
 		}
 	}
@@ -702,65 +850,133 @@ public class HttpServiceRuntimeImpl
 			}
 		}
 
+		LegacyServlet legacyServlet = new LegacyServlet(servlet);
 		synchronized (legacyMappings) {
-			LegacyServlet legacyServlet = new LegacyServlet(servlet);
-			if (getRegisteredObjects().contains(legacyServlet)) {
+			if (getRegisteredObjects().contains(legacyServlet) ||
+				!pendingLegacyKeys.add(legacyServlet)) {
+
 				throw new ServletAlreadyRegisteredException(servlet);
 			}
-			HttpServiceObjectRegistration objectRegistration = null;
-			ServiceRegistration<Servlet> registration = null;
-			HttpContextHelperFactory factory = getOrRegisterHttpContextHelperFactory(bundle, httpContext);
-			try {
-				String fullAlias = getFullAlias(alias, factory);
-				HttpServiceObjectRegistration existing = legacyMappings.get(fullAlias);
-				if (existing != null) {
-					throw new PatternInUseException(alias);
+		}
+
+		// the servlet is initialized by the whiteboard without holding the
+		// legacy lock; the pending keys keep concurrent callers out
+		HttpServiceObjectRegistration objectRegistration = null;
+		ServiceRegistration<Servlet> registration = null;
+		HttpContextHelperFactory factory = null;
+		String fullAlias = null;
+		try {
+			factory = getOrRegisterHttpContextHelperFactory(bundle, httpContext);
+			fullAlias = reserveLegacyAlias(alias, factory);
+
+			String servletName = servlet.getClass().getName();
+			if ((initparams != null) && (initparams.get(Const.SERVLET_NAME) != null)) {
+				servletName = initparams.get(Const.SERVLET_NAME);
+			}
+
+			Dictionary<String, Object> props = new Hashtable<String, Object>();
+			props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_TARGET, targetFilter);
+			props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_PATTERN, pattern);
+			props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_NAME, servletName);
+			props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_CONTEXT_SELECT, factory.getFilter());
+			props.put(Constants.SERVICE_RANKING, Integer.MAX_VALUE);
+			props.put(Const.EQUINOX_LEGACY_TCCL_PROP, Thread.currentThread().getContextClassLoader());
+			fillInitParams(props, initparams, HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_INIT_PARAM_PREFIX);
+
+			registration = bundle.getBundleContext().registerService(Servlet.class, legacyServlet, props);
+
+			// check that init got called and did not throw an exception
+			legacyServlet.checkForError();
+
+			objectRegistration = new HttpServiceObjectRegistration(fullAlias, registration, factory, bundle);
+
+			addLegacyRegistration(objectRegistration, alias, fullAlias);
+		} finally {
+			pendingLegacyKeys.remove(legacyServlet);
+			if (fullAlias != null) {
+				pendingLegacyKeys.remove(fullAlias);
+			}
+
+			if (objectRegistration == null || !legacyMappings.containsKey(objectRegistration.serviceKey)) {
+				// something bad happened above (likely going to throw a runtime exception)
+				// need to clean up the factory reference
+				if (factory != null) {
+					decrementFactoryUseCount(factory);
 				}
-				String servletName = servlet.getClass().getName();
-				if ((initparams != null) && (initparams.get(Const.SERVLET_NAME) != null)) {
-					servletName = initparams.get(Const.SERVLET_NAME);
+				if (registration != null) {
+					registration.unregister();
 				}
+			}
+		}
+	}
 
-				Dictionary<String, Object> props = new Hashtable<String, Object>();
-				props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_TARGET, targetFilter);
-				props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_PATTERN, pattern);
-				props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_NAME, servletName);
-				props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_CONTEXT_SELECT, factory.getFilter());
-				props.put(Constants.SERVICE_RANKING, Integer.MAX_VALUE);
-				props.put(Const.EQUINOX_LEGACY_TCCL_PROP, Thread.currentThread().getContextClassLoader());
-				fillInitParams(props, initparams, HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_INIT_PARAM_PREFIX);
+	/**
+	 * Reserves the full alias of a legacy registration so that it can be
+	 * registered without holding the legacy lock.
+	 */
+	private String reserveLegacyAlias(
+			String alias, HttpContextHelperFactory factory)
+		throws NamespaceException {
 
-				registration = bundle.getBundleContext().registerService(Servlet.class, legacyServlet, props);
+		String fullAlias = getFullAlias(alias, factory);
+		synchronized (legacyMappings) {
+			if (legacyMappings.containsKey(fullAlias) ||
+				!pendingLegacyKeys.add(fullAlias)) {
 
-				// check that init got called and did not throw an exception
-				legacyServlet.checkForError();
+				throw new PatternInUseException(alias);
+			}
+		}
+		return fullAlias;
+	}
 
-				objectRegistration = new HttpServiceObjectRegistration(fullAlias, registration, factory, bundle);
+	private void addLegacyRegistration(
+		HttpServiceObjectRegistration objectRegistration, String alias,
+		String fullAlias) {
 
-				Set<HttpServiceObjectRegistration> objectRegistrations = bundleRegistrations.get(bundle);
-				if (objectRegistrations == null) {
-					objectRegistrations = new HashSet<HttpServiceObjectRegistration>();
-					bundleRegistrations.put(bundle, objectRegistrations);
-				}
-				objectRegistrations.add(objectRegistration);
+		synchronized (legacyMappings) {
+			Bundle bundle = objectRegistration.bundle;
+			Set<HttpServiceObjectRegistration> objectRegistrations = bundleRegistrations.get(bundle);
+			if (objectRegistrations == null) {
+				objectRegistrations = new HashSet<HttpServiceObjectRegistration>();
+				bundleRegistrations.put(bundle, objectRegistrations);
+			}
+			objectRegistrations.add(objectRegistration);
 
+			if (alias != null) {
 				Map<String, String> aliasCustomizations = bundleAliasCustomizations.get(bundle);
 				if (aliasCustomizations == null) {
 					aliasCustomizations = new HashMap<String, String>();
 					bundleAliasCustomizations.put(bundle, aliasCustomizations);
 				}
 				aliasCustomizations.put(alias, fullAlias);
+			}
 
-				legacyMappings.put(objectRegistration.serviceKey, objectRegistration);
-			} finally {
-				if (objectRegistration == null || !legacyMappings.containsKey(objectRegistration.serviceKey)) {
-					// something bad happened above (likely going to throw a runtime exception)
-					// need to clean up the factory reference
-					decrementFactoryUseCount(factory);
-					if (registration != null) {
-						registration.unregister();
-					}
+			legacyMappings.put(objectRegistration.serviceKey, objectRegistration);
+		}
+	}
+
+	/**
+	 * Unregisters legacy registrations which have already been removed from
+	 * the legacy mappings while their keys are still pending. Unregistering
+	 * destroys the servlet or filter, which waits for active requests, so it
+	 * must not happen while holding the legacy lock.
+	 */
+	private void removeLegacyRegistrations(
+		Collection<HttpServiceObjectRegistration> objectRegistrations) {
+
+		try {
+			for (HttpServiceObjectRegistration objectRegistration : objectRegistrations) {
+				try {
+					objectRegistration.registration.unregister();
+				} catch (IllegalStateException e) {
+					// ignore; already unregistered
 				}
+				decrementFactoryUseCount(objectRegistration.factory);
+			}
+		}
+		finally {
+			for (HttpServiceObjectRegistration objectRegistration : objectRegistrations) {
+				pendingLegacyKeys.remove(objectRegistration.serviceKey);
 			}
 		}
 	}
@@ -777,13 +993,14 @@ public class HttpServiceRuntimeImpl
 	}
 
 	public void unregisterHttpServiceAlias(Bundle bundle, String alias) {
+		HttpServiceObjectRegistration objectRegistration;
 		synchronized (legacyMappings) {
 			Map<String, String> aliasCustomizations = bundleAliasCustomizations.get(bundle);
 			String aliasCustomization = aliasCustomizations == null ? null : aliasCustomizations.remove(alias);
 			if (aliasCustomization == null) {
 				throw new IllegalArgumentException("The bundle did not register the alias: " + alias); //$NON-NLS-1$
 			}
-			HttpServiceObjectRegistration objectRegistration = legacyMappings.get(aliasCustomization);
+			objectRegistration = legacyMappings.get(aliasCustomization);
 			if (objectRegistration == null) {
 				throw new IllegalArgumentException("No registration found for alias: " + alias); //$NON-NLS-1$
 			}
@@ -793,20 +1010,16 @@ public class HttpServiceRuntimeImpl
 				throw new IllegalArgumentException("The bundle did not register the alias: " + alias); //$NON-NLS-1$
 			}
 
-			try {
-				objectRegistration.registration.unregister();
-			} catch (IllegalStateException e) {
-				// ignore; already unregistered
-			}
-			decrementFactoryUseCount(objectRegistration.factory);
 			legacyMappings.remove(aliasCustomization);
-
+			pendingLegacyKeys.add(aliasCustomization);
 		}
+		removeLegacyRegistrations(Collections.singleton(objectRegistration));
 	}
 
 	public void unregisterHttpServiceFilter(Bundle bundle, Filter filter) {
+		HttpServiceObjectRegistration objectRegistration;
 		synchronized (legacyMappings) {
-			HttpServiceObjectRegistration objectRegistration = legacyMappings.get(filter);
+			objectRegistration = legacyMappings.get(filter);
 			if (objectRegistration == null) {
 				throw new IllegalArgumentException("No registration found for filter: " + filter); //$NON-NLS-1$
 			}
@@ -815,32 +1028,26 @@ public class HttpServiceRuntimeImpl
 			{
 				throw new IllegalArgumentException("The bundle did not register the filter: " + filter); //$NON-NLS-1$
 			}
-			try {
-				objectRegistration.registration.unregister();
-			} catch (IllegalStateException e) {
-				// ignore; already unregistered
-			}
-			decrementFactoryUseCount(objectRegistration.factory);
 			legacyMappings.remove(filter);
+			pendingLegacyKeys.add(filter);
 		}
+		removeLegacyRegistrations(Collections.singleton(objectRegistration));
 	}
 
 	public void unregisterHttpServiceObjects(Bundle bundle) {
+		Set<HttpServiceObjectRegistration> objectRegistrations;
 		synchronized (legacyMappings) {
 			bundleAliasCustomizations.remove(bundle);
-			Set<HttpServiceObjectRegistration> objectRegistrations = bundleRegistrations.remove(bundle);
-			if (objectRegistrations != null) {
-				for (HttpServiceObjectRegistration objectRegistration : objectRegistrations) {
-					try {
-						objectRegistration.registration.unregister();
-					} catch (IllegalStateException e) {
-						// ignore; already unregistered
-					}
-					decrementFactoryUseCount(objectRegistration.factory);
-					legacyMappings.remove(objectRegistration.serviceKey);
-				}
+			objectRegistrations = bundleRegistrations.remove(bundle);
+			if (objectRegistrations == null) {
+				return;
+			}
+			for (HttpServiceObjectRegistration objectRegistration : objectRegistrations) {
+				legacyMappings.remove(objectRegistration.serviceKey);
+				pendingLegacyKeys.add(objectRegistration.serviceKey);
 			}
 		}
+		removeLegacyRegistrations(objectRegistrations);
 	}
 
 	private HttpContextHelperFactory getOrRegisterHttpContextHelperFactory(Bundle initiatingBundle, HttpContext httpContext) {
@@ -1072,6 +1279,10 @@ public class HttpServiceRuntimeImpl
 	private Map<String, Object> attributes;
 	private final String targetFilter;
 	private final ServiceRegistration<ServletContextHelper> defaultContextReg;
+	private final ResponseCompressionFilter responseCompressionFilter;
+	private final boolean metricsEnabled;
+	private final long slowRequestThreshold;
+	private final SlowRequestLog slowRequestLog;
 	private ServletContext parentServletContext;
 
 	private BundleContext trackingContext;
@@ -1090,10 +1301,15 @@ public class HttpServiceRuntimeImpl
 	private Map<Bundle, Set<HttpServiceObjectRegistration>> bundleRegistrations =
 		new HashMap<Bundle, Set<HttpServiceObjectRegistration>>();
 	private Map<Bundle, Map<String, String>> bundleAliasCustomizations = new HashMap<Bundle, Map<String,String>>();
+	// keys of legacy registrations which are being registered or unregistered outside of the legacy lock
+	private final Set<Object> pendingLegacyKeys = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
 	// END of old HttpService support
 
 	private ConcurrentMap<ServiceReference<ServletContextHelper>, ContextController> controllerMap =
 		new ConcurrentHashMap<ServiceReference<ServletContextHelper>, ContextController>();
+	private final AtomicReference<Map<String, List<ContextController>>> contextRoutes =
+		new AtomicReference<Map<String, List<ContextController>>>(
+			Collections.<String, List<ContextController>>emptyMap());
 
 	private final ConcurrentMap<ServiceReference<Filter>, FailedFilterDTO> failedFilterDTOs =
 		new ConcurrentHashMap<ServiceReference<Filter>, FailedFilterDTO>();
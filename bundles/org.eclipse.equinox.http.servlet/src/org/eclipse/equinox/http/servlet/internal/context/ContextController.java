@@ -29,6 +29,8 @@ import org.eclipse.equinox.http.servlet.internal.registration.FilterRegistration
 import org.eclipse.equinox.http.servlet.internal.registration.ServletRegistration;
 import org.eclipse.equinox.http.servlet.internal.servlet.*;
 import org.eclipse.equinox.http.servlet.internal.util.*;
+import org.eclipse.equinox.http.servlet.runtime.dto.RequestMetricsDTO;
+import org.eclipse.equinox.http.servlet.runtime.dto.ServletContextMetricsDTO;
 import org.osgi.framework.*;
 import org.osgi.service.http.context.ServletContextHelper;
 import org.osgi.service.http.runtime.dto.*;
@@ -801,12 +803,76 @@ public class ContextController {
 		return proxyContext;
 	}
 
+	public RequestMetrics getRequestMetrics() {
+		return requestMetrics;
+	}
+
 	public long getServiceId() {
 		checkShutdown();
 
 		return contextServiceId;
 	}
 
+	/**
+	 * Returns the metrics of this context, or <code>null</code> if the context
+	 * is being shut down.
+	 */
+	public ServletContextMetricsDTO getServletContextMetricsDTO() {
+		if (shutdown) {
+			return null;
+		}
+
+		ServletContextMetricsDTO servletContextMetricsDTO =
+			new ServletContextMetricsDTO();
+
+		servletContextMetricsDTO.contextPath = contextPath;
+		servletContextMetricsDTO.name = contextName;
+		servletContextMetricsDTO.serviceId = contextServiceId;
+
+		requestMetrics.fill(servletContextMetricsDTO);
+
+		List<RequestMetricsDTO> servletMetricsDTOs = new ArrayList<RequestMetricsDTO>();
+		List<RequestMetricsDTO> resourceMetricsDTOs = new ArrayList<RequestMetricsDTO>();
+
+		for (EndpointRegistration<?> endpointRegistration : endpointRegistrations) {
+			RequestMetricsDTO requestMetricsDTO = new RequestMetricsDTO();
+
+			requestMetricsDTO.name = endpointRegistration.getName();
+			requestMetricsDTO.serviceId = endpointRegistration.getServiceId();
+
+			endpointRegistration.getRequestMetrics().fill(requestMetricsDTO);
+
+			if (endpointRegistration instanceof ResourceRegistration) {
+				resourceMetricsDTOs.add(requestMetricsDTO);
+			}
+			else {
+				servletMetricsDTOs.add(requestMetricsDTO);
+			}
+		}
+
+		List<RequestMetricsDTO> filterMetricsDTOs = new ArrayList<RequestMetricsDTO>();
+
+		for (FilterRegistration filterRegistration : filterRegistrations) {
+			RequestMetricsDTO requestMetricsDTO = new RequestMetricsDTO();
+
+			requestMetricsDTO.name = filterRegistration.getD().name;
+			requestMetricsDTO.serviceId = filterRegistration.getD().serviceId;
+
+			filterRegistration.getRequestMetrics().fill(requestMetricsDTO);
+
+			filterMetricsDTOs.add(requestMetricsDTO);
+		}
+
+		servletContextMetricsDTO.servletMetricsDTOs = servletMetricsDTOs.toArray(
+			new RequestMetricsDTO[servletMetricsDTOs.size()]);
+		servletContextMetricsDTO.resourceMetricsDTOs = resourceMetricsDTOs.toArray(
+			new RequestMetricsDTO[resourceMetricsDTOs.size()]);
+		servletContextMetricsDTO.filterMetricsDTOs = filterMetricsDTOs.toArray(
+			new RequestMetricsDTO[filterMetricsDTOs.size()]);
+
+		return servletContextMetricsDTO;
+	}
+
 	public synchronized ServletContextDTO getServletContextDTO(){
 		checkShutdown();
 
@@ -1236,9 +1302,10 @@ public class ContextController {
 	private final HttpServiceRuntimeImpl httpServiceRuntime;
 	private final Set<ListenerRegistration> listenerRegistrations = new HashSet<ListenerRegistration>();
 	private final ProxyContext proxyContext;
+	private final RequestMetrics requestMetrics = new RequestMetrics();
 	private final ServiceReference<ServletContextHelper> servletContextHelperRef;
 	private final String servletContextHelperRefFilter;
-	private boolean shutdown;
+	private volatile boolean shutdown;
 	private final String string;
 
 	private final ServiceTracker<Filter, AtomicReference<FilterRegistration>> filterServiceTracker;
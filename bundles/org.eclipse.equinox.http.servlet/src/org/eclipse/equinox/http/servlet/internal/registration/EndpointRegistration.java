@@ -18,6 +18,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.eclipse.equinox.http.servlet.internal.context.ContextController;
 import org.eclipse.equinox.http.servlet.internal.context.ContextController.ServiceHolder;
 import org.eclipse.equinox.http.servlet.internal.servlet.Match;
+import org.eclipse.equinox.http.servlet.internal.util.RequestMetrics;
 import org.osgi.dto.DTO;
 import org.osgi.framework.wiring.BundleWiring;
 import org.osgi.service.http.context.ServletContextHelper;
@@ -32,6 +33,7 @@ public abstract class EndpointRegistration<D extends DTO>
 	private final ServletContextHelper servletContextHelper; //The context used during the registration of the servlet
 	private final ContextController contextController;
 	private final ClassLoader classLoader;
+	private final RequestMetrics requestMetrics = new RequestMetrics();
 
 	public EndpointRegistration(
 		ServiceHolder<Servlet> servletHolder, D d, ServletContextHelper servletContextHelper,
@@ -109,6 +111,10 @@ public abstract class EndpointRegistration<D extends DTO>
 
 	public abstract long getServiceId();
 
+	public RequestMetrics getRequestMetrics() {
+		return requestMetrics;
+	}
+
 	public ServletContext getServletContext() {
 		return getT().getServletConfig().getServletContext();
 	}
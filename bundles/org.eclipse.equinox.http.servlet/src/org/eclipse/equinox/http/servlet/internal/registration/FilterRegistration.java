@@ -22,6 +22,7 @@ import org.eclipse.equinox.http.servlet.internal.context.ContextController.Servi
 import org.eclipse.equinox.http.servlet.internal.servlet.FilterChainImpl;
 import org.eclipse.equinox.http.servlet.internal.servlet.Match;
 import org.eclipse.equinox.http.servlet.internal.util.Const;
+import org.eclipse.equinox.http.servlet.internal.util.RequestMetrics;
 import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.wiring.BundleWiring;
@@ -38,6 +39,7 @@ public class FilterRegistration
 	private final ContextController contextController;
 	private final boolean initDestoyWithContextController;
 	private final Pattern[] compiledRegexs;
+	private final RequestMetrics requestMetrics = new RequestMetrics();
 
 	public FilterRegistration(
 		ServiceHolder<Filter> filterHolder, FilterDTO filterDTO, int priority,
@@ -122,6 +124,10 @@ public class FilterRegistration
 		}
 	}
 
+	public RequestMetrics getRequestMetrics() {
+		return requestMetrics;
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (!(obj instanceof FilterRegistration)) {
@@ -0,0 +1,644 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.equinox.http.servlet.internal.servlet;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Buffers the response body up to the threshold of the
+ * {@link ResponseCompressionFilter}. Bodies which complete within the buffer
+ * are hashed for a strong ETag and sent with an exact Content-Length; larger
+ * bodies, or bodies which are flushed early, are streamed through gzip.
+ * <p>
+ * Streamed bodies get no ETag: the headers are sent before the end of the
+ * body is known, so there is nothing to hash yet. Raise the threshold of the
+ * filter to have ETags computed for larger bodies.
+ */
+public class CompressionResponseWrapper extends HttpServletResponseWrapper {
+
+	public CompressionResponseWrapper(
+		HttpServletResponse response, ResponseCompressionFilter filter,
+		boolean gzip, boolean etag, String ifNoneMatch, String etagKey) {
+
+		super(response);
+
+		this.filter = filter;
+		this.gzip = gzip;
+		this.etag = etag;
+		this.ifNoneMatch = ifNoneMatch;
+		this.etagKey = etagKey;
+	}
+
+	@Override
+	public void addHeader(String name, String value) {
+		if (interceptHeader(name, value)) {
+			return;
+		}
+
+		super.addHeader(name, value);
+	}
+
+	@Override
+	public void addIntHeader(String name, int value) {
+		if (interceptHeader(name, String.valueOf(value))) {
+			return;
+		}
+
+		super.addIntHeader(name, value);
+	}
+
+	@Override
+	public void flushBuffer() throws IOException {
+		// committing the response fixes the headers, so decide on the encoding now
+		CompressionOutputStream compressionOutputStream = getCompressionOutputStream();
+
+		if (writer != null) {
+			writer.flush();
+		}
+
+		compressionOutputStream.flush();
+
+		super.flushBuffer();
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() throws IOException {
+		if (writer != null) {
+			throw new IllegalStateException("getWriter() has already been called"); //$NON-NLS-1$
+		}
+
+		outputStreamRequested = true;
+
+		return getCompressionOutputStream();
+	}
+
+	@Override
+	public PrintWriter getWriter() throws IOException {
+		if (writer == null) {
+			if (outputStreamRequested) {
+				throw new IllegalStateException("getOutputStream() has already been called"); //$NON-NLS-1$
+			}
+
+			writer = new PrintWriter(
+				new OutputStreamWriter(
+					getCompressionOutputStream(), getCharacterEncoding()));
+		}
+
+		return writer;
+	}
+
+	@Override
+	public boolean isCommitted() {
+		if ((outputStream != null) && outputStream.isCommitted()) {
+			return true;
+		}
+
+		return super.isCommitted();
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+
+		contentLength = -1;
+		contentEncoding = false;
+		applicationETag = false;
+		status = SC_OK;
+		writer = null;
+		outputStreamRequested = false;
+
+		if (outputStream != null) {
+			outputStream.resetBuffer();
+			outputStream = null;
+		}
+	}
+
+	@Override
+	public void resetBuffer() {
+		super.resetBuffer();
+
+		if (outputStream != null) {
+			outputStream.resetBuffer();
+		}
+	}
+
+	@Override
+	public void sendError(int sc) throws IOException {
+		discard();
+
+		super.sendError(sc);
+	}
+
+	@Override
+	public void sendError(int sc, String msg) throws IOException {
+		discard();
+
+		super.sendError(sc, msg);
+	}
+
+	@Override
+	public void sendRedirect(String location) throws IOException {
+		discard();
+
+		super.sendRedirect(location);
+	}
+
+	@Override
+	public void setContentLength(int len) {
+		contentLength = len;
+	}
+
+	@Override
+	public void setContentLengthLong(long len) {
+		contentLength = len;
+	}
+
+	@Override
+	public void setHeader(String name, String value) {
+		if (interceptHeader(name, value)) {
+			return;
+		}
+
+		super.setHeader(name, value);
+	}
+
+	@Override
+	public void setIntHeader(String name, int value) {
+		if (interceptHeader(name, String.valueOf(value))) {
+			return;
+		}
+
+		super.setIntHeader(name, value);
+	}
+
+	@Override
+	public void setStatus(int sc) {
+		status = sc;
+
+		super.setStatus(sc);
+	}
+
+	/**
+	 * Writes whatever is still buffered once the filter chain has returned.
+	 * When the chain did not complete normally, an uncommitted body is
+	 * discarded so that error handling can take over the response.
+	 */
+	void finish(boolean completed) throws IOException {
+		if (discarded) {
+			return;
+		}
+
+		if (outputStream == null) {
+			if (completed && (contentLength >= 0)) {
+				setResponseContentLength(contentLength);
+			}
+
+			return;
+		}
+
+		if (writer != null) {
+			outputStream.finishing = true;
+
+			writer.flush();
+		}
+
+		if (completed) {
+			outputStream.close();
+		}
+		else {
+			outputStream.abort();
+		}
+	}
+
+	private void discard() {
+		discarded = true;
+
+		if (outputStream != null) {
+			outputStream.discard();
+		}
+	}
+
+	private CompressionOutputStream getCompressionOutputStream() {
+		if (outputStream == null) {
+			outputStream = new CompressionOutputStream(filter.getThreshold());
+		}
+
+		return outputStream;
+	}
+
+	private HttpServletResponse getHttpServletResponse() {
+		return (HttpServletResponse)getResponse();
+	}
+
+	private boolean interceptHeader(String name, String value) {
+		if (ResponseCompressionFilter.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+			try {
+				contentLength = Long.parseLong(value);
+			}
+			catch (NumberFormatException nfe) {
+				contentLength = -1;
+			}
+
+			return true;
+		}
+		else if (ResponseCompressionFilter.CONTENT_ENCODING.equalsIgnoreCase(name)) {
+			contentEncoding = true;
+		}
+		else if (ResponseCompressionFilter.ETAG.equalsIgnoreCase(name)) {
+			applicationETag = true;
+		}
+		else if (ResponseCompressionFilter.VARY.equalsIgnoreCase(name)) {
+			// the cache key only covers the URI and the encoding
+			cacheable = false;
+		}
+		else if (ResponseCompressionFilter.CACHE_CONTROL.equalsIgnoreCase(name) &&
+				(value != null)) {
+
+			String directives = value.toLowerCase(Locale.ENGLISH);
+
+			if (directives.contains("private") || directives.contains("no-store")) { //$NON-NLS-1$ //$NON-NLS-2$
+				cacheable = false;
+			}
+		}
+
+		return false;
+	}
+
+	private void setResponseContentLength(long length) {
+		if (length <= Integer.MAX_VALUE) {
+			getHttpServletResponse().setContentLength((int)length);
+		}
+		else {
+			getHttpServletResponse().setHeader(
+				ResponseCompressionFilter.CONTENT_LENGTH, String.valueOf(length));
+		}
+	}
+
+	private boolean shouldCompress() {
+		if (!gzip || contentEncoding) {
+			return false;
+		}
+
+		if ((status == SC_NO_CONTENT) || (status == SC_NOT_MODIFIED)) {
+			return false;
+		}
+
+		return filter.isCompressible(getContentType());
+	}
+
+	private static String toETag(byte[] bytes, int offset, int length, boolean gzip) {
+		MessageDigest digest;
+
+		try {
+			digest = MessageDigest.getInstance("MD5"); //$NON-NLS-1$
+		}
+		catch (NoSuchAlgorithmException nsae) {
+			return null;
+		}
+
+		digest.update(bytes, offset, length);
+
+		byte[] hash = digest.digest();
+
+		StringBuilder sb = new StringBuilder(hash.length * 2 + 8);
+
+		sb.append('"');
+
+		for (byte b : hash) {
+			sb.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+		}
+
+		// the gzip encoded representation needs its own strong validator
+		if (gzip) {
+			sb.append('-').append(ResponseCompressionFilter.GZIP);
+		}
+
+		return sb.append('"').toString();
+	}
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray(); //$NON-NLS-1$
+
+	private boolean applicationETag;
+	private boolean cacheable = true;
+	private boolean contentEncoding;
+	private long contentLength = -1;
+	private boolean discarded;
+	private final boolean etag;
+	private final String etagKey;
+	private final ResponseCompressionFilter filter;
+	private final boolean gzip;
+	private final String ifNoneMatch;
+	private CompressionOutputStream outputStream;
+	private boolean outputStreamRequested;
+	private int status = SC_OK;
+	private PrintWriter writer;
+
+	private class CompressionOutputStream extends ServletOutputStream {
+
+		CompressionOutputStream(int threshold) {
+			this.threshold = threshold;
+			this.buffer = new Buffer(Math.min(threshold, 8192));
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+
+			closed = true;
+
+			if (discarded) {
+				return;
+			}
+
+			if (target == null) {
+				writeBuffered();
+			}
+			else if (gzipStream != null) {
+				gzipStream.finish();
+
+				filter.getStatistics().recordCompressed(
+					written, countingStream.count);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (closed || discarded || finishing) {
+				return;
+			}
+
+			if (target == null) {
+				commit();
+			}
+
+			target.flush();
+		}
+
+		@Override
+		public boolean isReady() {
+			if (servletOutputStream != null) {
+				return servletOutputStream.isReady();
+			}
+
+			// still buffering in memory
+			return true;
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+			try {
+				if (target == null) {
+					commit();
+				}
+
+				getHttpServletResponse().getOutputStream().setWriteListener(
+					writeListener);
+			}
+			catch (IOException ioe) {
+				throw new IllegalStateException(ioe);
+			}
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			checkOpen();
+
+			if ((target == null) && (buffer.size() + 1 > threshold)) {
+				commit();
+			}
+
+			written++;
+
+			if (target != null) {
+				target.write(b);
+			}
+			else {
+				buffer.write(b);
+			}
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			checkOpen();
+
+			if ((target == null) && (buffer.size() + length > threshold)) {
+				commit();
+			}
+
+			written += length;
+
+			if (target != null) {
+				target.write(bytes, offset, length);
+			}
+			else {
+				buffer.write(bytes, offset, length);
+			}
+		}
+
+		void abort() throws IOException {
+			if (closed) {
+				return;
+			}
+
+			closed = true;
+
+			if (target == null) {
+				buffer.reset();
+			}
+			else if (gzipStream != null) {
+				// keep what has already been sent a well formed gzip stream
+				gzipStream.finish();
+			}
+		}
+
+		void discard() {
+			if (target == null) {
+				buffer.reset();
+			}
+		}
+
+		boolean isCommitted() {
+			return target != null;
+		}
+
+		void resetBuffer() {
+			if (target != null) {
+				throw new IllegalStateException("The response has already been committed"); //$NON-NLS-1$
+			}
+
+			buffer.reset();
+			written = 0;
+		}
+
+		private void checkOpen() throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed"); //$NON-NLS-1$
+			}
+		}
+
+		/*
+		 * The body is larger than the threshold, or it is being flushed, so the
+		 * final length is unknown: stream it, compressed when possible.
+		 */
+		private void commit() throws IOException {
+			HttpServletResponse response = getHttpServletResponse();
+
+			if (shouldCompress()) {
+				response.setHeader(
+					ResponseCompressionFilter.CONTENT_ENCODING,
+					ResponseCompressionFilter.GZIP);
+				response.addHeader(
+					ResponseCompressionFilter.VARY,
+					ResponseCompressionFilter.ACCEPT_ENCODING);
+
+				servletOutputStream = response.getOutputStream();
+				countingStream = new CountingOutputStream(servletOutputStream);
+				gzipStream = new GZIPOutputStream(countingStream, 8192);
+				target = gzipStream;
+			}
+			else {
+				if (contentLength >= 0) {
+					setResponseContentLength(contentLength);
+				}
+
+				servletOutputStream = response.getOutputStream();
+				target = servletOutputStream;
+			}
+
+			buffer.writeTo(target);
+			buffer.reset();
+		}
+
+		/*
+		 * The complete body fits into the buffer.
+		 */
+		private void writeBuffered() throws IOException {
+			HttpServletResponse response = getHttpServletResponse();
+
+			byte[] bytes = buffer.getBytes();
+			int count = buffer.size();
+
+			boolean compress = shouldCompress() && (count >= threshold) && (count > 0);
+
+			boolean vary = gzip && !contentEncoding &&
+				filter.isCompressible(getContentType());
+
+			if (vary) {
+				response.addHeader(
+					ResponseCompressionFilter.VARY,
+					ResponseCompressionFilter.ACCEPT_ENCODING);
+			}
+
+			if (etag && !applicationETag && (status == SC_OK)) {
+				String value = toETag(bytes, 0, count, compress);
+
+				if (value != null) {
+					response.setHeader(ResponseCompressionFilter.ETAG, value);
+
+					if (cacheable) {
+						filter.cacheETag(etagKey, value, vary, count);
+					}
+
+					if ((ifNoneMatch != null) &&
+						ResponseCompressionFilter.matchesETag(ifNoneMatch, value)) {
+
+						response.setStatus(SC_NOT_MODIFIED);
+
+						filter.getStatistics().recordNotModified(count);
+
+						return;
+					}
+				}
+			}
+
+			if (compress) {
+				Buffer compressed = new Buffer(Math.max(count / 2, 64));
+				GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed);
+
+				gzipOutputStream.write(bytes, 0, count);
+				gzipOutputStream.close();
+
+				response.setHeader(
+					ResponseCompressionFilter.CONTENT_ENCODING,
+					ResponseCompressionFilter.GZIP);
+				response.setContentLength(compressed.size());
+
+				compressed.writeTo(response.getOutputStream());
+
+				filter.getStatistics().recordCompressed(count, compressed.size());
+			}
+			else {
+				response.setContentLength(count);
+
+				if (count > 0) {
+					response.getOutputStream().write(bytes, 0, count);
+				}
+			}
+		}
+
+		private final Buffer buffer;
+		private boolean closed;
+		private CountingOutputStream countingStream;
+		boolean finishing;
+		private GZIPOutputStream gzipStream;
+		private ServletOutputStream servletOutputStream;
+		private OutputStream target;
+		private final int threshold;
+		private long written;
+
+	}
+
+	private static class Buffer extends ByteArrayOutputStream {
+
+		Buffer(int size) {
+			super(size);
+		}
+
+		byte[] getBytes() {
+			return buf;
+		}
+
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		long count;
+
+	}
+
+}
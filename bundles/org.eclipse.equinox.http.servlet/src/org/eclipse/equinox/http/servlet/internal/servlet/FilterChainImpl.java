@@ -18,12 +18,15 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.eclipse.equinox.http.servlet.internal.registration.EndpointRegistration;
 import org.eclipse.equinox.http.servlet.internal.registration.FilterRegistration;
+import org.eclipse.equinox.http.servlet.internal.util.RequestMetrics;
 
 public class FilterChainImpl implements FilterChain {
 
 	private List<FilterRegistration> matchingFilterRegistrations;
 	private EndpointRegistration<?> registration;
 	private DispatcherType dispatcherType;
+	private Filter runtimeFilter;
+	private MetricsResponseWrapper metricsResponse;
 	private int filterIndex = 0;
 	private int filterCount;
 
@@ -31,18 +34,42 @@ public class FilterChainImpl implements FilterChain {
 		List<FilterRegistration> matchingFilterRegistrations,
 		EndpointRegistration<?> registration, DispatcherType dispatcherType) {
 
+		this(matchingFilterRegistrations, registration, dispatcherType, null, null);
+	}
+
+	public FilterChainImpl(
+		List<FilterRegistration> matchingFilterRegistrations,
+		EndpointRegistration<?> registration, DispatcherType dispatcherType,
+		Filter runtimeFilter, MetricsResponseWrapper metricsResponse) {
+
 		this.matchingFilterRegistrations = matchingFilterRegistrations;
 		this.dispatcherType = dispatcherType;
 		this.registration = registration;
+		this.runtimeFilter = runtimeFilter;
+		this.metricsResponse = metricsResponse;
 		this.filterCount = matchingFilterRegistrations.size();
 	}
 
 	public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+		// the runtime's own filter wraps the whole chain, ahead of any whiteboard filter
+		if (runtimeFilter != null) {
+			Filter filter = runtimeFilter;
+			runtimeFilter = null;
+			filter.doFilter(request, response, this);
+
+			return;
+		}
+
 		while (filterIndex < filterCount) {
 			FilterRegistration filterRegistration = matchingFilterRegistrations.get(filterIndex++);
 
 			if (filterRegistration.appliesTo(this)) {
-				filterRegistration.doFilter((HttpServletRequest) request, (HttpServletResponse) response, this);
+				if (metricsResponse != null) {
+					doFilter(filterRegistration, (HttpServletRequest) request, (HttpServletResponse) response);
+				}
+				else {
+					filterRegistration.doFilter((HttpServletRequest) request, (HttpServletResponse) response, this);
+				}
 
 				return;
 			}
@@ -54,4 +81,42 @@ public class FilterChainImpl implements FilterChain {
 		return dispatcherType;
 	}
 
+	// whether a whiteboard filter takes part in the rest of the chain
+	boolean hasFilters() {
+		for (int i = filterIndex; i < filterCount; i++) {
+			if (matchingFilterRegistrations.get(i).appliesTo(this)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	// the time of a filter includes the rest of the chain it invokes
+	private void doFilter(
+			FilterRegistration filterRegistration, HttpServletRequest request,
+			HttpServletResponse response)
+		throws IOException, ServletException {
+
+		RequestMetrics requestMetrics = filterRegistration.getRequestMetrics();
+		long start = System.nanoTime();
+		boolean failed = true;
+
+		requestMetrics.begin();
+
+		try {
+			filterRegistration.doFilter(request, response, this);
+
+			failed = false;
+		}
+		finally {
+			int status = failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR :
+				metricsResponse.getMetricsStatus();
+
+			requestMetrics.end(
+				System.nanoTime() - start, status, request.getContentLength(),
+				metricsResponse.getBytesWritten(), failed);
+		}
+	}
+
 }
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.equinox.http.servlet.internal.servlet;
+
+import java.io.*;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Tracks the status and the number of body bytes of a response for the
+ * request metrics. Characters written through the writer are counted as one
+ * byte each.
+ * <p>
+ * {@link #getStatus()} is deliberately not overridden since the error handling
+ * of {@link ResponseStateHandler} relies on the status reported by
+ * {@link HttpServletResponseWrapperImpl}.
+ */
+public class MetricsResponseWrapper extends HttpServletResponseWrapper {
+
+	public MetricsResponseWrapper(HttpServletResponse response) {
+		super(response);
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	public int getMetricsStatus() {
+		return status;
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() throws IOException {
+		if (outputStream == null) {
+			outputStream = new CountingServletOutputStream(super.getOutputStream());
+		}
+
+		return outputStream;
+	}
+
+	@Override
+	public PrintWriter getWriter() throws IOException {
+		if (writer == null) {
+			writer = new CountingPrintWriter(super.getWriter());
+		}
+
+		return writer;
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+
+		status = SC_OK;
+	}
+
+	@Override
+	public void sendError(int sc) throws IOException {
+		super.sendError(sc);
+
+		status = sc;
+	}
+
+	@Override
+	public void sendError(int sc, String msg) throws IOException {
+		super.sendError(sc, msg);
+
+		status = sc;
+	}
+
+	@Override
+	public void sendRedirect(String location) throws IOException {
+		super.sendRedirect(location);
+
+		status = SC_FOUND;
+	}
+
+	@Override
+	public void setStatus(int sc) {
+		super.setStatus(sc);
+
+		status = sc;
+	}
+
+	@SuppressWarnings("deprecation")
+	@Override
+	public void setStatus(int sc, String sm) {
+		super.setStatus(sc, sm);
+
+		status = sc;
+	}
+
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator"); //$NON-NLS-1$
+
+	private long bytesWritten;
+	private ServletOutputStream outputStream;
+	private int status = SC_OK;
+	private PrintWriter writer;
+
+	private class CountingServletOutputStream extends ServletOutputStream {
+
+		CountingServletOutputStream(ServletOutputStream target) {
+			this.target = target;
+		}
+
+		@Override
+		public void close() throws IOException {
+			target.close();
+		}
+
+		@Override
+		public void flush() throws IOException {
+			target.flush();
+		}
+
+		@Override
+		public boolean isReady() {
+			return target.isReady();
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+			target.setWriteListener(writeListener);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			target.write(b);
+
+			bytesWritten++;
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			target.write(bytes, offset, length);
+
+			bytesWritten += length;
+		}
+
+		private final ServletOutputStream target;
+
+	}
+
+	/*
+	 * Delegates to the container's writer, rather than wrapping it in another
+	 * PrintWriter, so that checkError() reports the errors of the container's
+	 * writer.
+	 */
+	private class CountingPrintWriter extends PrintWriter {
+
+		CountingPrintWriter(PrintWriter target) {
+			super(target);
+
+			this.target = target;
+		}
+
+		@Override
+		public boolean checkError() {
+			return target.checkError();
+		}
+
+		@Override
+		public void close() {
+			target.close();
+		}
+
+		@Override
+		public void flush() {
+			target.flush();
+		}
+
+		@Override
+		public void println() {
+			target.println();
+
+			bytesWritten += LINE_SEPARATOR.length();
+		}
+
+		@Override
+		public void write(int c) {
+			target.write(c);
+
+			bytesWritten++;
+		}
+
+		@Override
+		public void write(char[] chars, int offset, int length) {
+			target.write(chars, offset, length);
+
+			bytesWritten += length;
+		}
+
+		@Override
+		public void write(String string, int offset, int length) {
+			target.write(string, offset, length);
+
+			bytesWritten += length;
+		}
+
+		private final PrintWriter target;
+
+	}
+
+}
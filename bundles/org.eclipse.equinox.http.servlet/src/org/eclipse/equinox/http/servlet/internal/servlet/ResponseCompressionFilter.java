@@ -0,0 +1,391 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.equinox.http.servlet.internal.servlet;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.equinox.http.servlet.internal.HttpServiceRuntimeImpl;
+import org.eclipse.equinox.http.servlet.internal.util.BooleanPlus;
+import org.eclipse.equinox.http.servlet.internal.util.LongPlus;
+
+/**
+ * A filter built into the runtime which is applied ahead of all whiteboard
+ * filters of a REQUEST dispatch. It gzip compresses text responses above a
+ * size threshold and computes strong ETags for responses which fit into its
+ * buffer, answering matching conditional requests with 304. Responses above
+ * the threshold, or flushed before they complete, are streamed and get no
+ * ETag, since the headers are sent before the body is complete.
+ * <p>
+ * With a revalidation period, the ETags are remembered and a matching
+ * conditional request is answered without invoking the servlet. This is only
+ * done for requests without credentials which pass no whiteboard filter, and
+ * for responses which neither vary on other headers nor are private.
+ * <p>
+ * The filter is configured through the runtime properties, see
+ * {@link HttpServiceRuntimeImpl#getRuntimeProperty(String)}. It is not
+ * installed unless compression or ETags are enabled.
+ */
+public class ResponseCompressionFilter implements Filter {
+
+	public static final String PROP_COMPRESSION_ENABLED = "equinox.http.compression.enabled"; //$NON-NLS-1$
+	public static final String PROP_COMPRESSION_THRESHOLD = "equinox.http.compression.threshold"; //$NON-NLS-1$
+	public static final String PROP_COMPRESSION_MIME_TYPES = "equinox.http.compression.mimeTypes"; //$NON-NLS-1$
+	public static final String PROP_ETAG_ENABLED = "equinox.http.etag.enabled"; //$NON-NLS-1$
+	public static final String PROP_ETAG_REVALIDATE = "equinox.http.etag.revalidate"; //$NON-NLS-1$
+
+	static final String ACCEPT_ENCODING = "Accept-Encoding"; //$NON-NLS-1$
+	static final String AUTHORIZATION = "Authorization"; //$NON-NLS-1$
+	static final String CACHE_CONTROL = "Cache-Control"; //$NON-NLS-1$
+	static final String CONTENT_ENCODING = "Content-Encoding"; //$NON-NLS-1$
+	static final String CONTENT_LENGTH = "Content-Length"; //$NON-NLS-1$
+	static final String ETAG = "ETag"; //$NON-NLS-1$
+	static final String GZIP = "gzip"; //$NON-NLS-1$
+	static final String IF_NONE_MATCH = "If-None-Match"; //$NON-NLS-1$
+	static final String VARY = "Vary"; //$NON-NLS-1$
+
+	private static final int DEFAULT_THRESHOLD = 1024;
+	private static final String DEFAULT_MIME_TYPES = "text/*,application/json,application/javascript,application/xml,image/svg+xml"; //$NON-NLS-1$
+	private static final int MAX_CACHED_ETAGS = 1024;
+
+	/**
+	 * Returns the filter configured for the given runtime, or <code>null</code>
+	 * if neither compression nor ETag computation is enabled.
+	 */
+	public static ResponseCompressionFilter create(
+		HttpServiceRuntimeImpl httpServiceRuntime) {
+
+		boolean compression = BooleanPlus.from(
+			httpServiceRuntime.getRuntimeProperty(PROP_COMPRESSION_ENABLED), false);
+		boolean etags = BooleanPlus.from(
+			httpServiceRuntime.getRuntimeProperty(PROP_ETAG_ENABLED), false);
+
+		if (!compression && !etags) {
+			return null;
+		}
+
+		int threshold = (int)LongPlus.from(
+			httpServiceRuntime.getRuntimeProperty(PROP_COMPRESSION_THRESHOLD),
+			DEFAULT_THRESHOLD);
+		long revalidate = LongPlus.from(
+			httpServiceRuntime.getRuntimeProperty(PROP_ETAG_REVALIDATE), 0);
+
+		Object mimeTypes = httpServiceRuntime.getRuntimeProperty(
+			PROP_COMPRESSION_MIME_TYPES);
+
+		return new ResponseCompressionFilter(
+			compression, etags, Math.max(threshold, 0), revalidate,
+			String.valueOf(mimeTypes == null ? DEFAULT_MIME_TYPES : mimeTypes));
+	}
+
+	ResponseCompressionFilter(
+		boolean compressionEnabled, boolean etagEnabled, int threshold,
+		long revalidateMillis, String mimeTypes) {
+
+		this.compressionEnabled = compressionEnabled;
+		this.etagEnabled = etagEnabled;
+		this.threshold = threshold;
+		this.revalidateMillis = revalidateMillis;
+
+		List<String> types = new ArrayList<String>();
+		List<String> prefixes = new ArrayList<String>();
+
+		for (String mimeType : mimeTypes.split(",")) { //$NON-NLS-1$
+			mimeType = mimeType.trim().toLowerCase(Locale.ENGLISH);
+
+			if (mimeType.endsWith("/*")) { //$NON-NLS-1$
+				prefixes.add(mimeType.substring(0, mimeType.length() - 1));
+			}
+			else if (mimeType.length() > 0) {
+				types.add(mimeType);
+			}
+		}
+
+		this.mimeTypes = types.toArray(new String[types.size()]);
+		this.mimeTypePrefixes = prefixes.toArray(new String[prefixes.size()]);
+	}
+
+	@Override
+	public void init(FilterConfig filterConfig) {
+		// nothing to initialize
+	}
+
+	@Override
+	public void doFilter(
+			ServletRequest servletRequest, ServletResponse servletResponse,
+			FilterChain chain)
+		throws IOException, ServletException {
+
+		HttpServletRequest request = (HttpServletRequest)servletRequest;
+		HttpServletResponse response = (HttpServletResponse)servletResponse;
+
+		String method = request.getMethod();
+
+		// HEAD responses carry no body to compress or hash
+		boolean gzip = compressionEnabled && !"HEAD".equals(method) && //$NON-NLS-1$
+			acceptsGzip(request.getHeader(ACCEPT_ENCODING));
+		boolean etag = etagEnabled && "GET".equals(method); //$NON-NLS-1$
+
+		if (!gzip && !etag) {
+			chain.doFilter(request, response);
+
+			return;
+		}
+
+		String ifNoneMatch = etag ? request.getHeader(IF_NONE_MATCH) : null;
+		String etagKey = null;
+
+		if (etag && (revalidateMillis > 0) && isCacheable(request, chain)) {
+			etagKey = getETagKey(request, gzip);
+
+			if ((ifNoneMatch != null) && answerFromCache(etagKey, ifNoneMatch, response)) {
+				return;
+			}
+		}
+
+		CompressionResponseWrapper wrapper = new CompressionResponseWrapper(
+			response, this, gzip, etag, ifNoneMatch, etagKey);
+		boolean completed = false;
+
+		try {
+			chain.doFilter(request, wrapper);
+
+			completed = true;
+		}
+		finally {
+			wrapper.finish(completed);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		cachedETags.clear();
+	}
+
+	public ResponseCompressionStatistics getStatistics() {
+		return statistics;
+	}
+
+	boolean isCompressible(String contentType) {
+		if (contentType == null) {
+			return false;
+		}
+
+		int pos = contentType.indexOf(';');
+
+		if (pos > -1) {
+			contentType = contentType.substring(0, pos);
+		}
+
+		contentType = contentType.trim().toLowerCase(Locale.ENGLISH);
+
+		for (String mimeType : mimeTypes) {
+			if (mimeType.equals(contentType)) {
+				return true;
+			}
+		}
+
+		for (String prefix : mimeTypePrefixes) {
+			if (contentType.startsWith(prefix)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	int getThreshold() {
+		return threshold;
+	}
+
+	void cacheETag(String etagKey, String etag, boolean vary, int length) {
+		if (etagKey == null) {
+			return;
+		}
+
+		if (cachedETags.size() >= MAX_CACHED_ETAGS) {
+			cachedETags.clear();
+		}
+
+		cachedETags.put(
+			etagKey,
+			new CachedETag(etag, vary, length, System.currentTimeMillis() + revalidateMillis));
+	}
+
+	static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+
+		// an explicitly listed coding takes precedence over "*"
+		float gzipQuality = -1;
+		float anyQuality = -1;
+
+		for (String coding : acceptEncoding.split(",")) { //$NON-NLS-1$
+			String[] parts = coding.split(";"); //$NON-NLS-1$
+			String name = parts[0].trim();
+
+			boolean gzip = GZIP.equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name); //$NON-NLS-1$
+
+			if (!gzip && !"*".equals(name)) { //$NON-NLS-1$
+				continue;
+			}
+
+			float quality = getQuality(parts);
+
+			if (gzip) {
+				gzipQuality = Math.max(gzipQuality, quality);
+			}
+			else {
+				anyQuality = Math.max(anyQuality, quality);
+			}
+		}
+
+		if (gzipQuality >= 0) {
+			return gzipQuality > 0;
+		}
+
+		return anyQuality > 0;
+	}
+
+	private static float getQuality(String[] parts) {
+		for (int i = 1; i < parts.length; i++) {
+			String param = parts[i].trim();
+
+			if (param.startsWith("q=")) { //$NON-NLS-1$
+				try {
+					return Float.parseFloat(param.substring(2));
+				}
+				catch (NumberFormatException nfe) {
+					return 0;
+				}
+			}
+		}
+
+		return 1;
+	}
+
+	static boolean matchesETag(String ifNoneMatch, String etag) {
+		for (String candidate : ifNoneMatch.split(",")) { //$NON-NLS-1$
+			candidate = candidate.trim();
+
+			// If-None-Match uses the weak comparison function
+			if (candidate.startsWith("W/")) { //$NON-NLS-1$
+				candidate = candidate.substring(2);
+			}
+
+			if (candidate.equals("*") || candidate.equals(etag)) { //$NON-NLS-1$
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private boolean answerFromCache(
+		String etagKey, String ifNoneMatch, HttpServletResponse response) {
+
+		CachedETag cachedETag = cachedETags.get(etagKey);
+
+		if (cachedETag == null) {
+			return false;
+		}
+
+		if (cachedETag.expires < System.currentTimeMillis()) {
+			cachedETags.remove(etagKey, cachedETag);
+
+			return false;
+		}
+
+		if (!matchesETag(ifNoneMatch, cachedETag.etag)) {
+			return false;
+		}
+
+		response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		response.setHeader(ETAG, cachedETag.etag);
+
+		if (cachedETag.vary) {
+			response.addHeader(VARY, ACCEPT_ENCODING);
+		}
+
+		statistics.recordNotModified(cachedETag.length);
+
+		return true;
+	}
+
+	/*
+	 * A cached ETag answers the request without running the rest of the
+	 * chain, so it is only used when no whiteboard filter, which might deny
+	 * or alter the request, takes part in it. The key has no notion of the
+	 * client, so requests carrying credentials are not cached either.
+	 */
+	private static boolean isCacheable(
+		HttpServletRequest request, FilterChain chain) {
+
+		if ((request.getRemoteUser() != null) ||
+			(request.getHeader(AUTHORIZATION) != null)) {
+
+			return false;
+		}
+
+		return (chain instanceof FilterChainImpl) &&
+			!((FilterChainImpl)chain).hasFilters();
+	}
+
+	private static String getETagKey(HttpServletRequest request, boolean gzip) {
+		StringBuilder sb = new StringBuilder(request.getRequestURI());
+
+		String queryString = request.getQueryString();
+
+		if (queryString != null) {
+			sb.append('?').append(queryString);
+		}
+
+		if (gzip) {
+			sb.append('#').append(GZIP);
+		}
+
+		return sb.toString();
+	}
+
+	private final ConcurrentMap<String, CachedETag> cachedETags =
+		new ConcurrentHashMap<String, CachedETag>();
+	private final boolean compressionEnabled;
+	private final boolean etagEnabled;
+	private final String[] mimeTypePrefixes;
+	private final String[] mimeTypes;
+	private final long revalidateMillis;
+	private final ResponseCompressionStatistics statistics =
+		new ResponseCompressionStatistics();
+	private final int threshold;
+
+	private static class CachedETag {
+
+		CachedETag(String etag, boolean vary, int length, long expires) {
+			this.etag = etag;
+			this.vary = vary;
+			this.length = length;
+			this.expires = expires;
+		}
+
+		final String etag;
+		final long expires;
+		final int length;
+		final boolean vary;
+
+	}
+
+}
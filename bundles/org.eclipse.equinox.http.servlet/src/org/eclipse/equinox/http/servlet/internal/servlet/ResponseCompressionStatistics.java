@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.equinox.http.servlet.internal.servlet;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters maintained by the {@link ResponseCompressionFilter}.
+ */
+public class ResponseCompressionStatistics {
+
+	public long getCompressedResponses() {
+		return compressedResponses.get();
+	}
+
+	/**
+	 * The number of bytes written to the client for compressed responses.
+	 */
+	public long getCompressedBytes() {
+		return compressedBytes.get();
+	}
+
+	/**
+	 * The number of bytes written by the endpoints for compressed responses.
+	 */
+	public long getUncompressedBytes() {
+		return uncompressedBytes.get();
+	}
+
+	public long getNotModifiedResponses() {
+		return notModifiedResponses.get();
+	}
+
+	/**
+	 * The number of body bytes which did not have to be sent because the
+	 * request was answered with 304.
+	 */
+	public long getNotModifiedBytes() {
+		return notModifiedBytes.get();
+	}
+
+	public long getBytesSaved() {
+		return (getUncompressedBytes() - getCompressedBytes()) + getNotModifiedBytes();
+	}
+
+	void recordCompressed(long uncompressed, long compressed) {
+		compressedResponses.incrementAndGet();
+		uncompressedBytes.addAndGet(uncompressed);
+		compressedBytes.addAndGet(compressed);
+	}
+
+	void recordNotModified(long length) {
+		notModifiedResponses.incrementAndGet();
+		notModifiedBytes.addAndGet(length);
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[compressed=" + getCompressedResponses() + //$NON-NLS-1$
+			", notModified=" + getNotModifiedResponses() + ", bytesSaved=" + getBytesSaved() + ']'; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private final AtomicLong compressedBytes = new AtomicLong();
+	private final AtomicLong compressedResponses = new AtomicLong();
+	private final AtomicLong notModifiedBytes = new AtomicLong();
+	private final AtomicLong notModifiedResponses = new AtomicLong();
+	private final AtomicLong uncompressedBytes = new AtomicLong();
+
+}
@@ -47,6 +47,21 @@ public class ResponseStateHandler {
 			filterRegistration.addReference();
 		}
 
+		ContextController contextController = dispatchTargets.getContextController();
+		MetricsResponseWrapper metricsResponse = null;
+		long start = 0;
+
+		if ((dispatcherType == DispatcherType.REQUEST) &&
+			contextController.getHttpServiceRuntime().isMetricsEnabled()) {
+
+			metricsResponse = new MetricsResponseWrapper(response);
+			response = metricsResponse;
+			start = System.nanoTime();
+
+			contextController.getRequestMetrics().begin();
+			endpoint.getRequestMetrics().begin();
+		}
+
 		ServletRequestEvent servletRequestEvent = null;
 
 		if ((dispatcherType == DispatcherType.REQUEST) && !servletRequestListeners.isEmpty()) {
@@ -59,14 +74,17 @@ public class ResponseStateHandler {
 			}
 
 			if (endpoint.getServletContextHelper().handleSecurity(request, response)) {
-				if (filters.isEmpty()) {
+				Filter runtimeFilter = getRuntimeFilter();
+
+				if (filters.isEmpty() && (runtimeFilter == null)) {
 					endpoint.service(request, response);
 				}
 				else {
 					Collections.sort(filters);
 
 					FilterChain chain = new FilterChainImpl(
-						filters, endpoint, dispatcherType);
+						filters, endpoint, dispatcherType, runtimeFilter,
+						metricsResponse);
 
 					chain.doFilter(request, response);
 				}
@@ -94,7 +112,14 @@ public class ResponseStateHandler {
 			}
 
 			if (dispatcherType == DispatcherType.REQUEST) {
-				handleErrors();
+				try {
+					handleErrors();
+				}
+				finally {
+					if (metricsResponse != null) {
+						recordMetrics(contextController, endpoint, metricsResponse, start);
+					}
+				}
 
 				for (ServletRequestListener servletRequestListener : servletRequestListeners) {
 					servletRequestListener.requestDestroyed(servletRequestEvent);
@@ -107,6 +132,34 @@ public class ResponseStateHandler {
 		this.exception = exception;
 	}
 
+	private Filter getRuntimeFilter() {
+		if (dispatcherType != DispatcherType.REQUEST) {
+			return null;
+		}
+
+		return dispatchTargets.getContextController().getHttpServiceRuntime().getResponseCompressionFilter();
+	}
+
+	private void recordMetrics(
+		ContextController contextController, EndpointRegistration<?> endpoint,
+		MetricsResponseWrapper metricsResponse, long start) {
+
+		long elapsed = System.nanoTime() - start;
+		boolean failed = (exception != null);
+		int status = failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR :
+			metricsResponse.getMetricsStatus();
+		long bytesIn = request.getContentLength();
+		long bytesOut = metricsResponse.getBytesWritten();
+
+		contextController.getRequestMetrics().end(
+			elapsed, status, bytesIn, bytesOut, failed);
+		endpoint.getRequestMetrics().end(
+			elapsed, status, bytesIn, bytesOut, failed);
+
+		contextController.getHttpServiceRuntime().recordSlowRequest(
+			request, endpoint, contextController, elapsed, status);
+	}
+
 	private List<ServletRequestListener> getServletRequestListener() {
 		return dispatchTargets.getContextController().getEventListeners().get(ServletRequestListener.class);
 	}
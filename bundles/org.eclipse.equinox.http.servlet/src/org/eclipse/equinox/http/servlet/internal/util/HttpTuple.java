@@ -14,7 +14,6 @@ package org.eclipse.equinox.http.servlet.internal.util;
 import org.eclipse.equinox.http.servlet.internal.*;
 import org.eclipse.equinox.http.servlet.internal.servlet.ProxyServlet;
 import org.osgi.framework.ServiceRegistration;
-import org.osgi.service.http.runtime.HttpServiceRuntime;
 
 public class HttpTuple {
 
@@ -23,7 +22,7 @@ public class HttpTuple {
 		HttpServiceFactory httpServiceFactory,
 		ServiceRegistration<?> hsfRegistration,
 		HttpServiceRuntimeImpl httpServiceRuntime,
-		ServiceRegistration<HttpServiceRuntime> hsrRegistration) {
+		ServiceRegistration<?> hsrRegistration) {
 
 		this.proxyServlet = proxyServlet;
 		this.httpServiceFactory = httpServiceFactory;
@@ -43,7 +42,7 @@ public class HttpTuple {
 	final HttpServiceFactory httpServiceFactory;
 	final ServiceRegistration<?> hsfRegistration;
 	final HttpServiceRuntimeImpl httpServiceRuntime;
-	final ServiceRegistration<HttpServiceRuntime> hsrRegistration;
+	final ServiceRegistration<?> hsrRegistration;
 	final ProxyServlet proxyServlet;
 
 }
\ No newline at end of file
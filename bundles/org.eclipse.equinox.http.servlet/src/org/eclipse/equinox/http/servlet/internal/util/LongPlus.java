@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.equinox.http.servlet.internal.util;
+
+public class LongPlus {
+
+	public static long from(Object object, long defaultValue) {
+		if (object instanceof Number) {
+			return ((Number)object).longValue();
+		}
+		else if (object instanceof String) {
+			try {
+				return Long.parseLong(((String)object).trim());
+			}
+			catch (NumberFormatException nfe) {
+				// fall through
+			}
+		}
+
+		return defaultValue;
+	}
+
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.equinox.http.servlet.internal.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.eclipse.equinox.http.servlet.runtime.dto.RequestMetricsDTO;
+
+/**
+ * Request counters of a servlet, resource, filter or servlet context. All
+ * updates are lock free so recording never serializes request threads; a
+ * snapshot taken while requests complete may therefore be slightly
+ * inconsistent across counters.
+ */
+public class RequestMetrics {
+
+	/**
+	 * The inclusive upper bounds, in milliseconds, of the latency histogram
+	 * buckets.
+	 */
+	public static final long[] LATENCY_BUCKET_BOUNDS = {
+		1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+	public void begin() {
+		active.incrementAndGet();
+	}
+
+	public void end(
+		long elapsedNanos, int status, long bytesIn, long bytesOut,
+		boolean failed) {
+
+		active.decrementAndGet();
+		requests.incrementAndGet();
+
+		if (failed) {
+			failures.incrementAndGet();
+		}
+
+		totalTime.addAndGet(elapsedNanos);
+
+		long max;
+
+		do {
+			max = maxTime.get();
+		}
+		while ((elapsedNanos > max) && !maxTime.compareAndSet(max, elapsedNanos));
+
+		latencyBuckets.incrementAndGet(bucketOf(elapsedNanos));
+		statusCounts.incrementAndGet(statusClassOf(status));
+
+		if (bytesIn > 0) {
+			this.bytesIn.addAndGet(bytesIn);
+		}
+
+		if (bytesOut > 0) {
+			this.bytesOut.addAndGet(bytesOut);
+		}
+	}
+
+	public void fill(RequestMetricsDTO requestMetricsDTO) {
+		requestMetricsDTO.requests = requests.get();
+		requestMetricsDTO.active = active.get();
+		requestMetricsDTO.failures = failures.get();
+		requestMetricsDTO.totalTime = TimeUnit.NANOSECONDS.toMillis(totalTime.get());
+		requestMetricsDTO.maxTime = TimeUnit.NANOSECONDS.toMillis(maxTime.get());
+		requestMetricsDTO.latencyBucketBounds = LATENCY_BUCKET_BOUNDS.clone();
+		requestMetricsDTO.latencyBuckets = toArray(latencyBuckets);
+		requestMetricsDTO.statusCounts = toArray(statusCounts);
+		requestMetricsDTO.bytesIn = bytesIn.get();
+		requestMetricsDTO.bytesOut = bytesOut.get();
+	}
+
+	static int bucketOf(long elapsedNanos) {
+		long millis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+
+		for (int i = 0; i < LATENCY_BUCKET_BOUNDS.length; i++) {
+			if (millis <= LATENCY_BUCKET_BOUNDS[i]) {
+				return i;
+			}
+		}
+
+		return LATENCY_BUCKET_BOUNDS.length;
+	}
+
+	static int statusClassOf(int status) {
+		if ((status < 100) || (status > 599)) {
+			return 0;
+		}
+
+		return status / 100;
+	}
+
+	private static long[] toArray(AtomicLongArray atomicLongArray) {
+		long[] array = new long[atomicLongArray.length()];
+
+		for (int i = 0; i < array.length; i++) {
+			array[i] = atomicLongArray.get(i);
+		}
+
+		return array;
+	}
+
+	private final AtomicLong active = new AtomicLong();
+	private final AtomicLong bytesIn = new AtomicLong();
+	private final AtomicLong bytesOut = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLongArray latencyBuckets =
+		new AtomicLongArray(LATENCY_BUCKET_BOUNDS.length + 1);
+	private final AtomicLong maxTime = new AtomicLong();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLongArray statusCounts = new AtomicLongArray(6);
+	private final AtomicLong totalTime = new AtomicLong();
+
+}
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.equinox.http.servlet.internal.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.eclipse.equinox.http.servlet.runtime.dto.SlowRequestDTO;
+
+/**
+ * A fixed size ring of the most recent slow requests. Writers claim a slot
+ * with a single atomic increment so concurrent requests never block each
+ * other; when the ring wraps the oldest entries are overwritten.
+ */
+public class SlowRequestLog {
+
+	public SlowRequestLog(int size) {
+		slots = new AtomicReferenceArray<SlowRequestDTO>(Math.max(size, 1));
+	}
+
+	public void add(SlowRequestDTO slowRequestDTO) {
+		long index = sequence.getAndIncrement();
+
+		slots.set((int)(index % slots.length()), slowRequestDTO);
+	}
+
+	/**
+	 * Returns the logged requests, oldest first.
+	 */
+	public SlowRequestDTO[] getSlowRequestDTOs() {
+		long end = sequence.get();
+		long start = Math.max(0, end - slots.length());
+
+		List<SlowRequestDTO> slowRequestDTOs = new ArrayList<SlowRequestDTO>(
+			(int)(end - start));
+
+		for (long i = start; i < end; i++) {
+			SlowRequestDTO slowRequestDTO = slots.get((int)(i % slots.length()));
+
+			// a slot may not be written yet when its writer was preempted
+			if (slowRequestDTO != null) {
+				slowRequestDTOs.add(slowRequestDTO);
+			}
+		}
+
+		return slowRequestDTOs.toArray(new SlowRequestDTO[slowRequestDTOs.size()]);
+	}
+
+	private final AtomicLong sequence = new AtomicLong();
+	private final AtomicReferenceArray<SlowRequestDTO> slots;
+
+}
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.equinox.http.servlet.runtime;
+
+import org.eclipse.equinox.http.servlet.runtime.dto.RuntimeMetricsDTO;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Request metrics of an Http Whiteboard runtime. The runtime registers this
+ * service together with its {@link org.osgi.service.http.runtime.HttpServiceRuntime
+ * HttpServiceRuntime} service, using the same service object and properties.
+ * <p>
+ * Metrics are only recorded when the runtime property
+ * <code>equinox.http.metrics.enabled</code> is <code>true</code>.
+ * </p>
+ * <p>
+ * <b>Note:</b> This class is part of an interim SPI that is still under
+ * development and expected to change significantly before reaching stability.
+ * It is being made available at this early stage to solicit feedback from pioneering
+ * adopters on the understanding that any code that uses this SPI will almost certainly
+ * be broken (repeatedly) as the SPI evolves.
+ * </p>
+ * @since 1.3
+ * @noimplement This interface is not intended to be implemented by clients.
+ */
+@ProviderType
+public interface HttpServiceRuntimeMetrics {
+
+	/**
+	 * Returns a snapshot of the metrics recorded since the runtime was started.
+	 *
+	 * @return the metrics snapshot; never <code>null</code>
+	 */
+	public RuntimeMetricsDTO getRuntimeMetricsDTO();
+
+}
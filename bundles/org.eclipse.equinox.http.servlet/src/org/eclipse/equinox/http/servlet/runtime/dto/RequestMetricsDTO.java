@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.equinox.http.servlet.runtime.dto;
+
+import org.osgi.dto.DTO;
+
+/**
+ * Request metrics of a servlet, resource, filter or servlet context.
+ * <p>
+ * Latencies are in milliseconds. The latency of a filter includes the time
+ * spent in the remainder of the filter chain.
+ * </p>
+ * @since 1.3
+ * @NotThreadSafe
+ */
+public class RequestMetricsDTO extends DTO {
+
+	/**
+	 * The name of the servlet, resource, filter or servlet context.
+	 */
+	public String name;
+
+	/**
+	 * The service id of the servlet, resource, filter or servlet context
+	 * service.
+	 */
+	public long serviceId;
+
+	/**
+	 * The number of completed requests.
+	 */
+	public long requests;
+
+	/**
+	 * The number of requests currently being processed.
+	 */
+	public long active;
+
+	/**
+	 * The number of requests which ended with an exception.
+	 */
+	public long failures;
+
+	/**
+	 * The sum of the latencies of all completed requests.
+	 */
+	public long totalTime;
+
+	/**
+	 * The highest latency of a completed request.
+	 */
+	public long maxTime;
+
+	/**
+	 * The inclusive upper bounds of the latency histogram buckets. The last
+	 * bucket of {@link #latencyBuckets} has no upper bound.
+	 */
+	public long[] latencyBucketBounds;
+
+	/**
+	 * The number of requests per latency bucket; one more element than
+	 * {@link #latencyBucketBounds}.
+	 */
+	public long[] latencyBuckets;
+
+	/**
+	 * The number of requests per status code class. Index 1 to 5 count the
+	 * 1xx to 5xx status codes, index 0 counts requests without a known status,
+	 * which is always the case for filters.
+	 */
+	public long[] statusCounts;
+
+	/**
+	 * The number of request body bytes declared by the clients.
+	 */
+	public long bytesIn;
+
+	/**
+	 * The number of response body bytes written.
+	 */
+	public long bytesOut;
+
+}
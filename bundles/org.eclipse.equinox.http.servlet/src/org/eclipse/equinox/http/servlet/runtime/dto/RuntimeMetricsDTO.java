@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.equinox.http.servlet.runtime.dto;
+
+import org.osgi.dto.DTO;
+
+/**
+ * A snapshot of the request metrics of an Http Whiteboard runtime.
+ *
+ * @since 1.3
+ * @NotThreadSafe
+ */
+public class RuntimeMetricsDTO extends DTO {
+
+	/**
+	 * Whether the runtime is recording request metrics.
+	 */
+	public boolean enabled;
+
+	/**
+	 * The metrics of each servlet context of the runtime.
+	 */
+	public ServletContextMetricsDTO[] servletContextMetricsDTOs;
+
+	/**
+	 * The most recent slow requests, oldest first.
+	 */
+	public SlowRequestDTO[] slowRequestDTOs;
+
+	/**
+	 * The number of responses compressed by the runtime.
+	 */
+	public long compressedResponses;
+
+	/**
+	 * The number of requests answered with 304 by the runtime.
+	 */
+	public long notModifiedResponses;
+
+	/**
+	 * The number of response bytes saved by compression and 304 responses.
+	 */
+	public long bytesSaved;
+
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.equinox.http.servlet.runtime.dto;
+
+/**
+ * Request metrics of a servlet context and of the servlets, resources and
+ * filters registered with it.
+ *
+ * @since 1.3
+ * @NotThreadSafe
+ */
+public class ServletContextMetricsDTO extends RequestMetricsDTO {
+
+	/**
+	 * The context path of the servlet context.
+	 */
+	public String contextPath;
+
+	/**
+	 * The metrics of the servlets of the servlet context.
+	 */
+	public RequestMetricsDTO[] servletMetricsDTOs;
+
+	/**
+	 * The metrics of the resources of the servlet context.
+	 */
+	public RequestMetricsDTO[] resourceMetricsDTOs;
+
+	/**
+	 * The metrics of the filters of the servlet context.
+	 */
+	public RequestMetricsDTO[] filterMetricsDTOs;
+
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.equinox.http.servlet.runtime.dto;
+
+import org.osgi.dto.DTO;
+
+/**
+ * A request which took longer than the slow request threshold of the runtime.
+ *
+ * @since 1.3
+ * @NotThreadSafe
+ */
+public class SlowRequestDTO extends DTO {
+
+	/**
+	 * The time the request completed, in milliseconds since the epoch.
+	 */
+	public long timestamp;
+
+	/**
+	 * The HTTP method of the request.
+	 */
+	public String method;
+
+	/**
+	 * The request URI, including the query string.
+	 */
+	public String path;
+
+	/**
+	 * The status code of the response, or 0 if it is not known.
+	 */
+	public int status;
+
+	/**
+	 * The latency of the request in milliseconds.
+	 */
+	public long time;
+
+	/**
+	 * The name of the servlet or resource which handled the request.
+	 */
+	public String name;
+
+	/**
+	 * The service id of the servlet context which handled the request.
+	 */
+	public long servletContextId;
+
+}
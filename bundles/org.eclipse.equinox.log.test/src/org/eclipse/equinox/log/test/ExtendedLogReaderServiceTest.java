@@ -1,5 +1,6 @@
 package org.eclipse.equinox.log.test;
 
+import java.util.Enumeration;
 import junit.framework.TestCase;
 import org.eclipse.equinox.log.*;
 import org.osgi.framework.Bundle;
@@ -145,4 +146,99 @@ public class ExtendedLogReaderServiceTest extends TestCase {
 		assertTrue(listener.getEntryX().getContext() == logReference);
 		assertTrue(listener.getEntryX().getSequenceNumber() > sequenceNumberBefore);
 	}
+
+	public void testManyListenersInOrder() throws Exception {
+		final int listenerCount = 20;
+		final int entryCount = 500;
+		final Bundle logImpl = Activator.getBundle("org.eclipse.equinox.log");
+		final int[] received = new int[listenerCount];
+		final boolean[] ordered = new boolean[] {true};
+		LogListener[] listeners = new LogListener[listenerCount];
+		for (int i = 0; i < listenerCount; i++) {
+			final int index = i;
+			listeners[i] = new LogListener() {
+				public void logged(LogEntry entry) {
+					if (entry.getBundle() == logImpl)
+						return; // discard logs from the logImpl
+					synchronized (received) {
+						if (!entry.getMessage().equals(String.valueOf(received[index])))
+							ordered[0] = false;
+						received[index]++;
+						received.notifyAll();
+					}
+				}
+			};
+			reader.addLogListener(listeners[i]);
+		}
+		try {
+			for (int i = 0; i < entryCount; i++)
+				log.log(LogService.LOG_INFO, String.valueOf(i));
+			long end = System.currentTimeMillis() + 10000;
+			synchronized (received) {
+				for (int i = 0; i < listenerCount; i++) {
+					while (received[i] < entryCount && System.currentTimeMillis() < end)
+						received.wait(100);
+					assertEquals(entryCount, received[i]);
+				}
+				assertTrue(ordered[0]);
+			}
+		} finally {
+			for (int i = 0; i < listenerCount; i++)
+				reader.removeLogListener(listeners[i]);
+		}
+	}
+
+	/*
+	 * Restarts the log bundle with errors and warnings retained.
+	 */
+	private void enableHistory() throws Exception {
+		tearDown();
+		System.setProperty("equinox.log.history.max.error", "100");
+		System.setProperty("equinox.log.history.max.warning", "100");
+		try {
+			setUp();
+		} finally {
+			System.getProperties().remove("equinox.log.history.max.error");
+			System.getProperties().remove("equinox.log.history.max.warning");
+		}
+	}
+
+	public void testNoHistoryByDefault() throws Exception {
+		log.log(LogService.LOG_ERROR, "error");
+		assertFalse(reader.getLog().hasMoreElements());
+	}
+
+	public void testGetLog() throws Exception {
+		enableHistory();
+		log.log(LogService.LOG_WARNING, "warning");
+		log.log(LogService.LOG_ERROR, "error");
+		// info entries are not retained
+		log.log(LogService.LOG_INFO, "info");
+
+		Enumeration entries = reader.getLog();
+		assertTrue(entries.hasMoreElements());
+		assertEquals("error", ((LogEntry) entries.nextElement()).getMessage());
+		assertTrue(entries.hasMoreElements());
+		assertEquals("warning", ((LogEntry) entries.nextElement()).getMessage());
+		while (entries.hasMoreElements())
+			assertFalse("info".equals(((LogEntry) entries.nextElement()).getMessage()));
+	}
+
+	public void testGetFilteredLog() throws Exception {
+		enableHistory();
+		log.getLogger("test").log(LogService.LOG_ERROR, "test error");
+		log.getLogger("other").log(LogService.LOG_ERROR, "other error");
+		log.getLogger("test").log(LogService.LOG_WARNING, "test warning");
+
+		Enumeration entries = reader.getLog(new LogFilter() {
+			public boolean isLoggable(Bundle b, String loggerName, int logLevel) {
+				return "test".equals(loggerName) && logLevel == LogService.LOG_ERROR;
+			}
+		});
+		assertTrue(entries.hasMoreElements());
+		ExtendedLogEntry entry = (ExtendedLogEntry) entries.nextElement();
+		assertEquals("test error", entry.getMessage());
+		assertEquals("test", entry.getLoggerName());
+		assertFalse(entries.hasMoreElements());
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2009 IBM Corporation and others All rights reserved. This
+ * Copyright (c) 2007, 2016 IBM Corporation and others All rights reserved. This
  * program and the accompanying materials are made available under the terms of
  * the Eclipse Public License v1.0 which accompanies this distribution, and is
  * available at http://www.eclipse.org/legal/epl-v10.html
@@ -13,6 +13,7 @@ import junit.framework.TestCase;
 import org.eclipse.equinox.log.ExtendedLogReaderService;
 import org.eclipse.equinox.log.ExtendedLogService;
 import org.eclipse.equinox.log.LogFilter;
+import org.eclipse.equinox.log.Logger;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.log.LogService;
@@ -192,4 +193,27 @@ public class ExtendedLogServiceTest extends TestCase {
 		if (log.getLogger("test").isLoggable(LogService.LOG_INFO))
 			fail();
 	}
+
+	public void testLoggerIsLoggableAfterFilterChange() throws Exception {
+		Logger logger = log.getLogger("test");
+		if (!logger.isLoggable(LogService.LOG_INFO))
+			fail();
+
+		reader.addLogListener(listener, new LogFilter() {
+
+			public boolean isLoggable(Bundle b, String loggerName, int logLevel) {
+				return logLevel != LogService.LOG_INFO;
+			}
+		});
+		if (logger.isLoggable(LogService.LOG_INFO) || !logger.isLoggable(LogService.LOG_DEBUG))
+			fail();
+
+		reader.removeLogListener(listener);
+		if (logger.isLoggable(LogService.LOG_INFO) || logger.isLoggable(LogService.LOG_DEBUG))
+			fail();
+
+		reader.addLogListener(listener);
+		if (!logger.isLoggable(LogService.LOG_INFO) || !logger.isLoggable(LogService.LOG_DEBUG))
+			fail();
+	}
 }
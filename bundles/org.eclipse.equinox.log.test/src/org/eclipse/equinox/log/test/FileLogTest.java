@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others All rights reserved. This
+ * program and the accompanying materials are made available under the terms of
+ * the Eclipse Public License v1.0 which accompanies this distribution, and is
+ * available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors: IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.log.test;
+
+import java.io.*;
+import java.util.Hashtable;
+import junit.framework.TestCase;
+import org.eclipse.equinox.log.ExtendedLogService;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.log.LogService;
+
+public class FileLogTest extends TestCase {
+
+	private static final String PID = "org.eclipse.equinox.log.file";
+
+	private ExtendedLogService log;
+	private ServiceReference logReference;
+	private ConfigurationAdmin cm;
+	private ServiceReference cmReference;
+	private Configuration config;
+	private File dir;
+
+	public FileLogTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		Activator.getBundle("org.eclipse.equinox.log").start();
+		Activator.getBundle("org.eclipse.equinox.cm").start();
+		logReference = Activator.getBundleContext().getServiceReference(ExtendedLogService.class.getName());
+		cmReference = Activator.getBundleContext().getServiceReference(ConfigurationAdmin.class.getName());
+		log = (ExtendedLogService) Activator.getBundleContext().getService(logReference);
+		cm = (ConfigurationAdmin) Activator.getBundleContext().getService(cmReference);
+		config = cm.getConfiguration(PID, null);
+
+		dir = new File(System.getProperty("java.io.tmpdir"), "FileLogTest" + System.currentTimeMillis());
+		dir.mkdirs();
+	}
+
+	protected void tearDown() throws Exception {
+		config.delete();
+		Activator.getBundleContext().ungetService(cmReference);
+		Activator.getBundleContext().ungetService(logReference);
+		Activator.getBundle("org.eclipse.equinox.cm").stop();
+		Activator.getBundle("org.eclipse.equinox.log").stop();
+
+		File[] files = dir.listFiles();
+		for (int i = 0; i < files.length; i++)
+			files[i].delete();
+		dir.delete();
+	}
+
+	public void testWriteFile() throws Exception {
+		File file = new File(dir, "test.log");
+		Hashtable properties = new Hashtable();
+		properties.put("file", file.getPath());
+		properties.put("level", new Integer(LogService.LOG_WARNING));
+		config.update(properties);
+
+		// the writer is created asynchronously by the configuration admin
+		long end = System.currentTimeMillis() + 5000;
+		while (readFile(file).indexOf("second warning") < 0 && System.currentTimeMillis() < end) {
+			log.log(LogService.LOG_INFO, "info");
+			log.log(LogService.LOG_WARNING, "second warning");
+			Thread.sleep(100);
+		}
+		String contents = readFile(file);
+		assertTrue(contents, contents.indexOf("second warning") >= 0);
+		assertTrue(contents, contents.indexOf("- info") < 0);
+	}
+
+	public void testRotateFile() throws Exception {
+		File file = new File(dir, "test.log");
+		Hashtable properties = new Hashtable();
+		properties.put("file", file.getPath());
+		properties.put("maxSize", "1");
+		properties.put("maxFiles", "2");
+		config.update(properties);
+
+		File first = new File(dir, "test.log.1");
+		File second = new File(dir, "test.log.2");
+		long end = System.currentTimeMillis() + 5000;
+		while (!second.exists() && System.currentTimeMillis() < end) {
+			for (int i = 0; i < 20; i++)
+				log.log(LogService.LOG_INFO, "an entry long enough to fill a kilobyte soon");
+			Thread.sleep(100);
+		}
+		assertTrue(first.exists());
+		assertTrue(second.exists());
+		assertFalse(new File(dir, "test.log.3").exists());
+	}
+
+	private static String readFile(File file) throws IOException {
+		if (!file.exists())
+			return "";
+		StringBuffer result = new StringBuffer();
+		Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+		try {
+			char[] buffer = new char[1024];
+			int read;
+			while ((read = reader.read(buffer)) != -1)
+				result.append(buffer, 0, read);
+		} finally {
+			reader.close();
+		}
+		return result.toString();
+	}
+}
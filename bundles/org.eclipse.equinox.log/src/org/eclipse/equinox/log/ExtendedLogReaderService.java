@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006-2009 IBM Corporation and others
+ * Copyright (c) 2006, 2016 IBM Corporation and others
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
  * accompanies this distribution, and is available at
@@ -7,6 +7,7 @@
  ******************************************************************************/
 package org.eclipse.equinox.log;
 
+import java.util.Enumeration;
 import org.osgi.service.log.*;
 
 /**
@@ -36,4 +37,20 @@ public interface ExtendedLogReaderService extends LogReaderService {
 	 * @see LogReaderService#addLogListener(LogListener)
 	 */
 	public void addLogListener(LogListener listener, LogFilter filter);
+
+	/**
+	 * Returns an <code>Enumeration</code> of the retained <code>LogEntry</code> objects
+	 * that match the filter.
+	 * 
+	 * <p>
+	 * The enumeration is a snapshot and contains the most recent entries first, like the
+	 * enumeration returned by {@link LogReaderService#getLog()}. Which entries are retained is
+	 * up to the implementation.
+	 * 
+	 * @param filter A <code>LogFilter</code> object used to select the entries.
+	 * @return An <code>Enumeration</code> of the matching <code>LogEntry</code> objects.
+	 * @see LogReaderService#getLog()
+	 * @since 1.1
+	 */
+	public Enumeration getLog(LogFilter filter);
 }
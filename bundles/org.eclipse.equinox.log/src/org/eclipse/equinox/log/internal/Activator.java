@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2011 Cognos Incorporated, IBM Corporation and others
+ * Copyright (c) 2006, 2016 Cognos Incorporated, IBM Corporation and others
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
  * accompanies this distribution, and is available at
@@ -16,12 +16,14 @@ import org.osgi.service.log.LogService;
 public class Activator implements BundleActivator, BundleListener, FrameworkListener, ServiceListener {
 
 	private static final String EVENT_ADMIN_CLASS = "org.osgi.service.event.EventAdmin"; //$NON-NLS-1$
+	private static final String MANAGED_SERVICE_CLASS = "org.osgi.service.cm.ManagedService"; //$NON-NLS-1$
 	private static final String[] LOGSERVICE_CLASSES = {LogService.class.getName(), ExtendedLogService.class.getName()};
 	private static final String[] LOGREADERSERVICE_CLASSES = {LogReaderService.class.getName(), ExtendedLogReaderService.class.getName()};
 
 	private ServiceRegistration logReaderServiceRegistration;
 	private ServiceRegistration logServiceRegistration;
 	private EventAdminAdapter eventAdminAdapter;
+	private FileLogConfigurator fileLogConfigurator;
 	private volatile ExtendedLogReaderServiceFactory logReaderServiceFactory;
 	private ExtendedLogServiceFactory logServiceFactory;
 
@@ -33,15 +35,19 @@ public class Activator implements BundleActivator, BundleListener, FrameworkList
 				if (provider != null && provider.getBundleId() == 0)
 					return;
 			}
-		logReaderServiceFactory = new ExtendedLogReaderServiceFactory();
+		logReaderServiceFactory = new ExtendedLogReaderServiceFactory(LogHistory.create(context));
 		context.addBundleListener(this);
 		context.addServiceListener(this);
 		context.addFrameworkListener(this);
 
-		if (checkEventAdmin()) {
+		if (checkClass(EVENT_ADMIN_CLASS)) {
 			eventAdminAdapter = new EventAdminAdapter(context, logReaderServiceFactory);
 			eventAdminAdapter.start();
 		}
+		if (checkClass(MANAGED_SERVICE_CLASS)) {
+			fileLogConfigurator = new FileLogConfigurator(context, logReaderServiceFactory);
+			fileLogConfigurator.start();
+		}
 		logServiceFactory = new ExtendedLogServiceFactory(logReaderServiceFactory);
 		context.addBundleListener(logServiceFactory);
 		logReaderServiceRegistration = context.registerService(LOGREADERSERVICE_CLASSES, logReaderServiceFactory, null);
@@ -61,15 +67,19 @@ public class Activator implements BundleActivator, BundleListener, FrameworkList
 			eventAdminAdapter.stop();
 			eventAdminAdapter = null;
 		}
+		if (fileLogConfigurator != null) {
+			fileLogConfigurator.stop();
+			fileLogConfigurator = null;
+		}
 		context.removeFrameworkListener(this);
 		context.removeServiceListener(this);
 		context.removeBundleListener(this);
 	}
 
-	private static boolean checkEventAdmin() {
-		// cannot support scheduling without the event admin package
+	private static boolean checkClass(String className) {
+		// cannot support event admin or configuration admin without their packages
 		try {
-			Class.forName(EVENT_ADMIN_CLASS);
+			Class.forName(className);
 			return true;
 		} catch (ClassNotFoundException e) {
 			return false;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2009 Cognos Incorporated, IBM Corporation and others
+ * Copyright (c) 2006, 2016 Cognos Incorporated, IBM Corporation and others
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
  * accompanies this distribution, and is available at
@@ -18,30 +18,6 @@ import org.osgi.service.log.LogListener;
 
 public class ExtendedLogReaderServiceFactory implements ServiceFactory {
 
-	static final class LogTask implements Runnable {
-		private final LogEntry logEntry;
-		private final LogListener listener;
-
-		LogTask(LogEntry logEntry, LogListener listener) {
-			this.logEntry = logEntry;
-			this.listener = listener;
-		}
-
-		public void run() {
-			safeLogged(listener, logEntry);
-		}
-	}
-
-	private static final Enumeration EMPTY_ENUMERATION = new Enumeration() {
-		public boolean hasMoreElements() {
-			return false;
-		}
-
-		public Object nextElement() {
-			return null;
-		}
-	};
-
 	static final LogFilter NULL_LOGGER_FILTER = new LogFilter() {
 		public boolean isLoggable(Bundle b, String loggerName, int logLevel) {
 			return true;
@@ -54,8 +30,16 @@ public class ExtendedLogReaderServiceFactory implements ServiceFactory {
 
 	private Map listeners = new HashMap();
 	private LogFilter[] filters = null;
+	/** Incremented whenever the filters change, see {@link LoggerImpl#isLoggable(int)} */
+	private volatile int filtersGeneration = 0;
 
 	private BasicReadWriteLock listenersLock = new BasicReadWriteLock();
+	private final LogDispatcher dispatcher = new LogDispatcher("Equinox Log Dispatcher", LogDispatcher.DEFAULT_CAPACITY, LogDispatcher.DEFAULT_MAX_THREADS); //$NON-NLS-1$
+	private final LogHistory history;
+
+	public ExtendedLogReaderServiceFactory(LogHistory history) {
+		this.history = history;
+	}
 
 	static boolean safeIsLoggable(LogFilter filter, Bundle bundle, String name, int level) {
 		try {
@@ -73,7 +57,7 @@ public class ExtendedLogReaderServiceFactory implements ServiceFactory {
 		return false;
 	}
 
-	private static synchronized PrintStream getErrorStream() {
+	static synchronized PrintStream getErrorStream() {
 		if (errorStream == null)
 			return System.err;
 
@@ -99,6 +83,10 @@ public class ExtendedLogReaderServiceFactory implements ServiceFactory {
 		}
 	}
 
+	static void reportMissed(LogListener listener, long missed) {
+		getErrorStream().println("LogListener " + listener + " could not keep up and missed " + missed + " log entries."); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
 	public Object getService(Bundle bundle, ServiceRegistration registration) {
 		return new ExtendedLogReaderServiceImpl(this, bundle);
 	}
@@ -108,7 +96,14 @@ public class ExtendedLogReaderServiceFactory implements ServiceFactory {
 		readerService.shutdown();
 	}
 
+	int getFiltersGeneration() {
+		return filtersGeneration;
+	}
+
 	boolean isLoggable(Bundle bundle, String name, int level) {
+		if (history.retains(level))
+			return true;
+
 		listenersLock.readLock();
 		try {
 			if (filters == null)
@@ -130,23 +125,21 @@ public class ExtendedLogReaderServiceFactory implements ServiceFactory {
 	}
 
 	void log(Bundle bundle, String name, Object context, int level, String message, Throwable exception) {
-		LogEntry logEntry = new ExtendedLogEntryImpl(bundle, name, context, level, message, exception);
+		ExtendedLogEntryImpl logEntry = new ExtendedLogEntryImpl(bundle, name, context, level, message, exception);
+		history.add(logEntry);
 		listenersLock.readLock();
 		try {
+			// the filters of asynchronous listeners are applied by the dispatcher
+			dispatcher.publish(logEntry);
 			for (Iterator it = listeners.entrySet().iterator(); it.hasNext();) {
 				Entry entry = (Entry) it.next();
 				Object[] listenerObjects = (Object[]) entry.getValue();
+				if (listenerObjects[1] != null)
+					continue;
 				LogFilter filter = (LogFilter) listenerObjects[0];
 				if (safeIsLoggable(filter, bundle, name, level)) {
-					LogListener listener = (LogListener) entry.getKey();
-					SerializedTaskQueue taskQueue = (SerializedTaskQueue) listenerObjects[1];
-					if (taskQueue != null) {
-						taskQueue.put(new LogTask(logEntry, listener));
-					} else {
-						// log synchronously
-						safeLogged(listener, logEntry);
-
-					}
+					// log synchronously
+					safeLogged((LogListener) entry.getKey(), logEntry);
 				}
 			}
 		} finally {
@@ -159,12 +152,14 @@ public class ExtendedLogReaderServiceFactory implements ServiceFactory {
 		try {
 			Object[] listenerObjects = (Object[]) listeners.get(listener);
 			if (listenerObjects == null) {
-				// Only create a task queue for non-SynchronousLogListeners
-				SerializedTaskQueue taskQueue = (listener instanceof SynchronousLogListener) ? null : new SerializedTaskQueue(listener.toString());
-				listenerObjects = new Object[] {filter, taskQueue};
+				// Only dispatch asynchronously to non-SynchronousLogListeners
+				LogDispatcher.Cursor cursor = (listener instanceof SynchronousLogListener) ? null : dispatcher.addListener(listener, filter);
+				listenerObjects = new Object[] {filter, cursor};
 			} else if (filter != listenerObjects[0]) {
 				// update the filter
 				listenerObjects[0] = filter;
+				if (listenerObjects[1] != null)
+					((LogDispatcher.Cursor) listenerObjects[1]).filter = filter;
 			}
 			listeners.put(listener, listenerObjects);
 			recalculateFilters();
@@ -174,6 +169,8 @@ public class ExtendedLogReaderServiceFactory implements ServiceFactory {
 	}
 
 	private void recalculateFilters() {
+		// the filters are replaced below, so cached decisions must be recomputed
+		filtersGeneration++;
 		List filtersList = new ArrayList();
 		for (Iterator it = listeners.values().iterator(); it.hasNext();) {
 			Object[] listenerObjects = (Object[]) it.next();
@@ -194,14 +191,16 @@ public class ExtendedLogReaderServiceFactory implements ServiceFactory {
 	void removeLogListener(LogListener listener) {
 		listenersLock.writeLock();
 		try {
-			listeners.remove(listener);
+			Object[] listenerObjects = (Object[]) listeners.remove(listener);
+			if (listenerObjects != null && listenerObjects[1] != null)
+				dispatcher.removeListener((LogDispatcher.Cursor) listenerObjects[1]);
 			recalculateFilters();
 		} finally {
 			listenersLock.writeUnlock();
 		}
 	}
 
-	Enumeration getLog() {
-		return EMPTY_ENUMERATION;
+	Enumeration getLog(LogFilter filter) {
+		return history.getLog(filter);
 	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2009 Cognos Incorporated, IBM Corporation and others
+ * Copyright (c) 2006, 2016 Cognos Incorporated, IBM Corporation and others
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
  * accompanies this distribution, and is available at
@@ -42,7 +42,15 @@ public class ExtendedLogReaderServiceImpl implements ExtendedLogReaderService {
 
 	public Enumeration getLog() {
 		checkShutdown();
-		return factory.getLog();
+		return factory.getLog(null);
+	}
+
+	public Enumeration getLog(LogFilter filter) {
+		checkShutdown();
+		if (filter == null)
+			throw new IllegalArgumentException("LogFilter must not be null"); //$NON-NLS-1$
+
+		return factory.getLog(filter);
 	}
 
 	public synchronized void removeLogListener(LogListener listener) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2009 Cognos Incorporated, IBM Corporation and others
+ * Copyright (c) 2006, 2016 Cognos Incorporated, IBM Corporation and others
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
  * accompanies this distribution, and is available at
@@ -61,6 +61,10 @@ public class ExtendedLogServiceFactory implements ServiceFactory, BundleListener
 			logServices.remove(bundle);
 	}
 
+	int getFiltersGeneration() {
+		return logReaderServiceFactory.getFiltersGeneration();
+	}
+
 	protected boolean isLoggable(Bundle bundle, String name, int level) {
 		return logReaderServiceFactory.isLoggable(bundle, name, level);
 	}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.equinox.log.internal;
+
+import java.io.File;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import org.eclipse.equinox.log.LogFilter;
+import org.osgi.framework.*;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.cm.ManagedService;
+import org.osgi.service.log.LogService;
+
+/**
+ * FileLogConfigurator writes the log to a file as configured through Configuration Admin.
+ * The configuration with the pid {@value #PID} supports the following properties:
+ * <ul>
+ * <li><code>file</code> - the path of the log file, no file is written if it is not set</li>
+ * <li><code>level</code> - the highest level written, <code>LOG_INFO</code> by default</li>
+ * <li><code>maxSize</code> - the size in kilobytes at which the file is rotated, 0 for no limit</li>
+ * <li><code>maxFiles</code> - the number of rotated files kept</li>
+ * <li><code>rotationInterval</code> - the minutes after which the file is rotated, 0 for no limit</li>
+ * <li><code>compress</code> - whether rotated files are compressed with gzip</li>
+ * </ul>
+ */
+public class FileLogConfigurator implements ManagedService {
+
+	static final String PID = "org.eclipse.equinox.log.file"; //$NON-NLS-1$
+	static final String PROP_FILE = "file"; //$NON-NLS-1$
+	static final String PROP_LEVEL = "level"; //$NON-NLS-1$
+	static final String PROP_MAX_SIZE = "maxSize"; //$NON-NLS-1$
+	static final String PROP_MAX_FILES = "maxFiles"; //$NON-NLS-1$
+	static final String PROP_ROTATION_INTERVAL = "rotationInterval"; //$NON-NLS-1$
+	static final String PROP_COMPRESS = "compress"; //$NON-NLS-1$
+
+	private static final int DEFAULT_MAX_SIZE = 1024;
+	private static final int DEFAULT_MAX_FILES = 10;
+
+	private final BundleContext context;
+	private final ExtendedLogReaderServiceFactory logReaderServiceFactory;
+	private ServiceRegistration registration;
+	/** @GuardedBy this */
+	private FileLogWriter writer;
+	/** @GuardedBy this */
+	private boolean stopped = false;
+
+	public FileLogConfigurator(BundleContext context, ExtendedLogReaderServiceFactory logReaderServiceFactory) {
+		this.context = context;
+		this.logReaderServiceFactory = logReaderServiceFactory;
+	}
+
+	public void start() {
+		Hashtable properties = new Hashtable();
+		properties.put(Constants.SERVICE_PID, PID);
+		registration = context.registerService(ManagedService.class.getName(), this, properties);
+	}
+
+	public void stop() {
+		registration.unregister();
+		synchronized (this) {
+			stopped = true;
+			setWriter(null, 0);
+		}
+	}
+
+	public synchronized void updated(Dictionary properties) throws ConfigurationException {
+		if (stopped)
+			return;
+		if (properties == null || properties.get(PROP_FILE) == null) {
+			setWriter(null, 0);
+			return;
+		}
+		File file = new File(properties.get(PROP_FILE).toString());
+		int level = getInt(properties, PROP_LEVEL, LogService.LOG_INFO);
+		long maxSize = getInt(properties, PROP_MAX_SIZE, DEFAULT_MAX_SIZE) * 1024L;
+		int maxFiles = getInt(properties, PROP_MAX_FILES, DEFAULT_MAX_FILES);
+		long rotationInterval = getInt(properties, PROP_ROTATION_INTERVAL, 0) * 60000L;
+		Object compress = properties.get(PROP_COMPRESS);
+		setWriter(new FileLogWriter(file, maxSize, maxFiles, rotationInterval, compress != null && Boolean.valueOf(compress.toString()).booleanValue()), level);
+	}
+
+	private static int getInt(Dictionary properties, String key, int defaultValue) throws ConfigurationException {
+		Object value = properties.get(key);
+		if (value == null)
+			return defaultValue;
+		try {
+			int result = Integer.parseInt(value.toString().trim());
+			if (result < 0)
+				throw new ConfigurationException(key, "must not be negative: " + value); //$NON-NLS-1$
+			return result;
+		} catch (NumberFormatException e) {
+			throw new ConfigurationException(key, "not a number: " + value); //$NON-NLS-1$
+		}
+	}
+
+	private void setWriter(FileLogWriter newWriter, final int level) {
+		if (writer != null) {
+			logReaderServiceFactory.removeLogListener(writer);
+			writer.close();
+		}
+		writer = newWriter;
+		if (writer != null) {
+			writer.start();
+			logReaderServiceFactory.addLogListener(writer, new LogFilter() {
+				public boolean isLoggable(Bundle bundle, String loggerName, int logLevel) {
+					return logLevel <= level;
+				}
+			});
+		}
+	}
+}
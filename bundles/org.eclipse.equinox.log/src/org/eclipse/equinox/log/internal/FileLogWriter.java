@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.equinox.log.internal;
+
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+import org.eclipse.equinox.log.ExtendedLogEntry;
+import org.osgi.framework.Bundle;
+import org.osgi.service.log.*;
+
+/**
+ * FileLogWriter is a log listener which writes formatted entries to a file.
+ * <p>
+ * Entries are formatted into a pending buffer by the thread delivering them. A background
+ * thread swaps the pending buffer with the buffer it last wrote and writes all entries that
+ * have accumulated in one go, so the two buffers are reused and slow disks only delay the
+ * writer thread. If the pending buffer is full the delivering thread waits for the writer.
+ * <p>
+ * The file is rotated when it would grow beyond the maximum size or when the rotation
+ * interval has passed. The current file is renamed to <code>file.1</code>, the older segments
+ * are shifted up by one and the oldest is deleted. Rotated segments may be compressed, in
+ * which case they end with <code>.gz</code>.
+ */
+public class FileLogWriter implements LogListener, Runnable {
+
+	private static final int INITIAL_BUFFER_SIZE = 8192;
+	private static final int MAX_PENDING = 1024 * 1024;
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator"); //$NON-NLS-1$
+	private static final String GZIP_SUFFIX = ".gz"; //$NON-NLS-1$
+
+	private final File file;
+	private final long maxSize;
+	private final int maxFiles;
+	private final long rotationInterval;
+	private final boolean compress;
+
+	/** @GuardedBy this */
+	private final StringBuffer line = new StringBuffer(256);
+	/** @GuardedBy this */
+	private char[] chars = new char[256];
+	/** @GuardedBy this */
+	private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS"); //$NON-NLS-1$
+	/** @GuardedBy this */
+	private final Date date = new Date();
+	/** @GuardedBy this */
+	private byte[] pending = new byte[INITIAL_BUFFER_SIZE];
+	/** @GuardedBy this */
+	private int pendingLength = 0;
+	/** @GuardedBy this */
+	private boolean closed = false;
+	private Thread writerThread;
+
+	// only used by the writer thread
+	private byte[] writing = new byte[INITIAL_BUFFER_SIZE];
+	private final byte[] copyBuffer = new byte[INITIAL_BUFFER_SIZE];
+	private OutputStream out;
+	private long size;
+	private long nextRotation;
+	private boolean failed = false;
+
+	/**
+	 * @param file the file to write to
+	 * @param maxSize the size in bytes at which the file is rotated, or 0 for no limit
+	 * @param maxFiles the number of rotated segments to keep
+	 * @param rotationInterval the time in milliseconds after which the file is rotated, or 0 for no limit
+	 * @param compress whether rotated segments are compressed
+	 */
+	public FileLogWriter(File file, long maxSize, int maxFiles, long rotationInterval, boolean compress) {
+		this.file = file;
+		this.maxSize = maxSize;
+		this.maxFiles = maxFiles;
+		this.rotationInterval = rotationInterval;
+		this.compress = compress;
+	}
+
+	public synchronized void start() {
+		writerThread = new Thread(this, "Equinox Log File Writer"); //$NON-NLS-1$
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Writes the pending entries, closes the file and stops the writer thread. Entries
+	 * delivered afterwards are discarded.
+	 */
+	public void close() {
+		Thread thread;
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+			thread = writerThread;
+		}
+		if (thread != null && thread != Thread.currentThread()) {
+			try {
+				thread.join(5000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public void logged(LogEntry entry) {
+		synchronized (this) {
+			while (pendingLength >= MAX_PENDING && !closed) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			if (closed)
+				return;
+			line.setLength(0);
+			format(entry);
+			boolean wasEmpty = pendingLength == 0;
+			encode();
+			if (wasEmpty)
+				notifyAll();
+		}
+	}
+
+	private void format(LogEntry entry) {
+		date.setTime(entry.getTime());
+		line.append(dateFormat.format(date)).append(' ');
+		line.append(getLevelName(entry.getLevel())).append(' ');
+		ExtendedLogEntry extendedEntry = entry instanceof ExtendedLogEntry ? (ExtendedLogEntry) entry : null;
+		if (extendedEntry != null)
+			line.append('[').append(extendedEntry.getThreadName()).append("] "); //$NON-NLS-1$
+		Bundle bundle = entry.getBundle();
+		if (bundle != null)
+			line.append(bundle.getSymbolicName() != null ? bundle.getSymbolicName() : String.valueOf(bundle.getBundleId())).append(' ');
+		if (extendedEntry != null && extendedEntry.getLoggerName() != null)
+			line.append(extendedEntry.getLoggerName()).append(' ');
+		line.append("- ").append(entry.getMessage()).append(LINE_SEPARATOR); //$NON-NLS-1$
+		Throwable exception = entry.getException();
+		if (exception != null) {
+			StringWriter stackTrace = new StringWriter();
+			exception.printStackTrace(new PrintWriter(stackTrace));
+			line.append(stackTrace.getBuffer());
+		}
+	}
+
+	private static String getLevelName(int level) {
+		switch (level) {
+			case LogService.LOG_ERROR :
+				return "ERROR  "; //$NON-NLS-1$
+			case LogService.LOG_WARNING :
+				return "WARNING"; //$NON-NLS-1$
+			case LogService.LOG_INFO :
+				return "INFO   "; //$NON-NLS-1$
+			case LogService.LOG_DEBUG :
+				return "DEBUG  "; //$NON-NLS-1$
+			default :
+				return "LEVEL" + level; //$NON-NLS-1$
+		}
+	}
+
+	/*
+	 * Encodes the formatted line as UTF-8 into the pending buffer.
+	 */
+	private void encode() {
+		int length = line.length();
+		if (chars.length < length)
+			chars = new char[Math.max(length, chars.length * 2)];
+		line.getChars(0, length, chars, 0);
+		// a char takes at most three bytes, surrogate pairs take four for two chars
+		ensurePending(length * 3);
+		byte[] bytes = pending;
+		int position = pendingLength;
+		for (int i = 0; i < length; i++) {
+			int c = chars[i];
+			if (c < 0x80) {
+				bytes[position++] = (byte) c;
+			} else if (c < 0x800) {
+				bytes[position++] = (byte) (0xC0 | (c >> 6));
+				bytes[position++] = (byte) (0x80 | (c & 0x3F));
+			} else if (c >= 0xD800 && c <= 0xDBFF && i + 1 < length && chars[i + 1] >= 0xDC00 && chars[i + 1] <= 0xDFFF) {
+				int codePoint = 0x10000 + ((c - 0xD800) << 10) + (chars[++i] - 0xDC00);
+				bytes[position++] = (byte) (0xF0 | (codePoint >> 18));
+				bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				bytes[position++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else {
+				bytes[position++] = (byte) (0xE0 | (c >> 12));
+				bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				bytes[position++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		pendingLength = position;
+	}
+
+	private void ensurePending(int additional) {
+		if (pendingLength + additional <= pending.length)
+			return;
+		byte[] newPending = new byte[Math.max(pendingLength + additional, pending.length * 2)];
+		System.arraycopy(pending, 0, newPending, 0, pendingLength);
+		pending = newPending;
+	}
+
+	public void run() {
+		try {
+			while (true) {
+				int length;
+				synchronized (this) {
+					while (pendingLength == 0 && !closed)
+						wait();
+					if (pendingLength == 0)
+						return; // closed and everything is written
+					byte[] swap = writing;
+					writing = pending;
+					pending = swap;
+					length = pendingLength;
+					pendingLength = 0;
+					// wake up the threads waiting for room
+					notifyAll();
+				}
+				write(writing, length);
+			}
+		} catch (InterruptedException e) {
+			// ignore -- we control the stack here and do not need to propagate it.
+		} finally {
+			closeStream();
+		}
+	}
+
+	private void write(byte[] bytes, int length) {
+		try {
+			if (out == null)
+				openStream();
+			if ((maxSize > 0 && size > 0 && size + length > maxSize) || (rotationInterval > 0 && System.currentTimeMillis() >= nextRotation)) {
+				rotate();
+				openStream();
+			}
+			out.write(bytes, 0, length);
+			out.flush();
+			size += length;
+			failed = false;
+		} catch (IOException e) {
+			// report the first failure only, the stream is reopened with the next entries
+			if (!failed) {
+				PrintStream errorStream = ExtendedLogReaderServiceFactory.getErrorStream();
+				errorStream.println("Could not write the log file " + file + ':'); //$NON-NLS-1$
+				e.printStackTrace(errorStream);
+				failed = true;
+			}
+			closeStream();
+		}
+	}
+
+	private void openStream() throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.exists())
+			parent.mkdirs();
+		out = new FileOutputStream(file.getPath(), true);
+		size = file.length();
+		nextRotation = System.currentTimeMillis() + rotationInterval;
+	}
+
+	private void closeStream() {
+		if (out == null)
+			return;
+		try {
+			out.close();
+		} catch (IOException e) {
+			// ignore
+		}
+		out = null;
+	}
+
+	private void rotate() throws IOException {
+		closeStream();
+		if (maxFiles < 1) {
+			file.delete();
+			return;
+		}
+		String suffix = compress ? GZIP_SUFFIX : ""; //$NON-NLS-1$
+		getSegment(maxFiles, suffix).delete();
+		for (int i = maxFiles - 1; i > 0; i--) {
+			File segment = getSegment(i, suffix);
+			if (segment.exists())
+				segment.renameTo(getSegment(i + 1, suffix));
+		}
+		File first = getSegment(1, suffix);
+		if (compress) {
+			compress(file, first);
+			file.delete();
+		} else if (!file.renameTo(first)) {
+			throw new IOException("Could not rename " + file + " to " + first); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	private File getSegment(int index, String suffix) {
+		return new File(file.getPath() + '.' + index + suffix);
+	}
+
+	private void compress(File source, File target) throws IOException {
+		InputStream in = new FileInputStream(source);
+		try {
+			OutputStream gzip = new GZIPOutputStream(new FileOutputStream(target));
+			try {
+				int read;
+				while ((read = in.read(copyBuffer)) != -1)
+					gzip.write(copyBuffer, 0, read);
+			} finally {
+				gzip.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+}
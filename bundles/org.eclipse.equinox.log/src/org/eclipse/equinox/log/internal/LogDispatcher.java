@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.equinox.log.internal;
+
+import java.util.LinkedList;
+import org.eclipse.equinox.log.ExtendedLogEntry;
+import org.eclipse.equinox.log.LogFilter;
+import org.osgi.service.log.LogEntry;
+import org.osgi.service.log.LogListener;
+
+/**
+ * LogDispatcher delivers log entries to asynchronous log listeners using a small pool of
+ * shared threads.
+ * <p>
+ * Published entries are stored once in a bounded ring buffer. Every listener has a cursor
+ * into the buffer pointing at the next entry it should receive. A thread takes a listener
+ * whose cursor is behind, delivers a batch of entries to it and then moves on to the next
+ * listener, so that entries are delivered to each listener in order but a slow listener only
+ * delays itself. If a listener falls behind by more than the capacity of the buffer, it
+ * misses the oldest entries and this is reported once it has caught up.
+ */
+public class LogDispatcher {
+
+	static final int DEFAULT_CAPACITY = 4096;
+	static final int DEFAULT_MAX_THREADS = 4;
+	private static final int BATCH_SIZE = 64;
+	private static final int MAX_WAIT = 5000;
+
+	/**
+	 * The position of one listener in the buffer.
+	 */
+	static final class Cursor {
+		final LogListener listener;
+		volatile LogFilter filter;
+		/** The sequence number of the next entry to deliver, @GuardedBy the dispatcher */
+		long next;
+		/** Whether the cursor is ready or being delivered to, @GuardedBy the dispatcher */
+		boolean scheduled;
+		/** @GuardedBy the dispatcher */
+		boolean removed;
+		/** The number of entries missed since the last report, @GuardedBy the dispatcher */
+		long missed;
+
+		Cursor(LogListener listener, LogFilter filter, long next) {
+			this.listener = listener;
+			this.filter = filter;
+			this.next = next;
+		}
+	}
+
+	private final String name;
+	private final int maxThreads;
+	private final LogEntry[] buffer;
+	/** The sequence number of the next published entry, @GuardedBy this */
+	private long head = 0;
+	/** @GuardedBy this */
+	private Cursor[] cursors = new Cursor[0];
+	/** @GuardedBy this */
+	private final LinkedList ready = new LinkedList();
+	/** @GuardedBy this */
+	private int threads = 0;
+	/** @GuardedBy this */
+	private int idleThreads = 0;
+
+	public LogDispatcher(String name, int capacity, int maxThreads) {
+		if (capacity < 1 || maxThreads < 1)
+			throw new IllegalArgumentException();
+		this.name = name;
+		this.buffer = new LogEntry[capacity];
+		this.maxThreads = maxThreads;
+	}
+
+	/**
+	 * Adds a listener which receives the entries published from now on.
+	 */
+	synchronized Cursor addListener(LogListener listener, LogFilter filter) {
+		Cursor cursor = new Cursor(listener, filter, head);
+		Cursor[] newCursors = new Cursor[cursors.length + 1];
+		System.arraycopy(cursors, 0, newCursors, 0, cursors.length);
+		newCursors[cursors.length] = cursor;
+		cursors = newCursors;
+		return cursor;
+	}
+
+	/**
+	 * Removes a listener. Entries which are being delivered to it are still delivered.
+	 */
+	synchronized void removeListener(Cursor cursor) {
+		for (int i = 0; i < cursors.length; i++) {
+			if (cursors[i] == cursor) {
+				Cursor[] newCursors = new Cursor[cursors.length - 1];
+				System.arraycopy(cursors, 0, newCursors, 0, i);
+				System.arraycopy(cursors, i + 1, newCursors, i, cursors.length - i - 1);
+				cursors = newCursors;
+				break;
+			}
+		}
+		cursor.removed = true;
+		ready.remove(cursor);
+	}
+
+	/**
+	 * Stores the entry for all listeners. Each listener's filter is applied when the entry is
+	 * delivered.
+	 */
+	synchronized void publish(LogEntry entry) {
+		if (cursors.length == 0)
+			return;
+		buffer[(int) (head % buffer.length)] = entry;
+		head++;
+		for (int i = 0; i < cursors.length; i++) {
+			Cursor cursor = cursors[i];
+			if (!cursor.scheduled) {
+				cursor.scheduled = true;
+				ready.add(cursor);
+			}
+		}
+		if (!ready.isEmpty())
+			schedule();
+	}
+
+	/*
+	 * Wakes up or starts a thread for the ready cursors. Must be called while holding this lock.
+	 */
+	private void schedule() {
+		if (idleThreads > 0)
+			notify();
+		else if (threads < maxThreads) {
+			threads++;
+			Thread thread = new Thread(name) {
+				public void run() {
+					LogEntry[] batch = new LogEntry[Math.min(BATCH_SIZE, buffer.length)];
+					boolean idle = false;
+					try {
+						Cursor cursor = nextCursor(MAX_WAIT);
+						while (cursor != null) {
+							deliver(cursor, batch);
+							cursor = nextCursor(MAX_WAIT);
+						}
+						idle = true;
+					} finally {
+						if (!idle)
+							threadDied();
+					}
+				}
+			};
+			thread.start();
+		}
+	}
+
+	synchronized Cursor nextCursor(int maxWait) {
+		if (ready.isEmpty()) {
+			idleThreads++;
+			try {
+				wait(maxWait);
+			} catch (InterruptedException e) {
+				// ignore -- we control the stack here and do not need to propagate it.
+			} finally {
+				idleThreads--;
+			}
+
+			if (ready.isEmpty()) {
+				threads--;
+				return null;
+			}
+		}
+		return (Cursor) ready.removeFirst();
+	}
+
+	synchronized void threadDied() {
+		threads--;
+	}
+
+	void deliver(Cursor cursor, LogEntry[] batch) {
+		int count;
+		long missed;
+		synchronized (this) {
+			long oldest = head - buffer.length;
+			if (cursor.next < oldest) {
+				cursor.missed += oldest - cursor.next;
+				cursor.next = oldest;
+			}
+			count = (int) Math.min(batch.length, head - cursor.next);
+			for (int i = 0; i < count; i++)
+				batch[i] = buffer[(int) ((cursor.next + i) % buffer.length)];
+			cursor.next += count;
+			// report once the listener has caught up
+			missed = cursor.next == head ? cursor.missed : 0;
+			cursor.missed -= missed;
+		}
+		try {
+			LogFilter filter = cursor.filter;
+			for (int i = 0; i < count; i++) {
+				LogEntry entry = batch[i];
+				batch[i] = null;
+				if (ExtendedLogReaderServiceFactory.safeIsLoggable(filter, entry.getBundle(), ((ExtendedLogEntry) entry).getLoggerName(), entry.getLevel()))
+					ExtendedLogReaderServiceFactory.safeLogged(cursor.listener, entry);
+			}
+			if (missed > 0)
+				ExtendedLogReaderServiceFactory.reportMissed(cursor.listener, missed);
+		} finally {
+			synchronized (this) {
+				if (!cursor.removed && cursor.next < head) {
+					// let the other listeners have their turn first
+					ready.add(cursor);
+					schedule();
+				} else {
+					cursor.scheduled = false;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.equinox.log.internal;
+
+import java.util.*;
+import org.eclipse.equinox.log.ExtendedLogEntry;
+import org.eclipse.equinox.log.LogFilter;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.log.LogService;
+
+/**
+ * LogHistory retains the most recent log entries for <code>LogReaderService.getLog()</code>.
+ * <p>
+ * Entries are kept in one fixed-size ring per log level so that a flood of entries of one
+ * level does not push out the entries of the others. Levels above <code>LOG_DEBUG</code> count
+ * as debug and levels below <code>LOG_ERROR</code> count as errors. A ring only holds on to
+ * its slots and never grows, so the memory used is bounded by the configured sizes.
+ * <p>
+ * The number of entries retained per level is read from the framework properties
+ * {@value #PROP_HISTORY_MAX}, which applies to all levels, and
+ * <code>equinox.log.history.max.error</code>, <code>.warning</code>, <code>.info</code> and
+ * <code>.debug</code>, which override it for a single level. By default no entries are
+ * retained. Retaining a level makes it loggable even when no listener is interested in it, so
+ * the history has to be enabled explicitly.
+ */
+public class LogHistory {
+
+	static final String PROP_HISTORY_MAX = "equinox.log.history.max"; //$NON-NLS-1$
+	private static final String[] LEVEL_NAMES = {"error", "warning", "info", "debug"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	private static final int[] DEFAULT_SIZES = {0, 0, 0, 0};
+
+	private static final Comparator MOST_RECENT_FIRST = new Comparator() {
+		public int compare(Object o1, Object o2) {
+			long sequence1 = ((ExtendedLogEntry) o1).getSequenceNumber();
+			long sequence2 = ((ExtendedLogEntry) o2).getSequenceNumber();
+			return sequence1 > sequence2 ? -1 : (sequence1 == sequence2 ? 0 : 1);
+		}
+	};
+
+	/**
+	 * A fixed-size ring of the most recent entries of one level.
+	 */
+	private static final class Ring {
+		private final ExtendedLogEntry[] entries;
+		/** @GuardedBy this */
+		private int next = 0;
+		/** @GuardedBy this */
+		private int size = 0;
+
+		Ring(int capacity) {
+			entries = new ExtendedLogEntry[capacity];
+		}
+
+		synchronized void add(ExtendedLogEntry entry) {
+			entries[next] = entry;
+			next = (next + 1) % entries.length;
+			if (size < entries.length)
+				size++;
+		}
+
+		synchronized void copyTo(List result) {
+			int first = (next - size + entries.length) % entries.length;
+			for (int i = 0; i < size; i++)
+				result.add(entries[(first + i) % entries.length]);
+		}
+	}
+
+	/** The rings for LOG_ERROR to LOG_DEBUG, null for the levels which are not retained */
+	private final Ring[] rings = new Ring[4];
+
+	LogHistory(int[] sizes) {
+		for (int i = 0; i < rings.length; i++) {
+			if (sizes[i] > 0)
+				rings[i] = new Ring(sizes[i]);
+		}
+	}
+
+	/**
+	 * Creates a history sized by the framework properties of the given context.
+	 */
+	static LogHistory create(BundleContext context) {
+		int[] sizes = new int[DEFAULT_SIZES.length];
+		int max = parseSize(context.getProperty(PROP_HISTORY_MAX));
+		for (int i = 0; i < sizes.length; i++) {
+			int size = parseSize(context.getProperty(PROP_HISTORY_MAX + '.' + LEVEL_NAMES[i]));
+			sizes[i] = size >= 0 ? size : (max >= 0 ? max : DEFAULT_SIZES[i]);
+		}
+		return new LogHistory(sizes);
+	}
+
+	private static int parseSize(String size) {
+		if (size == null)
+			return -1;
+		try {
+			return Integer.parseInt(size.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private Ring getRing(int level) {
+		if (level < LogService.LOG_ERROR)
+			level = LogService.LOG_ERROR;
+		else if (level > LogService.LOG_DEBUG)
+			level = LogService.LOG_DEBUG;
+		return rings[level - LogService.LOG_ERROR];
+	}
+
+	/**
+	 * Returns whether entries of the given level are retained.
+	 */
+	boolean retains(int level) {
+		return getRing(level) != null;
+	}
+
+	void add(ExtendedLogEntry entry) {
+		Ring ring = getRing(entry.getLevel());
+		if (ring != null)
+			ring.add(entry);
+	}
+
+	/**
+	 * Returns the retained entries which the filter accepts, most recent first.
+	 *
+	 * @param filter the filter to apply or <code>null</code> for all entries
+	 */
+	Enumeration getLog(LogFilter filter) {
+		List entries = new ArrayList();
+		for (int i = 0; i < rings.length; i++) {
+			if (rings[i] != null)
+				rings[i].copyTo(entries);
+		}
+		if (filter != null) {
+			for (Iterator it = entries.iterator(); it.hasNext();) {
+				ExtendedLogEntry entry = (ExtendedLogEntry) it.next();
+				if (!ExtendedLogReaderServiceFactory.safeIsLoggable(filter, entry.getBundle(), entry.getLoggerName(), entry.getLevel()))
+					it.remove();
+			}
+		}
+		Collections.sort(entries, MOST_RECENT_FIRST);
+		return Collections.enumeration(entries);
+	}
+}
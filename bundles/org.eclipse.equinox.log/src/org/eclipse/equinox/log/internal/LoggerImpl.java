@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2009 Cognos Incorporated, IBM Corporation and others
+ * Copyright (c) 2006, 2016 Cognos Incorporated, IBM Corporation and others
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
  * accompanies this distribution, and is available at
@@ -9,11 +9,19 @@ package org.eclipse.equinox.log.internal;
 
 import org.eclipse.equinox.log.Logger;
 import org.osgi.framework.ServiceReference;
+import org.osgi.service.log.LogService;
 
 public class LoggerImpl implements Logger {
 
 	private final ExtendedLogServiceImpl logServiceImpl;
 	private final String name;
+	/*
+	 * The cached decisions of isLoggable for LOG_ERROR to LOG_DEBUG. The upper 32 bits hold the
+	 * filters generation the decisions were made for, bits 8 to 11 mark the levels which have
+	 * been decided and bits 0 to 3 the levels which are loggable. Decisions are only ever added
+	 * for the same generation, so a lost update only costs a recomputation.
+	 */
+	private volatile long decisions;
 
 	public LoggerImpl(ExtendedLogServiceImpl logServiceImpl, String name) {
 		this.logServiceImpl = logServiceImpl;
@@ -25,7 +33,21 @@ public class LoggerImpl implements Logger {
 	}
 
 	public boolean isLoggable(int level) {
-		return logServiceImpl.isLoggable(name, level);
+		if (level < LogService.LOG_ERROR || level > LogService.LOG_DEBUG)
+			return logServiceImpl.isLoggable(name, level);
+
+		// read the generation before deciding so that a concurrent filter change invalidates the decision
+		int generation = logServiceImpl.getFiltersGeneration();
+		long current = decisions;
+		long levelBit = 1L << (level - LogService.LOG_ERROR);
+		if ((int) (current >>> 32) != generation)
+			current = ((long) generation) << 32;
+		else if ((current & (levelBit << 8)) != 0)
+			return (current & levelBit) != 0;
+
+		boolean loggable = logServiceImpl.isLoggable(name, level);
+		decisions = current | (levelBit << 8) | (loggable ? levelBit : 0);
+		return loggable;
 	}
 
 	public void log(int level, String message) {
@@ -41,7 +63,8 @@ public class LoggerImpl implements Logger {
 	}
 
 	public void log(ServiceReference sr, int level, String message, Throwable exception) {
-		logServiceImpl.log(name, sr, level, message, exception);
+		if (isLoggable(level))
+			logServiceImpl.log(name, sr, level, message, exception);
 	}
 
 	public void log(Object context, int level, String message) {
@@ -49,6 +72,7 @@ public class LoggerImpl implements Logger {
 	}
 
 	public void log(Object context, int level, String message, Throwable exception) {
-		logServiceImpl.log(name, context, level, message, exception);
+		if (isLoggable(level))
+			logServiceImpl.log(name, context, level, message, exception);
 	}
 }
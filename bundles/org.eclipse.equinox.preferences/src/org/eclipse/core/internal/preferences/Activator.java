@@ -63,6 +63,7 @@ public class Activator implements BundleActivator, ServiceTrackerCustomizer<Obje
 		// Open the services first before processing the command-line args, order is important! (Bug 150288)
 		PreferencesOSGiUtils.getDefault().openServices();
 		processCommandLine();
+		PreferenceFlushScheduler.start(context.getProperty(PreferenceFlushScheduler.PROP_FLUSH_DELAY));
 
 		boolean shouldRegister = !"false".equalsIgnoreCase(context.getProperty(PROP_REGISTER_PERF_SERVICE)); //$NON-NLS-1$
 		if (shouldRegister) {
@@ -77,6 +78,8 @@ public class Activator implements BundleActivator, ServiceTrackerCustomizer<Obje
 
 	@Override
 	public void stop(BundleContext context) throws Exception {
+		// write the nodes whose flush was deferred while the location services are still available
+		PreferenceFlushScheduler.stop();
 		PreferencesOSGiUtils.getDefault().closeServices();
 		if (registryServiceTracker != null) {
 			registryServiceTracker.close();
@@ -49,7 +49,7 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 	protected static final String EMPTY_STRING = ""; //$NON-NLS-1$
 
 	private String cachedPath;
-	protected ImmutableMap properties = ImmutableMap.EMPTY;
+	protected ImmutableMap properties = new PropertyMap();
 	protected Map<String, Object> children;
 	/**
 	 * Protects write access to properties and children.
@@ -156,6 +156,7 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 			if (children == null)
 				children = Collections.synchronizedMap(new HashMap<String, Object>());
 			children.put(childName, child == null ? (Object) childName : child);
+			PreferenceLookupCache.invalidate();
 			return child;
 		}
 	}
@@ -231,7 +232,7 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 		// clients get change notification
 		String[] keys;
 		synchronized (childAndPropertyLock) {
-			keys = properties.keys();
+			keys = getPropertyMap().keys();
 		}
 		//don't synchronize remove call because it calls listeners
 		for (int i = 0; i < keys.length; i++)
@@ -246,15 +247,16 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 		final ArrayList<String> result = new ArrayList<>();
 		final String extension = '.' + PREFS_FILE_EXTENSION;
 		File file = dir.toFile();
-		File[] totalFiles = file.listFiles();
+		// only list the names, a scope may have thousands of qualifiers and checking
+		// each entry is a file costs a stat call. The names are only placeholders,
+		// a qualifier's file is read when its node is first accessed.
+		String[] totalFiles = file.list();
 		if (totalFiles != null) {
 			for (int i = 0; i < totalFiles.length; i++) {
-				if (totalFiles[i].isFile()) {
-					String filename = totalFiles[i].getName();
-					if (filename.endsWith(extension)) {
-						String shortName = filename.substring(0, filename.length() - extension.length());
-						result.add(shortName);
-					}
+				String filename = totalFiles[i];
+				if (filename.endsWith(extension) && filename.length() > extension.length()) {
+					String shortName = filename.substring(0, filename.length() - extension.length());
+					result.add(shortName);
 				}
 			}
 		}
@@ -347,17 +349,10 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 	protected Properties convertToProperties(Properties result, String prefix) throws BackingStoreException {
 		// add the key/value pairs from this node
 		boolean addSeparator = prefix.length() != 0;
-		//thread safety: copy reference in case of concurrent change
-		ImmutableMap temp;
-		synchronized (childAndPropertyLock) {
-			temp = properties;
-		}
-		String[] keys = temp.keys();
-		for (int i = 0, imax = keys.length; i < imax; i++) {
-			String value = temp.get(keys[i]);
-			if (value != null)
-				result.put(encodePath(prefix, keys[i]), value);
-		}
+		//thread safety: work on a snapshot in case of concurrent change
+		String[] entries = getPropertyMap().entries();
+		for (int i = 0, imax = entries.length; i < imax; i += 2)
+			result.put(encodePath(prefix, entries[i]), entries[i + 1]);
 		// recursively add the child information
 		IEclipsePreferences[] childNodes = getChildren(true);
 		for (int i = 0; i < childNodes.length; i++) {
@@ -442,11 +437,13 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 
 		IEclipsePreferences loadLevel = getLoadLevel();
 
-		// if this node or a parent is not the load level, then flush the children
+		// if this node or a parent is not the load level, then flush the children.
+		// Children which have not been created yet have not been loaded from
+		// disk either, so they cannot have changes and must not be loaded here.
 		if (loadLevel == null) {
-			String[] childrenNames = childrenNames();
-			for (int i = 0; i < childrenNames.length; i++)
-				node(childrenNames[i]).flush();
+			IEclipsePreferences[] childNodes = getChildren(false);
+			for (int i = 0; i < childNodes.length; i++)
+				childNodes[i].flush();
 			return null;
 		}
 
@@ -458,6 +455,21 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 		// any work to do?
 		if (!dirty)
 			return null;
+		// in write-behind mode leave the save to the background writer
+		PreferenceFlushScheduler scheduler = PreferenceFlushScheduler.getDefault();
+		if (scheduler != null && scheduler.schedule(this))
+			return null;
+		saveIfDirty();
+		return null;
+	}
+
+	/*
+	 * Saves this load level node if it is dirty. Must be called while holding
+	 * the child and property lock.
+	 */
+	private void saveIfDirty() throws BackingStoreException {
+		if (!dirty)
+			return;
 		//remove dirty bit before saving, to ensure that concurrent
 		//changes during save mark the store as dirty
 		dirty = false;
@@ -468,7 +480,36 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 			dirty = true;
 			throw e;
 		}
-		return null;
+	}
+
+	/*
+	 * Called by the flush scheduler to write a load level node whose flush
+	 * was deferred.
+	 */
+	void saveDeferred() throws BackingStoreException {
+		synchronized (childAndPropertyLock) {
+			if (removed)
+				return;
+			saveIfDirty();
+		}
+	}
+
+	/**
+	 * Flushes this node like {@link #flush()}, but also writes any changes
+	 * whose flush has been deferred because write-behind is enabled, before
+	 * returning.
+	 *
+	 * @throws BackingStoreException if this operation cannot be completed due
+	 * to a failure in the backing store, or inability to communicate with it
+	 * @see PreferenceFlushScheduler
+	 */
+	public void flushNow() throws BackingStoreException {
+		flush();
+		PreferenceFlushScheduler scheduler = PreferenceFlushScheduler.getDefault();
+		if (scheduler == null)
+			return;
+		IEclipsePreferences loadLevel = getLoadLevel();
+		scheduler.flushPending(loadLevel instanceof EclipsePreferences ? (EclipsePreferences) loadLevel : this);
 	}
 
 
@@ -612,6 +653,23 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 		return result;
 	}
 
+	/*
+	 * Returns the map holding the key/value pairs of this node. The properties
+	 * field keeps its ImmutableMap type for the subclasses in friend bundles.
+	 * If a subclass has assigned another ImmutableMap to it, the pairs are
+	 * copied into a new PropertyMap which replaces it.
+	 */
+	private PropertyMap getPropertyMap() {
+		ImmutableMap current = properties;
+		if (current instanceof PropertyMap)
+			return (PropertyMap) current;
+		synchronized (childAndPropertyLock) {
+			if (!(properties instanceof PropertyMap))
+				properties = PropertyMap.copyOf(properties);
+			return (PropertyMap) properties;
+		}
+	}
+
 	/**
 	 * Returns the existing value at the given key, or null if
 	 * no such value exists.
@@ -622,10 +680,8 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 			throw new NullPointerException();
 		// illegal state if this node has been removed
 		checkRemoved();
-		String result;
-		synchronized (childAndPropertyLock) {
-			result = properties.get(key);
-		}
+		// reads do not need the lock, the property map supports concurrent access
+		String result = getPropertyMap().get(key);
 		if (DEBUG_PREFERENCE_GET)
 			PrefsMessages.message("Getting preference value: " + absolutePath() + '/' + key + "->" + result); //$NON-NLS-1$ //$NON-NLS-2$
 		return result;
@@ -672,12 +728,14 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 		synchronized (childAndPropertyLock) {
 			// illegal state if this node has been removed
 			checkRemoved();
-			String oldValue = properties.get(key);
+			PropertyMap map = getPropertyMap();
+			String oldValue = map.get(key);
 			if (oldValue != null && oldValue.equals(newValue))
 				return oldValue;
 			if (DEBUG_PREFERENCE_SET)
 				PrefsMessages.message("Setting preference: " + absolutePath() + '/' + key + '=' + newValue); //$NON-NLS-1$
-			properties = properties.put(key, newValue);
+			map.put(key, newValue);
+			PreferenceLookupCache.invalidate();
 			return oldValue;
 		}
 	}
@@ -695,7 +753,7 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 		// illegal state if this node has been removed
 		synchronized (childAndPropertyLock) {
 			checkRemoved();
-			return properties.keys();
+			return getPropertyMap().keys();
 		}
 	}
 
@@ -983,10 +1041,10 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 		synchronized (childAndPropertyLock) {
 			// illegal state if this node has been removed
 			checkRemoved();
-			oldValue = properties.get(key);
+			oldValue = getPropertyMap().remove(key);
 			if (oldValue == null)
 				return;
-			properties = properties.removeKey(key);
+			PreferenceLookupCache.invalidate();
 		}
 		makeDirty();
 		firePreferenceEvent(key, oldValue, null);
@@ -1038,8 +1096,10 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 		synchronized (childAndPropertyLock) {
 			if (children != null) {
 				Object result = children.remove(key);
-				if (result != null)
+				if (result != null) {
 					makeDirty();
+					PreferenceLookupCache.invalidate();
+				}
 				if (children.isEmpty())
 					children = null;
 				return result;
@@ -1119,12 +1179,7 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 	 * @param pool The pool to share strings in
 	 */
 	public void shareStrings(StringPool pool) {
-		//thread safety: copy reference in case of concurrent change
-		ImmutableMap temp;
-		synchronized (childAndPropertyLock) {
-			temp = properties;
-		}
-		temp.shareStrings(pool);
+		getPropertyMap().shareStrings(pool);
 		IEclipsePreferences[] myChildren = getChildren(false);
 		for (int i = 0; i < myChildren.length; i++)
 			if (myChildren[i] instanceof EclipsePreferences)
@@ -1244,8 +1299,13 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 			return;
 		}
 		if (node instanceof EclipsePreferences) {
+			// write flushed changes still waiting for the background writer
+			// first, or loading would replace them with the stale file
+			PreferenceFlushScheduler scheduler = PreferenceFlushScheduler.getDefault();
+			if (scheduler != null)
+				scheduler.flushPending((EclipsePreferences) node);
 			((EclipsePreferences) node).load();
-			node.flush();
+			((EclipsePreferences) node).flushNow();
 		}
 	}
 
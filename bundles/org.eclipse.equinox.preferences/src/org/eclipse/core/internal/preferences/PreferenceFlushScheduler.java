@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.preferences;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.osgi.util.NLS;
+import org.osgi.service.prefs.BackingStoreException;
+
+/**
+ * Writes dirty load level nodes in the background when write-behind is
+ * enabled.
+ * <p>
+ * In write-behind mode {@link EclipsePreferences#flush()} only records the
+ * load level node which has to be saved. The node is written by a background
+ * thread once the flush delay has elapsed, so repeated flushes within the
+ * delay result in a single write. Pending nodes are written synchronously by
+ * {@link EclipsePreferences#flushNow()} and when the bundle is stopped.
+ * </p><p>
+ * Write-behind is enabled by setting the framework property
+ * {@value #PROP_FLUSH_DELAY} to a positive number of milliseconds.
+ * </p>
+ */
+public class PreferenceFlushScheduler {
+
+	/**
+	 * Framework property holding the delay in milliseconds by which
+	 * flushes are deferred. Write-behind is disabled if it is not set
+	 * or not positive.
+	 */
+	public static final String PROP_FLUSH_DELAY = "eclipse.preferences.flushDelay"; //$NON-NLS-1$
+
+	private static final long SHUTDOWN_TIMEOUT = 10000;
+
+	private static volatile PreferenceFlushScheduler instance;
+
+	private final long delay;
+	private final ScheduledThreadPoolExecutor executor;
+	/**
+	 * The load level nodes waiting to be written, guarded by this.
+	 */
+	private final Set<EclipsePreferences> pending = new LinkedHashSet<>();
+	private boolean scheduled = false;
+	private boolean shutdown = false;
+
+	private PreferenceFlushScheduler(long delay) {
+		this.delay = delay;
+		this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Preferences Flush"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		// pending nodes are written by the stopping thread instead
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	}
+
+	/**
+	 * Returns the active scheduler or <code>null</code> if write-behind
+	 * is disabled.
+	 */
+	static PreferenceFlushScheduler getDefault() {
+		return instance;
+	}
+
+	/**
+	 * Enables write-behind if the given delay is a positive number.
+	 */
+	static void start(String delay) {
+		if (delay == null)
+			return;
+		long millis;
+		try {
+			millis = Long.parseLong(delay.trim());
+		} catch (NumberFormatException e) {
+			if (EclipsePreferences.DEBUG_PREFERENCE_GENERAL)
+				PrefsMessages.message("Invalid preference flush delay: " + delay); //$NON-NLS-1$
+			return;
+		}
+		if (millis <= 0)
+			return;
+		instance = new PreferenceFlushScheduler(millis);
+		if (EclipsePreferences.DEBUG_PREFERENCE_GENERAL)
+			PrefsMessages.message("Deferring preference flushes by " + millis + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Disables write-behind and writes all pending nodes before returning.
+	 */
+	static void stop() {
+		PreferenceFlushScheduler scheduler = instance;
+		if (scheduler == null)
+			return;
+		instance = null;
+		scheduler.shutdown();
+	}
+
+	/**
+	 * Records the given load level node to be written once the delay has
+	 * elapsed. Returns <code>false</code> if the scheduler is shutting down,
+	 * in which case the caller must write the node itself.
+	 */
+	synchronized boolean schedule(EclipsePreferences node) {
+		if (shutdown)
+			return false;
+		pending.add(node);
+		if (!scheduled) {
+			scheduled = true;
+			executor.schedule(new Runnable() {
+				@Override
+				public void run() {
+					writePending();
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the pending nodes which are the given node or one of its
+	 * descendants in the calling thread.
+	 */
+	void flushPending(EclipsePreferences node) throws BackingStoreException {
+		String path = node.absolutePath();
+		String prefix = path.endsWith(EclipsePreferences.PATH_SEPARATOR) ? path : path + EclipsePreferences.PATH_SEPARATOR;
+		List<EclipsePreferences> toWrite = new ArrayList<>();
+		synchronized (this) {
+			for (Iterator<EclipsePreferences> i = pending.iterator(); i.hasNext();) {
+				EclipsePreferences next = i.next();
+				String nextPath = next.absolutePath();
+				if (next == node || nextPath.equals(path) || nextPath.startsWith(prefix)) {
+					toWrite.add(next);
+					i.remove();
+				}
+			}
+		}
+		BackingStoreException exception = null;
+		for (EclipsePreferences next : toWrite) {
+			try {
+				next.saveDeferred();
+			} catch (BackingStoreException e) {
+				// still try and write the remaining nodes
+				if (exception == null)
+					exception = e;
+			}
+		}
+		if (exception != null)
+			throw exception;
+	}
+
+	private void shutdown() {
+		synchronized (this) {
+			shutdown = true;
+		}
+		executor.shutdown();
+		try {
+			// let a write in progress complete
+			executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		writePending();
+	}
+
+	private void writePending() {
+		EclipsePreferences[] toWrite;
+		synchronized (this) {
+			scheduled = false;
+			toWrite = pending.toArray(new EclipsePreferences[pending.size()]);
+			pending.clear();
+		}
+		for (int i = 0; i < toWrite.length; i++) {
+			try {
+				toWrite[i].saveDeferred();
+			} catch (BackingStoreException e) {
+				// the node stays dirty and will be written by its next flush
+				String message = NLS.bind(PrefsMessages.preferences_saveException, toWrite[i].absolutePath());
+				EclipsePreferences.log(new Status(IStatus.ERROR, PrefsMessages.OWNER_NAME, IStatus.ERROR, message, e));
+			}
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.preferences;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.core.runtime.preferences.IScopeContext;
+
+/**
+ * Cache of the values resolved by the scoped look-ups of the preference
+ * service, keyed by (qualifier, key, scopes).
+ * <p>
+ * Entries are validated against a global generation which is incremented
+ * whenever a preference value or node changes anywhere in the tree, or when
+ * a look-up order changes. The generation is incremented at the same points
+ * where preference and node change events originate, but unconditionally,
+ * since values loaded from disk or set as defaults do not notify listeners.
+ * </p>
+ */
+public class PreferenceLookupCache {
+
+	private static final int MAX_SIZE = 2048;
+
+	private static final AtomicLong generation = new AtomicLong();
+
+	private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Invalidates all cached values. Must be called after the change has
+	 * been made.
+	 */
+	static void invalidate() {
+		generation.incrementAndGet();
+	}
+
+	static long getGeneration() {
+		return generation.get();
+	}
+
+	/*
+	 * Return the key for the given look-up or null if the look-up cannot be
+	 * cached because a scope context does not define equality.
+	 */
+	static Key createKey(String qualifier, String key, IScopeContext[] scopes) {
+		if (qualifier == null || key == null)
+			return null;
+		if (scopes != null) {
+			for (int i = 0; i < scopes.length; i++)
+				if (scopes[i] != null && !(scopes[i] instanceof AbstractScope))
+					return null;
+		}
+		return new Key(qualifier, key, scopes);
+	}
+
+	/*
+	 * Return the cached entry for the given key if it is still valid.
+	 */
+	Entry get(Key key, long currentGeneration) {
+		Entry entry = entries.get(key);
+		return entry != null && entry.generation == currentGeneration ? entry : null;
+	}
+
+	/*
+	 * Cache the value resolved while the given generation was current.
+	 */
+	void put(Key key, String value, long resolvedGeneration) {
+		if (entries.size() >= MAX_SIZE)
+			entries.clear();
+		entries.put(key, new Entry(value, resolvedGeneration));
+	}
+
+	static final class Entry {
+		final long generation;
+		final String value;
+
+		Entry(String value, long generation) {
+			this.value = value;
+			this.generation = generation;
+		}
+	}
+
+	static final class Key {
+		private final int hashCode;
+		private final String key;
+		private final String qualifier;
+		private final IScopeContext[] scopes;
+
+		Key(String qualifier, String key, IScopeContext[] scopes) {
+			this.qualifier = qualifier;
+			this.key = key;
+			this.scopes = scopes == null ? null : scopes.clone();
+			this.hashCode = (31 * qualifier.hashCode() + key.hashCode()) * 31 + Arrays.hashCode(scopes);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return hashCode == other.hashCode && key.equals(other.key) && qualifier.equals(other.qualifier) && Arrays.equals(scopes, other.scopes);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+}
@@ -50,6 +50,7 @@ public class PreferencesService implements IPreferencesService {
 	private static final Map<String, LookupOrder> defaultsRegistry = Collections.synchronizedMap(new HashMap<String, LookupOrder>());
 	private Object registryHelper = null;
 	private final Map<String, EclipsePreferences> defaultScopes = new HashMap<>();
+	private final PreferenceLookupCache lookupCache = new PreferenceLookupCache();
 
 	/**
 	 * The last time analysis was done to remove duplicate strings
@@ -282,11 +283,17 @@ public class PreferencesService implements IPreferencesService {
 	}
 
 	/*
+	 * Write the preferences of the given tree to the writer while visiting it, so that
+	 * only the keys of one node are held in memory at a time.
+	 *
 	 * excludesList is guaranteed not to be null
 	 */
-	private Properties convertToProperties(IEclipsePreferences preferences, final String[] excludesList) throws BackingStoreException {
-		final Properties result = new Properties();
+	private void writeProperties(IEclipsePreferences preferences, String[] excludesList, final ExportWriter writer) throws BackingStoreException, IOException {
 		final int baseLength = preferences.absolutePath().length();
+		final IOException[] failure = new IOException[1];
+		final String[] exclusions = new String[excludesList.length];
+		for (int i = 0; i < excludesList.length; i++)
+			exclusions[i] = EclipsePreferences.makeRelative(excludesList[i]);
 
 		// create a visitor to do the export
 		IPreferenceNodeVisitor visitor = new IPreferenceNodeVisitor() {
@@ -294,50 +301,61 @@ public class PreferencesService implements IPreferencesService {
 			public boolean visit(IEclipsePreferences node) throws BackingStoreException {
 				// don't store defaults
 				String absolutePath = node.absolutePath();
-				String scope = getScope(absolutePath);
-				if (DefaultScope.SCOPE.equals(scope))
+				if (DefaultScope.SCOPE.equals(getScope(absolutePath)))
 					return false;
 				String path = absolutePath.length() <= baseLength ? EMPTY_STRING : EclipsePreferences.makeRelative(absolutePath.substring(baseLength));
 				// check the excludes list to see if this node should be considered
-				for (int i = 0; i < excludesList.length; i++) {
-					String exclusion = EclipsePreferences.makeRelative(excludesList[i]);
-					if (path.startsWith(exclusion))
+				for (int i = 0; i < exclusions.length; i++) {
+					if (path.startsWith(exclusions[i]))
 						return false;
 				}
-				boolean needToAddVersion = InstanceScope.SCOPE.equals(scope);
-				// check the excludes list for each preference
-				String[] keys = node.keys();
-				for (int i = 0; i < keys.length; i++) {
-					String key = keys[i];
-					boolean ignore = false;
-					for (int j = 0; !ignore && j < excludesList.length; j++)
-						if (EclipsePreferences.encodePath(path, key).startsWith(EclipsePreferences.makeRelative(excludesList[j])))
-							ignore = true;
-					if (!ignore) {
-						String value = node.get(key, null);
-						if (value != null) {
-							if (needToAddVersion) {
-								String bundle = getBundleName(absolutePath);
-								if (bundle != null) {
-									String version = getBundleVersion(bundle);
-									if (version != null)
-										result.put(BUNDLE_VERSION_PREFIX + bundle, version);
-								}
-								needToAddVersion = false;
-							}
-							result.put(EclipsePreferences.encodePath(absolutePath, key), value);
-						}
+				try {
+					// check the excludes list for each preference
+					String[] keys = node.keys();
+					for (int i = 0; i < keys.length; i++) {
+						String key = keys[i];
+						boolean ignore = false;
+						for (int j = 0; !ignore && j < exclusions.length; j++)
+							if (EclipsePreferences.encodePath(path, key).startsWith(exclusions[j]))
+								ignore = true;
+						if (!ignore)
+							writer.write(node, key, node.get(key, null));
 					}
+				} catch (IOException e) {
+					// stop visiting, the caller reports the failure
+					failure[0] = e;
+					throw new BackingStoreException(e.getMessage());
 				}
 				return true;
 			}
 		};
 
 		// start by visiting the root that we were passed in
-		preferences.accept(visitor);
+		try {
+			preferences.accept(visitor);
+		} catch (BackingStoreException e) {
+			if (failure[0] != null)
+				throw failure[0];
+			throw e;
+		}
+	}
 
-		// return the properties object
-		return result;
+	/*
+	 * Write the matching preferences of the given source node, and of its subtree
+	 * if the depth is -1, to the writer. Preferences of the default scope are not
+	 * exported.
+	 */
+	void writeFrom(Preferences source, String[] keys, int depth, ExportWriter writer) throws BackingStoreException, IOException {
+		if (DefaultScope.SCOPE.equals(getScope(source.absolutePath())))
+			return;
+		String[] keysToWrite = keys == null ? source.keys() : keys;
+		for (int i = 0; i < keysToWrite.length; i++)
+			writer.write(source, keysToWrite[i], source.get(keysToWrite[i], null));
+		if (depth == 0)
+			return;
+		String[] children = source.childrenNames();
+		for (int i = 0; i < children.length; i++)
+			writeFrom(source.node(children[i]), keys, depth, writer);
 	}
 
 	/**
@@ -408,20 +426,15 @@ public class PreferencesService implements IPreferencesService {
 		// TODO investigate refactoring to merge with new #export(IEclipsePreferences, IPreferenceFilter[]) APIs
 		if (node == null || output == null)
 			throw new IllegalArgumentException();
-		Properties properties = null;
 		if (excludesList == null)
 			excludesList = new String[0];
+		// stream the preferences to the output instead of collecting them first
+		ExportWriter writer = new ExportWriter(output, node.absolutePath());
 		try {
-			properties = convertToProperties(node, excludesList);
-			if (properties.isEmpty())
-				return Status.OK_STATUS;
-			properties.put(VERSION_KEY, Float.toString(EXPORT_VERSION));
-			properties.put(EXPORT_ROOT_PREFIX + node.absolutePath(), EMPTY_STRING);
+			writeProperties(node, excludesList, writer);
+			writer.flush();
 		} catch (BackingStoreException e) {
 			throw new CoreException(createStatusError(e.getMessage(), e));
-		}
-		try {
-			properties.store(output, null);
 		} catch (IOException e) {
 			throw new CoreException(createStatusError(PrefsMessages.preferences_exportProblems, e));
 		}
@@ -473,7 +486,7 @@ public class PreferencesService implements IPreferencesService {
 
 	@Override
 	public boolean getBoolean(String qualifier, String key, boolean defaultValue, IScopeContext[] scopes) {
-		String result = get(EclipsePreferences.decodePath(key)[1], null, getNodes(qualifier, key, scopes));
+		String result = lookup(qualifier, key, scopes);
 		return result == null ? defaultValue : Boolean.valueOf(result).booleanValue();
 	}
 
@@ -510,7 +523,7 @@ public class PreferencesService implements IPreferencesService {
 
 	@Override
 	public byte[] getByteArray(String qualifier, String key, byte[] defaultValue, IScopeContext[] scopes) {
-		String result = get(EclipsePreferences.decodePath(key)[1], null, getNodes(qualifier, key, scopes));
+		String result = lookup(qualifier, key, scopes);
 		return result == null ? defaultValue : Base64.decode(result.getBytes());
 	}
 
@@ -524,7 +537,7 @@ public class PreferencesService implements IPreferencesService {
 
 	@Override
 	public double getDouble(String qualifier, String key, double defaultValue, IScopeContext[] scopes) {
-		String value = get(EclipsePreferences.decodePath(key)[1], null, getNodes(qualifier, key, scopes));
+		String value = lookup(qualifier, key, scopes);
 		if (value == null)
 			return defaultValue;
 		try {
@@ -537,7 +550,7 @@ public class PreferencesService implements IPreferencesService {
 
 	@Override
 	public float getFloat(String qualifier, String key, float defaultValue, IScopeContext[] scopes) {
-		String value = get(EclipsePreferences.decodePath(key)[1], null, getNodes(qualifier, key, scopes));
+		String value = lookup(qualifier, key, scopes);
 		if (value == null)
 			return defaultValue;
 		try {
@@ -550,7 +563,7 @@ public class PreferencesService implements IPreferencesService {
 
 	@Override
 	public int getInt(String qualifier, String key, int defaultValue, IScopeContext[] scopes) {
-		String value = get(EclipsePreferences.decodePath(key)[1], null, getNodes(qualifier, key, scopes));
+		String value = lookup(qualifier, key, scopes);
 		if (value == null)
 			return defaultValue;
 		try {
@@ -565,7 +578,7 @@ public class PreferencesService implements IPreferencesService {
 
 	@Override
 	public long getLong(String qualifier, String key, long defaultValue, IScopeContext[] scopes) {
-		String value = get(EclipsePreferences.decodePath(key)[1], null, getNodes(qualifier, key, scopes));
+		String value = lookup(qualifier, key, scopes);
 		if (value == null)
 			return defaultValue;
 		try {
@@ -588,6 +601,30 @@ public class PreferencesService implements IPreferencesService {
 		return order;
 	}
 
+	/*
+	 * Return the value for the given key in the first of the nodes found by a
+	 * scoped look-up, or null. Repeated look-ups are answered from the cache
+	 * until a preference, node or look-up order changes.
+	 */
+	private String lookup(String qualifier, String key, IScopeContext[] scopes) {
+		PreferenceLookupCache.Key cacheKey = PreferenceLookupCache.createKey(qualifier, key, scopes);
+		if (cacheKey == null)
+			return get(EclipsePreferences.decodePath(key)[1], null, getNodes(qualifier, key, scopes));
+		// read the generation first so a concurrent change invalidates the entry
+		long generation = PreferenceLookupCache.getGeneration();
+		PreferenceLookupCache.Entry entry = lookupCache.get(cacheKey, generation);
+		if (entry != null)
+			return entry.value;
+		Preferences[] nodes = getNodes(qualifier, key, scopes);
+		String result = get(EclipsePreferences.decodePath(key)[1], null, nodes);
+		// only nodes of our own tree report their changes
+		for (int i = 0; i < nodes.length; i++)
+			if (!(nodes[i] instanceof EclipsePreferences))
+				return result;
+		lookupCache.put(cacheKey, result, generation);
+		return result;
+	}
+
 	private Preferences[] getNodes(final String qualifier, String key, final IScopeContext[] contexts) {
 		String[] order = getLookupOrder(qualifier, key);
 		final String childPath = EclipsePreferences.makeRelative(EclipsePreferences.decodePath(key)[0]);
@@ -665,7 +702,8 @@ public class PreferencesService implements IPreferencesService {
 
 	@Override
 	public String getString(String qualifier, String key, String defaultValue, IScopeContext[] scopes) {
-		return get(EclipsePreferences.decodePath(key)[1], defaultValue, getNodes(qualifier, key, scopes));
+		String result = lookup(qualifier, key, scopes);
+		return result == null ? defaultValue : result;
 	}
 
 
@@ -705,15 +743,36 @@ public class PreferencesService implements IPreferencesService {
 	}
 
 	/**
-	 * Take the preference tree and trim it so it only holds values applying to the given filters.
-	 * Then export the resulting tree to the given output stream.
+	 * Export the values of the preference tree applying to the given filters to the
+	 * given output stream. The values are written while the tree is visited instead
+	 * of building trimmed copies of the tree first.
 	 */
-	private void internalExport(IEclipsePreferences node, IPreferenceFilter filters[], OutputStream output) throws BackingStoreException, CoreException {
-		ArrayList<IEclipsePreferences> trees = new ArrayList<>();
-		for (int i = 0; i < filters.length; i++)
-			trees.add(trimTree(node, filters[i]));
-		IEclipsePreferences toExport = mergeTrees(trees.toArray(new IEclipsePreferences[trees.size()]));
-		exportPreferences(toExport, output, (String[]) null);
+	private void internalExport(final IEclipsePreferences node, IPreferenceFilter filters[], OutputStream output) throws BackingStoreException, CoreException {
+		// the union of several filters is rooted at the root of the tree, see #mergeTrees
+		final ExportWriter writer = new ExportWriter(output, filters.length == 1 ? node.absolutePath() : EclipsePreferences.PATH_SEPARATOR);
+		final IOException[] failure = new IOException[1];
+		MatchVisitor visitor = new MatchVisitor() {
+			@Override
+			public void matched(Preferences source, String relativePath, String[] keys, int depth) throws BackingStoreException {
+				try {
+					writeFrom(source, keys, depth, writer);
+				} catch (IOException e) {
+					failure[0] = e;
+					throw new BackingStoreException(e.getMessage());
+				}
+			}
+		};
+		try {
+			for (int i = 0; i < filters.length; i++)
+				visitMatches(node, filters[i], visitor);
+			writer.flush();
+		} catch (BackingStoreException e) {
+			if (failure[0] == null)
+				throw e;
+			throw new CoreException(createStatusError(PrefsMessages.preferences_exportProblems, failure[0]));
+		} catch (IOException e) {
+			throw new CoreException(createStatusError(PrefsMessages.preferences_exportProblems, e));
+		}
 	}
 
 	/*
@@ -920,6 +979,7 @@ public class PreferencesService implements IPreferencesService {
 			LookupOrder obj = new LookupOrder(order);
 			defaultsRegistry.put(registryKey, obj);
 		}
+		PreferenceLookupCache.invalidate();
 	}
 
 	public void setRegistryHelper(Object registryHelper) {
@@ -946,7 +1006,33 @@ public class PreferencesService implements IPreferencesService {
 	 * Return a tree which contains only nodes and keys which are applicable to the given filter.
 	 */
 	private IEclipsePreferences trimTree(IEclipsePreferences tree, IPreferenceFilter filter) throws BackingStoreException {
-		IEclipsePreferences result = (IEclipsePreferences) ExportedPreferences.newRoot().node(tree.absolutePath());
+		final IEclipsePreferences result = (IEclipsePreferences) ExportedPreferences.newRoot().node(tree.absolutePath());
+		visitMatches(tree, filter, new MatchVisitor() {
+			@Override
+			public void matched(Preferences source, String relativePath, String[] keys, int depth) throws BackingStoreException {
+				copyFromTo(source, result.node(relativePath), keys, depth);
+			}
+		});
+		return result;
+	}
+
+	/*
+	 * Callback of #visitMatches for the parts of a tree applicable to a filter.
+	 */
+	interface MatchVisitor {
+		/**
+		 * The given keys of the source node apply to the filter, or all of its keys if
+		 * the keys are null. If the depth is -1 this applies to the whole subtree of the
+		 * source node. The relative path is the path of the source node relative to the
+		 * visited tree.
+		 */
+		void matched(Preferences source, String relativePath, String[] keys, int depth) throws BackingStoreException;
+	}
+
+	/*
+	 * Report the nodes and keys of the given tree which are applicable to the given filter.
+	 */
+	private void visitMatches(IEclipsePreferences tree, IPreferenceFilter filter, MatchVisitor visitor) throws BackingStoreException {
 		String[] scopes = filter.getScopes();
 		if (scopes == null)
 			throw new IllegalArgumentException();
@@ -959,10 +1045,10 @@ public class PreferencesService implements IPreferencesService {
 			if (mapping == null) {
 				// if we are the root node then check our children
 				if (tree.parent() == null && tree.nodeExists(scope))
-					copyFromTo(tree.node(scope), result.node(scope), null, -1);
+					visitor.matched(tree.node(scope), scope, null, -1);
 				// ensure we are in the correct scope
 				else if (scopeMatches(scope, tree))
-					copyFromTo(tree, result, null, -1);
+					visitor.matched(tree, EMPTY_STRING, null, -1);
 				continue;
 			}
 			// iterate over the list of declared nodes
@@ -995,11 +1081,52 @@ public class PreferencesService implements IPreferencesService {
 						keys = list.toArray(new String[list.size()]);
 					}
 					// do infinite depth if there are no keys specified since the parent matched.
-					copyFromTo(tree.node(childPath), result.node(childPath), keys, keys == null ? -1 : 0);
+					visitor.matched(child, childPath, keys, keys == null ? -1 : 0);
 				}
 			}
 		}
-		return result;
+	}
+
+	/*
+	 * Streams preferences to an output in the export file format. The header entries
+	 * are written before the first preference, so nothing is written if there are no
+	 * preferences to export.
+	 */
+	class ExportWriter {
+		private final PropertiesWriter writer;
+		private final String exportRoot;
+		private final Set<String> versionedBundles = new HashSet<>();
+		private boolean started = false;
+
+		ExportWriter(OutputStream output, String exportRoot) {
+			this.writer = new PropertiesWriter(output);
+			this.exportRoot = exportRoot;
+		}
+
+		void write(Preferences node, String key, String value) throws IOException {
+			if (value == null)
+				return;
+			if (!started) {
+				writer.writeTimestamp();
+				writer.write(VERSION_KEY, Float.toString(EXPORT_VERSION));
+				writer.write(EXPORT_ROOT_PREFIX + exportRoot, EMPTY_STRING);
+				started = true;
+			}
+			String absolutePath = node.absolutePath();
+			if (InstanceScope.SCOPE.equals(getScope(absolutePath))) {
+				String bundle = getBundleName(absolutePath);
+				if (bundle != null && versionedBundles.add(bundle)) {
+					String version = getBundleVersion(bundle);
+					if (version != null)
+						writer.write(BUNDLE_VERSION_PREFIX + bundle, version);
+				}
+			}
+			writer.write(EclipsePreferences.encodePath(absolutePath, key), value);
+		}
+
+		void flush() throws IOException {
+			writer.flush();
+		}
 	}
 
 	/*
@@ -1112,5 +1239,6 @@ public class PreferencesService implements IPreferencesService {
 		if (order == null)
 			order = new String[0];
 		DEFAULT_DEFAULT_LOOKUP_ORDER = order;
+		PreferenceLookupCache.invalidate();
 	}
 }
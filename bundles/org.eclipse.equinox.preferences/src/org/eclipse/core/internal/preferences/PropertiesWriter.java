@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.preferences;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+/**
+ * Writes key/value pairs to a stream one at a time in the format of
+ * {@link java.util.Properties#store(OutputStream, String)}, so that large
+ * preference trees can be exported without first collecting all pairs
+ * in memory. The output can be read with {@link java.util.Properties#load(InputStream)}.
+ * <p>
+ * Unlike <code>Properties</code>, this writer does not detect duplicate keys.
+ * </p>
+ */
+public class PropertiesWriter {
+
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1"); //$NON-NLS-1$
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray(); //$NON-NLS-1$
+
+	private final Writer writer;
+	private final StringBuilder buffer = new StringBuilder();
+	private final String lineSeparator = System.getProperty("line.separator"); //$NON-NLS-1$
+
+	public PropertiesWriter(OutputStream output) {
+		this.writer = new BufferedWriter(new OutputStreamWriter(output, ISO_8859_1));
+	}
+
+	/**
+	 * Writes the date comment which <code>Properties</code> writes at the
+	 * beginning of the output.
+	 */
+	public void writeTimestamp() throws IOException {
+		writer.write('#');
+		writer.write(new Date().toString());
+		writer.write(lineSeparator);
+	}
+
+	public void write(String key, String value) throws IOException {
+		buffer.setLength(0);
+		escape(key, true);
+		buffer.append('=');
+		escape(value, false);
+		buffer.append(lineSeparator);
+		writer.write(buffer.toString());
+	}
+
+	/**
+	 * Flushes the buffered output to the underlying stream. The stream is not closed.
+	 */
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	/*
+	 * Same escaping as Properties#store.
+	 */
+	private void escape(String string, boolean isKey) {
+		for (int i = 0, length = string.length(); i < length; i++) {
+			char c = string.charAt(i);
+			if (c > 61 && c < 127) {
+				if (c == '\\')
+					buffer.append('\\');
+				buffer.append(c);
+				continue;
+			}
+			switch (c) {
+				case ' ' :
+					if (i == 0 || isKey)
+						buffer.append('\\');
+					buffer.append(' ');
+					break;
+				case '\t' :
+					buffer.append("\\t"); //$NON-NLS-1$
+					break;
+				case '\n' :
+					buffer.append("\\n"); //$NON-NLS-1$
+					break;
+				case '\r' :
+					buffer.append("\\r"); //$NON-NLS-1$
+					break;
+				case '\f' :
+					buffer.append("\\f"); //$NON-NLS-1$
+					break;
+				case '=' :
+				case ':' :
+				case '#' :
+				case '!' :
+					buffer.append('\\').append(c);
+					break;
+				default :
+					if (c < 0x0020 || c > 0x007e) {
+						buffer.append("\\u"); //$NON-NLS-1$
+						buffer.append(HEX_DIGITS[(c >> 12) & 0xF]);
+						buffer.append(HEX_DIGITS[(c >> 8) & 0xF]);
+						buffer.append(HEX_DIGITS[(c >> 4) & 0xF]);
+						buffer.append(HEX_DIGITS[c & 0xF]);
+					} else {
+						buffer.append(c);
+					}
+			}
+		}
+	}
+}
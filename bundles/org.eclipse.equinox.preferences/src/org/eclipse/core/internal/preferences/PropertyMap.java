@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.preferences;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mutable hash table of {String --> String} holding the key/value pairs of
+ * a preference node.
+ * <p>
+ * Unlike the other {@link ImmutableMap}s, modifications are made in place, so
+ * adding or removing a key takes constant amortized time regardless of the
+ * size of the node. {@link #put(String, String)} and {@link #removeKey(String)}
+ * return the receiver, so code written against the copy-on-write contract of
+ * {@link ImmutableMap} keeps working, but a reference to the map no longer
+ * gives a snapshot of its contents. Reads are lock free and may run
+ * concurrently with a modification. Callers are expected to serialize
+ * modifications themselves, as {@link EclipsePreferences} does with its child
+ * and property lock.
+ * </p><p>
+ * The methods returning several keys or values return snapshots which are
+ * not affected by later modifications.
+ * </p>
+ */
+public final class PropertyMap extends ImmutableMap {
+
+	private final ConcurrentHashMap<String, String> map = new ConcurrentHashMap<>(4);
+
+	/**
+	 * Returns a new property map holding the key/value pairs of the given map.
+	 */
+	static PropertyMap copyOf(ImmutableMap source) {
+		PropertyMap result = new PropertyMap();
+		String[] keys = source.keys();
+		for (int i = 0; i < keys.length; i++) {
+			String value = source.get(keys[i]);
+			if (value != null)
+				result.map.put(keys[i], value);
+		}
+		return result;
+	}
+
+	@Override
+	public String get(String key) {
+		return map.get(key);
+	}
+
+	@Override
+	protected void internalPut(String key, String value) {
+		map.put(key, value);
+	}
+
+	/**
+	 * Associates the given value with the given key in this map.
+	 *
+	 * @return this map
+	 */
+	@Override
+	public ImmutableMap put(String key, String value) {
+		map.put(key, value);
+		return this;
+	}
+
+	/**
+	 * Removes the given key from this map.
+	 *
+	 * @return this map
+	 */
+	@Override
+	public ImmutableMap removeKey(String key) {
+		map.remove(key);
+		return this;
+	}
+
+	/**
+	 * Removes the given key and returns its value, or <code>null</code> if
+	 * the key was not present in the map.
+	 */
+	public String remove(String key) {
+		return map.remove(key);
+	}
+
+	/**
+	 * Returns a snapshot of all keys in this map.
+	 */
+	@Override
+	public String[] keys() {
+		if (map.isEmpty())
+			return EMPTY_STRING_ARRAY;
+		return map.keySet().toArray(EMPTY_STRING_ARRAY);
+	}
+
+	/**
+	 * Returns a snapshot of all key/value pairs in this map as an array
+	 * of alternating keys and values.
+	 */
+	public String[] entries() {
+		if (map.isEmpty())
+			return EMPTY_STRING_ARRAY;
+		String[] result = new String[map.size() * 2];
+		int next = 0;
+		for (Map.Entry<String, String> entry : map.entrySet()) {
+			// the map may have grown since the array was allocated
+			if (next == result.length) {
+				String[] grown = new String[result.length * 2];
+				System.arraycopy(result, 0, grown, 0, next);
+				result = grown;
+			}
+			result[next++] = entry.getKey();
+			result[next++] = entry.getValue();
+		}
+		if (next == result.length)
+			return result;
+		String[] trimmed = new String[next];
+		System.arraycopy(result, 0, trimmed, 0, next);
+		return trimmed;
+	}
+
+	/**
+	 * Replaces the values of this map by their canonical copies in the given
+	 * pool and adds the keys to the pool. A value which is modified
+	 * concurrently is left untouched.
+	 */
+	@Override
+	public void shareStrings(StringPool pool) {
+		for (Iterator<Map.Entry<String, String>> i = map.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<String, String> entry = i.next();
+			String key = pool.add(entry.getKey());
+			String value = entry.getValue();
+			String shared = pool.add(value);
+			if (shared != value)
+				map.replace(key, value, shared);
+		}
+	}
+
+	@Override
+	public int size() {
+		return map.size();
+	}
+
+	@Override
+	public String toString() {
+		StringBuffer s = new StringBuffer();
+		String[] entries = entries();
+		for (int i = 0; i < entries.length; i += 2)
+			s.append(entries[i]).append(" -> ").append(entries[i + 1]).append("\n"); //$NON-NLS-2$ //$NON-NLS-1$
+		return s.toString();
+	}
+}
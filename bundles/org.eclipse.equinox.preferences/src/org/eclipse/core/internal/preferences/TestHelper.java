@@ -23,4 +23,13 @@ public class TestHelper {
 	public static IPath getInstanceBaseLocation() {
 		return InstancePreferences.getBaseLocation();
 	}
+
+	public static void startFlushScheduler(long delay) {
+		PreferenceFlushScheduler.stop();
+		PreferenceFlushScheduler.start(Long.toString(delay));
+	}
+
+	public static void stopFlushScheduler() {
+		PreferenceFlushScheduler.stop();
+	}
 }
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.runtime.preferences;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.eclipse.core.runtime.ISafeRunnable;
+import org.eclipse.core.runtime.SafeRunner;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
+
+/**
+ * A preference change listener which delivers changes asynchronously and in
+ * batches instead of once per change on the thread making the change.
+ * <p>
+ * The listener is registered like any other preference change listener via
+ * {@link IEclipsePreferences#addPreferenceChangeListener(IPreferenceChangeListener)}.
+ * Changes are collected until the batch is delivered to
+ * {@link #preferenceChanges(PreferenceChangeEvent[])} on the given executor.
+ * Within a batch, the changes to the same key of the same node are coalesced
+ * into a single event carrying the value before the first change and the
+ * value after the last change. A key whose value ends up unchanged is not
+ * reported at all. Batches are delivered one at a time and in order, even
+ * if the executor runs tasks concurrently.
+ * </p><p>
+ * The listener does not create any thread of its own. The lifecycle of the
+ * executor remains with the client, which should remove the listener before
+ * shutting the executor down.
+ * </p><p>
+ * This is useful for listeners which react to bulk updates such as imports,
+ * where being notified synchronously for every key would slow the update down.
+ * </p><p>
+ * Clients may subclass this type.
+ * </p>
+ *
+ * @since 3.7
+ */
+public abstract class BatchingPreferenceChangeListener implements IPreferenceChangeListener {
+
+	private static final PreferenceChangeEvent[] EMPTY_EVENT_ARRAY = new PreferenceChangeEvent[0];
+
+	private final long delay;
+	private final Executor executor;
+	private final ScheduledExecutorService scheduler;
+	private final Object lock = new Object();
+
+	/**
+	 * The coalesced changes of the next batch, guarded by lock.
+	 */
+	private Map<Key, PreferenceChangeEvent> pending;
+	/**
+	 * Whether a batch is scheduled or being delivered, guarded by lock.
+	 */
+	private boolean scheduled = false;
+
+	private final Runnable deliverTask = new Runnable() {
+		@Override
+		public void run() {
+			deliver();
+		}
+	};
+
+	/**
+	 * Creates a listener which delivers batches on the given executor. A batch
+	 * contains the changes made until the executor runs the delivery.
+	 *
+	 * @param executor the executor to deliver the batches on
+	 */
+	protected BatchingPreferenceChangeListener(Executor executor) {
+		if (executor == null)
+			throw new IllegalArgumentException();
+		this.executor = executor;
+		this.scheduler = null;
+		this.delay = 0;
+	}
+
+	/**
+	 * Creates a listener which delivers batches on the given scheduled executor.
+	 * A batch is delivered the given number of milliseconds after its first
+	 * change, and contains the changes made until then.
+	 *
+	 * @param scheduler the scheduled executor to deliver the batches on
+	 * @param delay the batch window in milliseconds
+	 */
+	protected BatchingPreferenceChangeListener(ScheduledExecutorService scheduler, long delay) {
+		if (scheduler == null)
+			throw new IllegalArgumentException();
+		this.executor = scheduler;
+		this.scheduler = scheduler;
+		this.delay = delay;
+	}
+
+	/**
+	 * Records the change for the next batch. This method is called by the
+	 * preference node and must not be overridden.
+	 */
+	@Override
+	public final void preferenceChange(PreferenceChangeEvent event) {
+		boolean schedule;
+		synchronized (lock) {
+			if (pending == null)
+				pending = new LinkedHashMap<>();
+			Key key = new Key(event.getNode(), event.getKey());
+			PreferenceChangeEvent previous = pending.get(key);
+			if (previous == null)
+				pending.put(key, event);
+			else if (equals(previous.getOldValue(), event.getNewValue()))
+				pending.remove(key);
+			else
+				pending.put(key, new PreferenceChangeEvent(event.getNode(), event.getKey(), previous.getOldValue(), event.getNewValue()));
+			schedule = !scheduled;
+			scheduled = true;
+		}
+		if (schedule)
+			schedule();
+	}
+
+	/**
+	 * Notification that a batch of preference values has changed. The events
+	 * are in the order in which the keys were first changed in the batch and
+	 * the array is never empty.
+	 *
+	 * @param events the coalesced changes
+	 */
+	protected abstract void preferenceChanges(PreferenceChangeEvent[] events);
+
+	private void schedule() {
+		try {
+			if (delay > 0)
+				scheduler.schedule(deliverTask, delay, TimeUnit.MILLISECONDS);
+			else
+				executor.execute(deliverTask);
+		} catch (RuntimeException e) {
+			// the next change will try again
+			synchronized (lock) {
+				scheduled = false;
+			}
+			throw e;
+		}
+	}
+
+	private void deliver() {
+		final PreferenceChangeEvent[] events;
+		synchronized (lock) {
+			events = pending == null ? EMPTY_EVENT_ARRAY : pending.values().toArray(EMPTY_EVENT_ARRAY);
+			pending = null;
+		}
+		try {
+			if (events.length > 0) {
+				SafeRunner.run(new ISafeRunnable() {
+					@Override
+					public void handleException(Throwable exception) {
+						// already logged in SafeRunner#run()
+					}
+
+					@Override
+					public void run() throws Exception {
+						preferenceChanges(events);
+					}
+				});
+			}
+		} finally {
+			boolean reschedule;
+			synchronized (lock) {
+				// keep batches in order, changes made during the delivery form the next batch
+				reschedule = pending != null && !pending.isEmpty();
+				scheduled = reschedule;
+			}
+			if (reschedule)
+				schedule();
+		}
+	}
+
+	private static boolean equals(Object value1, Object value2) {
+		return value1 == null ? value2 == null : value1.equals(value2);
+	}
+
+	private static final class Key {
+		private final Object node;
+		private final String key;
+
+		Key(Object node, String key) {
+			this.node = node;
+			this.key = key;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			// nodes are compared by identity, a removed and re-created node is a different node
+			return node == other.node && key.equals(other.key);
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(node) * 31 + key.hashCode();
+		}
+	}
+}
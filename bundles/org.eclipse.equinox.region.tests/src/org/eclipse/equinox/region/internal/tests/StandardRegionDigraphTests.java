@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2013 VMware Inc.
+ * Copyright (c) 2011, 2016 VMware Inc.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -213,6 +213,28 @@ public class StandardRegionDigraphTests {
 		assertTrue(regions.contains(this.mockRegion2));
 	}
 
+	@Test
+	public void testReadsAreNotAffectedByLaterChanges() throws BundleException {
+		setDefaultFilters();
+		replayMocks();
+
+		this.digraph.connect(this.mockRegion1, this.regionFilter1, this.mockRegion2);
+		Set<FilteredRegion> edges = this.digraph.getEdges(this.mockRegion1);
+		Iterator<Region> regions = this.digraph.iterator();
+		this.digraph.connect(this.mockRegion1, this.regionFilter2, this.mockRegion3);
+		this.digraph.removeRegion(this.mockRegion2);
+
+		assertEquals(1, edges.size());
+		assertEquals(this.mockRegion2, edges.iterator().next().getRegion());
+		Set<Region> iterated = new HashSet<Region>();
+		while (regions.hasNext()) {
+			iterated.add(regions.next());
+		}
+		assertEquals(2, iterated.size());
+		assertTrue(iterated.contains(this.mockRegion2));
+		assertEquals(1, this.digraph.getEdges(this.mockRegion1).size());
+	}
+
 	private static final String REGION_A = "A";
 	private static final String REGION_B = "B";
 	private static final String REGION_C = "C";
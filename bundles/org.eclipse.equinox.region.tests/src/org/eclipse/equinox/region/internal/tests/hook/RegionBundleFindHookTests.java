@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2013 VMware Inc.
+ * Copyright (c) 2011, 2016 VMware Inc.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -243,6 +243,55 @@ public class RegionBundleFindHookTests {
 		assertEquals(0, this.candidates.size());
 	}
 
+	@Test
+	public void testFindAfterDigraphChange() throws BundleException, InvalidSyntaxException {
+		this.candidates.add(bundle(BUNDLE_B));
+		this.bundleFindHook.find(bundleContext(BUNDLE_A), this.candidates);
+		assertFalse(this.candidates.contains(bundle(BUNDLE_B)));
+
+		this.digraph.connect(region(REGION_A), createFilter(false, BUNDLE_B), region(REGION_B));
+		this.candidates.add(bundle(BUNDLE_B));
+		this.candidates.add(bundle(BUNDLE_X));
+		this.bundleFindHook.find(bundleContext(BUNDLE_A), this.candidates);
+		assertTrue(this.candidates.contains(bundle(BUNDLE_B)));
+		assertFalse(this.candidates.contains(bundle(BUNDLE_X)));
+
+		this.digraph.replaceConnection(region(REGION_A), createFilter(false, BUNDLE_X), region(REGION_B));
+		region(REGION_B).addBundle(bundle(BUNDLE_X));
+		this.candidates.add(bundle(BUNDLE_B));
+		this.candidates.add(bundle(BUNDLE_X));
+		this.bundleFindHook.find(bundleContext(BUNDLE_A), this.candidates);
+		assertFalse(this.candidates.contains(bundle(BUNDLE_B)));
+		assertTrue(this.candidates.contains(bundle(BUNDLE_X)));
+
+		this.digraph.removeRegion(region(REGION_B));
+		this.candidates.add(bundle(BUNDLE_X));
+		this.bundleFindHook.find(bundleContext(BUNDLE_A), this.candidates);
+		assertFalse(this.candidates.contains(bundle(BUNDLE_X)));
+	}
+
+	@Test
+	public void testFindInDenseGraph() throws BundleException, InvalidSyntaxException {
+		// a complete digraph has too many paths to be precomputed
+		List<Region> dense = new ArrayList<Region>();
+		for (int i = 0; i < 8; i++) {
+			dense.add(createRegion("Dense" + i, "DenseBundle" + i));
+		}
+		for (Region tail : dense) {
+			for (Region head : dense) {
+				if (!tail.equals(head)) {
+					tail.connectRegion(head, createFilter(false, "DenseBundle7"));
+				}
+			}
+		}
+
+		this.candidates.add(bundle("DenseBundle1"));
+		this.candidates.add(bundle("DenseBundle7"));
+		this.bundleFindHook.find(bundleContext("DenseBundle0"), this.candidates);
+		assertEquals(1, this.candidates.size());
+		assertTrue(this.candidates.contains(bundle("DenseBundle7")));
+	}
+
 	private Region createRegion(String regionName, String... bundleSymbolicNames) throws BundleException {
 		Region region = this.digraph.createRegion(regionName);
 		for (String bundleSymbolicName : bundleSymbolicNames) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2013 IBM Corporation and others.
+ * Copyright (c) 2011, 2016 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -57,6 +57,16 @@ public class RegionPerformanceTests extends AbstractRegionSystemTest {
 		doTestGetBundles(null, null);
 	}
 
+	public void testGetBundles100FilteredRegions() throws BundleException, InvalidSyntaxException {
+		createFilteredRegions(100);
+		doTestGetBundles(null, null);
+	}
+
+	public void testGetBundles1000FilteredRegions() throws BundleException, InvalidSyntaxException {
+		createFilteredRegions(1000);
+		doTestGetBundles(null, null);
+	}
+
 	public void testGetServicesNoRegions() {
 		doTestGetServices(null, null);
 	}
@@ -76,6 +86,16 @@ public class RegionPerformanceTests extends AbstractRegionSystemTest {
 		doTestGetServices(null, null);
 	}
 
+	public void testGetServices100FilteredRegions() throws BundleException, InvalidSyntaxException {
+		createFilteredRegions(100);
+		doTestGetServices(null, null);
+	}
+
+	public void testGetServices1000FilteredRegions() throws BundleException, InvalidSyntaxException {
+		createFilteredRegions(1000);
+		doTestGetServices(null, null);
+	}
+
 	public void testGetRegionByNameNoRegions() {
 		doTestGetRegionByName(null, null);
 	}
@@ -141,4 +161,19 @@ public class RegionPerformanceTests extends AbstractRegionSystemTest {
 		}
 		System.out.println("Done creating region: " + (System.currentTimeMillis() - time));
 	}
+
+	private void createFilteredRegions(final int numRegions) throws BundleException, InvalidSyntaxException {
+		System.out.println("Starting filtered region create: " + numRegions);
+		long time = System.currentTimeMillis();
+		Region system = digraph.getRegion(0);
+		RegionFilterBuilder builder = digraph.createRegionFilterBuilder();
+		builder.allow(RegionFilter.VISIBLE_BUNDLE_NAMESPACE, "(" + RegionFilter.VISIBLE_BUNDLE_NAMESPACE + "=*)");
+		builder.allow(RegionFilter.VISIBLE_SERVICE_NAMESPACE, "(" + Constants.OBJECTCLASS + "=*)");
+		RegionFilter filter = builder.build();
+		for (int i = 0; i < numRegions; i++) {
+			Region r = digraph.createRegion(getName() + i);
+			digraph.connect(system, filter, r);
+		}
+		System.out.println("Done creating filtered region: " + (System.currentTimeMillis() - time));
+	}
 }
@@ -0,0 +1,261 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.equinox.internal.region;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import org.eclipse.equinox.internal.region.StandardRegionDigraph.StandardFilteredRegion;
+import org.eclipse.equinox.region.Region;
+import org.eclipse.equinox.region.RegionDigraph.FilteredRegion;
+import org.eclipse.equinox.region.RegionFilter;
+
+/**
+ * {@link RegionDigraphSnapshot} is the frozen state of a {@link StandardRegionDigraph}: its regions, its edges and
+ * the association of bundles with regions at a given update count.
+ * <p />
+ * A digraph reads its current snapshot without locking. A modification derives a new snapshot from the current one,
+ * copying only the maps it changes, and the digraph publishes it in place of the current one. The reachability of
+ * the regions is cached per snapshot, so it is discarded together with the snapshot.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Immutable, apart from the reachability cache which is thread safe.
+ *
+ */
+final class RegionDigraphSnapshot {
+
+	static final Set<FilteredRegion> EMPTY_EDGE_SET = Collections.unmodifiableSet(new HashSet<FilteredRegion>());
+
+	static final RegionDigraphSnapshot EMPTY = new RegionDigraphSnapshot(0, new HashMap<String, Region>(), new HashMap<Region, Set<FilteredRegion>>(), new HashMap<Long, Region>(), new HashMap<Region, Set<Long>>());
+
+	private static final Set<Long> EMPTY_BUNDLE_IDS = Collections.unmodifiableSet(new HashSet<Long>());
+
+	private static final Object TOO_MANY_PATHS = new Object();
+
+	private final long updateCount;
+
+	private final Map<String, Region> regions;
+
+	// maps a given region to an immutable set of edges with their tail at the given region
+	private final Map<Region, Set<FilteredRegion>> edges;
+
+	private final Map<Long, Region> bundleToRegion;
+
+	// maps a given region to the immutable set of the ids of the bundles associated with it
+	private final Map<Region, Set<Long>> regionToBundles;
+
+	// regions with too many paths to precompute are mapped to TOO_MANY_PATHS
+	private final ConcurrentHashMap<Region, Object> reachability = new ConcurrentHashMap<Region, Object>();
+
+	/*
+	 * The given maps are owned by the new snapshot and must not be modified afterwards.
+	 */
+	RegionDigraphSnapshot(long updateCount, Map<String, Region> regions, Map<Region, Set<FilteredRegion>> edges, Map<Long, Region> bundleToRegion, Map<Region, Set<Long>> regionToBundles) {
+		this.updateCount = updateCount;
+		this.regions = Collections.unmodifiableMap(regions);
+		this.edges = Collections.unmodifiableMap(edges);
+		this.bundleToRegion = Collections.unmodifiableMap(bundleToRegion);
+		this.regionToBundles = Collections.unmodifiableMap(regionToBundles);
+	}
+
+	long getUpdateCount() {
+		return this.updateCount;
+	}
+
+	Region getRegion(String regionName) {
+		return this.regions.get(regionName);
+	}
+
+	Region getRegion(long bundleId) {
+		return this.bundleToRegion.get(bundleId);
+	}
+
+	Collection<Region> getRegions() {
+		return this.regions.values();
+	}
+
+	Set<FilteredRegion> getEdges(Region tailRegion) {
+		// Cope with the case where tailRegion is not in the digraph
+		Set<FilteredRegion> edgeSet = this.edges.get(tailRegion);
+		return edgeSet == null ? EMPTY_EDGE_SET : edgeSet;
+	}
+
+	Map<Region, Set<FilteredRegion>> getEdges() {
+		return this.edges;
+	}
+
+	Set<Long> getBundleIds(Region region) {
+		Set<Long> bundleIds = this.regionToBundles.get(region);
+		return bundleIds == null ? EMPTY_BUNDLE_IDS : bundleIds;
+	}
+
+	RegionReachability getReachability(Region region) {
+		Object result = this.reachability.get(region);
+		if (result == null) {
+			// racing threads compute the same result from the same snapshot
+			result = RegionReachability.compute(this, region);
+			if (result == null) {
+				result = TOO_MANY_PATHS;
+			}
+			this.reachability.putIfAbsent(region, result);
+		}
+		return result == TOO_MANY_PATHS ? null : (RegionReachability) result;
+	}
+
+	RegionDigraphSnapshot addRegion(Region region) {
+		Map<String, Region> newRegions = new HashMap<String, Region>(this.regions);
+		newRegions.put(region.getName(), region);
+		Map<Region, Set<FilteredRegion>> newEdges = new HashMap<Region, Set<FilteredRegion>>(this.edges);
+		newEdges.put(region, EMPTY_EDGE_SET);
+		return new RegionDigraphSnapshot(this.updateCount + 1, newRegions, newEdges, this.bundleToRegion, this.regionToBundles);
+	}
+
+	/*
+	 * Replaces the edges of the tail region and adds the tail and head regions if they are not in the digraph.
+	 */
+	RegionDigraphSnapshot connect(Region tailRegion, Set<FilteredRegion> tailEdges, Region headRegion) {
+		Map<String, Region> newRegions = new HashMap<String, Region>(this.regions);
+		newRegions.put(tailRegion.getName(), tailRegion);
+		newRegions.put(headRegion.getName(), headRegion);
+		Map<Region, Set<FilteredRegion>> newEdges = new HashMap<Region, Set<FilteredRegion>>(this.edges);
+		newEdges.put(tailRegion, Collections.unmodifiableSet(tailEdges));
+		if (!newEdges.containsKey(headRegion)) {
+			newEdges.put(headRegion, EMPTY_EDGE_SET);
+		}
+		return new RegionDigraphSnapshot(this.updateCount + 1, newRegions, newEdges, this.bundleToRegion, this.regionToBundles);
+	}
+
+	RegionDigraphSnapshot removeRegion(Region region) {
+		Map<String, Region> newRegions = new HashMap<String, Region>(this.regions);
+		newRegions.remove(region.getName());
+		Map<Region, Set<FilteredRegion>> newEdges = new HashMap<Region, Set<FilteredRegion>>(this.edges);
+		newEdges.remove(region);
+		for (Map.Entry<Region, Set<FilteredRegion>> entry : newEdges.entrySet()) {
+			for (FilteredRegion edge : entry.getValue()) {
+				if (region.equals(edge.getRegion())) {
+					Set<FilteredRegion> mutableEdgeSet = new HashSet<FilteredRegion>(entry.getValue());
+					mutableEdgeSet.remove(edge);
+					entry.setValue(Collections.unmodifiableSet(mutableEdgeSet));
+					break;
+				}
+			}
+		}
+		RegionDigraphSnapshot dissociated = dissociateRegion(region);
+		return new RegionDigraphSnapshot(this.updateCount + 1, newRegions, newEdges, dissociated.bundleToRegion, dissociated.regionToBundles);
+	}
+
+	/*
+	 * The caller must check that the bundle is not associated with another region.
+	 */
+	RegionDigraphSnapshot associateBundle(long bundleId, Region region) {
+		Map<Long, Region> newBundleToRegion = new HashMap<Long, Region>(this.bundleToRegion);
+		newBundleToRegion.put(bundleId, region);
+		Set<Long> bundleIds = new HashSet<Long>(getBundleIds(region));
+		bundleIds.add(bundleId);
+		Map<Region, Set<Long>> newRegionToBundles = new HashMap<Region, Set<Long>>(this.regionToBundles);
+		newRegionToBundles.put(region, Collections.unmodifiableSet(bundleIds));
+		return new RegionDigraphSnapshot(this.updateCount + 1, this.regions, this.edges, newBundleToRegion, newRegionToBundles);
+	}
+
+	RegionDigraphSnapshot dissociateBundle(long bundleId) {
+		Region region = this.bundleToRegion.get(bundleId);
+		if (region == null) {
+			return new RegionDigraphSnapshot(this.updateCount + 1, this.regions, this.edges, this.bundleToRegion, this.regionToBundles);
+		}
+		Map<Long, Region> newBundleToRegion = new HashMap<Long, Region>(this.bundleToRegion);
+		newBundleToRegion.remove(bundleId);
+		Set<Long> bundleIds = new HashSet<Long>(getBundleIds(region));
+		bundleIds.remove(bundleId);
+		Map<Region, Set<Long>> newRegionToBundles = new HashMap<Region, Set<Long>>(this.regionToBundles);
+		if (bundleIds.isEmpty()) {
+			newRegionToBundles.remove(region);
+		} else {
+			newRegionToBundles.put(region, Collections.unmodifiableSet(bundleIds));
+		}
+		return new RegionDigraphSnapshot(this.updateCount + 1, this.regions, this.edges, newBundleToRegion, newRegionToBundles);
+	}
+
+	RegionDigraphSnapshot dissociateRegion(Region region) {
+		Set<Long> bundleIds = getBundleIds(region);
+		if (bundleIds.isEmpty()) {
+			return new RegionDigraphSnapshot(this.updateCount + 1, this.regions, this.edges, this.bundleToRegion, this.regionToBundles);
+		}
+		Map<Long, Region> newBundleToRegion = new HashMap<Long, Region>(this.bundleToRegion);
+		newBundleToRegion.keySet().removeAll(bundleIds);
+		Map<Region, Set<Long>> newRegionToBundles = new HashMap<Region, Set<Long>>(this.regionToBundles);
+		newRegionToBundles.remove(region);
+		return new RegionDigraphSnapshot(this.updateCount + 1, this.regions, this.edges, newBundleToRegion, newRegionToBundles);
+	}
+
+	RegionDigraphSnapshot clearBundles() {
+		return new RegionDigraphSnapshot(this.updateCount + 1, this.regions, this.edges, new HashMap<Long, Region>(), new HashMap<Region, Set<Long>>());
+	}
+
+	/**
+	 * Creates a snapshot with the structure of this snapshot for a different set of region objects. Each region of
+	 * this snapshot is mapped to the region with the same name in the given existing regions, or to a region obtained
+	 * from the factory otherwise.
+	 *
+	 * @param updateCount the update count of the new snapshot
+	 * @param existingRegions the snapshot whose regions are reused
+	 * @param factory creates the missing regions
+	 * @param added collects the regions obtained from the factory
+	 * @return the new snapshot
+	 */
+	RegionDigraphSnapshot copy(long updateCount, RegionDigraphSnapshot existingRegions, RegionFactory factory, Set<Region> added) {
+		Map<Region, Region> copies = new HashMap<Region, Region>();
+		Map<String, Region> newRegions = new HashMap<String, Region>();
+		Map<Long, Region> newBundleToRegion = new HashMap<Long, Region>();
+		Map<Region, Set<Long>> newRegionToBundles = new HashMap<Region, Set<Long>>();
+		for (Region original : this.regions.values()) {
+			Region copy = existingRegions.getRegion(original.getName());
+			if (copy == null) {
+				copy = factory.createRegion(original.getName());
+				added.add(copy);
+			}
+			copies.put(original, copy);
+			newRegions.put(copy.getName(), copy);
+			Set<Long> bundleIds = getBundleIds(original);
+			if (!bundleIds.isEmpty()) {
+				// the immutable set of ids can be shared
+				newRegionToBundles.put(copy, bundleIds);
+				for (Long bundleId : bundleIds) {
+					newBundleToRegion.put(bundleId, copy);
+				}
+			}
+		}
+		Map<Region, Set<FilteredRegion>> newEdges = new HashMap<Region, Set<FilteredRegion>>();
+		for (Region copy : newRegions.values()) {
+			newEdges.put(copy, EMPTY_EDGE_SET);
+		}
+		for (Map.Entry<Region, Set<FilteredRegion>> entry : this.edges.entrySet()) {
+			if (entry.getValue().isEmpty()) {
+				continue;
+			}
+			Set<FilteredRegion> connections = new HashSet<FilteredRegion>();
+			for (FilteredRegion edge : entry.getValue()) {
+				RegionFilter filter = edge.getFilter();
+				connections.add(new StandardFilteredRegion(copies.get(edge.getRegion()), filter));
+			}
+			newEdges.put(copies.get(entry.getKey()), Collections.unmodifiableSet(connections));
+		}
+		return new RegionDigraphSnapshot(updateCount, newRegions, newEdges, newBundleToRegion, newRegionToBundles);
+	}
+
+	/**
+	 * Creates the regions of a copied snapshot.
+	 */
+	interface RegionFactory {
+		Region createRegion(String regionName);
+	}
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.equinox.internal.region;
+
+import java.util.*;
+import org.eclipse.equinox.region.Region;
+import org.eclipse.equinox.region.RegionDigraph.FilteredRegion;
+import org.eclipse.equinox.region.RegionFilter;
+
+/**
+ * {@link RegionReachability} is the precomputed traversal of the subgraph of a region in a
+ * {@link RegionDigraphSnapshot}: every region reachable from it together with the filters along each path leading
+ * there. Whether a candidate is visible from the region can
+ * then be decided by looking up the region containing the candidate, instead of visiting the subgraph.
+ * <p />
+ * The paths are the same as those followed by {@link SubgraphTraverser}, which does not visit a region twice on
+ * the same path. As the number of paths can grow exponentially in densely connected digraphs, no reachability is
+ * computed if there are more than {@link #MAX_PATHS} paths.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Immutable.
+ *
+ */
+public final class RegionReachability {
+
+	static final int MAX_PATHS = 1000;
+
+	private static final RegionFilter[][] NO_PATHS = new RegionFilter[0][];
+
+	private final Region region;
+
+	private final Map<Region, RegionFilter[][]> paths;
+
+	private RegionReachability(Region region, Map<Region, RegionFilter[][]> paths) {
+		this.region = region;
+		this.paths = paths;
+	}
+
+	/**
+	 * Computes the reachability of the given region in the given snapshot.
+	 *
+	 * @param snapshot the snapshot providing the edges
+	 * @param region the starting region
+	 * @return the reachability or <code>null</code> if there are too many paths
+	 */
+	static RegionReachability compute(RegionDigraphSnapshot snapshot, Region region) {
+		Map<Region, List<RegionFilter[]>> found = new HashMap<Region, List<RegionFilter[]>>();
+		Set<Region> path = new HashSet<Region>();
+		path.add(region);
+		if (!traverse(snapshot, region, path, new ArrayList<RegionFilter>(), found, new int[] {0})) {
+			return null;
+		}
+		Map<Region, RegionFilter[][]> paths = new HashMap<Region, RegionFilter[][]>((int) ((found.size() / 0.75) + 1));
+		for (Map.Entry<Region, List<RegionFilter[]>> entry : found.entrySet()) {
+			List<RegionFilter[]> filters = entry.getValue();
+			paths.put(entry.getKey(), filters.toArray(new RegionFilter[filters.size()][]));
+		}
+		return new RegionReachability(region, paths);
+	}
+
+	private static boolean traverse(RegionDigraphSnapshot snapshot, Region tail, Set<Region> path, List<RegionFilter> filters, Map<Region, List<RegionFilter[]>> found, int[] count) {
+		for (FilteredRegion edge : snapshot.getEdges(tail)) {
+			Region head = edge.getRegion();
+			if (path.contains(head)) {
+				continue;
+			}
+			if (++count[0] > MAX_PATHS) {
+				return false;
+			}
+			filters.add(edge.getFilter());
+			List<RegionFilter[]> headPaths = found.get(head);
+			if (headPaths == null) {
+				headPaths = new ArrayList<RegionFilter[]>(1);
+				found.put(head, headPaths);
+			}
+			headPaths.add(filters.toArray(new RegionFilter[filters.size()]));
+			path.add(head);
+			boolean complete = traverse(snapshot, head, path, filters, found, count);
+			path.remove(head);
+			filters.remove(filters.size() - 1);
+			if (!complete) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the starting region.
+	 *
+	 * @return the starting region
+	 */
+	public Region getRegion() {
+		return this.region;
+	}
+
+	/**
+	 * Returns the filters of each path from the starting region to the given region. A candidate in the given region
+	 * is visible from the starting region if and only if all the filters of at least one path allow it.
+	 *
+	 * @param target the region to reach
+	 * @return the filters of each path, empty if the region is not reachable
+	 */
+	public RegionFilter[][] getPaths(Region target) {
+		RegionFilter[][] result = this.paths.get(target);
+		return result == null ? NO_PATHS : result;
+	}
+}
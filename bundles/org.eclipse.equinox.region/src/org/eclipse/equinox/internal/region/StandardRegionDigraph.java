@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2015 VMware Inc. and others
+ * Copyright (c) 2011, 2016 VMware Inc. and others
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,7 +12,6 @@
 package org.eclipse.equinox.internal.region;
 
 import java.util.*;
-import java.util.concurrent.atomic.AtomicLong;
 import org.eclipse.equinox.internal.region.hook.*;
 import org.eclipse.equinox.region.*;
 import org.osgi.framework.*;
@@ -25,26 +24,19 @@ import org.osgi.framework.hooks.resolver.ResolverHookFactory;
  * 
  * <strong>Concurrent Semantics</strong><br />
  * 
- * Thread safe.
+ * Thread safe. The regions, edges and bundle associations are held in an immutable {@link RegionDigraphSnapshot}
+ * which is read without locking. Modifications are serialized by a monitor and publish a new snapshot.
  * 
  */
 public final class StandardRegionDigraph implements BundleIdToRegionMapping, RegionDigraph {
 
-	private static final Set<FilteredRegion> EMPTY_EDGE_SET = Collections.unmodifiableSet(new HashSet<FilteredRegion>());
-
-	// This monitor guards the modifications and read operations on the digraph as well as 
+	// This monitor serializes the modifications of the digraph as well as 
 	// bundle id modifications of all regions in this digraph
 	private final Object monitor = new Object();
 
-	private final Map<String, Region> regions = new HashMap<String, Region>();
-
-	// Alien calls may be made to the following object while this.monitor is locked
-	// as this.monitor is higher in the lock hierarchy than this object's own monitor.
-	private final BundleIdToRegionMapping bundleIdToRegionMapping;
-
-	/* edges maps a given region to an immutable set of edges with their tail at the given region. To update
-	 * the edges for a region, the corresponding immutable set is replaced atomically. */
-	private final Map<Region, Set<FilteredRegion>> edges = new HashMap<Region, Set<FilteredRegion>>();
+	/* snapshot is the current state of the digraph. Read operations use it without locking, modifications
+	 * derive a new snapshot and replace it while this.monitor is locked. */
+	private volatile RegionDigraphSnapshot snapshot = RegionDigraphSnapshot.EMPTY;
 
 	private final BundleContext bundleContext;
 
@@ -62,7 +54,6 @@ public final class StandardRegionDigraph implements BundleIdToRegionMapping, Reg
 	private final StandardRegionDigraph origin;
 	// Guarded by the origin monitor
 	private long originUpdateCount;
-	private final AtomicLong updateCount = new AtomicLong();
 
 	private volatile Region defaultRegion;
 
@@ -77,7 +68,6 @@ public final class StandardRegionDigraph implements BundleIdToRegionMapping, Reg
 
 	private StandardRegionDigraph(BundleContext bundleContext, ThreadLocal<Region> threadLocal, StandardRegionDigraph origin) throws BundleException {
 		this.subgraphTraverser = new SubgraphTraverser();
-		this.bundleIdToRegionMapping = new StandardBundleIdToRegionMapping();
 		this.bundleContext = bundleContext;
 		this.threadLocal = threadLocal;
 
@@ -93,10 +83,10 @@ public final class StandardRegionDigraph implements BundleIdToRegionMapping, Reg
 		this.serviceEventHook = new RegionServiceEventHook(this);
 		this.origin = origin;
 		if (origin != null) {
-			synchronized (origin.monitor) {
-				this.originUpdateCount = origin.updateCount.get();
-				this.replace(origin, false);
-			}
+			// the snapshot of the origin is immutable, so it is copied without locking the origin
+			RegionDigraphSnapshot originSnapshot = origin.snapshot;
+			this.originUpdateCount = originSnapshot.getUpdateCount();
+			this.snapshot = originSnapshot.copy(0, RegionDigraphSnapshot.EMPTY, regionFactory(), new HashSet<Region>());
 		} else {
 			this.originUpdateCount = -1;
 		}
@@ -116,9 +106,7 @@ public final class StandardRegionDigraph implements BundleIdToRegionMapping, Reg
 			if (getRegion(regionName) != null) {
 				throw new BundleException("Region '" + regionName + "' already exists", BundleException.UNSUPPORTED_OPERATION); //$NON-NLS-1$ //$NON-NLS-2$
 			}
-			this.regions.put(region.getName(), region);
-			this.edges.put(region, EMPTY_EDGE_SET);
-			incrementUpdateCount();
+			this.snapshot = this.snapshot.addRegion(region);
 		}
 		if (notify) {
 			notifyAdded(region);
@@ -159,26 +147,22 @@ public final class StandardRegionDigraph implements BundleIdToRegionMapping, Reg
 		boolean tailAdded = false;
 		boolean headAdded = false;
 		synchronized (this.monitor) {
-			Set<FilteredRegion> connections = this.edges.get(tailRegion);
-			if (connections == null) {
-				connections = new HashSet<FilteredRegion>();
-			} else {
-				connections = new HashSet<FilteredRegion>(connections);
-				for (FilteredRegion edge : connections) {
-					if (headRegion.equals(edge.getRegion())) {
-						if (replace) {
-							existing = edge;
-						} else {
-							throw new BundleException("Region '" + tailRegion + "' is already connected to region '" + headRegion, BundleException.UNSUPPORTED_OPERATION); //$NON-NLS-1$ //$NON-NLS-2$
-						}
+			RegionDigraphSnapshot current = this.snapshot;
+			Set<FilteredRegion> connections = new HashSet<FilteredRegion>(current.getEdges(tailRegion));
+			for (FilteredRegion edge : connections) {
+				if (headRegion.equals(edge.getRegion())) {
+					if (replace) {
+						existing = edge;
+					} else {
+						throw new BundleException("Region '" + tailRegion + "' is already connected to region '" + headRegion, BundleException.UNSUPPORTED_OPERATION); //$NON-NLS-1$ //$NON-NLS-2$
 					}
 				}
 			}
 
 			checkFilterDoesNotAllowExistingBundle(tailRegion, filter);
 
-			tailAdded = this.regions.put(tailRegion.getName(), tailRegion) == null;
-			headAdded = this.regions.put(headRegion.getName(), headRegion) == null;
+			tailAdded = current.getRegion(tailRegion.getName()) == null;
+			headAdded = current.getRegion(headRegion.getName()) == null;
 
 			if (existing != null) {
 				connections.remove(existing);
@@ -188,8 +172,7 @@ public final class StandardRegionDigraph implements BundleIdToRegionMapping, Reg
 				connections.add(new StandardFilteredRegion(headRegion, filter));
 			}
 
-			this.edges.put(tailRegion, Collections.unmodifiableSet(connections));
-			incrementUpdateCount();
+			this.snapshot = current.connect(tailRegion, connections, headRegion);
 		}
 		if (tailAdded) {
 			notifyAdded(tailRegion);
@@ -208,22 +191,14 @@ public final class StandardRegionDigraph implements BundleIdToRegionMapping, Reg
 	 * {@inheritDoc}
 	 */
 	public Iterator<Region> iterator() {
-		synchronized (this.monitor) {
-			Set<Region> snapshot = new HashSet<Region>(this.regions.size());
-			snapshot.addAll(this.regions.values());
-			return snapshot.iterator();
-		}
+		return Collections.unmodifiableCollection(this.snapshot.getRegions()).iterator();
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	public Set<FilteredRegion> getEdges(Region tailRegion) {
-		synchronized (this.monitor) {
-			// Cope with the case where tailRegion is not in the digraph
-			Set<FilteredRegion> edgeSet = this.edges.get(tailRegion);
-			return edgeSet == null ? EMPTY_EDGE_SET : edgeSet;
-		}
+		return this.snapshot.getEdges(tailRegion);
 	}
 
 	static class StandardFilteredRegion implements FilteredRegion {
@@ -251,9 +226,7 @@ public final class StandardRegionDigraph implements BundleIdToRegionMapping, Reg
 	 * {@inheritDoc}
 	 */
 	public Region getRegion(String regionName) {
-		synchronized (this.monitor) {
-			return regions.get(regionName);
-		}
+		return this.snapshot.getRegion(regionName);
 	}
 
 	/**
@@ -267,9 +240,7 @@ public final class StandardRegionDigraph implements BundleIdToRegionMapping, Reg
 	 * {@inheritDoc}
 	 */
 	public Region getRegion(long bundleId) {
-		synchronized (this.monitor) {
-			return this.bundleIdToRegionMapping.getRegion(bundleId);
-		}
+		return this.snapshot.getRegion(bundleId);
 	}
 
 	/**
@@ -283,21 +254,7 @@ public final class StandardRegionDigraph implements BundleIdToRegionMapping, Reg
 			if (this.defaultRegion != null && this.defaultRegion.equals(region)) {
 				this.defaultRegion = null;
 			}
-			this.regions.remove(region.getName());
-			this.edges.remove(region);
-			for (Region r : this.edges.keySet()) {
-				Set<FilteredRegion> edgeSet = this.edges.get(r);
-				for (FilteredRegion edge : edgeSet) {
-					if (region.equals(edge.getRegion())) {
-						Set<FilteredRegion> mutableEdgeSet = new HashSet<FilteredRegion>(edgeSet);
-						mutableEdgeSet.remove(edge);
-						this.edges.put(r, Collections.unmodifiableSet(mutableEdgeSet));
-						break;
-					}
-				}
-			}
-			this.bundleIdToRegionMapping.dissociateRegion(region);
-			incrementUpdateCount();
+			this.snapshot = this.snapshot.removeRegion(region);
 		}
 	}
 
@@ -305,44 +262,36 @@ public final class StandardRegionDigraph implements BundleIdToRegionMapping, Reg
 	 * {@inheritDoc}
 	 */
 	public String toString() {
-		synchronized (this.monitor) {
-			StringBuffer s = new StringBuffer();
-			boolean first = true;
-			s.append("RegionDigraph{"); //$NON-NLS-1$
-			for (Region r : this) {
+		RegionDigraphSnapshot current = this.snapshot;
+		StringBuffer s = new StringBuffer();
+		boolean first = true;
+		s.append("RegionDigraph{"); //$NON-NLS-1$
+		for (Region r : current.getRegions()) {
+			if (!first) {
+				s.append(", "); //$NON-NLS-1$
+			}
+			s.append(r);
+			first = false;
+		}
+		s.append("}"); //$NON-NLS-1$
+
+		s.append("["); //$NON-NLS-1$
+		first = true;
+		for (Region r : current.getRegions()) {
+			for (FilteredRegion filteredRegion : current.getEdges(r)) {
 				if (!first) {
 					s.append(", "); //$NON-NLS-1$
 				}
-				s.append(r);
+				s.append(r + "->" + filteredRegion.getRegion()); //$NON-NLS-1$
 				first = false;
 			}
-			s.append("}"); //$NON-NLS-1$
-
-			s.append("["); //$NON-NLS-1$
-			first = true;
-			for (Region r : this) {
-				Set<FilteredRegion> edgeSet = this.edges.get(r);
-				if (edgeSet != null) {
-					for (FilteredRegion filteredRegion : edgeSet) {
-						if (!first) {
-							s.append(", "); //$NON-NLS-1$
-						}
-						s.append(r + "->" + filteredRegion.getRegion()); //$NON-NLS-1$
-						first = false;
-					}
-				}
-			}
-			s.append("]"); //$NON-NLS-1$
-			return s.toString();
 		}
+		s.append("]"); //$NON-NLS-1$
+		return s.toString();
 	}
 
 	public Set<Region> getRegions() {
-		Set<Region> result = new HashSet<Region>();
-		synchronized (this.monitor) {
-			result.addAll(this.regions.values());
-		}
-		return result;
+		return new HashSet<Region>(this.snapshot.getRegions());
 	}
 
 	public RegionFilterBuilder createRegionFilterBuilder() {
@@ -388,15 +337,25 @@ public final class StandardRegionDigraph implements BundleIdToRegionMapping, Reg
 		this.subgraphTraverser.visitSubgraph(startingRegion, visitor);
 	}
 
+	/**
+	 * Returns the precomputed traversal of the subgraph of the given region. The result is cached until this digraph
+	 * is modified.
+	 * 
+	 * @param region the starting region
+	 * @return the reachability of the region or <code>null</code> if the subgraph has too many paths and must be
+	 *         visited instead
+	 */
+	public RegionReachability getReachability(Region region) {
+		return this.snapshot.getReachability(region);
+	}
+
 	/**
 	 * Returns a snapshot of filtered regions
 	 * 
-	 * @return a snapshot of filtered regions
+	 * @return an immutable snapshot of filtered regions
 	 */
 	Map<Region, Set<FilteredRegion>> getFilteredRegions() {
-		synchronized (this.monitor) {
-			return new HashMap<Region, Set<FilteredRegion>>(this.edges);
-		}
+		return this.snapshot.getEdges();
 	}
 
 	/** 
@@ -436,42 +395,17 @@ public final class StandardRegionDigraph implements BundleIdToRegionMapping, Reg
 			notifyRemoving(region);
 		}
 
-		Map<Region, Set<FilteredRegion>> filteredRegions = replacement.getFilteredRegions();
+		RegionDigraphSnapshot replacementSnapshot = replacement.snapshot;
 		final Set<Region> added = new HashSet<Region>();
 		synchronized (this.monitor) {
-			if (check && this.updateCount.get() != replacement.originUpdateCount) {
+			RegionDigraphSnapshot current = this.snapshot;
+			if (check && current.getUpdateCount() != replacement.originUpdateCount) {
 				throw new BundleException("The origin update count has changed since the replacement copy was created.", BundleException.INVALID_OPERATION); //$NON-NLS-1$
 			}
-			Map<String, Region> nameToRegion = new HashMap<String, Region>(regions);
-			this.regions.clear();
-			this.edges.clear();
-			this.bundleIdToRegionMapping.clear();
-			for (Region original : filteredRegions.keySet()) {
-				Region copy = nameToRegion.get(original.getName());
-				if (copy != null) {
-					// reuse the previous region object
-					regions.put(copy.getName(), copy);
-					edges.put(copy, EMPTY_EDGE_SET);
-				} else {
-					// create a new one
-					copy = this.createRegion(original.getName(), false);
-					// collect added for notifying later ouside the lock
-					added.add(copy);
-				}
-				for (Long id : original.getBundleIds()) {
-					copy.addBundle(id);
-				}
-			}
-			for (Map.Entry<Region, Set<FilteredRegion>> connection : filteredRegions.entrySet()) {
-				Region tailRegion = this.getRegion(connection.getKey().getName());
-				for (FilteredRegion headFilter : connection.getValue()) {
-					Region headRegion = this.getRegion(headFilter.getRegion().getName());
-					this.connect(tailRegion, headFilter.getFilter(), headRegion);
-				}
-			}
-			incrementUpdateCount();
+			// reuse the previous region objects and collect the added ones for notifying later outside the lock
+			this.snapshot = replacementSnapshot.copy(current.getUpdateCount() + 1, current, regionFactory(), added);
 			if (check) {
-				replacement.originUpdateCount = this.updateCount.get();
+				replacement.originUpdateCount = this.snapshot.getUpdateCount();
 			}
 		}
 		// Now notify of additions outside the lock
@@ -480,6 +414,14 @@ public final class StandardRegionDigraph implements BundleIdToRegionMapping, Reg
 		}
 	}
 
+	private RegionDigraphSnapshot.RegionFactory regionFactory() {
+		return new RegionDigraphSnapshot.RegionFactory() {
+			public Region createRegion(String regionName) {
+				return new BundleIdBasedRegion(regionName, StandardRegionDigraph.this, StandardRegionDigraph.this, StandardRegionDigraph.this.bundleContext, StandardRegionDigraph.this.threadLocal);
+			}
+		};
+	}
+
 	/** 
 	 * {@inheritDoc}
 	 */
@@ -553,24 +495,20 @@ public final class StandardRegionDigraph implements BundleIdToRegionMapping, Reg
 	public void associateBundleWithRegion(long bundleId, Region region) throws BundleException {
 		synchronized (this.monitor) {
 			checkRegionExists(region);
-			this.bundleIdToRegionMapping.associateBundleWithRegion(bundleId, region);
-			incrementUpdateCount();
+			Region r = this.snapshot.getRegion(bundleId);
+			if (r != null && r != region) {
+				throw new BundleException("Bundle '" + bundleId + "' is already associated with region '" + r + "'", BundleException.INVALID_OPERATION); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			}
+			this.snapshot = this.snapshot.associateBundle(bundleId, region);
 		}
 	}
 
 	private void checkRegionExists(Region region) {
-		if (this.regions.get(region.getName()) == null) {
+		if (this.snapshot.getRegion(region.getName()) == null) {
 			throw new IllegalStateException("Operation not allowed on region " + region.getName() + " which is not part of a digraph"); //$NON-NLS-1$ //$NON-NLS-2$
 		}
 	}
 
-	private void incrementUpdateCount() {
-		synchronized (this.monitor) {
-			this.updateCount.incrementAndGet();
-		}
-
-	}
-
 	/** 
 	 * {@inheritDoc}
 	 */
@@ -578,8 +516,7 @@ public final class StandardRegionDigraph implements BundleIdToRegionMapping, Reg
 	public void dissociateBundleFromRegion(long bundleId, Region region) {
 		synchronized (this.monitor) {
 			checkRegionExists(region);
-			this.bundleIdToRegionMapping.dissociateBundleFromRegion(bundleId, region);
-			incrementUpdateCount();
+			this.snapshot = this.snapshot.dissociateBundle(bundleId);
 		}
 	}
 
@@ -588,9 +525,7 @@ public final class StandardRegionDigraph implements BundleIdToRegionMapping, Reg
 	 */
 	@Override
 	public boolean isBundleAssociatedWithRegion(long bundleId, Region region) {
-		synchronized (this.monitor) {
-			return this.bundleIdToRegionMapping.isBundleAssociatedWithRegion(bundleId, region);
-		}
+		return this.snapshot.getRegion(bundleId) == region;
 	}
 
 	/** 
@@ -598,9 +533,7 @@ public final class StandardRegionDigraph implements BundleIdToRegionMapping, Reg
 	 */
 	@Override
 	public Set<Long> getBundleIds(Region region) {
-		synchronized (this.monitor) {
-			return this.bundleIdToRegionMapping.getBundleIds(region);
-		}
+		return this.snapshot.getBundleIds(region);
 	}
 
 	/** 
@@ -609,8 +542,7 @@ public final class StandardRegionDigraph implements BundleIdToRegionMapping, Reg
 	@Override
 	public void clear() {
 		synchronized (this.monitor) {
-			this.bundleIdToRegionMapping.clear();
-			incrementUpdateCount();
+			this.snapshot = this.snapshot.clearBundles();
 		}
 	}
 
@@ -620,8 +552,7 @@ public final class StandardRegionDigraph implements BundleIdToRegionMapping, Reg
 	@Override
 	public void dissociateRegion(Region region) {
 		synchronized (this.monitor) {
-			this.bundleIdToRegionMapping.dissociateRegion(region);
-			incrementUpdateCount();
+			this.snapshot = this.snapshot.dissociateRegion(region);
 		}
 	}
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2013 VMware Inc and others.
+ * Copyright (c) 2011, 2016 VMware Inc and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -21,6 +21,8 @@ import org.osgi.framework.wiring.BundleRevision;
 public final class StandardRegionFilter implements RegionFilter {
 	private static final String BUNDLE_ID_ATTR = "id"; //$NON-NLS-1$
 	private final Map<String, Collection<Filter>> filters;
+	// the namespaces with a filter which matches everything, nothing needs to be matched for them
+	private final Set<String> allowAllNamespaces = new HashSet<String>();
 
 	public StandardRegionFilter(Map<String, Collection<Filter>> filters) {
 		if (filters == null) {
@@ -31,10 +33,19 @@ public final class StandardRegionFilter implements RegionFilter {
 		for (Map.Entry<String, Collection<Filter>> namespace : filters.entrySet()) {
 			Collection<Filter> namespaceFilters = new ArrayList<Filter>(namespace.getValue());
 			this.filters.put(namespace.getKey(), namespaceFilters);
+			if (namespaceFilters.contains(StandardRegionFilterBuilder.ALL)) {
+				this.allowAllNamespaces.add(namespace.getKey());
+			}
 		}
 	}
 
+	private boolean isAllowAll(String namespace) {
+		return allowAllNamespaces.contains(namespace) || allowAllNamespaces.contains(VISIBLE_ALL_NAMESPACE);
+	}
+
 	public boolean isAllowed(Bundle bundle) {
+		if (isAllowAll(VISIBLE_BUNDLE_NAMESPACE))
+			return true;
 		HashMap<String, Object> attrs = new HashMap<String, Object>(4);
 		String bsn = bundle.getSymbolicName();
 		if (bsn != null) {
@@ -47,6 +58,8 @@ public final class StandardRegionFilter implements RegionFilter {
 	}
 
 	public boolean isAllowed(BundleRevision bundle) {
+		if (isAllowAll(VISIBLE_BUNDLE_NAMESPACE))
+			return true;
 		HashMap<String, Object> attrs = new HashMap<String, Object>(4);
 		String bsn = bundle.getSymbolicName();
 		if (bsn != null) {
@@ -89,6 +102,8 @@ public final class StandardRegionFilter implements RegionFilter {
 	}
 
 	public boolean isAllowed(ServiceReference<?> service) {
+		if (isAllowAll(VISIBLE_SERVICE_NAMESPACE))
+			return true;
 		if (match(filters.get(VISIBLE_SERVICE_NAMESPACE), service))
 			return true;
 		return matchAll(VISIBLE_SERVICE_NAMESPACE, service);
@@ -103,6 +118,8 @@ public final class StandardRegionFilter implements RegionFilter {
 	 */
 	@Override
 	public boolean isAllowed(String namespace, Map<String, ?> attributes) {
+		if (isAllowAll(namespace))
+			return true;
 		if (match(filters.get(namespace), attributes))
 			return true;
 		return matchAll(namespace, attributes);
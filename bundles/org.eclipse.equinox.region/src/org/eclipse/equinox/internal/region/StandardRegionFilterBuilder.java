@@ -20,7 +20,7 @@ public final class StandardRegionFilterBuilder implements RegionFilterBuilder {
 
 	private final static String ALL_SPEC = "(|(!(all=*))(all=*))"; //$NON-NLS-1$
 
-	private final static Filter ALL;
+	final static Filter ALL;
 	static {
 		try {
 			ALL = FrameworkUtil.createFilter(ALL_SPEC);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2015 VMware Inc.
+ * Copyright (c) 2011, 2016 VMware Inc.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -102,6 +102,14 @@ public final class RegionBundleCollisionHook implements CollisionHook {
 			return region.contains(candidate);
 		}
 
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected Region getRegion(Bundle candidate) {
+			return regionDigraph.getRegion(candidate);
+		}
+
 		/**
 		 * {@inheritDoc}
 		 */
@@ -128,6 +136,14 @@ public final class RegionBundleCollisionHook implements CollisionHook {
 			return region.equals(targetRegion);
 		}
 
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected Region getRegion(Bundle candidate) {
+			return targetRegion;
+		}
+
 		/**
 		 * {@inheritDoc}
 		 */
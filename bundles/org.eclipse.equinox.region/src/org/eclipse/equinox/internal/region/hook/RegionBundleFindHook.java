@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013, 2015 VMware Inc. and others
+ * Copyright (c) 2013, 2016 VMware Inc. and others
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -62,17 +62,17 @@ public final class RegionBundleFindHook implements FindHook {
 			return;
 		}
 
-		Visitor visitor = new Visitor(bundles);
-		finderRegion.visitSubgraph(visitor);
-		Collection<Bundle> allowed = visitor.getAllowed();
-
-		bundles.retainAll(allowed);
+		Visitor visitor = new Visitor(bundles, finderRegion.getRegionDigraph());
+		visitor.retainAllowed(finderRegion);
 	}
 
 	static class Visitor extends RegionDigraphVisitorBase<Bundle> {
 
-		Visitor(Collection<Bundle> candidates) {
+		private final RegionDigraph regionDigraph;
+
+		Visitor(Collection<Bundle> candidates, RegionDigraph regionDigraph) {
 			super(candidates);
+			this.regionDigraph = regionDigraph;
 		}
 
 		/**
@@ -83,6 +83,14 @@ public final class RegionBundleFindHook implements FindHook {
 			return region.contains(candidate);
 		}
 
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected Region getRegion(Bundle candidate) {
+			return regionDigraph.getRegion(candidate);
+		}
+
 		/**
 		 * {@inheritDoc}
 		 */
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011 VMware Inc.
+ * Copyright (c) 2011, 2016 VMware Inc.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,8 @@
 package org.eclipse.equinox.internal.region.hook;
 
 import java.util.*;
+import org.eclipse.equinox.internal.region.RegionReachability;
+import org.eclipse.equinox.internal.region.StandardRegionDigraph;
 import org.eclipse.equinox.region.*;
 
 /**
@@ -40,6 +42,52 @@ abstract class RegionDigraphVisitorBase<C> implements RegionDigraphVisitor {
 		}
 	}
 
+	/**
+	 * Removes the candidates which are not visible from the given region. The precomputed reachability of the region
+	 * is used if its digraph provides one, otherwise the subgraph of the region is visited.
+	 * 
+	 * @param region the region to look from
+	 */
+	void retainAllowed(Region region) {
+		RegionDigraph digraph = region.getRegionDigraph();
+		RegionReachability reachability = digraph instanceof StandardRegionDigraph ? ((StandardRegionDigraph) digraph).getReachability(region) : null;
+		if (reachability == null) {
+			region.visitSubgraph(this);
+			allCandidates.retainAll(getAllowed());
+			return;
+		}
+		for (Iterator<C> i = allCandidates.iterator(); i.hasNext();) {
+			if (!isAllowed(reachability, i.next())) {
+				i.remove();
+			}
+		}
+	}
+
+	private boolean isAllowed(RegionReachability reachability, C candidate) {
+		Region candidateRegion = getRegion(candidate);
+		if (candidateRegion == null) {
+			return false;
+		}
+		if (candidateRegion.equals(reachability.getRegion())) {
+			return true;
+		}
+		for (RegionFilter[] path : reachability.getPaths(candidateRegion)) {
+			if (isAllowed(candidate, path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isAllowed(C candidate, RegionFilter[] path) {
+		for (RegionFilter filter : path) {
+			if (!isAllowed(candidate, filter)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	Collection<C> getAllowed() {
 		synchronized (this.monitor) {
 			return this.allowed;
@@ -119,6 +167,14 @@ abstract class RegionDigraphVisitorBase<C> implements RegionDigraphVisitor {
 	 */
 	protected abstract boolean contains(Region region, C candidate);
 
+	/**
+	 * Determines the region containing the given candidate.
+	 * 
+	 * @param candidate the candidate
+	 * @return the {@link Region} containing the candidate or <code>null</code> if there is none
+	 */
+	protected abstract Region getRegion(C candidate);
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2015 VMware Inc.
+ * Copyright (c) 2011, 2016 VMware Inc.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -61,10 +61,7 @@ public final class RegionResolverHook implements ResolverHook {
 			}
 
 			Visitor visitor = new Visitor(candidates);
-			requirerRegion.visitSubgraph(visitor);
-			Collection<BundleCapability> allowed = visitor.getAllowed();
-
-			candidates.retainAll(allowed);
+			visitor.retainAllowed(requirerRegion);
 		} finally {
 			if (DEBUG) {
 				debugExit(requirer, candidates);
@@ -80,7 +77,12 @@ public final class RegionResolverHook implements ResolverHook {
 
 		@Override
 		protected boolean contains(Region region, BundleCapability candidate) {
-			return region.equals(getRegion(candidate.getRevision()));
+			return region.equals(getRegion(candidate));
+		}
+
+		@Override
+		protected Region getRegion(BundleCapability candidate) {
+			return RegionResolverHook.this.getRegion(candidate.getRevision());
 		}
 
 		@Override
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015 VMware Inc.
+ * Copyright (c) 2015, 2016 VMware Inc.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -56,17 +56,17 @@ public final class RegionServiceFindHook implements FindHook {
 			return;
 		}
 
-		Visitor visitor = new Visitor(references);
-		finderRegion.visitSubgraph(visitor);
-		Collection<ServiceReference<?>> allowed = visitor.getAllowed();
-
-		references.retainAll(allowed);
+		Visitor visitor = new Visitor(references, finderRegion.getRegionDigraph());
+		visitor.retainAllowed(finderRegion);
 	}
 
 	static class Visitor extends RegionDigraphVisitorBase<ServiceReference<?>> {
 
-		Visitor(Collection<ServiceReference<?>> candidates) {
+		private final RegionDigraph regionDigraph;
+
+		Visitor(Collection<ServiceReference<?>> candidates, RegionDigraph regionDigraph) {
 			super(candidates);
+			this.regionDigraph = regionDigraph;
 		}
 
 		/**
@@ -77,6 +77,15 @@ public final class RegionServiceFindHook implements FindHook {
 			return region.contains(candidate.getBundle());
 		}
 
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected Region getRegion(ServiceReference<?> candidate) {
+			Bundle bundle = candidate.getBundle();
+			return bundle == null ? null : regionDigraph.getRegion(bundle);
+		}
+
 		/**
 		 * {@inheritDoc}
 		 */
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2016 by ProSyst Software GmbH
+ * http://www.prosyst.com
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    ProSyst Software GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.util.hash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CopyOnWriteHashIntObjTest {
+
+	@Test
+	public void testPutGetRemove() {
+		CopyOnWriteHashIntObj table = new CopyOnWriteHashIntObj();
+		assertNull(table.put(1, "a"));
+		assertEquals("a", table.put(1, "b"));
+		assertEquals("b", table.get(1));
+		assertTrue(table.containsKey(1));
+		assertNull(table.remove(2));
+		assertEquals("b", table.remove(1));
+		assertFalse(table.containsKey(1));
+		assertEquals(0, table.size());
+	}
+
+	@Test
+	public void testSnapshot() {
+		CopyOnWriteHashIntObj table = new CopyOnWriteHashIntObj();
+		table.put(1, "a");
+		OpenHashIntObjNS snapshot = table.getSnapshot();
+		table.put(2, "b");
+		table.remove(1);
+		assertEquals("a", snapshot.get(1));
+		assertNull(snapshot.get(2));
+		assertEquals(1, snapshot.size());
+		assertEquals("b", table.get(2));
+		assertNull(table.get(1));
+	}
+
+	@Test
+	public void testPutSameValueDoesNotCopy() {
+		CopyOnWriteHashIntObj table = new CopyOnWriteHashIntObj();
+		Object value = new Object();
+		table.put(1, value);
+		OpenHashIntObjNS snapshot = table.getSnapshot();
+		assertSame(value, table.put(1, value));
+		assertSame(snapshot, table.getSnapshot());
+		table.remove(2);
+		assertSame(snapshot, table.getSnapshot());
+	}
+
+	@Test
+	public void testPutAll() {
+		CopyOnWriteHashIntObj table = new CopyOnWriteHashIntObj(4);
+		int[] keys = new int[100];
+		Object[] values = new Object[100];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = i * 31;
+			values[i] = new Integer(i);
+		}
+		table.putAll(keys, values);
+		assertEquals(100, table.size());
+		for (int i = 0; i < keys.length; i++) {
+			assertSame(values[i], table.get(keys[i]));
+		}
+		table.removeAll();
+		assertEquals(0, table.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPutAllLengthMismatch() {
+		new CopyOnWriteHashIntObj().putAll(new int[2], new Object[1]);
+	}
+}
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2016 by ProSyst Software GmbH
+ * http://www.prosyst.com
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    ProSyst Software GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.util.hash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class OpenHashIntObjNSTest {
+
+	/*
+	 * Returns count keys whose home slot is the given one.
+	 */
+	private static int[] keysWithHome(int home, int mask, int count) {
+		int[] result = new int[count];
+		int found = 0;
+		for (int key = 1; found < count; key++) {
+			if ((OpenHashIntObjNS.hash(key) & mask) == home) {
+				result[found++] = key;
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Checks that every entry can be found from its home slot, i.e. that no
+	 * empty slot lies between the home slot and the slot of an entry.
+	 */
+	private static void assertReachable(OpenHashIntObjNS table) {
+		int mask = table.capacity() - 1;
+		int count = 0;
+		for (int i = 0; i < table.capacity(); i++) {
+			if (table.valueAt(i) == null) {
+				continue;
+			}
+			count++;
+			for (int pos = OpenHashIntObjNS.hash(table.keyAt(i)) & mask; pos != i; pos = (pos + 1) & mask) {
+				if (table.valueAt(pos) == null) {
+					fail("Key " + table.keyAt(i) + " in slot " + i + " is not reachable");
+				}
+			}
+			assertSame(table.valueAt(i), table.get(table.keyAt(i)));
+		}
+		assertEquals(count, table.size());
+	}
+
+	@Test
+	public void testPutGetRemove() {
+		OpenHashIntObjNS table = new OpenHashIntObjNS();
+		assertNull(table.put(1, "a"));
+		assertNull(table.put(-1, "b"));
+		assertNull(table.put(0, "c"));
+		assertEquals("a", table.put(1, "d"));
+		assertEquals(3, table.size());
+		assertEquals("d", table.get(1));
+		assertEquals("b", table.get(-1));
+		assertEquals("c", table.get(0));
+		assertTrue(table.containsKey(0));
+		assertFalse(table.containsKey(2));
+
+		assertEquals("c", table.remove(0));
+		assertNull(table.remove(0));
+		assertNull(table.get(0));
+		assertEquals(2, table.size());
+
+		table.removeAll();
+		assertEquals(0, table.size());
+		assertNull(table.get(1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullValue() {
+		new OpenHashIntObjNS().put(1, null);
+	}
+
+	@Test
+	public void testRemoveFromCollisionChain() {
+		OpenHashIntObjNS table = new OpenHashIntObjNS(16);
+		int mask = table.capacity() - 1;
+		int[] colliding = keysWithHome(5, mask, 3);
+		int[] next = keysWithHome(6, mask, 1);
+		// slots 5, 6, 7 hold the colliding keys, next is displaced to slot 8
+		for (int i = 0; i < colliding.length; i++) {
+			table.put(colliding[i], new Integer(colliding[i]));
+		}
+		table.put(next[0], new Integer(next[0]));
+		assertEquals(next[0], table.keyAt(8));
+
+		// removing the head of the chain shifts the rest back
+		assertEquals(new Integer(colliding[0]), table.remove(colliding[0]));
+		assertReachable(table);
+		assertEquals(colliding[1], table.keyAt(5));
+		assertEquals(colliding[2], table.keyAt(6));
+		assertEquals(next[0], table.keyAt(7));
+		assertNull(table.valueAt(8));
+
+		// next moves back to its home slot
+		assertEquals(new Integer(colliding[1]), table.remove(colliding[1]));
+		assertReachable(table);
+		assertEquals(colliding[2], table.keyAt(5));
+		assertEquals(next[0], table.keyAt(6));
+		assertNull(table.valueAt(7));
+	}
+
+	@Test
+	public void testRemoveWrappingAround() {
+		OpenHashIntObjNS table = new OpenHashIntObjNS(16);
+		int mask = table.capacity() - 1;
+		int[] last = keysWithHome(mask, mask, 3);
+		int[] first = keysWithHome(0, mask, 1);
+		// the cluster wraps around: slots mask, 0, 1 and first in slot 2
+		for (int i = 0; i < last.length; i++) {
+			table.put(last[i], new Integer(last[i]));
+		}
+		table.put(first[0], new Integer(first[0]));
+		assertEquals(first[0], table.keyAt(2));
+
+		assertEquals(new Integer(last[0]), table.remove(last[0]));
+		assertReachable(table);
+		assertEquals(last[1], table.keyAt(mask));
+		assertEquals(last[2], table.keyAt(0));
+		assertEquals(first[0], table.keyAt(1));
+		assertNull(table.valueAt(2));
+	}
+
+	@Test
+	public void testAgainstHashMap() {
+		// a small, full table to get long clusters
+		OpenHashIntObjNS table = new OpenHashIntObjNS(8, 0.9f);
+		Map<Integer, Object> expected = new HashMap<Integer, Object>();
+		Random random = new Random(4711);
+		for (int i = 0; i < 20000; i++) {
+			Integer key = new Integer(random.nextInt(48) - 8);
+			if (random.nextInt(3) == 0) {
+				assertSame(expected.remove(key), table.remove(key.intValue()));
+			} else {
+				Object value = new Object();
+				assertSame(expected.put(key, value), table.put(key.intValue(), value));
+			}
+			if (i % 100 == 0) {
+				assertReachable(table);
+			}
+		}
+		assertReachable(table);
+		assertEquals(expected.size(), table.size());
+		for (Iterator<Map.Entry<Integer, Object>> i = expected.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<Integer, Object> entry = i.next();
+			assertSame(entry.getValue(), table.get(entry.getKey().intValue()));
+		}
+	}
+
+	@Test
+	public void testRehash() {
+		OpenHashIntObjNS table = new OpenHashIntObjNS(4);
+		int capacity = table.capacity();
+		for (int i = 0; i < 1000; i++) {
+			table.put(i * 7, new Integer(i));
+		}
+		assertTrue(table.capacity() > capacity);
+		assertReachable(table);
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(new Integer(i), table.get(i * 7));
+		}
+	}
+
+	@Test
+	public void testCopy() {
+		OpenHashIntObjNS table = new OpenHashIntObjNS();
+		table.put(1, "a");
+		OpenHashIntObjNS copy = new OpenHashIntObjNS(table);
+		copy.put(2, "b");
+		copy.remove(1);
+		assertEquals("a", table.get(1));
+		assertNull(table.get(2));
+		assertEquals(1, table.size());
+		assertEquals("b", copy.get(2));
+	}
+}
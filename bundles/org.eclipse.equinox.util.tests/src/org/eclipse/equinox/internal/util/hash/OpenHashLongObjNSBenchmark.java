@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2016 by ProSyst Software GmbH
+ * http://www.prosyst.com
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    ProSyst Software GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.util.hash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/*
+ * Measures put, get and iteration of OpenHashLongObjNS against
+ * HashMap<Long, Object> with 1k to 1M random keys and prints the times.
+ * 10M entries are left out, HashMap needs more than a gigabyte for them.
+ * It is not part of the test runs, run it on its own as a JUnit plug-in test.
+ */
+public class OpenHashLongObjNSBenchmark {
+
+	private static final int[] SIZES = {1000, 100000, 1000000};
+	private static final int ROUNDS = 5;
+	// the same number of operations for every size
+	private static final int OPERATIONS = 2000000;
+
+	private static final Object VALUE = new Object();
+
+	private static long[] keys(int size) {
+		long[] keys = new long[size];
+		Random random = new Random(size);
+		for (int i = 0; i < size; i++) {
+			keys[i] = random.nextLong();
+		}
+		return keys;
+	}
+
+	private static OpenHashLongObjNS fill(long[] keys) {
+		OpenHashLongObjNS table = new OpenHashLongObjNS();
+		for (int i = 0; i < keys.length; i++) {
+			table.put(keys[i], VALUE);
+		}
+		return table;
+	}
+
+	private static Map<Long, Object> fillMap(long[] keys) {
+		Map<Long, Object> map = new HashMap<Long, Object>();
+		for (int i = 0; i < keys.length; i++) {
+			map.put(Long.valueOf(keys[i]), VALUE);
+		}
+		return map;
+	}
+
+	private static void print(String operation, int size, long table, long map, int count) {
+		System.out.println(operation + " " + size + " entries: OpenHashLongObjNS " + table / count + "ns, HashMap " + map / count + "ns per entry");
+	}
+
+	@Test
+	public void testPut() {
+		for (int s = 0; s < SIZES.length; s++) {
+			long[] keys = keys(SIZES[s]);
+			int repeat = Math.max(1, OPERATIONS / keys.length);
+			for (int round = 0; round < ROUNDS; round++) {
+				long start = System.nanoTime();
+				for (int r = 0; r < repeat; r++) {
+					assertEquals(keys.length, fill(keys).size());
+				}
+				long table = System.nanoTime() - start;
+				start = System.nanoTime();
+				for (int r = 0; r < repeat; r++) {
+					assertEquals(keys.length, fillMap(keys).size());
+				}
+				long map = System.nanoTime() - start;
+				print("Put", keys.length, table, map, repeat * keys.length);
+			}
+		}
+	}
+
+	@Test
+	public void testGet() {
+		for (int s = 0; s < SIZES.length; s++) {
+			long[] keys = keys(SIZES[s]);
+			OpenHashLongObjNS table = fill(keys);
+			Map<Long, Object> map = fillMap(keys);
+			int repeat = Math.max(1, OPERATIONS / keys.length);
+			for (int round = 0; round < ROUNDS; round++) {
+				long start = System.nanoTime();
+				for (int r = 0; r < repeat; r++) {
+					for (int i = 0; i < keys.length; i++) {
+						assertSame(VALUE, table.get(keys[i]));
+					}
+				}
+				long tableTime = System.nanoTime() - start;
+				start = System.nanoTime();
+				for (int r = 0; r < repeat; r++) {
+					for (int i = 0; i < keys.length; i++) {
+						assertSame(VALUE, map.get(Long.valueOf(keys[i])));
+					}
+				}
+				long mapTime = System.nanoTime() - start;
+				print("Get", keys.length, tableTime, mapTime, repeat * keys.length);
+			}
+		}
+	}
+
+	@Test
+	public void testIterate() {
+		for (int s = 0; s < SIZES.length; s++) {
+			long[] keys = keys(SIZES[s]);
+			OpenHashLongObjNS table = fill(keys);
+			Map<Long, Object> map = fillMap(keys);
+			int repeat = Math.max(1, OPERATIONS / keys.length);
+			for (int round = 0; round < ROUNDS; round++) {
+				long start = System.nanoTime();
+				long tableSum = 0;
+				for (int r = 0; r < repeat; r++) {
+					for (int i = 0; i < table.capacity(); i++) {
+						if (table.valueAt(i) != null) {
+							tableSum += table.keyAt(i);
+						}
+					}
+				}
+				long tableTime = System.nanoTime() - start;
+				start = System.nanoTime();
+				long mapSum = 0;
+				for (int r = 0; r < repeat; r++) {
+					for (Iterator<Map.Entry<Long, Object>> i = map.entrySet().iterator(); i.hasNext();) {
+						Map.Entry<Long, Object> entry = i.next();
+						if (entry.getValue() != null) {
+							mapSum += entry.getKey().longValue();
+						}
+					}
+				}
+				long mapTime = System.nanoTime() - start;
+				assertEquals(mapSum, tableSum);
+				print("Iterate", keys.length, tableTime, mapTime, repeat * keys.length);
+			}
+		}
+	}
+}
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2016 by ProSyst Software GmbH
+ * http://www.prosyst.com
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    ProSyst Software GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.util.hash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class OpenHashLongObjNSTest {
+
+	/*
+	 * Returns count keys whose home slot is the given one.
+	 */
+	private static long[] keysWithHome(int home, int mask, int count) {
+		long[] result = new long[count];
+		int found = 0;
+		for (long key = 1L << 32; found < count; key++) {
+			if ((OpenHashLongObjNS.hash(key) & mask) == home) {
+				result[found++] = key;
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Checks that every entry can be found from its home slot, i.e. that no
+	 * empty slot lies between the home slot and the slot of an entry.
+	 */
+	private static void assertReachable(OpenHashLongObjNS table) {
+		int mask = table.capacity() - 1;
+		int count = 0;
+		for (int i = 0; i < table.capacity(); i++) {
+			if (table.valueAt(i) == null) {
+				continue;
+			}
+			count++;
+			for (int pos = OpenHashLongObjNS.hash(table.keyAt(i)) & mask; pos != i; pos = (pos + 1) & mask) {
+				if (table.valueAt(pos) == null) {
+					fail("Key " + table.keyAt(i) + " in slot " + i + " is not reachable");
+				}
+			}
+			assertSame(table.valueAt(i), table.get(table.keyAt(i)));
+		}
+		assertEquals(count, table.size());
+	}
+
+	@Test
+	public void testPutGetRemove() {
+		OpenHashLongObjNS table = new OpenHashLongObjNS();
+		assertNull(table.put(1, "a"));
+		assertNull(table.put(-1, "b"));
+		assertNull(table.put(0, "c"));
+		assertEquals("a", table.put(1, "d"));
+		assertEquals(3, table.size());
+		assertEquals("d", table.get(1));
+		assertEquals("b", table.get(-1));
+		assertEquals("c", table.get(0));
+		assertTrue(table.containsKey(0));
+		assertFalse(table.containsKey(2));
+
+		assertEquals("c", table.remove(0));
+		assertNull(table.remove(0));
+		assertNull(table.get(0));
+		assertEquals(2, table.size());
+
+		table.removeAll();
+		assertEquals(0, table.size());
+		assertNull(table.get(1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullValue() {
+		new OpenHashLongObjNS().put(1, null);
+	}
+
+	@Test
+	public void testRemoveFromCollisionChain() {
+		OpenHashLongObjNS table = new OpenHashLongObjNS(16);
+		int mask = table.capacity() - 1;
+		long[] colliding = keysWithHome(5, mask, 3);
+		long[] next = keysWithHome(6, mask, 1);
+		// slots 5, 6, 7 hold the colliding keys, next is displaced to slot 8
+		for (int i = 0; i < colliding.length; i++) {
+			table.put(colliding[i], new Long(colliding[i]));
+		}
+		table.put(next[0], new Long(next[0]));
+		assertEquals(next[0], table.keyAt(8));
+
+		// removing the head of the chain shifts the rest back
+		assertEquals(new Long(colliding[0]), table.remove(colliding[0]));
+		assertReachable(table);
+		assertEquals(colliding[1], table.keyAt(5));
+		assertEquals(colliding[2], table.keyAt(6));
+		assertEquals(next[0], table.keyAt(7));
+		assertNull(table.valueAt(8));
+
+		// next moves back to its home slot
+		assertEquals(new Long(colliding[1]), table.remove(colliding[1]));
+		assertReachable(table);
+		assertEquals(colliding[2], table.keyAt(5));
+		assertEquals(next[0], table.keyAt(6));
+		assertNull(table.valueAt(7));
+	}
+
+	@Test
+	public void testRemoveWrappingAround() {
+		OpenHashLongObjNS table = new OpenHashLongObjNS(16);
+		int mask = table.capacity() - 1;
+		long[] last = keysWithHome(mask, mask, 3);
+		long[] first = keysWithHome(0, mask, 1);
+		// the cluster wraps around: slots mask, 0, 1 and first in slot 2
+		for (int i = 0; i < last.length; i++) {
+			table.put(last[i], new Long(last[i]));
+		}
+		table.put(first[0], new Long(first[0]));
+		assertEquals(first[0], table.keyAt(2));
+
+		assertEquals(new Long(last[0]), table.remove(last[0]));
+		assertReachable(table);
+		assertEquals(last[1], table.keyAt(mask));
+		assertEquals(last[2], table.keyAt(0));
+		assertEquals(first[0], table.keyAt(1));
+		assertNull(table.valueAt(2));
+	}
+
+	@Test
+	public void testAgainstHashMap() {
+		// a small, full table to get long clusters
+		OpenHashLongObjNS table = new OpenHashLongObjNS(8, 0.9f);
+		Map<Long, Object> expected = new HashMap<Long, Object>();
+		Random random = new Random(4711);
+		for (int i = 0; i < 20000; i++) {
+			Long key = new Long(((long) random.nextInt(48) - 8) << 40);
+			if (random.nextInt(3) == 0) {
+				assertSame(expected.remove(key), table.remove(key.longValue()));
+			} else {
+				Object value = new Object();
+				assertSame(expected.put(key, value), table.put(key.longValue(), value));
+			}
+			if (i % 100 == 0) {
+				assertReachable(table);
+			}
+		}
+		assertReachable(table);
+		assertEquals(expected.size(), table.size());
+		for (Iterator<Map.Entry<Long, Object>> i = expected.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<Long, Object> entry = i.next();
+			assertSame(entry.getValue(), table.get(entry.getKey().longValue()));
+		}
+	}
+
+	@Test
+	public void testRehash() {
+		OpenHashLongObjNS table = new OpenHashLongObjNS(4);
+		int capacity = table.capacity();
+		for (int i = 0; i < 1000; i++) {
+			table.put(i * 7L << 32, new Integer(i));
+		}
+		assertTrue(table.capacity() > capacity);
+		assertReachable(table);
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(new Integer(i), table.get(i * 7L << 32));
+		}
+	}
+
+	@Test
+	public void testCopy() {
+		OpenHashLongObjNS table = new OpenHashLongObjNS();
+		table.put(1, "a");
+		OpenHashLongObjNS copy = new OpenHashLongObjNS(table);
+		copy.put(2, "b");
+		copy.remove(1);
+		assertEquals("a", table.get(1));
+		assertNull(table.get(2));
+		assertEquals(1, table.size());
+		assertEquals("b", copy.get(2));
+	}
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2016 by ProSyst Software GmbH
+ * http://www.prosyst.com
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    ProSyst Software GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.util.impl.tpt.threadpool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * The counts are those of the shared pool of the framework, so only their
+ * changes are checked.
+ */
+public class ThreadPoolManagerImplTest {
+
+	private final CountDownLatch started = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private ThreadPoolManagerImpl pool;
+	// a bundle's share of the pool limited to one thread
+	private ThreadPoolFactoryImpl factory;
+
+	@Before
+	public void setUp() {
+		pool = ThreadPoolFactoryImpl.threadPool;
+		assertNotNull("Thread pool not started", pool);
+		factory = new ThreadPoolFactoryImpl("test", 1);
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+	}
+
+	private void block() throws InterruptedException {
+		factory.execute(new Runnable() {
+			public void run() {
+				started.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					// finish
+				}
+			}
+		}, "blocking");
+		assertTrue("Not started", started.await(10, TimeUnit.SECONDS));
+	}
+
+	private void awaitCompleted(long count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (pool.getCompletedCount() < count) {
+			if (System.currentTimeMillis() > deadline)
+				fail("Completed " + pool.getCompletedCount() + " of " + count);
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	public void testCounts() throws Exception {
+		int active = pool.getActiveCount();
+		int queued = pool.getQueuedCount();
+		long completed = pool.getCompletedCount();
+
+		block();
+		assertEquals(active + 1, pool.getActiveCount());
+		final CountDownLatch ran = new CountDownLatch(2);
+		Runnable job = new Runnable() {
+			public void run() {
+				ran.countDown();
+			}
+		};
+		// the bundle's share is used up, so both wait in its queue
+		factory.execute(job, "queued1");
+		factory.execute(job, "queued2");
+		assertEquals(queued + 2, pool.getQueuedCount());
+		assertEquals(active + 1, pool.getActiveCount());
+		assertEquals(completed, pool.getCompletedCount());
+
+		release.countDown();
+		assertTrue(ran.await(10, TimeUnit.SECONDS));
+		awaitCompleted(completed + 3);
+		assertEquals(queued, pool.getQueuedCount());
+		assertEquals(active, pool.getActiveCount());
+	}
+
+	@Test
+	public void testQueuedJobKeepsPriority() throws Exception {
+		block();
+		final AtomicInteger priority = new AtomicInteger();
+		final CountDownLatch ran = new CountDownLatch(1);
+		factory.execute(new Runnable() {
+			public void run() {
+				priority.set(Thread.currentThread().getPriority());
+				ran.countDown();
+			}
+		}, Thread.MIN_PRIORITY, "low");
+		release.countDown();
+		assertTrue(ran.await(10, TimeUnit.SECONDS));
+		assertEquals(Thread.MIN_PRIORITY, priority.get());
+	}
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2016 by ProSyst Software GmbH
+ * http://www.prosyst.com
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    ProSyst Software GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.util.impl.tpt.timer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.eclipse.equinox.internal.util.timer.Timer;
+import org.eclipse.equinox.internal.util.timer.TimerListener;
+import org.junit.Test;
+
+/*
+ * Runs the same schedule, cancel and expire sequence over 100000 pending
+ * timers on the sorted TimerQueue and on the TimerWheel, the way per-job
+ * watchdogs use the timer: each timer is scheduled with the same timeout,
+ * most of them expire, some are cancelled before. Both must fire the same
+ * timers on every tick. The sizes keep it within a second or two, no
+ * timings are asserted.
+ */
+public class TimerWheelBenchmarkTest {
+
+	private static final int TIMERS = 100000;
+	private static final int PER_TICK = 10;
+	private static final int RANDOM_CANCELS = 1000;
+	private static final long ORIGIN = 1000000;
+	private static final long TICK = 10;
+
+	private static final TimerListener LISTENER = new TimerListener() {
+		public void timer(int event) {
+			// never called
+		}
+	};
+
+	private static TimerQueueNode[] nodes() {
+		TimerQueueNode[] nodes = new TimerQueueNode[TIMERS];
+		for (int i = 0; i < TIMERS; i++) {
+			nodes[i] = new TimerQueueNode();
+			// on a tick boundary the wheel fires at the same time as the queue
+			nodes[i].setEvent(LISTENER, Thread.NORM_PRIORITY, Timer.ONE_SHOT_TIMER, ORIGIN + (i / PER_TICK + 1) * TICK, 0, i, null, null);
+		}
+		return nodes;
+	}
+
+	private static Set<Integer> expire(TimerQueue queue, long now) {
+		Set<Integer> result = new TreeSet<Integer>();
+		while (!queue.isEmpty() && queue.getMin().runOn <= now) {
+			result.add(Integer.valueOf(queue.getMin().event));
+			queue.removeMin();
+		}
+		return result;
+	}
+
+	private static Set<Integer> expire(TimerWheel wheel, long now) {
+		Set<Integer> result = new TreeSet<Integer>();
+		int count = wheel.expire(now);
+		for (int i = 0; i < count; i++) {
+			result.add(Integer.valueOf(wheel.getExpired(i).event));
+		}
+		return result;
+	}
+
+	@Test
+	public void testScheduleCancelExpire() {
+		TimerQueueNode[] queued = nodes();
+		TimerQueueNode[] wheeled = nodes();
+		TimerQueue queue = new TimerQueue();
+		TimerWheel wheel = new TimerWheel(512, TICK, ORIGIN);
+		for (int i = 0; i < TIMERS; i++) {
+			queue.add(queued[i]);
+			wheel.add(wheeled[i]);
+		}
+		assertEquals(TIMERS, wheel.size());
+
+		boolean[] cancelled = new boolean[TIMERS];
+		int remaining = TIMERS;
+		Random random = new Random(0);
+		for (int i = 0; i < RANDOM_CANCELS; i++) {
+			int n = random.nextInt(TIMERS);
+			if (!cancelled[n]) {
+				cancelled[n] = true;
+				queue.removeTimerNode(queued[n]);
+				wheel.remove(wheeled[n]);
+				remaining--;
+			}
+		}
+		assertEquals(remaining, wheel.size());
+
+		int expired = 0;
+		for (int tick = 1; !wheel.isEmpty(); tick++) {
+			// the first timer of the tick is cancelled just before it expires
+			int n = (tick - 1) * PER_TICK;
+			if (n < TIMERS && !cancelled[n]) {
+				cancelled[n] = true;
+				queue.removeTimerNode(queued[n]);
+				wheel.remove(wheeled[n]);
+			}
+			long now = ORIGIN + tick * TICK;
+			Set<Integer> fromQueue = expire(queue, now);
+			assertEquals("Tick " + tick, fromQueue, expire(wheel, now));
+			for (Integer event : fromQueue) {
+				assertFalse(cancelled[event.intValue()]);
+			}
+			expired += fromQueue.size();
+		}
+		assertTrue(queue.isEmpty());
+		int notCancelled = 0;
+		for (int i = 0; i < TIMERS; i++) {
+			if (!cancelled[i])
+				notCancelled++;
+		}
+		assertEquals(notCancelled, expired);
+	}
+}
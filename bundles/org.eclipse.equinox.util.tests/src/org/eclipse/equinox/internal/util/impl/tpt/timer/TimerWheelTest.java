@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2016 by ProSyst Software GmbH
+ * http://www.prosyst.com
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    ProSyst Software GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.util.impl.tpt.timer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TimerWheelTest {
+
+	private static final long ORIGIN = 1000000;
+	private static final long TICK = 10;
+
+	private static TimerQueueNode node(long runOn) {
+		TimerQueueNode node = new TimerQueueNode();
+		node.runOn = runOn;
+		return node;
+	}
+
+	private static Set<TimerQueueNode> expired(TimerWheel wheel, int count) {
+		Set<TimerQueueNode> result = new HashSet<TimerQueueNode>();
+		for (int i = 0; i < count; i++) {
+			result.add(wheel.getExpired(i));
+		}
+		return result;
+	}
+
+	@Test
+	public void testExpireOnTick() {
+		TimerWheel wheel = new TimerWheel(8, TICK, ORIGIN);
+		TimerQueueNode node = node(ORIGIN + 25);
+		wheel.add(node);
+		assertEquals(1, wheel.size());
+
+		assertEquals(0, wheel.expire(ORIGIN + 29));
+		assertTrue(node.inWheel);
+		assertEquals(1, wheel.expire(ORIGIN + 30));
+		assertSame(node, wheel.getExpired(0));
+		assertFalse(node.inWheel);
+		assertTrue(wheel.isEmpty());
+		assertEquals(0, wheel.expire(ORIGIN + 40));
+	}
+
+	@Test
+	public void testDueNodeExpiresWithNextTick() {
+		TimerWheel wheel = new TimerWheel(8, TICK, ORIGIN);
+		assertEquals(0, wheel.expire(ORIGIN + 50));
+		TimerQueueNode node = node(ORIGIN + 20);
+		wheel.add(node);
+		assertEquals(0, wheel.expire(ORIGIN + 59));
+		assertEquals(1, wheel.expire(ORIGIN + 60));
+		assertSame(node, wheel.getExpired(0));
+	}
+
+	@Test
+	public void testCancel() {
+		TimerWheel wheel = new TimerWheel(8, TICK, ORIGIN);
+		TimerQueueNode first = node(ORIGIN + 21);
+		TimerQueueNode second = node(ORIGIN + 22);
+		TimerQueueNode third = node(ORIGIN + 23);
+		// all in the same bucket, remove the one in the middle of the chain
+		wheel.add(first);
+		wheel.add(second);
+		wheel.add(third);
+		wheel.remove(second);
+		assertFalse(second.inWheel);
+		assertEquals(2, wheel.size());
+		// removing a node which is not in the wheel does nothing
+		wheel.remove(second);
+		assertEquals(2, wheel.size());
+
+		assertEquals(2, wheel.expire(ORIGIN + 30));
+		Set<TimerQueueNode> expired = expired(wheel, 2);
+		assertTrue(expired.contains(first));
+		assertTrue(expired.contains(third));
+
+		TimerQueueNode node = node(ORIGIN + 50);
+		wheel.add(node);
+		wheel.remove(node);
+		assertTrue(wheel.isEmpty());
+		assertEquals(0, wheel.expire(ORIGIN + 100));
+	}
+
+	@Test
+	public void testLateTick() {
+		TimerWheel wheel = new TimerWheel(8, TICK, ORIGIN);
+		TimerQueueNode first = node(ORIGIN + 15);
+		TimerQueueNode second = node(ORIGIN + 45);
+		TimerQueueNode third = node(ORIGIN + 75);
+		wheel.add(first);
+		wheel.add(second);
+		wheel.add(third);
+		// the timer thread wakes up late, the skipped ticks are caught up
+		assertEquals(2, wheel.expire(ORIGIN + 60));
+		Set<TimerQueueNode> expired = expired(wheel, 2);
+		assertTrue(expired.contains(first));
+		assertTrue(expired.contains(second));
+		assertTrue(third.inWheel);
+		// more than one revolution late
+		assertEquals(1, wheel.expire(ORIGIN + 1000));
+		assertSame(third, wheel.getExpired(0));
+		assertTrue(wheel.isEmpty());
+	}
+
+	@Test
+	public void testMoreThanOneRevolutionAhead() {
+		TimerWheel wheel = new TimerWheel(4, TICK, ORIGIN);
+		// ticks 2 and 6 share bucket 2
+		TimerQueueNode near = node(ORIGIN + 20);
+		TimerQueueNode far = node(ORIGIN + 60);
+		wheel.add(near);
+		wheel.add(far);
+		assertEquals(1, wheel.expire(ORIGIN + 20));
+		assertSame(near, wheel.getExpired(0));
+		assertTrue(far.inWheel);
+		assertEquals(0, wheel.expire(ORIGIN + 59));
+		assertEquals(1, wheel.expire(ORIGIN + 60));
+		assertSame(far, wheel.getExpired(0));
+	}
+
+	@Test
+	public void testClockSetBack() {
+		TimerWheel wheel = new TimerWheel(8, TICK, ORIGIN);
+		TimerQueueNode node = node(ORIGIN + 40);
+		wheel.add(node);
+		assertEquals(0, wheel.expire(ORIGIN + 30));
+		assertEquals(0, wheel.expire(ORIGIN - 1000));
+		assertEquals(1, wheel.expire(ORIGIN + 40));
+	}
+
+	@Test
+	public void testWaitTime() {
+		TimerWheel wheel = new TimerWheel(8, TICK, ORIGIN);
+		assertEquals(-1, wheel.getWaitTime(ORIGIN));
+		wheel.add(node(ORIGIN + 35));
+		assertEquals(40, wheel.getWaitTime(ORIGIN));
+		assertEquals(5, wheel.getWaitTime(ORIGIN + 35));
+		assertEquals(0, wheel.getWaitTime(ORIGIN + 50));
+	}
+
+	@Test
+	public void testClear() {
+		TimerWheel wheel = new TimerWheel(8, TICK, ORIGIN);
+		TimerQueueNode node = node(ORIGIN + 20);
+		wheel.add(node);
+		wheel.add(node(ORIGIN + 500));
+		wheel.clear();
+		assertTrue(wheel.isEmpty());
+		assertFalse(node.inWheel);
+		assertEquals(0, wheel.expire(ORIGIN + 1000));
+	}
+}
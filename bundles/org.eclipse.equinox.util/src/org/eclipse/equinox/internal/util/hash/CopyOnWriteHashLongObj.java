@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2016 by ProSyst Software GmbH
+ * http://www.prosyst.com
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    ProSyst Software GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.util.hash;
+
+/**
+ * Thread safe hashtable for mapping long keys to Object values which is
+ * read without locking. The elements are held in an {@link OpenHashLongObjNS}
+ * which is never modified once published: every modification copies the
+ * table, modifies the copy and replaces the table with it. Reads therefore
+ * cost the same as in the unsynchronized table, while modifications cost
+ * time and memory proportional to the size of the table. Use
+ * {@link #putAll(long[], Object[])} to add many elements with a single copy.
+ * <p>
+ * Null values are not allowed.
+ */
+
+public class CopyOnWriteHashLongObj {
+
+	private volatile OpenHashLongObjNS table;
+
+	/**
+	 * Constructs an empty hash table with the default capacity.
+	 */
+	public CopyOnWriteHashLongObj() {
+		table = new OpenHashLongObjNS();
+	}
+
+	/**
+	 * Constructs an empty hash table which can hold <code>capacity</code>
+	 * elements without growing.
+	 *
+	 * @param capacity
+	 *            the expected number of elements
+	 *
+	 * @exception IllegalArgumentException
+	 *                if <code>capacity</code> < 0.
+	 */
+	public CopyOnWriteHashLongObj(int capacity) {
+		table = new OpenHashLongObjNS(capacity);
+	}
+
+	/**
+	 * Returns an value which is mapped to the <code>key</code> key.
+	 *
+	 * @param key
+	 *            the key we are searching for
+	 * @return the value this key is mapped to in the table, or null
+	 */
+	public Object get(long key) {
+		return table.get(key);
+	}
+
+	/**
+	 * Checks if the table contains an element with the given key.
+	 *
+	 * @param key
+	 *            the key we are searching for
+	 * @return true if the key is mapped to a value
+	 */
+	public boolean containsKey(long key) {
+		return table.get(key) != null;
+	}
+
+	/**
+	 * Returns the count of elements currently in the table
+	 *
+	 * @return the count of elements
+	 */
+	public int size() {
+		return table.size();
+	}
+
+	/**
+	 * Returns the current elements for enumeration. The returned table is not
+	 * affected by later modifications and must not be modified.
+	 *
+	 * @return the current elements
+	 */
+	public OpenHashLongObjNS getSnapshot() {
+		return table;
+	}
+
+	/**
+	 * Adds in hashtable an element with <code>key</code> key and
+	 * <code>value</code> value. If an element with the specified key is
+	 * already in the table only change it's value.
+	 *
+	 * @param key
+	 *            the key of the inserted element
+	 * @param value
+	 *            the value of the inserted element
+	 * @return the previous value of the key, or null
+	 * @exception IllegalArgumentException
+	 *                if <code>value</code> is null
+	 */
+	public synchronized Object put(long key, Object value) {
+		Object current = table.get(key);
+		if (current == value && value != null) {
+			return current;
+		}
+		OpenHashLongObjNS copy = new OpenHashLongObjNS(table);
+		copy.put(key, value);
+		table = copy;
+		return current;
+	}
+
+	/**
+	 * Adds the elements <code>keys[i]</code>, <code>values[i]</code> to
+	 * the table, copying the table once.
+	 *
+	 * @param keys
+	 *            the keys of the inserted elements
+	 * @param values
+	 *            the values of the inserted elements
+	 * @exception IllegalArgumentException
+	 *                if the arrays differ in length or a value is null
+	 */
+	public synchronized void putAll(long[] keys, Object[] values) {
+		if (keys.length != values.length) {
+			throw new IllegalArgumentException("The keys and values differ in length.");
+		}
+		OpenHashLongObjNS copy = new OpenHashLongObjNS(table);
+		for (int i = 0; i < keys.length; i++) {
+			copy.put(keys[i], values[i]);
+		}
+		table = copy;
+	}
+
+	/**
+	 * Removes an element with the specified key from the table. Does nothing if
+	 * there is no element with this key.
+	 *
+	 * @param key
+	 *            the key of the element we want to remove
+	 * @return the removed value, or null if there was nothing to remove
+	 */
+	public synchronized Object remove(long key) {
+		if (table.get(key) == null) {
+			return null;
+		}
+		OpenHashLongObjNS copy = new OpenHashLongObjNS(table);
+		Object value = copy.remove(key);
+		table = copy;
+		return value;
+	}
+
+	/**
+	 * Empties the hash table
+	 */
+	public synchronized void removeAll() {
+		table = new OpenHashLongObjNS();
+	}
+}
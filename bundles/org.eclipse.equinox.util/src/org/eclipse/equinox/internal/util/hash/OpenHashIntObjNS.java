@@ -0,0 +1,323 @@
+/*******************************************************************************
+ * Copyright (c) 2016 by ProSyst Software GmbH
+ * http://www.prosyst.com
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    ProSyst Software GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.util.hash;
+
+/**
+ * Hashtable for mapping int keys to Object values, using open addressing
+ * with linear probing. Keys and values are kept in two parallel arrays whose
+ * length is a power of two, so a lookup usually reads one or two adjacent
+ * slots and no object is allocated per entry. Removed entries do not leave
+ * markers behind: the following entries of the probe sequence are shifted
+ * back instead, so lookups do not slow down after many removals.
+ * <p>
+ * Null values are not allowed. The entries can be enumerated with
+ * {@link #capacity()}, {@link #keyAt(int)} and {@link #valueAt(int)}; the
+ * slot at index <code>i</code> holds an entry if <code>valueAt(i)</code> is
+ * not null.
+ * <p>
+ * The methods of this hashtable are not synchronized, and if used
+ * concurrently must be externally synchronized. See
+ * {@link CopyOnWriteHashIntObj} for a variant which can be read without
+ * locking.
+ */
+
+public class OpenHashIntObjNS {
+
+	static final float LOAD_FACTOR = 0.5f;
+
+	private int[] keys;
+	private Object[] values;
+	private int mask;
+	private int count = 0;
+	private int limit;
+	private final float loadFactor;
+
+	/**
+	 * Constructs an empty hash table with the default capacity (16) and the
+	 * default load factor (0.5).
+	 */
+	public OpenHashIntObjNS() {
+		this(16, LOAD_FACTOR);
+	}
+
+	/**
+	 * Constructs an empty hash table which can hold <code>capacity</code>
+	 * elements without growing. Uses the default load factor (0.5).
+	 *
+	 * @param capacity
+	 *            the expected number of elements
+	 *
+	 * @exception IllegalArgumentException
+	 *                if <code>capacity</code> < 0.
+	 */
+	public OpenHashIntObjNS(int capacity) {
+		this(capacity, LOAD_FACTOR);
+	}
+
+	/**
+	 * Constructs an empty hash table which can hold <code>capacity</code>
+	 * elements without growing.
+	 *
+	 * @param capacity
+	 *            the expected number of elements
+	 * @param lf
+	 *            load factor of the table, at most 0.9
+	 *
+	 * @exception IllegalArgumentException
+	 *                if <code>capacity</code> < 0 or <code>lf</code> is not
+	 *                greater than 0.0
+	 */
+	public OpenHashIntObjNS(int capacity, float lf) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Invalid hashtable capacity: " + capacity + ".");
+		}
+		if (!(lf > 0)) {
+			throw new IllegalArgumentException("Invalid load factor: " + lf + ".");
+		}
+		loadFactor = (lf > 0.9f) ? 0.9f : lf;
+		allocate(tableSize(capacity, loadFactor));
+	}
+
+	/**
+	 * Constructs a hash table with the same elements as the given one.
+	 *
+	 * @param table
+	 *            the table to copy
+	 */
+	public OpenHashIntObjNS(OpenHashIntObjNS table) {
+		loadFactor = table.loadFactor;
+		keys = (int[]) table.keys.clone();
+		values = (Object[]) table.values.clone();
+		mask = table.mask;
+		count = table.count;
+		limit = table.limit;
+	}
+
+	static int tableSize(int capacity, float lf) {
+		int size = 2;
+		while (size < (1 << 30) && size * lf <= capacity) {
+			size <<= 1;
+		}
+		return size;
+	}
+
+	private void allocate(int size) {
+		keys = new int[size];
+		values = new Object[size];
+		mask = size - 1;
+		limit = (int) (size * loadFactor);
+		if (limit >= size) {
+			limit = size - 1;
+		}
+	}
+
+	static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Adds in hashtable an element with <code>key</code> key and
+	 * <code>value</code> value. If an element with the specified key is
+	 * already in the table only change it's value.
+	 *
+	 * @param key
+	 *            the key of the inserted element
+	 * @param value
+	 *            the value of the inserted element
+	 * @return the previous value of the key, or null
+	 * @exception IllegalArgumentException
+	 *                if <code>value</code> is null
+	 */
+	public Object put(int key, Object value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Null values are not allowed.");
+		}
+		int pos = hash(key) & mask;
+		Object current;
+		while ((current = values[pos]) != null) {
+			if (keys[pos] == key) {
+				values[pos] = value;
+				return current;
+			}
+			pos = (pos + 1) & mask;
+		}
+		if (count >= limit) {
+			rehash();
+			pos = hash(key) & mask;
+			while (values[pos] != null) {
+				pos = (pos + 1) & mask;
+			}
+		}
+		keys[pos] = key;
+		values[pos] = value;
+		count++;
+		return null;
+	}
+
+	/**
+	 * Returns an value which is mapped to the <code>key</code> key.
+	 *
+	 * @param key
+	 *            the key we are searching for
+	 * @return the value this key is mapped to in the table, or null
+	 */
+	public Object get(int key) {
+		int[] keys = this.keys;
+		Object[] values = this.values;
+		int pos = hash(key) & mask;
+		Object value;
+		while ((value = values[pos]) != null) {
+			if (keys[pos] == key) {
+				return value;
+			}
+			pos = (pos + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Checks if the table contains an element with the given key.
+	 *
+	 * @param key
+	 *            the key we are searching for
+	 * @return true if the key is mapped to a value
+	 */
+	public boolean containsKey(int key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Removes an element with the specified key from the table. Does nothing if
+	 * there is no element with this key.
+	 *
+	 * @param key
+	 *            the key of the element we want to remove
+	 * @return the removed value, or null if there was nothing to remove
+	 */
+	public Object remove(int key) {
+		int pos = hash(key) & mask;
+		Object value;
+		while ((value = values[pos]) != null) {
+			if (keys[pos] == key) {
+				shiftBack(pos);
+				count--;
+				return value;
+			}
+			pos = (pos + 1) & mask;
+		}
+		return null;
+	}
+
+	/*
+	 * Empties the slot at pos and moves back the following entries of the
+	 * cluster which would not be found anymore otherwise.
+	 */
+	private void shiftBack(int pos) {
+		int free = pos;
+		int next = (pos + 1) & mask;
+		while (values[next] != null) {
+			int home = hash(keys[next]) & mask;
+			// move the entry if its home slot is not between free and next
+			if (((next - home) & mask) >= ((next - free) & mask)) {
+				keys[free] = keys[next];
+				values[free] = values[next];
+				free = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[free] = 0;
+		values[free] = null;
+	}
+
+	/**
+	 * Empties the hash table
+	 */
+	public void removeAll() {
+		for (int i = 0; i < values.length; i++) {
+			values[i] = null;
+			keys[i] = 0;
+		}
+		count = 0;
+	}
+
+	/**
+	 * Doubles the capacity of the hashtable. This method is called
+	 * automatically when the number of keys in the hashtable exceeds this
+	 * hashtable's capacity and load factor.
+	 */
+	public void rehash() {
+		if (keys.length == (1 << 30)) {
+			if (count >= keys.length - 1) {
+				throw new IllegalStateException("The hashtable is full.");
+			}
+			limit = keys.length - 1;
+			return;
+		}
+		int[] tmpKeys = keys;
+		Object[] tmpValues = values;
+		allocate(keys.length * 2);
+		for (int i = 0; i < tmpValues.length; i++) {
+			if (tmpValues[i] != null) {
+				int pos = hash(tmpKeys[i]) & mask;
+				while (values[pos] != null) {
+					pos = (pos + 1) & mask;
+				}
+				keys[pos] = tmpKeys[i];
+				values[pos] = tmpValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Returns the count of elements currently in the table
+	 *
+	 * @return the count of elements
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns the number of slots of the table, which is the upper bound for
+	 * enumerating the elements with {@link #keyAt(int)} and
+	 * {@link #valueAt(int)}.
+	 *
+	 * @return the number of slots
+	 */
+	public int capacity() {
+		return values.length;
+	}
+
+	/**
+	 * Returns the key in the given slot. The key is valid only if
+	 * <code>valueAt(index)</code> is not null.
+	 *
+	 * @param index
+	 *            the slot, between 0 and <code>capacity() - 1</code>
+	 * @return the key in the slot
+	 */
+	public int keyAt(int index) {
+		return keys[index];
+	}
+
+	/**
+	 * Returns the value in the given slot.
+	 *
+	 * @param index
+	 *            the slot, between 0 and <code>capacity() - 1</code>
+	 * @return the value in the slot, or null if the slot is empty
+	 */
+	public Object valueAt(int index) {
+		return values[index];
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 1997, 2008 by ProSyst Software GmbH
+ * Copyright (c) 1997, 2016 by ProSyst Software GmbH
  * http://www.prosyst.com
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
@@ -102,6 +102,7 @@ public class ThreadPoolFactoryImpl extends ServiceFactoryImpl implements ThreadP
 						UtilActivator.log.debug("In Bundle Queue: " + name + ", bundle queue size: " + queue.counter, null);
 					}
 					queue.addJob(job, name, priority, this, acc);
+					tmp.jobQueued();
 
 					return;
 				}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 1997, 2009 by ProSyst Software GmbH
+ * Copyright (c) 1997, 2016 by ProSyst Software GmbH
  * http://www.prosyst.com
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
@@ -30,6 +30,9 @@ public class ThreadPoolManagerImpl extends ObjectPool implements TimerListener,
 	static ObjectPool jobPool;
 
 	private int used = 0;
+	/* the jobs waiting in the pool and in the bundle queues */
+	private int queued = 0;
+	private long completed = 0;
 	static int tMaximum = 0;
 
 	Job waiting = new Job();
@@ -140,15 +143,20 @@ public class ThreadPoolManagerImpl extends ObjectPool implements TimerListener,
 		Executor x = (Executor) obj;
 
 		synchronized (getSyncMonitor()) {
+			completed++;
 			x.factory.finished();
 
 			if (used <= tMaximum || ignoreMax) {
 				tmp = waiting.getJob();
 			}
+			if (tmp == null) {
+				used--;
+			} else {
+				queued--;
+			}
 		}
 
 		if (tmp == null) {
-			used--;
 			x.clear();
 			x.setPriorityI(Thread.NORM_PRIORITY);
 			return super.releaseObject(obj);
@@ -193,9 +201,45 @@ public class ThreadPoolManagerImpl extends ObjectPool implements TimerListener,
 					shrink(minimumFill - 2);
 				dontExtend = false;
 			}
+			if (UtilActivator.LOG_DEBUG) {
+				UtilActivator.log.debug("Thread pool: " + all + " threads, " + used + " active, " + queued + " queued, " + completed + " completed jobs", null);
+			}
 		}
 	}
 
+	/**
+	 * Returns the number of jobs being executed.
+	 */
+	public int getActiveCount() {
+		synchronized (getSyncMonitor()) {
+			return used;
+		}
+	}
+
+	/**
+	 * Returns the number of jobs waiting for a thread, either because the pool
+	 * or because the bundle's share of the pool is exhausted.
+	 */
+	public int getQueuedCount() {
+		synchronized (getSyncMonitor()) {
+			return queued;
+		}
+	}
+
+	/**
+	 * Returns the number of jobs executed since the pool was created.
+	 */
+	public long getCompletedCount() {
+		synchronized (getSyncMonitor()) {
+			return completed;
+		}
+	}
+
+	/* called while holding the sync monitor */
+	void jobQueued() {
+		queued++;
+	}
+
 	public void execute(Runnable job, int priority, String name, ThreadPoolFactoryImpl factory, AccessControlContext acc) {
 		Executor ex = null;
 		synchronized (getSyncMonitor()) {
@@ -218,6 +262,7 @@ public class ThreadPoolManagerImpl extends ObjectPool implements TimerListener,
 	private void addInTasksQueue(Runnable job, String name, int priority, ThreadPoolFactoryImpl factory, AccessControlContext acc) {
 
 		waiting.addJob(job, name, priority, factory, acc);
+		queued++;
 		if (UtilActivator.LOG_DEBUG) {
 			UtilActivator.log.debug("In Threadpool Queue: " + name + ", queue size:" + waiting.counter, null);
 		}
@@ -232,6 +277,7 @@ public class ThreadPoolManagerImpl extends ObjectPool implements TimerListener,
 					}
 					if (ex != null) {
 						used++;
+						queued--;
 						ex.setPriorityI(j.priority);
 						ex.setRunnable(j.run, j.name, factory, acc);
 						ex = null;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 1997, 2008 by ProSyst Software GmbH
+ * Copyright (c) 1997, 2016 by ProSyst Software GmbH
  * http://www.prosyst.com
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
@@ -24,6 +24,15 @@ import org.eclipse.equinox.internal.util.timer.Timer;
 import org.eclipse.equinox.internal.util.timer.TimerListener;
 
 /**
+ * Serves the timer listeners from one thread. The pending listeners are kept
+ * in a TimerQueue sorted by time, or in a TimerWheel if the property
+ * <code>equinox.timer.wheel</code> is <code>true</code>. The wheel adds and
+ * removes listeners in constant time, which pays off with many pending
+ * listeners, and fires them with the precision of its tick. The tick in
+ * milliseconds and the number of buckets are set with the properties
+ * <code>equinox.timer.wheel.tick</code> (10 by default) and
+ * <code>equinox.timer.wheel.size</code> (512 by default).
+ * 
  * @author Pavlin Dobrev
  * @version 1.0
  */
@@ -36,15 +45,22 @@ public class TimerImpl implements Runnable {
 	static ThreadPoolFactoryImpl threadPool;
 
 	private TimerQueue queue;
+	private TimerWheel wheel;
 	private boolean terminated = false;
 	private Object sync = new Object();
+	/* the time the wheel handler waits for, 0 while it is not waiting */
+	private long wakeUpTime = 0;
 	private Thread th;
 
 	public TimerImpl(ThreadPoolFactoryImpl threadPool) {
 		nodePool = new ObjectPool(new TimerQueueNode(), 2, 4, 2);
 		TimerImpl.threadPool = threadPool;
 		nodes = new Hashtable(10);
-		queue = new TimerQueue();
+		if (UtilActivator.getBoolean("equinox.timer.wheel")) {
+			wheel = new TimerWheel(UtilActivator.getInteger("equinox.timer.wheel.size", 512), UtilActivator.getInteger("equinox.timer.wheel.tick", 10));
+		} else {
+			queue = new TimerQueue();
+		}
 		try {
 			th = ((ServiceFactoryImpl.privileged()) ? getOne() : new Thread(this, "[Timer] - Main Queue Handler"));
 			try {
@@ -60,6 +76,19 @@ public class TimerImpl implements Runnable {
 	}
 
 	public void run() {
+		if (wheel != null) {
+			runWheel();
+		} else {
+			runQueue();
+		}
+		nodePool.clear();
+		nodePool = null;
+		nodes.clear();
+		nodes = null;
+		queue = null;
+	}
+
+	private void runQueue() {
 		TimerQueueNode n = null;
 		while (!terminated) {
 			synchronized (sync) {
@@ -86,28 +115,15 @@ public class TimerImpl implements Runnable {
 				long current = System.currentTimeMillis();
 				if (n.runOn <= current) {
 					switch (n.type) {
-						case (Timer.ONE_SHOT_TIMER) : {
-							threadPool.execute0(n, n.priority, n.getEName(), n.acc);
-							queue.removeMin();
-							nodes.remove(n);
-							break;
-						}
+						case (Timer.ONE_SHOT_TIMER) :
 						case (Timer.ONE_SHOT_TIMER_NO_DELAY) : {
-							Executor e = threadPool.getExecutor();
-							if (e != null) {
-								e.setPriorityI(n.priority);
-								e.setRunnable(n, n.getEName(), threadPool, n.acc);
-							} else {
-								Thread th = new Thread(n, n.getEName());
-								th.setPriority(n.priority);
-								th.start();
-							}
+							dispatch(n);
 							queue.removeMin();
 							nodes.remove(n);
 							break;
 						}
 						case (Timer.PERIODICAL_TIMER) : {
-							threadPool.execute0(n, n.priority, n.getEName(), n.acc);
+							dispatch(n);
 							n.runOn += n.period;
 							if (n.runOn < current) { // time changed
 								n.runOn = current + n.period;
@@ -116,15 +132,7 @@ public class TimerImpl implements Runnable {
 							break;
 						}
 						case (Timer.PERIODICAL_TIMER_NO_DELAY) : {
-							Executor e = threadPool.getExecutor();
-							if (e != null) {
-								e.setPriorityI(n.priority);
-								e.setRunnable(n, n.getEName(), threadPool, n.acc);
-							} else {
-								Thread th = new Thread(n, n.getEName());
-								th.setPriority(n.priority);
-								th.start();
-							}
+							dispatch(n);
 							if (n.runOn < current) { // time changed
 								n.runOn = current + n.period;
 							}
@@ -154,11 +162,68 @@ public class TimerImpl implements Runnable {
 				}
 			}
 		}// while (!terminated)
-		nodePool.clear();
-		nodePool = null;
-		nodes.clear();
-		nodes = null;
-		queue = null;
+	}
+
+	private void runWheel() {
+		while (!terminated) {
+			synchronized (wheel) {
+				long current = System.currentTimeMillis();
+				int count = wheel.expire(current);
+				for (int i = 0; i < count; i++) {
+					TimerQueueNode n = wheel.getExpired(i);
+					if (!n.enabled) {
+						continue;
+					}
+					dispatch(n);
+					if (n.type == Timer.ONE_SHOT_TIMER || n.type == Timer.ONE_SHOT_TIMER_NO_DELAY) {
+						nodes.remove(n);
+					} else {
+						n.runOn += n.period;
+						if (n.runOn < current) { // time changed
+							n.runOn = current + n.period;
+						}
+						wheel.add(n);
+					}
+				}
+			}
+			synchronized (sync) {
+				if (terminated) {
+					break;
+				}
+				long wait;
+				synchronized (wheel) {
+					wait = wheel.getWaitTime(System.currentTimeMillis());
+				}
+				if (wait != 0) {
+					/* put() wakes us up if it adds a listener which expires earlier */
+					wakeUpTime = (wait < 0) ? Long.MAX_VALUE : System.currentTimeMillis() + wait;
+					try {
+						sync.wait((wait < 0) ? 0 : wait);
+					} catch (InterruptedException e) {
+					}
+					wakeUpTime = 0;
+				}
+			}
+		}
+		synchronized (wheel) {
+			wheel.clear();
+		}
+	}
+
+	private void dispatch(TimerQueueNode n) {
+		if (n.type == Timer.ONE_SHOT_TIMER_NO_DELAY || n.type == Timer.PERIODICAL_TIMER_NO_DELAY) {
+			Executor e = threadPool.getExecutor();
+			if (e != null) {
+				e.setPriorityI(n.priority);
+				e.setRunnable(n, n.getEName(), threadPool, n.acc);
+			} else {
+				Thread th = new Thread(n, n.getEName());
+				th.setPriority(n.priority);
+				th.start();
+			}
+		} else {
+			threadPool.execute0(n, n.priority, n.getEName(), n.acc);
+		}
 	}
 
 	public void terminate() {
@@ -181,12 +246,21 @@ public class TimerImpl implements Runnable {
 		n.setEvent(listener, priority, timerType, System.currentTimeMillis() + periodMilis, periodMilis, event, name, acc);
 		TimerQueueNode tmp = (TimerQueueNode) nodes.remove(n);
 		if (tmp != null) {
-			synchronized (queue) {
-				queue.removeTimerNode(tmp);
-			}
+			unschedule(tmp);
 			tmp.returnInPool();
 		}
 		nodes.put(n, n);
+		if (wheel != null) {
+			synchronized (wheel) {
+				wheel.add(n);
+			}
+			synchronized (sync) {
+				if (n.runOn < wakeUpTime) {
+					sync.notifyAll();
+				}
+			}
+			return;
+		}
 		TimerQueueNode nx;
 		synchronized (queue) {
 			queue.add(n);
@@ -224,14 +298,24 @@ public class TimerImpl implements Runnable {
 		rmTmp.setEvent(listener, 0, 0, 0, 0, event, null, null);
 		TimerQueueNode old = (TimerQueueNode) nodes.remove(rmTmp);
 		if (old != null) {
-			synchronized (queue) {
-				queue.removeTimerNode(old);
-			}
+			unschedule(old);
 			old.returnInPool();
 		}
 		rmTmp.returnInPool();
 	}
 
+	private void unschedule(TimerQueueNode node) {
+		if (wheel != null) {
+			synchronized (wheel) {
+				wheel.remove(node);
+			}
+		} else {
+			synchronized (queue) {
+				queue.removeTimerNode(node);
+			}
+		}
+	}
+
 	private class PrivilegedActionImpl implements PrivilegedAction {
 		private Runnable runnable = null;
 		private boolean locked = false;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 1997, 2008 by ProSyst Software GmbH
+ * Copyright (c) 1997, 2016 by ProSyst Software GmbH
  * http://www.prosyst.com
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
@@ -61,6 +61,15 @@ class TimerQueueNode implements Runnable, ObjectCreator {
 
 	boolean enabled = false;
 
+	/* used by TimerWheel, guarded by the wheel */
+	TimerQueueNode wheelPrev;
+
+	TimerQueueNode wheelNext;
+
+	long wheelDeadline;
+
+	boolean inWheel = false;
+
 	public String getEName() {
 		if (ServiceFactoryImpl.useNames && !named) {
 			named = true;
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2016 by ProSyst Software GmbH
+ * http://www.prosyst.com
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    ProSyst Software GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.util.impl.tpt.timer;
+
+/**
+ * Hashed timing wheel holding the pending timer nodes. Time is divided in
+ * ticks and a node is kept in the bucket of the tick it expires on, modulo
+ * the number of buckets. Adding and removing a node takes constant time, at
+ * the price of firing up to one tick late. Nodes which expire more than one
+ * revolution ahead share their bucket with the nearer ones and are skipped
+ * until their tick comes.
+ *
+ * The wheel is not synchronized, TimerImpl locks it.
+ */
+
+class TimerWheel {
+
+	private final TimerQueueNode[] buckets;
+	private final int mask;
+	private final long tick;
+	private final long origin;
+
+	/* the last tick whose bucket has been expired */
+	private long lastTick;
+	private int size = 0;
+
+	private TimerQueueNode[] expired = new TimerQueueNode[16];
+	private int expiredCount = 0;
+
+	/**
+	 * @param wheelSize
+	 *            the number of buckets, rounded up to a power of two
+	 * @param tick
+	 *            the duration of a tick in milliseconds
+	 */
+	TimerWheel(int wheelSize, long tick) {
+		this(wheelSize, tick, System.currentTimeMillis());
+	}
+
+	/**
+	 * @param wheelSize
+	 *            the number of buckets, rounded up to a power of two
+	 * @param tick
+	 *            the duration of a tick in milliseconds
+	 * @param origin
+	 *            the time of tick 0
+	 */
+	TimerWheel(int wheelSize, long tick, long origin) {
+		int length = 1;
+		while (length < wheelSize && length < (1 << 30)) {
+			length <<= 1;
+		}
+		buckets = new TimerQueueNode[length];
+		mask = length - 1;
+		this.tick = tick < 1 ? 1 : tick;
+		this.origin = origin;
+		lastTick = 0;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Adds a node, which must not be in the wheel, to the bucket of its
+	 * <code>runOn</code> time. A node which is already due expires with the
+	 * next tick.
+	 */
+	void add(TimerQueueNode node) {
+		long deadline = (node.runOn - origin + tick - 1) / tick;
+		if (deadline <= lastTick) {
+			deadline = lastTick + 1;
+		}
+		node.wheelDeadline = deadline;
+		int index = (int) (deadline & mask);
+		TimerQueueNode head = buckets[index];
+		node.wheelPrev = null;
+		node.wheelNext = head;
+		if (head != null) {
+			head.wheelPrev = node;
+		}
+		buckets[index] = node;
+		node.inWheel = true;
+		size++;
+	}
+
+	/**
+	 * Removes a node from the wheel, nothing happens if it is not in the
+	 * wheel.
+	 */
+	void remove(TimerQueueNode node) {
+		if (!node.inWheel) {
+			return;
+		}
+		if (node.wheelPrev != null) {
+			node.wheelPrev.wheelNext = node.wheelNext;
+		} else {
+			buckets[(int) (node.wheelDeadline & mask)] = node.wheelNext;
+		}
+		if (node.wheelNext != null) {
+			node.wheelNext.wheelPrev = node.wheelPrev;
+		}
+		node.wheelPrev = node.wheelNext = null;
+		node.inWheel = false;
+		size--;
+	}
+
+	/**
+	 * Removes the nodes which have expired until the given time. They are
+	 * returned by {@link #getExpired(int)} until the next call.
+	 *
+	 * @return the number of expired nodes
+	 */
+	int expire(long now) {
+		for (int i = 0; i < expiredCount; i++) {
+			expired[i] = null;
+		}
+		expiredCount = 0;
+		long nowTick = (now - origin) / tick;
+		if (nowTick <= lastTick) {
+			/* no tick has passed or the time has been changed backwards */
+			return 0;
+		}
+		/* one revolution visits every bucket */
+		long last = Math.min(nowTick, lastTick + buckets.length);
+		for (long t = lastTick + 1; t <= last && size > 0; t++) {
+			TimerQueueNode node = buckets[(int) (t & mask)];
+			while (node != null) {
+				TimerQueueNode next = node.wheelNext;
+				if (node.wheelDeadline <= nowTick) {
+					remove(node);
+					addExpired(node);
+				}
+				node = next;
+			}
+		}
+		lastTick = nowTick;
+		return expiredCount;
+	}
+
+	TimerQueueNode getExpired(int i) {
+		return expired[i];
+	}
+
+	private void addExpired(TimerQueueNode node) {
+		if (expiredCount == expired.length) {
+			TimerQueueNode[] tmp = new TimerQueueNode[expired.length * 2];
+			System.arraycopy(expired, 0, tmp, 0, expiredCount);
+			expired = tmp;
+		}
+		expired[expiredCount++] = node;
+	}
+
+	/**
+	 * Returns the milliseconds until the first tick whose bucket is not empty,
+	 * or -1 if the wheel is empty. The nodes of that bucket may still be one or
+	 * more revolutions ahead.
+	 */
+	long getWaitTime(long now) {
+		if (size == 0) {
+			return -1;
+		}
+		long t = lastTick + 1;
+		for (int i = 0; i < buckets.length && buckets[(int) (t & mask)] == null; i++) {
+			t++;
+		}
+		long wait = origin + t * tick - now;
+		return wait > 0 ? wait : 0;
+	}
+
+	/**
+	 * Removes all nodes from the wheel.
+	 */
+	void clear() {
+		for (int i = 0; i < buckets.length; i++) {
+			TimerQueueNode node = buckets[i];
+			while (node != null) {
+				TimerQueueNode next = node.wheelNext;
+				node.wheelPrev = node.wheelNext = null;
+				node.inWheel = false;
+				node = next;
+			}
+			buckets[i] = null;
+		}
+		size = 0;
+	}
+}